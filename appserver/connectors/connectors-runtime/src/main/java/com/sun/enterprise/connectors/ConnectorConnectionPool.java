@@ -107,6 +107,10 @@ public class ConnectorConnectionPool implements Serializable {
     //This property will be set by ConnectorConnectionPoolDeployer or
     //JdbcConnectionPoolDeployer.
     private boolean preferValidateOverRecreate_ = false;
+    //These properties will be set by ConnectorConnectionPoolDeployer or
+    //JdbcConnectionPoolDeployer.
+    private int connectionCreationParallelism_ = 1;
+    private boolean warmUpOnCreation_ = false;
     
     private String validateAtmostOncePeriod_ = null;
 
@@ -251,6 +255,8 @@ public class ConnectorConnectionPool implements Serializable {
                 (getConCreationRetryInterval());
         clone.setConCreationRetryAttempts(getConCreationRetryAttempts());
         clone.setPreferValidateOverRecreate(isPreferValidateOverRecreate());
+        clone.setConnectionCreationParallelism(getConnectionCreationParallelism());
+        clone.setWarmUpOnCreation(isWarmUpOnCreation());
         clone.setPooling(isPoolingOn());
         clone.setPingDuringPoolCreation(getPingDuringPoolCreation());
         return clone;
@@ -753,6 +759,10 @@ public class ConnectorConnectionPool implements Serializable {
             sb.append(isConnectionValidationRequired_);
             sb.append("\npreferValidateOverRecreate_ ");
             sb.append(preferValidateOverRecreate_);
+            sb.append("\nconnectionCreationParallelism_ ");
+            sb.append(connectionCreationParallelism_);
+            sb.append("\nwarmUpOnCreation_ ");
+            sb.append(warmUpOnCreation_);
 
             sb.append("\nmatchConnections_ ");
             sb.append(matchConnections_);
@@ -881,6 +891,22 @@ public class ConnectorConnectionPool implements Serializable {
         preferValidateOverRecreate_ = preferValidateOverRecreate;
     }
 
+    public int getConnectionCreationParallelism() {
+        return connectionCreationParallelism_;
+    }
+
+    public void setConnectionCreationParallelism(int connectionCreationParallelism) {
+        connectionCreationParallelism_ = connectionCreationParallelism;
+    }
+
+    public boolean isWarmUpOnCreation() {
+        return warmUpOnCreation_;
+    }
+
+    public void setWarmUpOnCreation(boolean warmUpOnCreation) {
+        warmUpOnCreation_ = warmUpOnCreation;
+    }
+
     public long getDynamicReconfigWaitTimeout() {
         return dynamicReconfigWaitTimeout;
     }
@@ -546,6 +546,25 @@ public class ConnectorConnectionPoolDeployer extends AbstractConnectorResourceDe
                                 value);
                     }
                     ccp.setPreferValidateOverRecreate(toBoolean(value, false));
+                } else if ("CONNECTION-CREATION-PARALLELISM".equals(ep.getName().toUpperCase(locale))) {
+                    String value = ep.getValue();
+                    try {
+                        ccp.setConnectionCreationParallelism(Integer.parseInt(value));
+                        if (_logger.isLoggable(Level.FINE)) {
+                            _logger.fine(" ConnectorConnectionPoolDeployer::  " +
+                                    "Setting CONNECTION-CREATION-PARALLELISM to " + value);
+                        }
+                    } catch (NumberFormatException nfe) {
+                        _logger.log(Level.WARNING, "Invalid value for "
+                                + "'CONNECTION-CREATION-PARALLELISM' : " + value);
+                    }
+                } else if ("WARM-UP-ON-CREATION".equals(ep.getName().toUpperCase(locale))) {
+                    String value = ep.getValue();
+                    if (_logger.isLoggable(Level.FINE)) {
+                        _logger.fine(" ConnectorConnectionPoolDeployer::  " +
+                                "Setting WARM-UP-ON-CREATION to " + value);
+                    }
+                    ccp.setWarmUpOnCreation(toBoolean(value, false));
                 }
             }
         }
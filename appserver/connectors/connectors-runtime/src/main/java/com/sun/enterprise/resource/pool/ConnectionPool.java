@@ -53,6 +53,7 @@ import com.sun.enterprise.resource.listener.PoolLifeCycleListener;
 import com.sun.enterprise.resource.pool.datastructure.DataStructure;
 import com.sun.enterprise.resource.pool.datastructure.DataStructureFactory;
 import com.sun.enterprise.resource.pool.resizer.Resizer;
+import com.sun.enterprise.resource.pool.waitqueue.FairPoolWaitQueue;
 import com.sun.enterprise.resource.pool.waitqueue.PoolWaitQueue;
 import com.sun.enterprise.resource.pool.waitqueue.PoolWaitQueueFactory;
 import com.sun.enterprise.transaction.api.JavaEETransaction;
@@ -64,7 +65,18 @@ import javax.naming.NamingException;
 import javax.resource.ResourceException;
 import javax.resource.spi.RetryableUnavailableException;
 import javax.transaction.Transaction;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -107,6 +119,13 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
     protected long conCreationRetryInterval_;
     protected long validateAtmostPeriodInMilliSeconds_;
     protected int maxConnectionUsage_;
+    //number of resources created concurrently while filling the pool
+    protected int connectionCreationParallelism_;
+    //validate resources upon creation, before they are published to the pool
+    protected boolean warmUpOnCreation_;
+    //creates resources in parallel, created on demand and shut down along with the resizer.
+    //guarded by this
+    private ExecutorService resourceCreationService;
     //To validate a Sun RA Pool Connection if it hasnot been validated
     //  in the past x sec. (x=idle-timeout)
     //The property will be set from system property -
@@ -365,6 +384,7 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
         long startTime = System.currentTimeMillis();
         long elapsedWaitTime;
         long remainingWaitTime = 0;
+        boolean signalled = false;
 
         while (true) {
             if (gateway.allowed()) {
@@ -420,7 +440,28 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
                     }
                 }
 
-                if (!blocked) {
+                if (!blocked && waitQueue instanceof FairPoolWaitQueue) {
+                    //add to wait-queue, a thread that was already signalled keeps its turn
+                    FairPoolWaitQueue fairQueue = (FairPoolWaitQueue) waitQueue;
+                    if (poolLifeCycleListener != null) {
+                        poolLifeCycleListener.connectionRequestQueued();
+                    }
+                    FairPoolWaitQueue.Waiter waiter = fairQueue.enqueue(signalled);
+                    try {
+                        logFine("Resource Pool: getting on wait queue");
+                        signalled = fairQueue.await(waiter, remainingWaitTime);
+                    } catch (InterruptedException ex) {
+                        //Could be system shutdown.
+                        if (poolLifeCycleListener != null) {
+                            poolLifeCycleListener.connectionRequestDequeued();
+                        }
+                        break;
+                    }
+                    //when signalled, the dequeue has already been accounted by notifyWaitingThreads()
+                    if (!signalled && poolLifeCycleListener != null) {
+                        poolLifeCycleListener.connectionRequestDequeued();
+                    }
+                } else if (!blocked) {
                     //add to wait-queue
                     Object waitMonitor = new Object();
                     if (poolLifeCycleListener != null) {
@@ -904,6 +945,11 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
                 count++;
                 startTime = System.currentTimeMillis();
                 resourceHandle = resourceAllocator.createResource();
+                if (warmUpOnCreation_ && !resourceAllocator.isConnectionValid(resourceHandle)) {
+                    resourceAllocator.destroyResource(resourceHandle);
+                    throw new PoolingException(localStrings.getString(
+                            "pool.warm_up_validation_failed", poolInfo));
+                }
                 if(_logger.isLoggable(Level.FINE)) {
                     _logger.log(Level.FINE, "Time taken to create a single "
                             + "resource : "
@@ -939,11 +985,102 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
      * @throws PoolingException When unable to create a resource
      */
     private void createResources(ResourceAllocator alloc, int size) throws PoolingException {
+        if (connectionCreationParallelism_ > 1 && size > 1) {
+            createResourcesInParallel(alloc, size);
+            return;
+        }
         for (int i = 0; i < size; i++) {
             createResourceAndAddToPool(alloc);
         }
     }
 
+    /**
+     * Create specified number of resources using at most "connection-creation-parallelism"
+     * threads. Each resource is added to the pool as soon as it is created, so that waiting
+     * requests can be served before all the resources are created.
+     *
+     * @param alloc ResourceAllocator
+     * @param size  number of resources to create.
+     * @throws PoolingException When unable to create a resource
+     */
+    private void createResourcesInParallel(final ResourceAllocator alloc, int size)
+            throws PoolingException {
+        final AtomicInteger remaining = new AtomicInteger(size);
+        int workers = Math.min(connectionCreationParallelism_, size);
+        List<Future<Void>> results = new ArrayList<Future<Void>>(workers);
+        Callable<Void> worker = new Callable<Void>() {
+            public Void call() throws PoolingException {
+                //stop at the first failure, as the resource is most likely unreachable.
+                while (remaining.getAndDecrement() > 0) {
+                    createResourceAndAddToPool(alloc);
+                }
+                return null;
+            }
+        };
+        ExecutorService service = getResourceCreationService();
+        try {
+            for (int i = 0; i < workers; i++) {
+                results.add(service.submit(worker));
+            }
+        } catch (RejectedExecutionException ree) {
+            //the resizer has been cancelled meanwhile, create the remaining resources on this thread.
+            FutureTask<Void> task = new FutureTask<Void>(worker);
+            task.run();
+            results.add(task);
+        }
+
+        PoolingException failure = null;
+        boolean interrupted = false;
+        for (Future<Void> result : results) {
+            while (true) {
+                try {
+                    result.get();
+                    break;
+                } catch (InterruptedException ie) {
+                    //resources being created must be accounted for, wait for the workers.
+                    interrupted = true;
+                } catch (ExecutionException ee) {
+                    if (failure == null) {
+                        remaining.set(0);
+                        failure = (ee.getCause() instanceof PoolingException) ?
+                                (PoolingException) ee.getCause() : new PoolingException(ee.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private synchronized ExecutorService getResourceCreationService() {
+        if (resourceCreationService == null) {
+            final String threadName = "connection-pool-creator-" + poolInfo.getName() + "-";
+            final ThreadFactory threadFactory = new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                public Thread newThread(final Runnable r) {
+                    //threads are created on demand, by request threads. they must not inherit
+                    //the context class loader nor the access control context of the application.
+                    return AccessController.doPrivileged(new PrivilegedAction<Thread>() {
+                        public Thread run() {
+                            Thread th = new Thread(r, threadName + count.incrementAndGet());
+                            th.setContextClassLoader(null);
+                            th.setDaemon(true);
+                            return th;
+                        }
+                    });
+                }
+            };
+            resourceCreationService = Executors.newCachedThreadPool(threadFactory);
+        }
+        return resourceCreationService;
+    }
+
 
     public void setPoolLifeCycleListener(PoolLifeCycleListener listener) {
         this.poolLifeCycleListener = listener;
@@ -1202,6 +1339,10 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
         createResourceAndAddToPool(allocator);
     }
 
+    public void createResourcesAndAddToPool(int count) throws PoolingException {
+        createResources(allocator, count);
+    }
+
     public Set getInvalidConnections(Set connections) throws ResourceException {
         return allocator.getInvalidConnections(connections);
     }
@@ -1216,6 +1357,17 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
 
 
     protected void notifyWaitingThreads() {
+        if (waitQueue instanceof FairPoolWaitQueue) {
+            // hand over to the oldest thread still waiting in the waitqueue
+            if (((FairPoolWaitQueue) waitQueue).signal()) {
+                if (poolLifeCycleListener != null) {
+                    poolLifeCycleListener.connectionRequestDequeued();
+                }
+            } else {
+                logFine(" No thread waiting in the queue");
+            }
+            return;
+        }
         // notify the first thread in the waitqueue
         Object waitMonitor = null;
         synchronized (waitQueue) {
@@ -1461,6 +1613,8 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
 
         validateAtmostPeriodInMilliSeconds_ =
                 Integer.parseInt(poolResource.getValidateAtmostOncePeriod()) * 1000L;
+        connectionCreationParallelism_ = poolResource.getConnectionCreationParallelism();
+        warmUpOnCreation_ = poolResource.isWarmUpOnCreation();
         boolean connectionLeakReclaim_ = poolResource.isConnectionReclaim();
         long connectionLeakTimeoutInMilliSeconds_ = Integer.parseInt(
                 poolResource.getConnectionLeakTracingTimeout()) * 1000L;
@@ -1497,9 +1651,7 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
     private void increaseSteadyPoolSize(int newSteadyPoolSize)
             throws PoolingException {
         cancelResizerTask();
-        for (int i = ds.getResourcesSize(); i < newSteadyPoolSize; i++) {
-            createResourceAndAddToPool(allocator);
-        }
+        createResources(allocator, newSteadyPoolSize - ds.getResourcesSize());
         scheduleResizerTask();
     }
 
@@ -1538,6 +1690,12 @@ public class ConnectionPool implements ResourcePool, ConnectionLeakListener,
         if (timer != null) {
             timer.purge();
         }
+
+        //resources being created are still added to the pool, or destroyed if it is emptied
+        if (resourceCreationService != null) {
+            resourceCreationService.shutdown();
+            resourceCreationService = null;
+        }
     }
 
 
@@ -74,6 +74,13 @@ public interface ResourceHandler {
      */
     void createResourceAndAddToPool() throws PoolingException;
 
+    /**
+     * create new resources and add them to pool (using default resource-allocator)
+     * @param count number of resources to create
+     * @throws PoolingException when unable to create a resource
+     */
+    void createResourcesAndAddToPool(int count) throws PoolingException;
+
     /**
      * gets the invalid connections from the given connections set
      * @param connections that need to be validated
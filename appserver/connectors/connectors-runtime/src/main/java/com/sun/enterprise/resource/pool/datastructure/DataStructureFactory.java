@@ -68,6 +68,12 @@ public class DataStructureFactory {
                 ds = new ListDataStructure(parameters, maxPoolSize, handler, strategyClass);
             }else if(className.equals(RWLockDataStructure.class.getName())){
                 ds = new RWLockDataStructure(parameters, maxPoolSize, handler, strategyClass);
+            }else if(className.equals(LockFreeDataStructure.class.getName())){
+                if(strategyClass != null){
+                    debug("Resource selection strategy " + strategyClass +
+                            " is ignored by " + className);
+                }
+                ds = new LockFreeDataStructure(parameters, maxPoolSize, handler);
             }else{
                 ds = initializeCustomDataStructureInPrivilegedMode(className, parameters, maxPoolSize, handler, strategyClass);
             }
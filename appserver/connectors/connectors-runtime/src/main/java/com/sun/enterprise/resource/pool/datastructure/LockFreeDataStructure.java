@@ -0,0 +1,294 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.enterprise.resource.pool.datastructure;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.allocator.ResourceAllocator;
+import com.sun.enterprise.resource.pool.ResourceHandler;
+import com.sun.logging.LogDomains;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lock-free datastructure for pool.<br>
+ * Every resource is tracked by a slot whose state (free / busy / removed) is
+ * changed only through compare-and-set. Free slots are kept in a concurrent
+ * LIFO stack, so <code>getResource</code> and <code>returnResource</code> do
+ * not scan the pool and do not take a shared lock.<br>
+ * When thread-affinity is enabled (default), each thread remembers the last
+ * resource it acquired and tries to reclaim it first, similar to
+ * <code>AssocWithThreadResourcePool</code>, but without binding the resource
+ * to the thread : any other thread can still take it from the free stack.<br>
+ * Thread-affinity can be disabled by setting the datastructure parameters to
+ * <code>thread-affinity=false</code>.<br>
+ * Resource selection strategies are not supported : the free stack always
+ * hands out the most recently returned resource.
+ */
+public class LockFreeDataStructure implements DataStructure {
+
+    public static final String THREAD_AFFINITY = "thread-affinity";
+
+    private static final int FREE = 0;
+    private static final int BUSY = 1;
+    private static final int REMOVED = 2;
+
+    private ResourceHandler handler;
+    private volatile int maxSize;
+    private final boolean threadAffinity;
+
+    private final ConcurrentHashMap<ResourceHandle, Slot> resources;
+    private final ConcurrentLinkedDeque<Slot> free = new ConcurrentLinkedDeque<Slot>();
+    //size is reserved before a resource is created so that maxSize is never exceeded.
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger freeSize = new AtomicInteger();
+    //incremented by removeAll, so that resources created meanwhile are not added.
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final ThreadLocal<WeakReference<Slot>> lastUsed = new ThreadLocal<WeakReference<Slot>>();
+
+    protected final static Logger _logger =
+            LogDomains.getLogger(LockFreeDataStructure.class, LogDomains.RSR_LOGGER);
+
+    public LockFreeDataStructure(String parameters, int maxSize,
+                                 ResourceHandler handler) {
+        resources = new ConcurrentHashMap<ResourceHandle, Slot>((maxSize > 1000) ? 1000 : maxSize);
+        this.maxSize = maxSize;
+        this.handler = handler;
+        this.threadAffinity = isThreadAffinityEnabled(parameters);
+        if (_logger.isLoggable(Level.FINEST)) {
+            _logger.log(Level.FINEST, "pool.datastructure.lockfreeds.init", threadAffinity);
+        }
+    }
+
+    private static boolean isThreadAffinityEnabled(String parameters) {
+        if (parameters != null) {
+            for (String parameter : parameters.split("[,;]")) {
+                String[] nameValue = parameter.split("=");
+                if (nameValue.length == 2 && THREAD_AFFINITY.equalsIgnoreCase(nameValue[0].trim())) {
+                    return Boolean.parseBoolean(nameValue[1].trim());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int addResource(ResourceAllocator allocator, int count) throws PoolingException {
+        int numResAdded = 0;
+        for (int i = 0; i < count; i++) {
+            if (size.incrementAndGet() > maxSize) {
+                size.decrementAndGet();
+                break;
+            }
+            int reserved = generation.get();
+            ResourceHandle handle;
+            try {
+                handle = handler.createResource(allocator);
+            } catch (Exception e) {
+                size.decrementAndGet();
+                PoolingException pe = new PoolingException(e.getMessage());
+                pe.initCause(e);
+                throw pe;
+            }
+            Slot slot = new Slot(handle);
+            resources.put(handle, slot);
+            if (generation.get() != reserved) {
+                //removeAll() ran while the resource was being created. It
+                //may or may not have seen the slot.
+                if (resources.remove(handle, slot)) {
+                    size.decrementAndGet();
+                    handler.deleteResource(handle);
+                }
+                break;
+            }
+            freeSize.incrementAndGet();
+            slot.queued.set(true);
+            free.offerFirst(slot);
+            numResAdded++;
+        }
+        return numResAdded;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ResourceHandle getResource() {
+        if (threadAffinity) {
+            WeakReference<Slot> ref = lastUsed.get();
+            Slot slot = (ref != null) ? ref.get() : null;
+            if (slot != null && acquire(slot)) {
+                return slot.handle;
+            }
+        }
+        Slot slot;
+        while ((slot = free.pollFirst()) != null) {
+            //the slot may have been acquired by its affine thread or removed
+            //while it was sitting in the stack; such stale entries are dropped.
+            slot.queued.set(false);
+            if (acquire(slot)) {
+                if (threadAffinity) {
+                    WeakReference<Slot> ref = lastUsed.get();
+                    if (ref == null || ref.get() != slot) {
+                        lastUsed.set(new WeakReference<Slot>(slot));
+                    }
+                }
+                return slot.handle;
+            }
+        }
+        return null;
+    }
+
+    private boolean acquire(Slot slot) {
+        if (slot.state.compareAndSet(FREE, BUSY)) {
+            freeSize.decrementAndGet();
+            slot.handle.setBusy(true);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeResource(ResourceHandle resource) {
+        Slot slot = resources.remove(resource);
+        if (slot != null) {
+            if (slot.state.getAndSet(REMOVED) == FREE) {
+                freeSize.decrementAndGet();
+            }
+            size.decrementAndGet();
+            handler.deleteResource(resource);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void returnResource(ResourceHandle resource) {
+        Slot slot = resources.get(resource);
+        if (slot != null) {
+            resource.setBusy(false);
+            if (slot.state.compareAndSet(BUSY, FREE)) {
+                freeSize.incrementAndGet();
+                //a slot is kept at most once in the free stack.
+                if (slot.queued.compareAndSet(false, true)) {
+                    free.offerFirst(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getFreeListSize() {
+        return freeSize.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void removeAll() {
+        generation.incrementAndGet();
+        Iterator<Slot> it = resources.values().iterator();
+        while (it.hasNext()) {
+            Slot slot = it.next();
+            it.remove();
+            if (slot.state.getAndSet(REMOVED) == FREE) {
+                freeSize.decrementAndGet();
+            }
+            size.decrementAndGet();
+            handler.deleteResource(slot.handle);
+        }
+        free.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getResourcesSize() {
+        return resources.size();
+    }
+
+    /**
+     * Set maxSize based on the new max pool size set on the connection pool
+     * during a reconfiguration.
+     *
+     * @param maxSize
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ArrayList<ResourceHandle> getAllResources() {
+        return new ArrayList<ResourceHandle>(resources.keySet());
+    }
+
+    /**
+     * State holder of a resource in the pool
+     */
+    private static final class Slot {
+        private final ResourceHandle handle;
+        private final AtomicInteger state = new AtomicInteger(FREE);
+        //whether the slot is (about to be) present in the free stack
+        private final AtomicBoolean queued = new AtomicBoolean(false);
+
+        private Slot(ResourceHandle handle) {
+            this.handle = handle;
+        }
+    }
+}
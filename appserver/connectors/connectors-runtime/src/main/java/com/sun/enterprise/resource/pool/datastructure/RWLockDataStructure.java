@@ -62,6 +62,11 @@ public class RWLockDataStructure implements DataStructure {
     private ResourceHandler handler;
     private ResourceSelectionStrategy strategy;
     private int maxSize;
+    //number of resources being created, guarded by writeLock
+    private int pending;
+    //incremented by removeAll, so that the resources being created meanwhile
+    //are destroyed instead of being added. guarded by writeLock
+    private int generation;
 
     private final ArrayList<ResourceHandle> resources;
     private ReentrantReadWriteLock reentrantLock = new ReentrantReadWriteLock();
@@ -91,22 +96,75 @@ public class RWLockDataStructure implements DataStructure {
      */
     public int addResource(ResourceAllocator allocator, int count) throws PoolingException {
         int numResAdded = 0;
+        //resources are created outside the lock so that getters are not blocked behind the
+        //round-trips to the resource. room for them is reserved up-front to honour maxSize.
+        for (int i = 0; i < count; i++) {
+            int reserved = reserve();
+            if (reserved < 0) {
+                break;
+            }
+            ResourceHandle handle;
+            try {
+                handle = handler.createResource(allocator);
+            } catch (Exception e) {
+                release(reserved);
+                PoolingException pe = new PoolingException(e.getMessage());
+                pe.initCause(e);
+                throw pe;
+            }
+            boolean added;
+            writeLock.lock();
+            try {
+                added = release(reserved);
+                if (added) {
+                    resources.add(handle);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            if (!added) {
+                //the pool has been emptied meanwhile
+                handler.deleteResource(handle);
+                break;
+            }
+            numResAdded++;
+        }
+        return numResAdded;
+    }
+
+    /**
+     * reserve room for a resource that is about to be created
+     * @return the generation of the reservation, or -1 if the pool has no room
+     * for one more resource
+     */
+    private int reserve() {
         writeLock.lock();
-        //for now, coarser lock. finer lock needs "resources.size() < maxSize()" once more.
         try {
-            for (int i = 0; i < count && resources.size() < maxSize; i++) {
-                ResourceHandle handle = handler.createResource(allocator);
-                resources.add(handle);
-                numResAdded++;
+            if (resources.size() + pending < maxSize) {
+                pending++;
+                return generation;
             }
-        } catch (Exception e) {
-            PoolingException pe = new PoolingException(e.getMessage());
-            pe.initCause(e);
-            throw pe;
+            return -1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * release a reservation
+     * @return boolean indicating whether the pool has not been emptied since the reservation
+     */
+    private boolean release(int reserved) {
+        writeLock.lock();
+        try {
+            if (generation != reserved) {
+                return false;
+            }
+            pending--;
+            return true;
         } finally {
             writeLock.unlock();
         }
-        return numResAdded;
     }
 
     /**
@@ -200,6 +258,8 @@ public class RWLockDataStructure implements DataStructure {
     public void removeAll() {
         writeLock.lock();
         try {
+            generation++;
+            pending = 0;
             Iterator it = resources.iterator();
             while (it.hasNext()) {
                 handler.deleteResource((ResourceHandle) it.next());
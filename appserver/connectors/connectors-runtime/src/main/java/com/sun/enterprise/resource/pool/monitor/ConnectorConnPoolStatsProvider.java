@@ -47,10 +47,12 @@ import org.glassfish.external.probe.provider.annotations.ProbeListener;
 import org.glassfish.external.probe.provider.annotations.ProbeParam;
 import org.glassfish.external.statistics.CountStatistic;
 import org.glassfish.external.statistics.RangeStatistic;
+import org.glassfish.external.statistics.StringStatistic;
 import org.glassfish.external.statistics.annotations.Reset;
 import org.glassfish.external.statistics.impl.CountStatisticImpl;
 import org.glassfish.external.statistics.impl.RangeStatisticImpl;
 import org.glassfish.external.statistics.impl.StatisticImpl;
+import org.glassfish.external.statistics.impl.StringStatisticImpl;
 import org.glassfish.gmbal.AMXMetadata;
 import org.glassfish.gmbal.Description;
 import org.glassfish.gmbal.ManagedAttribute;
@@ -139,6 +141,16 @@ public class ConnectorConnPoolStatsProvider {
     private CountStatisticImpl waitQueueLength = new CountStatisticImpl(
             "WaitQueueLength", StatisticImpl.UNIT_COUNT, 
             "Number of connection requests in the queue waiting to be serviced.");    
+    private StringStatisticImpl connRequestWaitTimeHistogram = new StringStatisticImpl(
+            "ConnRequestWaitTimeHistogram", "List",
+            "Distribution of the wait times of the connection requests served by the pool.");
+    private StringStatisticImpl waitQueueLengthHistogram = new StringStatisticImpl(
+            "WaitQueueLengthHistogram", "List",
+            "Distribution of the wait queue length seen by the connection requests that had to wait.");
+    private BucketHistogram connRequestWaitTimes = new BucketHistogram(
+            new long[]{0, 1, 5, 10, 50, 100, 500, 1000, 5000, 30000}, "ms");
+    private BucketHistogram waitQueueLengths = new BucketHistogram(
+            new long[]{1, 2, 5, 10, 20, 50, 100, 200, 500, 1000}, "");
     private static final String JCA_PROBE_LISTENER = "glassfish:jca:connection-pool:";
 
     public ConnectorConnPoolStatsProvider(PoolInfo poolInfo, Logger logger) {
@@ -370,6 +382,7 @@ public class ConnectorConnPoolStatsProvider {
             }
             connRequestWaitTime.setCurrent(timeTakenInMillis);
             totalConnRequestWaitTime.increment(timeTakenInMillis);
+            connRequestWaitTimes.record(timeTakenInMillis);
         }        
     }  
     
@@ -480,6 +493,8 @@ public class ConnectorConnPoolStatsProvider {
         averageConnWaitTime.reset();
         totalConnRequestWaitTime.reset();
         waitQueueLength.reset();        
+        connRequestWaitTimes.reset();
+        waitQueueLengths.reset();
     }
     
     /**
@@ -539,6 +554,7 @@ public class ConnectorConnPoolStatsProvider {
                     "poolName = " + poolName);
             }
             waitQueueLength.increment();
+            waitQueueLengths.record(waitQueueLength.getCount());
         }                        
     }
     
@@ -707,4 +723,16 @@ public class ConnectorConnPoolStatsProvider {
     public CountStatistic getWaitQueueLength() {
         return waitQueueLength;
     }    
+
+    @ManagedAttribute(id="connrequestwaittimehistogram")
+    public StringStatistic getConnRequestWaitTimeHistogram() {
+        connRequestWaitTimeHistogram.setCurrent(connRequestWaitTimes.toString());
+        return connRequestWaitTimeHistogram;
+    }
+
+    @ManagedAttribute(id="waitqueuelengthhistogram")
+    public StringStatistic getWaitQueueLengthHistogram() {
+        waitQueueLengthHistogram.setCurrent(waitQueueLengths.toString());
+        return waitQueueLengthHistogram;
+    }
 }
@@ -132,13 +132,11 @@ public class
     private void ensureSteadyPool() {
         if (ds.getResourcesSize() < pool.getSteadyPoolSize()) {
             // Create resources to match the steady pool size
-            for (int i = ds.getResourcesSize(); i < pool.getSteadyPoolSize(); i++) {
-                try {
-                    handler.createResourceAndAddToPool();
-                } catch (PoolingException ex) {
-                    Object[] params = new Object[]{poolInfo, ex.getMessage()};
-                    _logger.log(Level.WARNING, "resource_pool.resize_pool_error", params);
-                }
+            try {
+                handler.createResourcesAndAddToPool(pool.getSteadyPoolSize() - ds.getResourcesSize());
+            } catch (PoolingException ex) {
+                Object[] params = new Object[]{poolInfo, ex.getMessage()};
+                _logger.log(Level.WARNING, "resource_pool.resize_pool_error", params);
             }
         }
     }
@@ -0,0 +1,245 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.enterprise.resource.pool.waitqueue;
+
+import com.sun.logging.LogDomains;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lock-free FIFO wait queue for the connection pool.<br>
+ * Waiting threads are parked on a small {@link Waiter} node instead of waiting
+ * on a monitor. A free resource is handed over to the oldest waiter that is
+ * still waiting : if the first waiter has already timed out, the signal moves
+ * on to the next one instead of being lost. A waiter that was signalled but
+ * could not get a resource (eg: the resource did not match) gets back at the
+ * head of the queue so that it keeps its turn.<br>
+ * Each thread reuses its waiter from one wait to the next, unless the waiter
+ * may still be held by a concurrent {@link #signal()}.<br>
+ * Plain objects (wait monitors) added through {@link #addToQueue(Object)} are
+ * still supported and are notified in FIFO order along with the waiters.
+ */
+public class FairPoolWaitQueue implements PoolWaitQueue {
+
+    private final ConcurrentLinkedDeque<Object> queue = new ConcurrentLinkedDeque<Object>();
+    private final AtomicInteger length = new AtomicInteger();
+    private final ThreadLocal<Waiter> freeWaiter = new ThreadLocal<Waiter>();
+
+    protected final static Logger _logger = LogDomains.getLogger(FairPoolWaitQueue.class, LogDomains.RSR_LOGGER);
+
+    public FairPoolWaitQueue() {
+        debug("Initializing fair Pool Wait Queue");
+    }
+
+    public int getQueueLength() {
+        return length.get();
+    }
+
+    public void addToQueue(Object o) {
+        queue.offerLast(o);
+        length.incrementAndGet();
+    }
+
+    public boolean removeFromQueue(Object o) {
+        boolean removed = queue.removeFirstOccurrence(o);
+        if (removed) {
+            length.decrementAndGet();
+        }
+        return removed;
+    }
+
+    public Object remove() {
+        Object o = queue.removeFirst();
+        length.decrementAndGet();
+        return o;
+    }
+
+    public Object peek() {
+        return queue.peekFirst();
+    }
+
+    public Collection getQueueContents() {
+        return new ArrayList<Object>(queue);
+    }
+
+    /**
+     * Adds the calling thread to the queue.
+     *
+     * @param first whether the thread has already been signalled once and
+     *              need to be placed at the head of the queue.
+     * @return Waiter the node on which the thread has to wait
+     */
+    public Waiter enqueue(boolean first) {
+        Waiter waiter = freeWaiter.get();
+        if (waiter == null) {
+            waiter = new Waiter(Thread.currentThread());
+        } else {
+            freeWaiter.set(null);
+            waiter.reset();
+        }
+        if (first) {
+            queue.offerFirst(waiter);
+        } else {
+            queue.offerLast(waiter);
+        }
+        length.incrementAndGet();
+        return waiter;
+    }
+
+    /**
+     * Parks the calling thread until it is signalled or the timeout expires.
+     *
+     * @param waiter        node returned by {@link #enqueue(boolean)}
+     * @param timeoutMillis time to wait, 0 to wait indefinitely
+     * @return boolean true if the waiter was signalled, false if it timed out
+     * @throws InterruptedException when the thread is interrupted while waiting
+     */
+    public boolean await(Waiter waiter, long timeoutMillis) throws InterruptedException {
+        long deadline = (timeoutMillis > 0) ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+        while (!waiter.isSignalled()) {
+            if (Thread.interrupted()) {
+                if (cancel(waiter)) {
+                    throw new InterruptedException();
+                }
+                //signalled concurrently, keep the signal and the interrupt status
+                Thread.currentThread().interrupt();
+                return true;
+            }
+            if (timeoutMillis > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+        return !cancel(waiter);
+    }
+
+    /**
+     * Hands over the signal to the oldest waiter still waiting.
+     *
+     * @return boolean true if a waiter was signalled
+     */
+    public boolean signal() {
+        Object o;
+        while ((o = queue.pollFirst()) != null) {
+            length.decrementAndGet();
+            if (o instanceof Waiter) {
+                if (((Waiter) o).signal()) {
+                    return true;
+                }
+                //the waiter has timed out, try the next one.
+            } else {
+                synchronized (o) {
+                    o.notifyAll();
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean cancel(Waiter waiter) {
+        if (waiter.cancel()) {
+            //when it is no more in the queue, a signal() is about to find it cancelled : don't reuse it
+            if (removeFromQueue(waiter)) {
+                freeWaiter.set(waiter);
+            }
+            return true;
+        }
+        //signalled, signal() has already taken it out of the queue
+        freeWaiter.set(waiter);
+        return false;
+    }
+
+    protected void debug(String debugStatement) {
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, debugStatement);
+        }
+    }
+
+    /**
+     * Represents a thread waiting in the queue
+     */
+    public static final class Waiter {
+        private static final int WAITING = 0;
+        private static final int SIGNALLED = 1;
+        private static final int CANCELLED = 2;
+
+        private final Thread thread;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private Waiter(Thread thread) {
+            this.thread = thread;
+        }
+
+        private void reset() {
+            state.set(WAITING);
+        }
+
+        private boolean isSignalled() {
+            return state.get() == SIGNALLED;
+        }
+
+        private boolean signal() {
+            if (state.compareAndSet(WAITING, SIGNALLED)) {
+                LockSupport.unpark(thread);
+                return true;
+            }
+            return false;
+        }
+
+        private boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+    }
+}
@@ -63,8 +63,8 @@ public class PoolWaitQueueFactory {
         if (className != null) {
             waitQueue = initializeCustomWaitQueueInPrivilegedMode(className);
         } else {
-            waitQueue = new DefaultPoolWaitQueue();
-            debug("Initializing Default Pool Wait Queue");
+            waitQueue = new FairPoolWaitQueue();
+            debug("Initializing Fair Pool Wait Queue");
         }
         return waitQueue;
     }
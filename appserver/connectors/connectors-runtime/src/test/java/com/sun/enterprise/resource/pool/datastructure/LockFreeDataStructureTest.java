@@ -0,0 +1,315 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.enterprise.resource.pool.datastructure;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.allocator.ResourceAllocator;
+import com.sun.enterprise.resource.pool.ResourceHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests {@link LockFreeDataStructure}.
+ */
+public class LockFreeDataStructureTest {
+
+    private final Handler handler = new Handler();
+
+    @Test
+    public void testAddResourceUpToMaxSize() throws Exception {
+        LockFreeDataStructure ds = createDataStructure(null, 3);
+
+        assertEquals(2, ds.addResource(null, 2));
+        assertEquals(1, ds.addResource(null, 2));
+        assertEquals(0, ds.addResource(null, 1));
+        assertEquals(3, handler.created.size());
+        assertEquals(3, ds.getResourcesSize());
+        assertEquals(3, ds.getFreeListSize());
+        assertEquals(new HashSet<ResourceHandle>(handler.created),
+                     new HashSet<ResourceHandle>(ds.getAllResources()));
+    }
+
+    @Test
+    public void testMostRecentlyReturnedFirst() throws Exception {
+        LockFreeDataStructure ds = createDataStructure("thread-affinity=false", 3);
+        ds.addResource(null, 3);
+
+        ResourceHandle a = ds.getResource();
+        ResourceHandle b = ds.getResource();
+        ResourceHandle c = ds.getResource();
+        assertNull(ds.getResource());
+        assertEquals(3, new HashSet<ResourceHandle>(Arrays.asList(a, b, c)).size());
+        assertTrue(a.isBusy() && b.isBusy() && c.isBusy());
+        assertEquals(0, ds.getFreeListSize());
+
+        ds.returnResource(a);
+        ds.returnResource(c);
+        ds.returnResource(b);
+        assertFalse(a.isBusy() || b.isBusy() || c.isBusy());
+        assertEquals(3, ds.getFreeListSize());
+
+        assertSame(b, ds.getResource());
+        assertSame(c, ds.getResource());
+        assertSame(a, ds.getResource());
+    }
+
+    @Test
+    public void testThreadAffinity() throws Exception {
+        final LockFreeDataStructure ds = createDataStructure(null, 2);
+        ds.addResource(null, 2);
+
+        ResourceHandle x = ds.getResource();
+        ResourceHandle y = ds.getResource();
+        ds.returnResource(y);
+        ds.returnResource(x);
+
+        // The resource last acquired by this thread, rather than the one
+        // last returned
+        assertSame(y, ds.getResource());
+        assertSame(x, ds.getResource());
+        ds.returnResource(x);
+        ds.returnResource(y);
+
+        // Not bound to this thread
+        final List<ResourceHandle> taken = new ArrayList<ResourceHandle>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                taken.add(ds.getResource());
+                taken.add(ds.getResource());
+            }
+        };
+        thread.start();
+        thread.join();
+        assertEquals(new HashSet<ResourceHandle>(Arrays.asList(x, y)),
+                     new HashSet<ResourceHandle>(taken));
+        assertNull(ds.getResource());
+    }
+
+    @Test
+    public void testReturnedTwice() throws Exception {
+        LockFreeDataStructure ds = createDataStructure("thread-affinity=false", 2);
+        ds.addResource(null, 1);
+
+        ResourceHandle a = ds.getResource();
+        ds.returnResource(a);
+        ds.returnResource(a);
+        assertEquals(1, ds.getFreeListSize());
+
+        assertSame(a, ds.getResource());
+        assertNull(ds.getResource());
+    }
+
+    @Test
+    public void testRemoveResourceDeletesIt() throws Exception {
+        LockFreeDataStructure ds = createDataStructure("thread-affinity=false", 3);
+        ds.addResource(null, 3);
+        ResourceHandle busy = ds.getResource();
+        ResourceHandle free = ds.getResource();
+        ds.returnResource(free);
+
+        ds.removeResource(busy);
+        ds.removeResource(free);
+        assertEquals(Arrays.asList(busy, free), handler.deleted);
+        assertEquals(1, ds.getResourcesSize());
+        assertEquals(1, ds.getFreeListSize());
+
+        // Removed resources are neither returned nor handed out again
+        ds.returnResource(busy);
+        ds.removeResource(busy);
+        assertEquals(2, handler.deleted.size());
+        ResourceHandle last = ds.getResource();
+        assertFalse(handler.deleted.contains(last));
+        assertNull(ds.getResource());
+
+        // Room for new resources
+        assertEquals(2, ds.addResource(null, 3));
+    }
+
+    @Test
+    public void testRemoveAllDeletesEveryResource() throws Exception {
+        LockFreeDataStructure ds = createDataStructure(null, 3);
+        ds.addResource(null, 3);
+        ResourceHandle busy = ds.getResource();
+
+        ds.removeAll();
+        assertEquals(new HashSet<ResourceHandle>(handler.created),
+                     new HashSet<ResourceHandle>(handler.deleted));
+        assertEquals(0, ds.getResourcesSize());
+        assertEquals(0, ds.getFreeListSize());
+        assertNull(ds.getResource());
+
+        ds.returnResource(busy);
+        assertNull(ds.getResource());
+        assertEquals(3, ds.addResource(null, 3));
+    }
+
+    @Test
+    public void testCreateFailure() throws Exception {
+        LockFreeDataStructure ds = createDataStructure(null, 2);
+        handler.failures.set(1);
+        try {
+            ds.addResource(null, 1);
+            fail("No PoolingException");
+        } catch (PoolingException ex) {
+        }
+        assertEquals(0, ds.getResourcesSize());
+
+        // The reserved size was released
+        assertEquals(2, ds.addResource(null, 2));
+    }
+
+    @Test
+    public void testSetMaxSize() throws Exception {
+        LockFreeDataStructure ds = createDataStructure(null, 1);
+        assertEquals(1, ds.addResource(null, 2));
+
+        ds.setMaxSize(3);
+        assertEquals(2, ds.addResource(null, 5));
+        assertEquals(3, ds.getResourcesSize());
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final LockFreeDataStructure ds = createDataStructure(null, 4);
+        ds.addResource(null, 4);
+        final Set<ResourceHandle> inUse = Collections.newSetFromMap(
+                new ConcurrentHashMap<ResourceHandle, Boolean>());
+        final AtomicInteger errors = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 5000; i++) {
+                        ResourceHandle handle = ds.getResource();
+                        if (handle == null) {
+                            continue;
+                        }
+                        if (!inUse.add(handle)) {
+                            // Handed out to two threads
+                            errors.incrementAndGet();
+                        }
+                        inUse.remove(handle);
+                        ds.returnResource(handle);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, errors.get());
+        assertEquals(4, ds.getResourcesSize());
+        assertEquals(4, ds.getFreeListSize());
+        Set<ResourceHandle> handles = new HashSet<ResourceHandle>();
+        ResourceHandle handle;
+        while ((handle = ds.getResource()) != null) {
+            assertTrue(handles.add(handle));
+        }
+        assertEquals(4, handles.size());
+    }
+
+    private LockFreeDataStructure createDataStructure(String parameters,
+                                                      int maxSize) {
+        return new LockFreeDataStructure(parameters, maxSize, handler);
+    }
+
+    private static class Handler implements ResourceHandler {
+
+        final List<ResourceHandle> created =
+                Collections.synchronizedList(new ArrayList<ResourceHandle>());
+
+        final List<ResourceHandle> deleted =
+                Collections.synchronizedList(new ArrayList<ResourceHandle>());
+
+        final AtomicInteger failures = new AtomicInteger();
+
+        public void deleteResource(ResourceHandle resourceHandle) {
+            deleted.add(resourceHandle);
+        }
+
+        public ResourceHandle createResource(ResourceAllocator allocator)
+                throws PoolingException {
+            if (failures.getAndDecrement() > 0) {
+                throw new PoolingException("Cannot create the resource");
+            }
+            ResourceHandle handle = new ResourceHandle(null, null, null, null);
+            created.add(handle);
+            return handle;
+        }
+
+        public void createResourceAndAddToPool() {
+        }
+
+        public void createResourcesAndAddToPool(int count) {
+        }
+
+        public Set getInvalidConnections(Set connections) {
+            return Collections.emptySet();
+        }
+
+        public void invalidConnectionDetected(ResourceHandle h) {
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.enterprise.resource.pool.waitqueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests {@link FairPoolWaitQueue}.
+ */
+public class FairPoolWaitQueueTest {
+
+    private final FairPoolWaitQueue queue = new FairPoolWaitQueue();
+
+    @Test
+    public void testSignalsWaitersInArrivalOrder() throws Exception {
+        final List<Integer> signalled = Collections.synchronizedList(new ArrayList<Integer>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 3; i++) {
+            final int id = i;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        if (queue.await(queue.enqueue(false), 0)) {
+                            signalled.add(id);
+                        }
+                    } catch (InterruptedException ex) {
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+            awaitQueueLength(i + 1);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.signal());
+            threads.get(i).join(10000);
+            assertFalse(threads.get(i).isAlive());
+            assertEquals(3 - i - 1, queue.getQueueLength());
+        }
+        assertEquals(Arrays.asList(0, 1, 2), signalled);
+        assertFalse(queue.signal());
+    }
+
+    @Test
+    public void testSignalBeforeAwait() throws Exception {
+        FairPoolWaitQueue.Waiter waiter = queue.enqueue(false);
+        assertEquals(1, queue.getQueueLength());
+
+        assertTrue(queue.signal());
+        assertEquals(0, queue.getQueueLength());
+        assertTrue(queue.await(waiter, 0));
+    }
+
+    @Test
+    public void testSignalledWaiterKeepsItsTurn() throws Exception {
+        FairPoolWaitQueue.Waiter later = queue.enqueue(false);
+        FairPoolWaitQueue.Waiter again = queue.enqueue(true);
+
+        assertTrue(queue.signal());
+        assertTrue(queue.await(again, 0));
+        assertFalse(queue.await(later, 1));
+        assertEquals(0, queue.getQueueLength());
+    }
+
+    @Test
+    public void testTimedOutWaiterIsRemoved() throws Exception {
+        FairPoolWaitQueue.Waiter waiter = queue.enqueue(false);
+
+        long start = System.nanoTime();
+        assertFalse(queue.await(waiter, 20));
+        assertTrue(System.nanoTime() - start >= 20000000L);
+        assertEquals(0, queue.getQueueLength());
+        assertTrue(queue.getQueueContents().isEmpty());
+
+        // The signal is not consumed by the timed out waiter
+        FairPoolWaitQueue.Waiter next = queue.enqueue(false);
+        assertTrue(queue.signal());
+        assertTrue(queue.await(next, 0));
+    }
+
+    @Test
+    public void testInterruptedWaiterIsRemoved() throws Exception {
+        FairPoolWaitQueue.Waiter waiter = queue.enqueue(false);
+        Thread.currentThread().interrupt();
+        try {
+            queue.await(waiter, 0);
+            fail("No InterruptedException");
+        } catch (InterruptedException ex) {
+        }
+        assertFalse(Thread.interrupted());
+        assertEquals(0, queue.getQueueLength());
+        assertFalse(queue.signal());
+    }
+
+    @Test
+    public void testWaiterIsReused() throws Exception {
+        FairPoolWaitQueue.Waiter waiter = queue.enqueue(false);
+        assertFalse(queue.await(waiter, 1));
+
+        assertSame(waiter, queue.enqueue(false));
+        assertTrue(queue.signal());
+        assertTrue(queue.await(waiter, 0));
+
+        assertSame(waiter, queue.enqueue(false));
+        // Still in use
+        FairPoolWaitQueue.Waiter other = queue.enqueue(false);
+        assertNotSame(waiter, other);
+        assertTrue(queue.signal());
+        assertTrue(queue.signal());
+        assertTrue(queue.await(waiter, 0));
+        assertTrue(queue.await(other, 0));
+    }
+
+    @Test
+    public void testWaitMonitorsAreNotified() throws Exception {
+        Object monitor = new Object();
+        FairPoolWaitQueue.Waiter waiter = queue.enqueue(false);
+        queue.addToQueue(monitor);
+        assertEquals(2, queue.getQueueLength());
+        assertEquals(Arrays.asList(waiter, monitor), new ArrayList<Object>(queue.getQueueContents()));
+
+        assertTrue(queue.signal());
+        assertTrue(queue.await(waiter, 0));
+        assertSame(monitor, queue.peek());
+        assertTrue(queue.signal());
+        assertEquals(0, queue.getQueueLength());
+    }
+
+    @Test
+    public void testEverySignalWakesOneWaiter() throws Exception {
+        final int waits = 2000;
+        final AtomicInteger woken = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < waits; ) {
+                            // Short timeouts to race cancellation against signal()
+                            if (queue.await(queue.enqueue(false), 1)) {
+                                woken.incrementAndGet();
+                                i++;
+                            }
+                        }
+                    } catch (InterruptedException ex) {
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        int signals = 0;
+        while (signals < 4 * waits) {
+            if (queue.signal()) {
+                signals++;
+            } else {
+                Thread.yield();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join(60000);
+            assertFalse(thread.isAlive());
+        }
+        assertEquals(signals, woken.get());
+        assertEquals(0, queue.getQueueLength());
+        assertTrue(queue.getQueueContents().isEmpty());
+    }
+
+    private void awaitQueueLength(int length) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (queue.getQueueLength() != length) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Queue length " + queue.getQueueLength() + " instead of " + length);
+            }
+            Thread.sleep(1);
+        }
+    }
+}
@@ -225,6 +225,13 @@ public interface RuntimeTagNames extends TagNames {
     public static final String THREAD_QUEUE_CAPACITY = "thread-queue-capacity";
     public static final String ALLOW_CORE_THREAD_TIMEOUT = "allow-core-thread-timeout";
     public static final String PRESTART_ALL_CORE_THREADS = "prestart-all-core-threads";
+
+    // @Asynchronous invocations
+    public static final String ASYNC_MAX_CONCURRENCY = "async-max-concurrency";
+    public static final String ASYNC_INTERRUPT_ON_CANCEL = "async-interrupt-on-cancel";
+
+    // reuse of local invocation objects : true, false or check
+    public static final String INVOCATION_RECYCLING = "invocation-recycling";
     
     // flush-at-end-of-method
     public static final String FLUSH_AT_END_OF_METHOD =
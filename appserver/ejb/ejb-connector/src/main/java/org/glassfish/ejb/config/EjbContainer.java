@@ -76,6 +76,8 @@ public interface EjbContainer extends ConfigBeanProxy, PropertyBag, ConfigExtens
     public static final int DEFAULT_THREAD_QUEUE_CAPACITY = Integer.MAX_VALUE;
     public static final boolean DEFAULT_ALLOW_CORE_THREAD_TIMEOUT = false;
     public static final boolean DEFAULT_PRESTART_ALL_CORE_THREADS = false;
+    public static final int DEFAULT_ASYNC_MAX_CONCURRENCY = 0;
+    public static final boolean DEFAULT_ASYNC_INTERRUPT_ON_CANCEL = false;
  
     /**
      * Gets the value of the steadyPoolSize property.
@@ -300,12 +302,16 @@ public interface EjbContainer extends ConfigBeanProxy, PropertyBag, ConfigExtens
      * nru
      *     policy tries to pick 'not recently used' instances and is a
      *     pseudo-random selection process.
+     * sampled
+     *     picks the least recently accessed of a sample of instances. The
+     *     cache has no global lock, which suits caches with many
+     *     concurrent clients.
      *
      * @return possible object is
      *         {@link String }
      */
     @Attribute (defaultValue="nru")
-    @Pattern(regexp="(nru|fifo|lru)")
+    @Pattern(regexp="(nru|fifo|lru|sampled)")
     String getVictimSelectionPolicy();
 
     /**
@@ -393,7 +399,12 @@ public interface EjbContainer extends ConfigBeanProxy, PropertyBag, ConfigExtens
         @PropertyDesc(name = "thread-keep-alive-seconds"),
         @PropertyDesc(name = "thread-queue-capacity"),
         @PropertyDesc(name = "allow-core-thread-timeout"),
-        @PropertyDesc(name = "prestart-all-core-threads")
+        @PropertyDesc(name = "prestart-all-core-threads"),
+        @PropertyDesc(name = "async-max-concurrency",
+        defaultValue = "0"),
+        @PropertyDesc(name = "async-interrupt-on-cancel",
+        defaultValue = "false",
+        values = {"true", "false"})
     })
     @Element
     List<Property> getProperty();
@@ -281,6 +281,21 @@ public class EjbInvocation
     // True if lock is currently held for this invocation
     private boolean holdingSFSBSerializedLock = false;
 
+    // True if a reference to this invocation, or to the objects it holds,
+    // may outlive the call, in which case it must not be reused
+    private boolean escaped = false;
+
+    // True once this invocation has been handed back to its factory
+    private boolean recycled = false;
+
+    // True if the factory checks that this invocation is not used after it
+    // was handed back, i.e. in the check recycling mode
+    private boolean checkRecycled = false;
+
+    // The result of the authorization of this invocation. Kept here rather
+    // than in ComponentInvocation so that reset() can clear it
+    private Boolean authorized;
+
     public ClassLoader getOriginalContextClassLoader() {
         return originalContextClassLoader;
     }
@@ -295,6 +310,7 @@ public class EjbInvocation
 
     public void setEjbFutureTask(EjbFutureTask future) {
         asyncFuture = future;
+        escaped = true;
     }
 
     public void setWasCancelCalled(boolean flag) {
@@ -332,6 +348,11 @@ public class EjbInvocation
     public EjbInvocation clone() {
         EjbInvocation newInv = (EjbInvocation) super.clone();
 
+        // The clone shares the parameters and the context data of this
+        // invocation
+        escaped = true;
+
+        newInv.authorized = null;
         newInv.ejb = null;
         newInv.exception = null;
         newInv.exceptionFromBeanMethod = null;
@@ -359,6 +380,109 @@ public class EjbInvocation
         return newInv;
     }
 
+    /**
+     * @return true if this invocation may be referenced beyond the end of
+     * the call (async invocations, clones), in which case it is not reused.
+     */
+    public boolean isEscaped() {
+        return escaped;
+    }
+
+    @Override
+    public Boolean getAuth() {
+        return authorized;
+    }
+
+    @Override
+    public void setAuth(boolean value) {
+        authorized = value;
+    }
+
+    void setRecycled(boolean flag) {
+        recycled = flag;
+    }
+
+    void setCheckRecycled(boolean flag) {
+        checkRecycled = flag;
+    }
+
+    /**
+     * Restores the state this invocation had when it was created by the
+     * EjbInvocationFactory.  The identity of the component (id, type,
+     * container, app and module names) is kept.  Only called for
+     * invocations that did not escape, whose registry is not shared with a
+     * clone.
+     */
+    void reset() {
+        setPreInvokeDone(false);
+        authorized = null;
+        instance = null;
+        setInstanceName(null);
+        jndiEnvironment = null;
+        transaction = null;
+        setTransactionCompeting(false);
+        oldSecurityContext = null;
+        setResourceTableKey(null);
+        setResourceHandler(null);
+        setTransactionOperationsManager((Object) null);
+        clearRegistry();
+
+        context = null;
+        transactionOperationsManager = this;
+        ejbObject = null;
+        isLocal = false;
+        isRemote = false;
+        invocationInfo = null;
+        isBusinessInterface = false;
+        isWebService = false;
+        isTimerCallback = false;
+        isMessageDriven = false;
+        isHome = false;
+        clientInterface = null;
+        method = null;
+        ejb = null;
+        exception = null;
+        exceptionFromBeanMethod = null;
+        clientTx = null;
+        transactionAttribute = 0;
+        containerStartsTx = false;
+        originalContextClassLoader = null;
+        messageContext = null;
+        methodParams = null;
+        timer = null;
+        preInvokeTxStatus = null;
+        foundInTxCache = false;
+        useFastPath = false;
+        cmcLock = null;
+        doTxProcessingInPostInvoke = false;
+        invId = 0;
+        yetToSubmitStatus = true;
+        asyncFuture = null;
+        wasCancelCalled = false;
+        webServiceTie = null;
+        webServiceMethod = null;
+        holdingSFSBSerializedLock = false;
+        interceptorIndex = 0;
+        beanMethod = null;
+        webServiceContext = null;
+        message = null;
+        soapMessage = null;
+        contextData = null;
+        escaped = false;
+    }
+
+    /**
+     * Called by the InvocationContext methods, which the application may
+     * call on a reference it kept after the invocation completed.  Only
+     * fails when the factory checks for such escaped references.
+     */
+    private void checkNotRecycled() {
+        if (checkRecycled && recycled) {
+            throw new IllegalStateException("InvocationContext used after "
+                + "the end of the invocation: " + this);
+        }
+    }
+
     /**
      * Used by JACC implementation to get an enterprise bean
      * instance for the EnterpriseBean policy handler.  The jacc
@@ -493,6 +617,7 @@ public class EjbInvocation
      * @return Returns the bean instance.
      */
     public Object getTarget() {
+        checkNotRecycled();
         return this.ejb;
     }
  
@@ -500,6 +625,7 @@ public class EjbInvocation
      * @return Returns the timer instance.
      */
     public Object getTimer() {
+        checkNotRecycled();
         return timer;
     }
  
@@ -510,6 +636,7 @@ public class EjbInvocation
      *         returns null.
      */
     public Method getMethod() {
+        checkNotRecycled();
         return getBeanMethod();
     }
     public Method getBeanMethod() {
@@ -527,6 +654,7 @@ public class EjbInvocation
      * have been set.
      */
     public Object[] getParameters() {
+        checkNotRecycled();
         return this.methodParams;
     }
     
@@ -535,6 +663,7 @@ public class EjbInvocation
      *
      */
     public void setParameters(Object[] params) {
+        checkNotRecycled();
         InterceptorUtil.checkSetParameters(params, getMethod());
         this.methodParams = params;
     }
@@ -554,6 +683,7 @@ public class EjbInvocation
      * @return Returns the contextMetaData.
      */
     public Map<String, Object> getContextData() {
+        checkNotRecycled();
         if (this.contextData == null) {
             if (webServiceContext != null)
                 this.contextData = webServiceContext.getMessageContext();
@@ -602,6 +732,7 @@ public class EjbInvocation
     public Object proceed()
         throws Exception
     {
+        checkNotRecycled();
         try {
             //TODO: Internal error if getInterceptorChain() is null
             interceptorIndex++;
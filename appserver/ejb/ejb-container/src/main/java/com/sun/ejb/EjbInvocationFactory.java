@@ -40,23 +40,88 @@
 
 package com.sun.ejb;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
+ * Creates the EjbInvocation objects of a container.
+ *
+ * Invocation objects can optionally be recycled : once the container is
+ * done with a local invocation it hands it back with recycle(), and the
+ * object is reset and parked in a small array of slots from which create()
+ * takes it again.  The slots are striped by thread so that reuse does not
+ * contend.  Invocations that escaped the call (async invocations, clones)
+ * are never reused.
+ *
+ * In check mode the invocations handed back are not reused.  Instead they
+ * are marked as recycled and any later use of their InvocationContext
+ * methods fails, which detects application code (typically interceptors)
+ * that kept a reference to the InvocationContext.
+ *
  * @author Mahesh Kannan
  *         Date: Jan 30, 2008
  */
 public class EjbInvocationFactory {
 
+    public static final String RECYCLE_TRUE = "true";
+
+    public static final String RECYCLE_FALSE = "false";
+
+    public static final String RECYCLE_CHECK = "check";
+
+    private static final int MAX_SLOTS = 64;
+
     private String compEnvId;
 
     private Container container;
 
+    private volatile boolean recycle;
+
+    private volatile boolean checkEscapes;
+
+    private volatile AtomicReferenceArray<EjbInvocation> slots;
+
+    private int slotMask;
+
     public EjbInvocationFactory(String compEnvId, Container container) {
         this.compEnvId = compEnvId;
         this.container = container;
     }
 
+    /**
+     * @param mode one of RECYCLE_TRUE, RECYCLE_FALSE or RECYCLE_CHECK
+     */
+    public void setRecycleMode(String mode) {
+        if (RECYCLE_TRUE.equalsIgnoreCase(mode)) {
+            int n = 1;
+            int target = Math.min(MAX_SLOTS,
+                    Runtime.getRuntime().availableProcessors() * 2);
+            while (n < target) {
+                n <<= 1;
+            }
+            slotMask = n - 1;
+            slots = new AtomicReferenceArray<EjbInvocation>(n);
+            checkEscapes = false;
+            recycle = true;
+        } else {
+            recycle = false;
+            checkEscapes = RECYCLE_CHECK.equalsIgnoreCase(mode);
+            slots = null;
+        }
+    }
+
     public EjbInvocation create() {
-        return new EjbInvocation(compEnvId, container);
+        AtomicReferenceArray<EjbInvocation> s = slots;
+        if (recycle && s != null) {
+            EjbInvocation inv = s.getAndSet(slotIndex(), null);
+            if (inv != null) {
+                return inv;
+            }
+        }
+        EjbInvocation inv = new EjbInvocation(compEnvId, container);
+        if (checkEscapes) {
+            inv.setCheckRecycled(true);
+        }
+        return inv;
     }
 
     public <C extends ComponentContext> EjbInvocation create(Object ejb, C ctx) {
@@ -67,4 +132,40 @@ public class EjbInvocationFactory {
 
         return ejbInv;
     }
+
+    /**
+     * Hands back an invocation created by create() once the container is
+     * done with it.  The caller must not use it afterwards.
+     */
+    public void recycle(EjbInvocation inv) {
+        if (inv.isEscaped()) {
+            return;
+        }
+
+        if (checkEscapes) {
+            inv.setRecycled(true);
+            return;
+        }
+
+        AtomicReferenceArray<EjbInvocation> s = slots;
+        if (recycle && s != null) {
+            int index = slotIndex();
+            if (s.get(index) == null) {
+                inv.reset();
+                s.lazySet(index, inv);
+            }
+        }
+    }
+
+    /**
+     * Drops the parked invocations, e.g. when the container is undeployed.
+     */
+    public void clear() {
+        recycle = false;
+        slots = null;
+    }
+
+    private int slotIndex() {
+        return (int) Thread.currentThread().getId() & slotMask;
+    }
 }
@@ -43,6 +43,7 @@ package com.sun.ejb;
 import java.lang.reflect.Method;
 
 import com.sun.ejb.containers.interceptors.InterceptorManager;
+import com.sun.ejb.containers.util.MethodInvoker;
 import com.sun.enterprise.security.ee.CachedPermission;
 import org.glassfish.ejb.deployment.descriptor.EjbRemovalInfo;
 
@@ -91,6 +92,12 @@ public class InvocationInfo {
     public Method aroundMethod;
     public boolean isEjbTimeout;
 
+    // Direct-call invokers for the bean class methods above, created
+    // when the container is started.  Null if reflection must be used.
+    public MethodInvoker targetInvoker1;
+    public MethodInvoker targetInvoker2;
+    public MethodInvoker aroundInvoker;
+
 
     // Only applies to EJB 3.0 SFSBs
     public EjbRemovalInfo     removalInfo;
@@ -110,6 +117,21 @@ public class InvocationInfo {
         this.method = method;
     }
 
+    /**
+     * Returns the invoker of the given bean class method, or null if
+     * there is none and the method must be invoked through reflection.
+     */
+    public MethodInvoker getMethodInvoker(Method beanClassMethod) {
+        if( (aroundInvoker != null) && aroundInvoker.isFor(beanClassMethod) ) {
+            return aroundInvoker;
+        } else if( (targetInvoker1 != null) && targetInvoker1.isFor(beanClassMethod) ) {
+            return targetInvoker1;
+        } else if( (targetInvoker2 != null) && targetInvoker2.isFor(beanClassMethod) ) {
+            return targetInvoker2;
+        }
+        return null;
+    }
+
     public void setIsAsynchronous(boolean val) {
         this.asyncMethodFlag = val;
     }
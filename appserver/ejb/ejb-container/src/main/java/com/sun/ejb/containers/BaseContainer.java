@@ -110,6 +110,7 @@ import com.sun.ejb.codegen.EjbOptionalIntfGenerator;
 import com.sun.ejb.codegen.ServiceInterfaceGenerator;
 import com.sun.ejb.containers.interceptors.InterceptorManager;
 import com.sun.ejb.containers.interceptors.SystemInterceptorProxy;
+import com.sun.ejb.containers.util.MethodInvoker;
 import com.sun.ejb.containers.util.MethodMap;
 import com.sun.ejb.monitoring.probes.EjbCacheProbeProvider;
 import com.sun.ejb.monitoring.probes.EjbMonitoringProbeProvider;
@@ -158,6 +159,7 @@ import org.glassfish.ejb.deployment.descriptor.EjbInitInfo;
 import org.glassfish.ejb.deployment.descriptor.EjbMessageBeanDescriptor;
 import org.glassfish.ejb.deployment.descriptor.EjbSessionDescriptor;
 import org.glassfish.ejb.deployment.descriptor.ScheduledTimerDescriptor;
+import org.glassfish.ejb.security.application.EJBSecurityManager;
 import org.glassfish.ejb.spi.WSEjbEndpointRegistry;
 import org.glassfish.enterprise.iiop.api.GlassFishORBHelper;
 import org.glassfish.enterprise.iiop.api.ProtocolManager;
@@ -289,6 +291,14 @@ public abstract class BaseContainer
 
     protected static final String SINGLETON_BEAN_POOL_PROP = "singleton-bean-pool";
 
+    // Selects the pool of the stateless session and message-driven beans,
+    // StripedPool.POOL_TYPE or the default NonBlockingPool
+    protected static final String BEAN_POOL_TYPE_PROP = "bean-pool-type";
+
+    // Set to false to copy the immutable values of the colocated
+    // pass-by-value calls too
+    private static final String SHARE_IMMUTABLE_VALUES_PROP = "share-immutable-values";
+
     protected ClassLoader loader = null;
     protected Class ejbClass = null;
     protected Class sfsbSerializedClass = null;
@@ -952,10 +962,12 @@ public abstract class BaseContainer
             for(Object o : invocationInfoMap.values()) {
                 InvocationInfo next = (InvocationInfo) o;
                 setInterceptorChain(next);
+                setMethodInvokers(next);
             }
             for(Object o : this.webServiceInvocationInfoMap.values()) {
                 InvocationInfo next = (InvocationInfo) o;
                 setInterceptorChain(next);
+                setMethodInvokers(next);
             }
 
         } catch(Exception e) {
@@ -979,6 +991,16 @@ public abstract class BaseContainer
         }
     }
     
+    /**
+     * Bind the bean class methods of this invocation info to direct-call
+     * invokers, so that invoking them does not go through reflection.
+     */
+    private void setMethodInvokers(InvocationInfo info) {
+        info.aroundInvoker = MethodInvoker.create(info.aroundMethod);
+        info.targetInvoker1 = MethodInvoker.create(info.targetMethod1);
+        info.targetInvoker2 = MethodInvoker.create(info.targetMethod2);
+    }
+
     public final void setStoppedState() {
         containerState = CONTAINER_STOPPED;
     }
@@ -1023,9 +1045,27 @@ public abstract class BaseContainer
         return ejbDescriptor.getIASEjbExtraDescriptors().getPassByReference();
     }
 
+    public final boolean getShareImmutableValues() {
+        return !"false".equalsIgnoreCase(
+            getEnterpriseBeansProperty(SHARE_IMMUTABLE_VALUES_PROP));
+    }
+
     protected final long getContainerId() {
         return ejbDescriptor.getUniqueId();
     }
+
+    /**
+     * Return the value of an enterprise-beans property of the ejb-jar of
+     * this bean. The property named after the given name, a dot and the
+     * ejb-name applies to this bean only and takes precedence over the
+     * given name, that applies to all the beans of the ejb-jar.
+     */
+    protected String getEnterpriseBeansProperty(String name) {
+        String value = ejbDescriptor.getEjbBundleDescriptor()
+            .getEnterpriseBeansProperty(name + "." + ejbDescriptor.getName());
+        return (value != null) ? value
+            : ejbDescriptor.getEjbBundleDescriptor().getEnterpriseBeansProperty(name);
+    }
     
     public final long getApplicationId() {
         return ejbDescriptor.getApplication().getUniqueId();
@@ -2291,9 +2331,16 @@ public abstract class BaseContainer
      * info and one for everything else.  That might change in the future.
      */
     private InvocationInfo getInvocationInfo(EjbInvocation inv) {
-        return inv.isWebService ?
-            (InvocationInfo) webServiceInvocationInfoMap.get(inv.method) :
-            (InvocationInfo) invocationInfoMap.get(inv.method);        
+        if( inv.isWebService ) {
+            return (InvocationInfo) webServiceInvocationInfoMap.get(inv.method);
+        }
+
+        // proxyInvocationInfoMap resolves the Method instances of the
+        // callers by identity after their first lookup.
+        InvocationInfo info = (proxyInvocationInfoMap != null) ?
+            (InvocationInfo) proxyInvocationInfoMap.get(inv.method) : null;
+        return (info != null) ? info :
+            (InvocationInfo) invocationInfoMap.get(inv.method);
     }
 
     private Throwable mapRemoteException(EjbInvocation inv) {
@@ -3736,6 +3783,23 @@ public abstract class BaseContainer
         return invFactory.create(ejb, context);
     }
 
+    /**
+     * Returns true if the invocation objects of local calls on this
+     * container can be reused once the call is complete.  Only enabled
+     * if the invocation-recycling property of the ejb-container is set.
+     */
+    protected boolean isEjbInvocationRecyclable() {
+        return false;
+    }
+
+    /**
+     * Called by the invocation handlers once they are done with an
+     * invocation created by createEjbInvocation().
+     */
+    protected void recycleEjbInvocation(EjbInvocation inv) {
+        invFactory.recycle(inv);
+    }
+
     // default impl
     protected EJBLocalHomeInvocationHandler getEJBLocalHomeInvocationHandler(Class homeIntfClass) throws Exception {
         return new EJBLocalHomeInvocationHandler(ejbDescriptor, homeIntfClass);
@@ -4003,6 +4067,10 @@ public abstract class BaseContainer
         ComponentEnvManager envManager = ejbContainerUtilImpl.getComponentEnvManager();
         componentId = envManager.bindToComponentNamespace(ejbDescriptor);
         invFactory = new EjbInvocationFactory(componentId, this);
+        if (isEjbInvocationRecyclable()) {
+            invFactory.setRecycleMode(ejbContainerUtilImpl.getEjbContainer().
+                    getPropertyValue(RuntimeTagNames.INVOCATION_RECYCLING));
+        }
         ejbContainerUtilImpl.registerContainer(this);
         // create envProps object to be returned from EJBContext.getEnvironment
         Set env = ejbDescriptor.getEnvironmentProperties();
@@ -4232,6 +4300,19 @@ public abstract class BaseContainer
                 method_sig);
         //callFlowAgent.ejbMethodEnd(callFlowInfo);
     }
+
+    /**
+     * Reports the time, in microseconds, spent acquiring a container-managed
+     * concurrency lock before invoking the method.
+     */
+    final void onEjbMethodLockWait(String method_sig, long waitTime) {
+        ejbProbeNotifier.ejbMethodLockWaitEvent(getContainerId(),
+                callFlowInfo.getApplicationName(),
+                callFlowInfo.getModuleName(),
+                callFlowInfo.getComponentName(),
+                method_sig,
+                waitTime);
+    }
     
     protected Object invokeTargetBeanMethod(Method beanClassMethod, EjbInvocation inv, Object target,
             Object[] params, com.sun.enterprise.security.SecurityManager mgr)
@@ -4239,11 +4320,12 @@ public abstract class BaseContainer
         try {
             onEjbMethodStart(inv.invocationInfo.str_method_sig);
             if (inv.useFastPath) {
-                return inv.getBeanMethod().invoke(inv.ejb, inv.methodParams);
+                MethodInvoker invoker = inv.invocationInfo.getMethodInvoker(inv.getBeanMethod());
+                return (invoker != null) ? invoker.invoke(inv.ejb, inv.methodParams)
+                        : inv.getBeanMethod().invoke(inv.ejb, inv.methodParams);
             } else {
 
-                return securityManager.invoke(beanClassMethod, inv.isLocal, target,
-                        params);
+                return invokeSecured(beanClassMethod, inv, target, params);
             }
         } catch (InvocationTargetException ite) {
             inv.exception = ite.getCause();
@@ -4351,6 +4433,10 @@ public abstract class BaseContainer
             return;
         }
 
+        if( invFactory != null ) {
+            invFactory.clear();
+        }
+
         try {
             if( isWebServiceEndpoint && (webServiceEndpoint != null) ) {
                 String endpointAddress =
@@ -4817,13 +4903,31 @@ public abstract class BaseContainer
     {
         try {
 
-            return securityManager.invoke(inv.getBeanMethod(), inv.isLocal, inv.ejb,
-                                       inv.getParameters());
+            return invokeSecured(inv.getBeanMethod(), inv, inv.ejb,
+                                 inv.getParameters());
           
         } catch(InvocationTargetException ite) {
             throw ite.getCause();
         }
     }
+
+    /**
+     * Invoke the bean class method through the security manager, using
+     * the invoker created for it at container start if there is one.
+     * Same exception semantics as Method.invoke.
+     */
+    private Object invokeSecured(Method beanClassMethod, EjbInvocation inv,
+                                 Object target, Object[] params)
+        throws Throwable
+    {
+        MethodInvoker invoker = (inv.invocationInfo != null)
+                ? inv.invocationInfo.getMethodInvoker(beanClassMethod) : null;
+        if ((invoker != null) && (securityManager instanceof EJBSecurityManager)) {
+            return ((EJBSecurityManager) securityManager).invoke(invoker,
+                    beanClassMethod, inv.isLocal, target, params);
+        }
+        return securityManager.invoke(beanClassMethod, inv.isLocal, target, params);
+    }
     
     protected abstract EjbMonitoringStatsProvider getMonitoringStatsProvider(
             String appName, String modName, String ejbName);
@@ -4951,6 +5055,10 @@ public abstract class BaseContainer
         timerProbeNotifier.ejbTimerDeliveredEvent();
     }
 
+    protected void recordTimerDeliveryLag(long lagMillis) {
+        timerProbeNotifier.ejbTimerDeliveryLagEvent(lagMillis);
+    }
+
     private static class JndiInfo {
 
         private JndiInfo(String name, Object object) {
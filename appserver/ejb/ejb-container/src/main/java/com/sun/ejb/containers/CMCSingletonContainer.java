@@ -42,6 +42,7 @@ package com.sun.ejb.containers;
 
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
 import javax.ejb.ConcurrentAccessException;
 import javax.ejb.ConcurrentAccessTimeoutException;
 import javax.ejb.IllegalLoopbackException;
@@ -51,6 +52,7 @@ import com.sun.ejb.ComponentContext;
 import com.sun.ejb.EjbInvocation;
 import com.sun.ejb.InvocationInfo;
 import com.sun.ejb.MethodLockInfo;
+import com.sun.ejb.containers.util.ReadBiasedReadWriteLock;
 import com.sun.enterprise.security.SecurityManager;
 import org.glassfish.ejb.deployment.descriptor.EjbDescriptor;
 
@@ -60,11 +62,29 @@ import org.glassfish.ejb.deployment.descriptor.EjbDescriptor;
 public class CMCSingletonContainer
         extends AbstractSingletonContainer {
 
-    private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock(true);
+    /**
+     * The singleton-lock-mode selecting the ReadBiasedReadWriteLock, for
+     * read-mostly singletons.
+     */
+    public static final String READ_BIASED_LOCK_MODE = "read-biased";
+
+    /**
+     * The default singleton-lock-mode, a fair ReentrantReadWriteLock.
+     */
+    public static final String FAIR_LOCK_MODE = "fair";
 
-    private final ReentrantReadWriteLock.ReadLock readLock = rwLock.readLock();
+    // Selects the lock mode of the singletons of the module, or of a single
+    // bean with singleton-lock-mode.ejb-name
+    private static final String SINGLETON_LOCK_MODE_PROP = "singleton-lock-mode";
 
-    private final ReentrantReadWriteLock.WriteLock writeLock = rwLock.writeLock();
+    // Exactly one of rwLock and readBiasedLock is set
+    private final ReentrantReadWriteLock rwLock;
+
+    private final ReadBiasedReadWriteLock readBiasedLock;
+
+    private final Lock readLock;
+
+    private final Lock writeLock;
 
     private final static long NO_BLOCKING = 0;
     private final static long BLOCK_INDEFINITELY = -1;
@@ -79,6 +99,38 @@ public class CMCSingletonContainer
         defaultMethodLockInfo = new MethodLockInfo();
         defaultMethodLockInfo.setLockType(LockType.WRITE);
 
+        String lockMode = getEnterpriseBeansProperty(SINGLETON_LOCK_MODE_PROP);
+        if (lockMode != null && !READ_BIASED_LOCK_MODE.equalsIgnoreCase(lockMode)
+                && !FAIR_LOCK_MODE.equalsIgnoreCase(lockMode)) {
+            _logger.log(Level.WARNING, "Unknown " + SINGLETON_LOCK_MODE_PROP
+                    + " " + lockMode + " of singleton " + desc.getName()
+                    + ", using the " + FAIR_LOCK_MODE + " lock mode");
+        }
+        if (READ_BIASED_LOCK_MODE.equalsIgnoreCase(lockMode)) {
+            rwLock = null;
+            readBiasedLock = new ReadBiasedReadWriteLock();
+            readLock = readBiasedLock.readLock();
+            writeLock = readBiasedLock.writeLock();
+        } else {
+            rwLock = new ReentrantReadWriteLock(true);
+            readBiasedLock = null;
+            readLock = rwLock.readLock();
+            writeLock = rwLock.writeLock();
+        }
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "Singleton " + desc.getName() + " uses the "
+                    + ((readBiasedLock != null) ? READ_BIASED_LOCK_MODE : FAIR_LOCK_MODE)
+                    + " lock mode");
+        }
+    }
+
+    private boolean holdsReadLockOnly() {
+        if (readBiasedLock != null) {
+            return (readBiasedLock.getReadHoldCount() > 0) &&
+                   (!readBiasedLock.isWriteLockedByCurrentThread());
+        }
+        return (rwLock.getReadHoldCount() > 0) &&
+               (!rwLock.isWriteLockedByCurrentThread());
     }
 
     /*
@@ -120,8 +172,7 @@ public class CMCSingletonContainer
                 ? defaultMethodLockInfo : invInfo.methodLockInfo;
         Lock theLock = lockInfo.isReadLockedMethod() ? readLock : writeLock;
 
-        if ( (rwLock.getReadHoldCount() > 0) &&
-             (!rwLock.isWriteLockedByCurrentThread()) ) {
+        if (holdsReadLockOnly()) {
             if( lockInfo.isWriteLockedMethod() ) {
                 throw new IllegalLoopbackException("Illegal Reentrant Access : Attempt to make " +
                         "a loopback call on a Write Lock method '" + invInfo.targetMethod1 +
@@ -136,29 +187,35 @@ public class CMCSingletonContainer
          * lock, the lock is guaranteed to be unlocked in releaseContext()
          * even if exceptions were thrown in _getContext()
          */
-        if (!lockInfo.hasTimeout() ||
-            ( (lockInfo.hasTimeout() && (lockInfo.getTimeout() == BLOCK_INDEFINITELY) )) ) {
-            theLock.lock();
-        } else {
-            try {
-                boolean lockStatus = theLock.tryLock(lockInfo.getTimeout(), lockInfo.getTimeUnit());
-                if (! lockStatus) {
+        long lockWaitStart = System.nanoTime();
+        try {
+            if (!lockInfo.hasTimeout() ||
+                ( (lockInfo.hasTimeout() && (lockInfo.getTimeout() == BLOCK_INDEFINITELY) )) ) {
+                theLock.lock();
+            } else {
+                try {
+                    boolean lockStatus = theLock.tryLock(lockInfo.getTimeout(), lockInfo.getTimeUnit());
+                    if (! lockStatus) {
+                        String msg = "Couldn't acquire a lock within " + lockInfo.getTimeout() +
+                                " " + lockInfo.getTimeUnit();
+                        if( lockInfo.getTimeout() == NO_BLOCKING ) {
+                            throw new ConcurrentAccessException(msg);
+                        } else {
+                            throw new ConcurrentAccessTimeoutException(msg);
+                        }
+                    }
+                } catch (InterruptedException inEx) {
                     String msg = "Couldn't acquire a lock within " + lockInfo.getTimeout() +
                             " " + lockInfo.getTimeUnit();
-                    if( lockInfo.getTimeout() == NO_BLOCKING ) {
-                        throw new ConcurrentAccessException(msg);
-                    } else {
-                        throw new ConcurrentAccessTimeoutException(msg);
-                    }
+                    ConcurrentAccessException cae = (lockInfo.getTimeout() == NO_BLOCKING) ?
+                            new ConcurrentAccessException(msg) : new ConcurrentAccessTimeoutException(msg);
+                    cae.initCause(inEx);
+                    throw cae;
                 }
-            } catch (InterruptedException inEx) {
-                String msg = "Couldn't acquire a lock within " + lockInfo.getTimeout() +
-                        " " + lockInfo.getTimeUnit();
-                ConcurrentAccessException cae = (lockInfo.getTimeout() == NO_BLOCKING) ?
-                        new ConcurrentAccessException(msg) : new ConcurrentAccessTimeoutException(msg);
-                cae.initCause(inEx);
-                throw cae;
             }
+        } finally {
+            onEjbMethodLockWait(invInfo.str_method_sig,
+                    (System.nanoTime() - lockWaitStart) / 1000);
         }
 
 
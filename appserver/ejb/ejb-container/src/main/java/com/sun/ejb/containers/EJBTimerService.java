@@ -53,6 +53,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.ejb.CreateException;
@@ -152,6 +157,20 @@ public class EJBTimerService {
     private static final String RESCHEDULE_FAILED_TIMER = "reschedule-failed-timer";
     private boolean rescheduleFailedTimer = false;
 
+    // Maximum number of timeouts of one application that are delivered
+    // concurrently, so that slow timeouts of one application do not hold
+    // all the threads of the pool.  Not bounded by default.
+    private static final String MAX_DELIVERIES_PER_APPLICATION =
+        "max-deliveries-per-application";
+    private int maxDeliveriesPerApplication_ = Integer.MAX_VALUE;
+
+    // Timeouts waiting for delivery, per application id
+    private final ConcurrentMap<Long, DeliveryQueue> deliveryQueues_ =
+        new ConcurrentHashMap<Long, DeliveryQueue>();
+
+    // Schedules the timer expirations
+    private EJBTimerWheel timerWheel_;
+
     // Flag that allows to load EJBTimerService on the 1st access and
     // distinguish between not available and not loaded
     private static volatile boolean _timerServiceVerified = false;
@@ -172,6 +191,9 @@ public class EJBTimerService {
         isDas = env.isDas() || env.isEmbedded();
 
         initProperties();
+
+        timerWheel_ = new EJBTimerWheel("EJB Timer Service",
+            EJBTimerWheel.DEFAULT_TICK_MILLIS, EJBTimerWheel.DEFAULT_WHEEL_SIZE);
     }
 
     protected static void setEJBTimerService(EJBTimerService es) {
@@ -274,6 +296,13 @@ public class EJBTimerService {
 
                 rescheduleFailedTimer = Boolean.valueOf(ejbt.getPropertyValue(RESCHEDULE_FAILED_TIMER));
 
+                valString = ejbt.getPropertyValue(MAX_DELIVERIES_PER_APPLICATION);
+                if( valString != null ) {
+                    int maxDeliveries = Integer.parseInt(valString);
+                    maxDeliveriesPerApplication_ = (maxDeliveries > 0) ?
+                        maxDeliveries : Integer.MAX_VALUE;
+                }
+
                 // Load confing listener
                 ejbContainerUtil.getServices().getService(EJBTimerServiceConfigListener.class);
             }
@@ -356,6 +385,11 @@ public class EJBTimerService {
     private void shutdown() {
         // Set flag to prevent any new timer expirations.
         shutdown_ = true;
+        timerWheel_.stop();
+    }
+
+    protected boolean isShutdown() {
+        return shutdown_;
     }
 
     /**
@@ -380,6 +414,15 @@ public class EJBTimerService {
      */
     public void destroyAllTimers(long applicationId) {
         _destroyTimers(applicationId, true);
+        removeDeliveryQueue(applicationId);
+    }
+
+    /**
+     * Drop the timeouts of an application waiting for delivery.  Called
+     * when the application is undeployed or shut down.
+     */
+    void removeDeliveryQueue(long applicationId) {
+        deliveryQueues_.remove(applicationId);
     }
 
     protected void _destroyTimers(long id, boolean all) {
@@ -467,8 +510,8 @@ public class EJBTimerService {
                     timerState.scheduled(timerTask);
                 }
 
-                java.util.Timer jdkTimer = ejbContainerUtil.getTimer();
-                jdkTimer.schedule(timerTask, timerExpiration);            
+                timerTask.setWheelTimeout(timerWheel_.schedule(timerTask,
+                    timerExpiration.getTime()));
             }
         } else {
             
@@ -1099,10 +1142,71 @@ public class EJBTimerService {
         return ejbContainerUtil.getContainer(containerId);
     }
 
+    /**
+     * Hand a timeout over to the thread pool, unless the maximum number of
+     * timeouts of that application are already being delivered, in which
+     * case it is queued until one of them completes.
+     */
+    private void addDeliveryWork(long applicationId, Runnable work) {
+        DeliveryQueue queue = deliveryQueues_.get(applicationId);
+        if( queue == null ) {
+            DeliveryQueue newQueue = new DeliveryQueue();
+            queue = deliveryQueues_.putIfAbsent(applicationId, newQueue);
+            if( queue == null ) {
+                queue = newQueue;
+            }
+        }
+        queue.pending.add(work);
+        drainDeliveryQueue(queue);
+    }
+
+    private void drainDeliveryQueue(final DeliveryQueue queue) {
+        while( !queue.pending.isEmpty() ) {
+            int active = queue.active.get();
+            if( active >= maxDeliveriesPerApplication_ ) {
+                return;
+            }
+            if( !queue.active.compareAndSet(active, active + 1) ) {
+                continue;
+            }
+
+            final Runnable work = queue.pending.poll();
+            if( work == null ) {
+                queue.active.decrementAndGet();
+                continue;
+            }
+
+            try {
+                ejbContainerUtil.addWork(new Runnable() {
+                    public void run() {
+                        try {
+                            work.run();
+                        } finally {
+                            queue.active.decrementAndGet();
+                            drainDeliveryQueue(queue);
+                        }
+                    }
+                });
+            } catch(RejectedExecutionException e) {
+                // Thread pool is saturated.  Retry on the next tick.
+                queue.active.decrementAndGet();
+                queue.pending.add(work);
+                if( !shutdown_ ) {
+                    timerWheel_.schedule(new Runnable() {
+                        public void run() {
+                            drainDeliveryQueue(queue);
+                        }
+                    }, System.currentTimeMillis());
+                }
+                return;
+            }
+        }
+    }
+
     /**
      * Called from timer thread.  Used to deliver ejb timeout.
      */
-    private void deliverTimeout(TimerPrimaryKey timerId) {
+    private void deliverTimeout(TimerPrimaryKey timerId, long timeout) {
 
         if( logger.isLoggable(Level.FINE) ) {
             logger.log(Level.FINE, "EJBTimerService.deliverTimeout(): work " 
@@ -1153,6 +1257,9 @@ public class EJBTimerService {
                 }
             }
         }
+
+        // Time elapsed between the scheduled and the actual delivery
+        container.recordTimerDeliveryLag(System.currentTimeMillis() - timeout);
          
         try {
                     
@@ -1410,6 +1517,7 @@ public class EJBTimerService {
         if( timerState != null ) {
             synchronized(timerState) {
                 if( timerState.isScheduled() ) {
+                    Date timeout = timerState.getCurrentTimerTask().getTimeout();
                     timerState.delivered();
 
                     if( logger.isLoggable(Level.FINE) ) {
@@ -1417,8 +1525,11 @@ public class EJBTimerService {
                            "Adding work pool task for timer " + timerId);
                     }
 
-                    TaskExpiredWork work = new TaskExpiredWork(this, timerId);
-                    ejbContainerUtil.addWork(work);
+                    TaskExpiredWork work = new TaskExpiredWork(this, timerId,
+                        timeout.getTime());
+                    BaseContainer container = getContainer(timerState.getContainerId());
+                    addDeliveryWork((container != null) ?
+                        container.getApplicationId() : 0, work);
                 } else {
                     logger.log(Level.FINE, "Timer " + timerId + 
                                " is not in scheduled state.  Current state = "
@@ -1907,20 +2018,32 @@ public class EJBTimerService {
     private static class TaskExpiredWork implements Runnable {
         private EJBTimerService timerService_;
         private TimerPrimaryKey timerId_;
+        private long timeout_;
 
         public TaskExpiredWork(EJBTimerService timerService, 
-                               TimerPrimaryKey timerId) {
+                               TimerPrimaryKey timerId, long timeout) {
             timerService_ = timerService;
             timerId_ = timerId;
+            timeout_ = timeout;
         }
 
         public void run() {
             // Delegate to Timer Service.
-            timerService_.deliverTimeout(timerId_);
+            timerService_.deliverTimeout(timerId_, timeout_);
         } 
 
     } // TaskExpiredWork
 
+    /**
+     * Timeouts of one application waiting for delivery, and the number of
+     * them being delivered.
+     */
+    private static class DeliveryQueue {
+        private final ConcurrentLinkedQueue<Runnable> pending =
+            new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicInteger active = new AtomicInteger();
+    } // DeliveryQueue
+
     private static class TimerSynch implements Synchronization {
 
         private TimerPrimaryKey timerId_;
@@ -52,7 +52,8 @@ import javax.ejb.Timer;
 import com.sun.logging.LogDomains;
 
 /*
- * JDK timer task for timer expirations.  
+ * Timer task for timer expirations, scheduled on the timer wheel of
+ * the EJB Timer Service.
  *
  * @author Kenneth Saks
  */
@@ -61,6 +62,7 @@ public class EJBTimerTask extends TimerTask {
     private Date timeout_;
     private TimerPrimaryKey timerId_;
     private EJBTimerService timerService_;
+    private EJBTimerWheel.Timeout wheelTimeout_;
 
     EJBTimerTask(Date timeout, TimerPrimaryKey timerId, 
                  EJBTimerService timerService)
@@ -79,5 +81,22 @@ public class EJBTimerTask extends TimerTask {
         return timeout_;
     }
 
+    void setWheelTimeout(EJBTimerWheel.Timeout wheelTimeout) {
+        wheelTimeout_ = wheelTimeout;
+    }
+
+    /**
+     * @return false if the timeout has already been handed over for
+     * delivery, or was already cancelled
+     */
+    @Override
+    public boolean cancel() {
+        boolean cancelled = super.cancel();
+        if( wheelTimeout_ != null ) {
+            cancelled = wheelTimeout_.cancel();
+        }
+        return cancelled;
+    }
+
 } 
 
@@ -0,0 +1,266 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.ejb.containers;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.logging.LogDomains;
+
+/**
+ * Hashed timing wheel used by the EJB Timer Service to schedule timer
+ * expirations.
+ *
+ * Time is divided in ticks of a fixed duration, and the wheel has one
+ * bucket per tick, wrapping around every wheel size ticks.  A timeout is
+ * put in the bucket of the tick at which it expires, along with the number
+ * of full revolutions left before it does.  Scheduling and cancelling a
+ * timeout are therefore O(1) and take no lock : new timeouts are handed to
+ * the worker thread through a lock-free queue, and cancelled timeouts are
+ * only flagged, and dropped when the worker next visits their bucket.
+ *
+ * The worker thread only runs the expired tasks, which are expected to be
+ * short (the timer service hands the actual delivery over to a thread
+ * pool).  A timeout fires at most one tick after its expiration.
+ */
+final class EJBTimerWheel implements Runnable {
+
+    private static final Logger logger =
+        LogDomains.getLogger(EJBTimerWheel.class, LogDomains.EJB_LOGGER);
+
+    static final long DEFAULT_TICK_MILLIS = 20;
+
+    static final int DEFAULT_WHEEL_SIZE = 1024;
+
+    private final long tickNanos;
+
+    private final Timeout[] wheel;
+
+    private final int mask;
+
+    private final ConcurrentLinkedQueue<Timeout> newTimeouts =
+        new ConcurrentLinkedQueue<Timeout>();
+
+    private final Thread worker;
+
+    private final long startNanos;
+
+    // Only accessed by the worker thread
+    private long tick;
+
+    private volatile boolean stopped;
+
+    EJBTimerWheel(String name, long tickMillis, int wheelSize) {
+        int n = 1;
+        while (n < wheelSize) {
+            n <<= 1;
+        }
+        wheel = new Timeout[n];
+        mask = n - 1;
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        startNanos = System.nanoTime();
+
+        worker = new Thread(this, name);
+        worker.setDaemon(true);
+        worker.setContextClassLoader(null); //Prevent any app classloader being set as CCL
+        worker.start();
+    }
+
+    /**
+     * Schedule a task to be run by the worker thread at the given time.
+     * Once the wheel is stopped, tasks are accepted but never run.
+     *
+     * @param task the task to run, which must not block
+     * @param expiration expiration time, in milliseconds since the epoch
+     * @return a handle that can be used to cancel the timeout
+     */
+    Timeout schedule(Runnable task, long expiration) {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(
+            Math.max(0, expiration - System.currentTimeMillis()));
+        Timeout timeout = new Timeout(task, System.nanoTime() + delayNanos);
+        if (!stopped) {
+            newTimeouts.add(timeout);
+        }
+        return timeout;
+    }
+
+    /**
+     * Stops the worker thread.  Pending timeouts never fire.
+     */
+    void stop() {
+        stopped = true;
+        LockSupport.unpark(worker);
+    }
+
+    public void run() {
+        while (!stopped) {
+            waitForNextTick();
+            if (stopped) {
+                break;
+            }
+            transferNewTimeouts();
+            expireTimeouts((int) (tick & mask));
+            tick++;
+        }
+        newTimeouts.clear();
+    }
+
+    private void waitForNextTick() {
+        long deadline = startNanos + tick * tickNanos;
+        long remaining;
+        while (!stopped && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private void transferNewTimeouts() {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+
+            // Tick at or after which the timeout expires, never a past one
+            long expirationTick = (timeout.deadline - startNanos + tickNanos - 1) / tickNanos;
+            if (expirationTick < tick) {
+                expirationTick = tick;
+            }
+            timeout.rounds = (expirationTick - tick) / wheel.length;
+
+            int index = (int) (expirationTick & mask);
+            timeout.next = wheel[index];
+            if (timeout.next != null) {
+                timeout.next.prev = timeout;
+            }
+            timeout.prev = null;
+            wheel[index] = timeout;
+        }
+    }
+
+    private void expireTimeouts(int index) {
+        Timeout timeout = wheel[index];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.isCancelled()) {
+                remove(index, timeout);
+            } else if (timeout.rounds <= 0) {
+                remove(index, timeout);
+                // Unless cancelled meanwhile
+                if (timeout.expire()) {
+                    try {
+                        timeout.task.run();
+                    } catch (Throwable t) {
+                        logger.log(Level.WARNING,
+                                   "Exception running timer task " +
+                                   timeout.task, t);
+                    }
+                }
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    private void remove(int index, Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            wheel[index] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.next = null;
+        timeout.prev = null;
+    }
+
+    /**
+     * A scheduled task.  Only the state is accessed outside of the worker
+     * thread.
+     */
+    static final class Timeout {
+
+        private static final int SCHEDULED = 0;
+
+        private static final int CANCELLED = 1;
+
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+
+        private final long deadline;
+
+        private final AtomicInteger state = new AtomicInteger(SCHEDULED);
+
+        private long rounds;
+
+        private Timeout next;
+
+        private Timeout prev;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return false if the task has already been run, or the timeout
+         * was already cancelled
+         */
+        boolean cancel() {
+            return state.compareAndSet(SCHEDULED, CANCELLED);
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private boolean expire() {
+            return state.compareAndSet(SCHEDULED, EXPIRED);
+        }
+    }
+}
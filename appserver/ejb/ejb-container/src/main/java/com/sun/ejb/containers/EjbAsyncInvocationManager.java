@@ -43,11 +43,13 @@ package com.sun.ejb.containers;
 import com.sun.ejb.EjbInvocation;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import org.jvnet.hk2.annotations.Service;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import com.sun.ejb.Container;
+import com.sun.ejb.monitoring.stats.EjbAsyncStatsProvider;
 import com.sun.logging.LogDomains;
 import java.lang.reflect.Method;
 import javax.ejb.EJBException;
@@ -65,6 +67,15 @@ public class EjbAsyncInvocationManager {
     private ConcurrentHashMap<Long, EjbFutureTask> remoteTaskMap =
             new ConcurrentHashMap<Long, EjbFutureTask>();
 
+    // Submitted tasks that are not running yet, and running tasks
+    private final AtomicInteger queuedTaskCount = new AtomicInteger();
+    private final AtomicInteger runningTaskCount = new AtomicInteger();
+    private final AtomicLong cancelledTaskCount = new AtomicLong();
+
+    private volatile boolean interruptOnCancel;
+
+    private EjbAsyncStatsProvider statsProvider;
+
     public Future createLocalFuture(EjbInvocation inv) {
         return createFuture(inv);
     }
@@ -141,9 +152,85 @@ public class EjbAsyncInvocationManager {
         // CallerPrincipal and sets it on the dispatch thread
         // before authorization.
         futureTask.getEjbAsyncTask().initialize(asyncInv);
-        
+
+        if( !futureTask.markQueued() ) {
+            // Cancelled by the caller already
+            return futureTask;
+        }
+
         EjbContainerUtil ejbContainerUtil = EjbContainerUtilImpl.getInstance();
-        return ejbContainerUtil.getThreadPoolExecutor(null).submit(futureTask.getEjbAsyncTask());
+        try {
+            return ejbContainerUtil.getThreadPoolExecutor(
+                    EjbContainerUtil.ASYNC_THREAD_POOL_NAME).submit(futureTask.getEjbAsyncTask());
+        } catch(RejectedExecutionException ree) {
+            queuedTaskCount.decrementAndGet();
+            throw ree;
+        }
+    }
+
+    void taskQueued() {
+        queuedTaskCount.incrementAndGet();
+    }
+
+    void taskStarted() {
+        queuedTaskCount.decrementAndGet();
+        runningTaskCount.incrementAndGet();
+    }
+
+    void taskFinished() {
+        runningTaskCount.decrementAndGet();
+    }
+
+    void taskCancelled() {
+        queuedTaskCount.decrementAndGet();
+        cancelledTaskCount.incrementAndGet();
+    }
+
+    /**
+     * Number of async tasks submitted and waiting for a thread.
+     */
+    public int getQueuedTaskCount() {
+        return Math.max(0, queuedTaskCount.get());
+    }
+
+    /**
+     * Number of async tasks running.
+     */
+    public int getRunningTaskCount() {
+        return Math.max(0, runningTaskCount.get());
+    }
+
+    /**
+     * Number of async tasks cancelled before they started running.
+     */
+    public long getCancelledTaskCount() {
+        return cancelledTaskCount.get();
+    }
+
+    /**
+     * If true, Future.cancel(true) interrupts the thread of a running task,
+     * in addition to making wasCancelCalled() return true.
+     */
+    boolean isInterruptOnCancel() {
+        return interruptOnCancel;
+    }
+
+    void setInterruptOnCancel(boolean interruptOnCancel) {
+        this.interruptOnCancel = interruptOnCancel;
+    }
+
+    synchronized void registerStatsProvider() {
+        if( statsProvider == null ) {
+            statsProvider = new EjbAsyncStatsProvider(this);
+            statsProvider.register();
+        }
+    }
+
+    synchronized void unregisterStatsProvider() {
+        if( statsProvider != null ) {
+            statsProvider.unregister();
+            statsProvider = null;
+        }
     }
 
     public void cleanupContainerTasks(Container container) {
@@ -88,6 +88,10 @@ public class EjbAsyncTask<V>
     public V call()
             throws Exception {
         V returnValue = null;
+        if( !ejbFutureTask.markStarted() ) {
+            // Cancelled before it was dispatched
+            return returnValue;
+        }
         BaseContainer container = (BaseContainer) inv.container;
         ClassLoader prevCL = Thread.currentThread().getContextClassLoader();
         try {
@@ -109,6 +113,7 @@ public class EjbAsyncTask<V>
         } catch (Throwable t) {
             inv.exception = t;
         } finally {
+            ejbFutureTask.markFinished();
             try {
                 container.postInvoke(inv, inv.getDoTxProcessingInPostInvoke());
 
@@ -83,6 +83,9 @@ public interface EjbContainerUtil {
 
     public static final String DEFAULT_THREAD_POOL_NAME = "__ejb-thread-pool";
 
+    // Pool of the @Asynchronous invocations, when async-max-concurrency is set
+    public static final String ASYNC_THREAD_POOL_NAME = "__ejb-async-thread-pool";
+
     // Used by the TimerService upgrade
     public long MINIMUM_TIMER_DELIVERY_INTERVAL = 1000;
 
@@ -111,6 +111,8 @@ public class EjbContainerUtilImpl
     private static Logger _logger = LogDomains.getLogger(EjbContainerUtilImpl.class, LogDomains.EJB_LOGGER);
 
     private ThreadPoolExecutor defaultThreadPoolExecutor;
+
+    private ThreadPoolExecutor asyncThreadPoolExecutor;
     
     @Inject
     private ServiceLocator services;
@@ -192,6 +194,13 @@ public class EjbContainerUtilImpl
         }
 
         defaultThreadPoolExecutor = createThreadPoolExecutor(DEFAULT_THREAD_POOL_NAME);
+        asyncThreadPoolExecutor = createAsyncThreadPoolExecutor();
+
+        String interruptOnCancel = ejbContainer.getPropertyValue(RuntimeTagNames.ASYNC_INTERRUPT_ON_CANCEL);
+        ejbAsyncInvocationManager.setInterruptOnCancel(interruptOnCancel != null
+                ? Boolean.parseBoolean(interruptOnCancel.trim())
+                : EjbContainer.DEFAULT_ASYNC_INTERRUPT_ON_CANCEL);
+        ejbAsyncInvocationManager.registerStatsProvider();
         
         //avoid starting JDK timer in application class loader.  The life of _timer
         //field is longer than deployed apps, and any reference to app class loader
@@ -217,6 +226,11 @@ public class EjbContainerUtilImpl
             defaultThreadPoolExecutor.shutdown();
             defaultThreadPoolExecutor = null;
         }
+        if( asyncThreadPoolExecutor != null ) {
+            asyncThreadPoolExecutor.shutdown();
+            asyncThreadPoolExecutor = null;
+        }
+        ejbAsyncInvocationManager.unregisterStatsProvider();
         EJBTimerService.onShutdown();
         EJBTimerService.unsetEJBTimerService();
     }
@@ -504,10 +518,44 @@ public class EjbContainerUtilImpl
         return result;
     }
     
+    /**
+     * The @Asynchronous invocations get a pool of their own, bounded by the
+     * async-max-concurrency property, so that blocking async methods do not
+     * hold the threads of the container's internal work. When the property
+     * is not set, they share the default pool.
+     */
+    private ThreadPoolExecutor createAsyncThreadPoolExecutor() {
+        String val = ejbContainer.getPropertyValue(RuntimeTagNames.ASYNC_MAX_CONCURRENCY);
+        int maxConcurrency = val != null ? Integer.parseInt(val.trim())
+                : EjbContainer.DEFAULT_ASYNC_MAX_CONCURRENCY;
+        if (maxConcurrency <= 0) {
+            return null;
+        }
+
+        val = ejbContainer.getPropertyValue(RuntimeTagNames.THREAD_KEEP_ALIVE_SECONDS);
+        long keepAliveSeconds = val != null ? Long.parseLong(val.trim())
+                : EjbContainer.DEFAULT_THREAD_KEEP_ALIVE_SECONDS;
+
+        // Invocations above the bound wait in the queue, and idle threads
+        // go away, since async methods are usually bursty.
+        ThreadPoolExecutor result = new EjbThreadPoolExecutor(maxConcurrency, maxConcurrency,
+                keepAliveSeconds, new LinkedBlockingQueue<Runnable>(), ASYNC_THREAD_POOL_NAME);
+        result.allowCoreThreadTimeOut(true);
+
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.fine("Created " + result.toString());
+        }
+        return result;
+    }
+    
     public ThreadPoolExecutor getThreadPoolExecutor(String poolName) {
         if(poolName == null) {
             return defaultThreadPoolExecutor;
         } 
+        if (ASYNC_THREAD_POOL_NAME.equals(poolName)) {
+            return (asyncThreadPoolExecutor != null)
+                    ? asyncThreadPoolExecutor : defaultThreadPoolExecutor;
+        }
         return null;
 //        TODO retrieve the named ThreadPoolExecutor
     }
@@ -47,6 +47,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -57,8 +58,23 @@ public class EjbFutureTask<V>
 
     private EjbAsyncTask ejbAsyncTask;
 
+    private EjbAsyncInvocationManager asyncManager;
+
+    // Dispatch states of the task : a task can only be cancelled before it
+    // is started by the executor
+    private static final int NEW = 0;
+    private static final int QUEUED = 1;
+    private static final int RUNNING = 2;
+    private static final int CANCELLED = 3;
+    private static final int FINISHED = 4;
+
+    private final AtomicInteger dispatchState = new AtomicInteger(NEW);
+
+    // Thread running the task, guarded by this
+    private Thread runner;
+
     // Used to remember if cancel() was called already
-    private boolean cancelCalled = false;
+    private volatile boolean cancelCalled = false;
         
     // State which could be set from both the caller's thread and
     // the thread on which the task is executing.
@@ -70,11 +86,26 @@ public class EjbFutureTask<V>
     public EjbFutureTask(EjbAsyncTask<V> callable, EjbAsyncInvocationManager mgr) {
         super(callable);
         this.ejbAsyncTask = callable;
+        this.asyncManager = mgr;
     }
 
     @Override
     public boolean cancel(boolean mayInterruptIfRunning) {
 
+        // A task that has not been dispatched yet is really cancelled : the
+        // executor will not run it.
+        if( dispatchState.compareAndSet(NEW, CANCELLED) ) {
+            cancelCalled = true;
+            super.cancel(false);
+            return true;
+        }
+        if( dispatchState.compareAndSet(QUEUED, CANCELLED) ) {
+            cancelCalled = true;
+            asyncManager.taskCancelled();
+            super.cancel(false);
+            return true;
+        }
+
         if( !cancelCalled ) {
 
             cancelCalled = true;
@@ -84,10 +115,20 @@ public class EjbFutureTask<V>
             if( mayInterruptIfRunning ) {
                 EjbInvocation inv = ejbAsyncTask.getEjbInvocation();
                 inv.setWasCancelCalled(true);
+
+                // Unless configured otherwise, the running bean method
+                // is not interrupted.
+                if( asyncManager.isInterruptOnCancel() ) {
+                    synchronized(this) {
+                        if( runner != null ) {
+                            runner.interrupt();
+                        }
+                    }
+                }
             }
         }
 
-        // For now we don't even try checking to see if the task has started running.
+        // The task has already started running.
         // Just return false so the caller knows the task could not be cancelled.      
         return false;
     }
@@ -171,9 +212,8 @@ public class EjbFutureTask<V>
 
     @Override
     public boolean isCancelled() {
-        // For now, we don't ever actually forcibly cancel a task
-        // that hasn't executed.
-        return false;
+        // Only a task cancelled before it started running is cancelled.
+        return (dispatchState.get() == CANCELLED);
     }
 
     @Override
@@ -189,6 +229,51 @@ public class EjbFutureTask<V>
         return ejbAsyncTask;
     }
 
+    /**
+     * Called before the task is submitted to the executor.
+     * @return false if the task was cancelled already
+     */
+    boolean markQueued() {
+        if( dispatchState.compareAndSet(NEW, QUEUED) ) {
+            asyncManager.taskQueued();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called by EjbAsyncTask on the executor thread, before the invocation.
+     * @return false if the task was cancelled and must not run
+     */
+    boolean markStarted() {
+        synchronized(this) {
+            runner = Thread.currentThread();
+        }
+        if( dispatchState.compareAndSet(QUEUED, RUNNING) ) {
+            asyncManager.taskStarted();
+            return true;
+        }
+        synchronized(this) {
+            runner = null;
+        }
+        return false;
+    }
+
+    /**
+     * Called by EjbAsyncTask on the executor thread once the bean method
+     * returned, so that a later cancel() cannot interrupt the thread.
+     */
+    void markFinished() {
+        synchronized(this) {
+            runner = null;
+        }
+        if( dispatchState.compareAndSet(RUNNING, FINISHED) ) {
+            asyncManager.taskFinished();
+        }
+        // Clear an interrupt sent by cancel() before postInvoke
+        Thread.interrupted();
+    }
+
     long getInvId() {
         return ejbAsyncTask.getInvId();
     }
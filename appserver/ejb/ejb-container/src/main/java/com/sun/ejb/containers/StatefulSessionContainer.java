@@ -58,6 +58,8 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.ejb.ConcurrentAccessException;
@@ -285,17 +287,18 @@ public final class StatefulSessionContainer
     private final static long CONCURRENCY_NOT_ALLOWED = 0;
     private final static long BLOCK_INDEFINITELY = -1;
 
-    private ArrayList passivationCandidates = new ArrayList();
-    private Object asyncTaskSemaphore = new Object();
+    // Contexts trimmed from the cache, waiting for an ASyncPassivator
+    private final ConcurrentLinkedQueue<PassivationCandidate> passivationCandidates
+            = new ConcurrentLinkedQueue<PassivationCandidate>();
+    private final AtomicInteger passivationQueueDepth = new AtomicInteger();
 
-
-    private int asyncTaskCount = 0;
-    private int asyncCummTaskCount = 0;
+    private final AtomicInteger asyncTaskCount = new AtomicInteger();
+    private final AtomicInteger asyncCummTaskCount = new AtomicInteger();
 
     private int passivationBatchCount
             = MIN_PASSIVATION_BATCH_COUNT;
 
-    private int containerTrimCount = 0;
+    private final AtomicInteger containerTrimCount = new AtomicInteger();
 
     private LruSessionCache sessionBeanCache;
     private BackingStore<Serializable, SimpleMetadata> backingStore;
@@ -568,7 +571,7 @@ public final class StatefulSessionContainer
         sbuf.append(" { asyncTaskCount=").append(asyncTaskCount)
                 .append("; asyncCummTaskCount=").append(asyncCummTaskCount)
                 .append("; passivationBatchCount=").append(passivationBatchCount)
-                .append("; passivationQSz=").append(passivationCandidates.size())
+                .append("; passivationQSz=").append(passivationQueueDepth.get())
                 .append("; trimEventCount=").append(containerTrimCount)
                 .append(" }");
         return sbuf.toString();
@@ -2916,18 +2919,9 @@ public final class StatefulSessionContainer
             
             sessionBeanCache.shutdown();
 
-            while (true) {
-                ComponentContext ctx = null;
-                synchronized (asyncTaskSemaphore) {
-                    int sz = passivationCandidates.size();
-                    if (sz > 0) {
-                        ctx = (ComponentContext)
-                                passivationCandidates.remove(sz - 1);
-                    } else {
-                        break;
-                    }
-                }
-                passivateEJB(ctx);
+            PassivationCandidate candidate;
+            while ((candidate = pollPassivationCandidate()) != null) {
+                passivateEJB((ComponentContext) candidate.context);
             }
 
 
@@ -2971,18 +2965,10 @@ public final class StatefulSessionContainer
                 invokePreDestroyAndUndeploy(ctx);
             }
 
-            while (true) {
-                SessionContextImpl ctx = null;
-                synchronized (asyncTaskSemaphore) {
-                    int sz = passivationCandidates.size();
-                    if (sz > 0) {
-                        ctx = (SessionContextImpl) passivationCandidates
-                                .remove(sz - 1);
-                        invokePreDestroyAndUndeploy(ctx);
-                    } else {
-                        break;
-                    }
-                }
+            PassivationCandidate candidate;
+            while ((candidate = pollPassivationCandidate()) != null) {
+                invokePreDestroyAndUndeploy(
+                        (SessionContextImpl) candidate.context);
             }
 
             sessionBeanCache.destroy();
@@ -3132,42 +3118,67 @@ public final class StatefulSessionContainer
 
     // CacheListener interface
     public void trimEvent(Object primaryKey, Object context) {
-        boolean addTask = false;
-        synchronized (asyncTaskSemaphore) {
-            containerTrimCount++;
-            passivationCandidates.add(context);
-            int requiredTaskCount =
-                    (passivationCandidates.size() / passivationBatchCount);
-            addTask = (asyncTaskCount < requiredTaskCount);
+        containerTrimCount.incrementAndGet();
+        passivationCandidates.offer(new PassivationCandidate(context));
+        int qSize = passivationQueueDepth.incrementAndGet();
+        int requiredTaskCount = (qSize / passivationBatchCount);
 
-            if (_logger.isLoggable(Level.FINE)) {
-                _logger.log(Level.FINE, "qSize: " + passivationCandidates.size()
-                        + "; batchCount: " + passivationBatchCount
-                        + "; asyncTaskCount: " + asyncTaskCount
-                        + "; requiredTaskCount: " + requiredTaskCount
-                        + "; ADDED TASK ==> " + addTask);
+        boolean addTask = false;
+        int taskCount;
+        while ((taskCount = asyncTaskCount.get()) < requiredTaskCount) {
+            if (asyncTaskCount.compareAndSet(taskCount, taskCount + 1)) {
+                addTask = true;
+                break;
             }
+        }
 
-            if (addTask == false) {
-                return;
-            }
-            asyncTaskCount++;
-            asyncCummTaskCount++;
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "qSize: " + qSize
+                    + "; batchCount: " + passivationBatchCount
+                    + "; asyncTaskCount: " + asyncTaskCount.get()
+                    + "; requiredTaskCount: " + requiredTaskCount
+                    + "; ADDED TASK ==> " + addTask);
         }
 
+        if (addTask == false) {
+            return;
+        }
+        asyncCummTaskCount.incrementAndGet();
 
         try {
             ASyncPassivator work = new ASyncPassivator();
             ejbContainerUtilImpl.addWork(work);
         } catch (Exception ex) {
-            synchronized (asyncTaskSemaphore) {
-                asyncTaskCount--;
-            }
+            asyncTaskCount.decrementAndGet();
             _logger.log(Level.WARNING, ADD_CLEANUP_TASK_ERROR, ex);
         }
 
     }
 
+    /**
+     * Number of trimmed contexts that are waiting to be passivated.
+     */
+    public int getPassivationQueueDepth() {
+        return passivationQueueDepth.get();
+    }
+
+    private PassivationCandidate pollPassivationCandidate() {
+        PassivationCandidate candidate = passivationCandidates.poll();
+        if (candidate != null) {
+            passivationQueueDepth.decrementAndGet();
+        }
+        return candidate;
+    }
+
+    private static final class PassivationCandidate {
+        final Object context;
+        final long queuedAt = System.currentTimeMillis();
+
+        PassivationCandidate(Object context) {
+            this.context = context;
+        }
+    }
+
     private class ASyncPassivator implements Runnable {
 
         public void run() {
@@ -3191,28 +3202,20 @@ public final class StatefulSessionContainer
                                 }
                             });
                 }
-                ComponentContext ctx = null;
-
-                do {
-                    synchronized (asyncTaskSemaphore) {
-                        int sz = passivationCandidates.size();
-                        if (sz > 0) {
-                            ctx = (ComponentContext)
-                                    passivationCandidates.remove(sz - 1);
-                        } else {
-                            return;
-                        }
-                    }
-                    passivateEJB(ctx);
-                } while (true);
+                PassivationCandidate candidate;
+                while ((candidate = pollPassivationCandidate()) != null) {
+                    passivateEJB((ComponentContext) candidate.context);
+                    cacheProbeNotifier.ejbBeanPassivationLatencyEvent(
+                            getContainerId(), containerInfo.appName,
+                            containerInfo.modName, containerInfo.ejbName,
+                            System.currentTimeMillis() - candidate.queuedAt);
+                }
 
             } catch (Throwable th) {
                 th.printStackTrace();
             } finally {
                 if (!decrementedTaskCount) {
-                    synchronized (asyncTaskSemaphore) {
-                        asyncTaskCount--;
-                    }
+                    asyncTaskCount.decrementAndGet();
                 }
 
                 if (System.getSecurityManager() == null) {
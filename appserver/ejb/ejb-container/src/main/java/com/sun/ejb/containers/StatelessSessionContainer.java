@@ -65,6 +65,7 @@ import com.sun.ejb.EjbInvocation;
 import com.sun.ejb.containers.util.pool.AbstractPool;
 import com.sun.ejb.containers.util.pool.NonBlockingPool;
 import com.sun.ejb.containers.util.pool.ObjectFactory;
+import com.sun.ejb.containers.util.pool.StripedPool;
 import com.sun.ejb.monitoring.stats.EjbMonitoringStatsProvider;
 import com.sun.ejb.monitoring.stats.EjbPoolStatsProvider;
 import com.sun.ejb.monitoring.stats.StatelessSessionBeanStatsProvider;
@@ -183,6 +184,15 @@ public class StatelessSessionContainer
         return new StatelessSessionBeanStatsProvider(this, getContainerId(), appName, modName, ejbName);
     }
 
+    /**
+     * No state of a stateless invocation outlives the call, so the
+     * invocation objects of local calls can be reused.
+     */
+    @Override
+    protected boolean isEjbInvocationRecyclable() {
+        return true;
+    }
+
     protected void initializeHome()
         throws Exception
     {
@@ -255,10 +265,19 @@ public class StatelessSessionContainer
 
         poolProp = new PoolProperties(ejbContainer, beanPoolDes);
         String val = ejbDescriptor.getEjbBundleDescriptor().getEnterpriseBeansProperty(SINGLETON_BEAN_POOL_PROP);
-        pool= new NonBlockingPool(getContainerId(), ejbDescriptor.getName(),
-           sessionCtxFactory, poolProp.steadyPoolSize,
-           poolProp.poolResizeQuantity, poolProp.maxPoolSize,
-           poolProp.poolIdleTimeoutInSeconds, loader, Boolean.parseBoolean(val));
+        boolean singletonBeanPool = Boolean.parseBoolean(val);
+        if (!singletonBeanPool && StripedPool.POOL_TYPE.equalsIgnoreCase(
+                getEnterpriseBeansProperty(BEAN_POOL_TYPE_PROP))) {
+            pool= new StripedPool(getContainerId(), ejbDescriptor.getName(),
+               sessionCtxFactory, poolProp.steadyPoolSize,
+               poolProp.poolResizeQuantity, poolProp.maxPoolSize,
+               poolProp.poolIdleTimeoutInSeconds, loader);
+        } else {
+            pool= new NonBlockingPool(getContainerId(), ejbDescriptor.getName(),
+               sessionCtxFactory, poolProp.steadyPoolSize,
+               poolProp.poolResizeQuantity, poolProp.maxPoolSize,
+               poolProp.poolIdleTimeoutInSeconds, loader, singletonBeanPool);
+        }
     }
 
     protected void registerMonitorableComponents() {
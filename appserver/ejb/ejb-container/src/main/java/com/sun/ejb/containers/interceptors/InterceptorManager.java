@@ -58,6 +58,7 @@ import javax.interceptor.InvocationContext;
 import com.sun.ejb.EJBUtils;
 import com.sun.ejb.containers.BaseContainer;
 import com.sun.ejb.containers.EJBContextImpl;
+import com.sun.ejb.containers.util.MethodInvoker;
 import com.sun.enterprise.container.common.spi.util.InterceptorInfo;
 import com.sun.enterprise.deployment.EjbInterceptor;
 import com.sun.enterprise.deployment.InterceptorDescriptor;
@@ -343,8 +344,9 @@ public class InterceptorManager {
                + " found on class " + className, e); 
             }
 
+            AroundInvokeInterceptor aroundInvokeInterceptor;
             if (interceptor.getFromBeanClass()) {
-                interceptors.add(new BeanAroundInvokeInterceptor(method));
+                aroundInvokeInterceptor = new BeanAroundInvokeInterceptor(method);
             } else {
                 Integer bigInt = instanceIndexMap.get(className);
                 int index = (bigInt == null) ? -1 : bigInt;
@@ -354,8 +356,16 @@ public class InterceptorManager {
                 Class clazz = interceptorClasses[index];
                 _logger.log(Level.FINE, "*[md.getDeclaredMethod() => " 
                             + method + " FOR CLAZZ: " + clazz);  
-                interceptors.add(new AroundInvokeInterceptor(index, method));
+                aroundInvokeInterceptor = new AroundInvokeInterceptor(index, method);
             }
+
+            // EJB chains are built once, when the container is started,
+            // so bind them to direct-call invokers.  Chains of managed beans
+            // are built for each invocation and keep using reflection.
+            if (ejbDesc != null) {
+                aroundInvokeInterceptor.invoker = MethodInvoker.create(method);
+            }
+            interceptors.add(aroundInvokeInterceptor);
         }
     }
 
@@ -839,6 +849,9 @@ class AroundInvokeInterceptor {
     protected int index;
     protected Method method;
 
+    // Direct-call invoker of method, null if reflection must be used
+    protected MethodInvoker invoker;
+
     AroundInvokeInterceptor(int index, Method method) {
         this.index = index;
         this.method = method;
@@ -878,6 +891,10 @@ class AroundInvokeInterceptor {
                             return method.invoke(interceptors[index], invCtx);
                         }
                     });
+            } else if (invoker != null) {
+
+                 return invoker.invoke(interceptors[index], new Object[] { invCtx });
+
             } else {
 
                  return method.invoke(interceptors[index], invCtx);
@@ -920,6 +937,8 @@ class BeanAroundInvokeInterceptor
                             return method.invoke(invCtx.getTarget(), invCtx);
                         }
                     });
+            } else if (invoker != null) {
+                return invoker.invoke(invCtx.getTarget(), new Object[] { invCtx });
             } else {
                 return method.invoke(invCtx.getTarget(), invCtx);
             }
@@ -0,0 +1,192 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.ejb.containers.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * A direct-call replacement for Method.invoke(), built once per method
+ * when the container is started and used in the common path of an ejb
+ * invocation.
+ *
+ * The method is bound to a MethodHandle that is adapted to the
+ * (Object target, Object[] args) shape, so a call neither goes through the
+ * reflective access checks nor through the reflection accessor.  invoke()
+ * has the same exception semantics as Method.invoke() : an exception thrown
+ * by the method is wrapped in an InvocationTargetException.  The target
+ * and the arguments are checked before the call, so that a failed
+ * conversion of the arguments is never taken for an exception thrown by
+ * the method ; arguments that need a widening conversion, or are of the
+ * wrong type, are passed to Method.invoke().
+ *
+ * No invoker is created when a Java SecurityManager is installed, since the
+ * reflective calls are then made from within doPrivileged blocks ; callers
+ * must fall back to Method.invoke() when create() returns null.
+ */
+public final class MethodInvoker {
+
+    private static final MethodType INVOKER_TYPE =
+        MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    private final Method method;
+
+    private final int parameterCount;
+
+    private final boolean isStatic;
+
+    private final Class<?> declaringClass;
+
+    private final Class<?>[] parameterTypes;
+
+    // Parameter types, with the primitive types replaced by their wrappers
+    private final Class<?>[] argumentTypes;
+
+    private final MethodHandle handle;
+
+    private MethodInvoker(Method method, MethodHandle handle) {
+        this.method = method;
+        this.parameterTypes = method.getParameterTypes();
+        this.parameterCount = parameterTypes.length;
+        this.isStatic = Modifier.isStatic(method.getModifiers());
+        this.declaringClass = method.getDeclaringClass();
+        this.argumentTypes = new Class<?>[parameterCount];
+        for(int i = 0; i < parameterCount; i++) {
+            argumentTypes[i] =
+                MethodType.methodType(parameterTypes[i]).wrap().returnType();
+        }
+        this.handle = handle;
+    }
+
+    /**
+     * Create an invoker for the given method.
+     *
+     * @return the invoker, or null if the method must be invoked through
+     * reflection.
+     */
+    public static MethodInvoker create(Method method) {
+        if( (method == null) || (System.getSecurityManager() != null) ) {
+            return null;
+        }
+
+        try {
+            if( !method.isAccessible() ) {
+                method.setAccessible(true);
+            }
+
+            MethodHandle mh = MethodHandles.lookup().unreflect(method).asFixedArity();
+            if( Modifier.isStatic(method.getModifiers()) ) {
+                mh = MethodHandles.dropArguments(mh, 0, Object.class);
+            }
+            mh = mh.asSpreader(Object[].class, method.getParameterTypes().length)
+                .asType(INVOKER_TYPE);
+
+            return new MethodInvoker(method, mh);
+        } catch(Exception e) {
+            return null;
+        }
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @return true if this invoker calls the given method.
+     */
+    public boolean isFor(Method m) {
+        return (m == method) || method.equals(m);
+    }
+
+    /**
+     * Invoke the method on the given target, as Method.invoke() would.
+     */
+    public Object invoke(Object target, Object[] args)
+        throws InvocationTargetException {
+
+        if( (target == null) && !isStatic ) {
+            throw new NullPointerException();
+        }
+        int length = (args == null) ? 0 : args.length;
+        if( length != parameterCount ) {
+            throw new IllegalArgumentException("wrong number of arguments");
+        }
+
+        if( !isStatic && !declaringClass.isInstance(target) ) {
+            return invokeReflectively(target, args);
+        }
+        for(int i = 0; i < length; i++) {
+            Object arg = args[i];
+            if( (arg == null) ? parameterTypes[i].isPrimitive()
+                    : !argumentTypes[i].isInstance(arg) ) {
+                return invokeReflectively(target, args);
+            }
+        }
+
+        // Only the method itself can throw from now on
+        try {
+            return (Object) handle.invokeExact(target, args);
+        } catch(Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**
+     * Let reflection convert the arguments, or report why they cannot be.
+     */
+    private Object invokeReflectively(Object target, Object[] args)
+        throws InvocationTargetException {
+        try {
+            return method.invoke(target, args);
+        } catch(IllegalAccessException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    public String toString() {
+        return "MethodInvoker[" + method + "]";
+    }
+}
@@ -63,7 +63,13 @@ import java.lang.reflect.Method;
  * is for the container's method info, which is invariant after initialization.
  * 
  * As this is a map for Method objects, null keys are not supported.
- * This map is unsynchronized.
+ * This map is unsynchronized, except for its identity table.
+ *
+ * The dynamic proxies and stubs that call the container pass the same Method
+ * instances on every invocation, which are not the instances used as keys.
+ * Once resolved, these instances are remembered in an identity table, so
+ * that their later lookups are a single array probe, with no call on the
+ * Method itself.
  */
 public final class MethodMap extends HashMap {
 
@@ -83,6 +89,23 @@ public final class MethodMap extends HashMap {
     // returns new Method instances.   
     private MethodInfo[] methodInfo_;
 
+    // Number of identity table entries allowed per method, since each
+    // method may be invoked through several proxy classes.
+    private static final int IDENTITY_ENTRIES_PER_METHOD = 4;
+
+    // Open addressed table of (Method instance, value) pairs, probed by
+    // identity hash code.  It is only replaced, never modified, once
+    // published, so that lookups need no lock.
+    private volatile Object[] identityTable_;
+
+    private int identityCount_;
+
+    private int maxIdentityCount_;
+
+    // Set once the identity table holds maxIdentityCount_ entries, so that
+    // lookups stop taking the lock to add to it
+    private volatile boolean identityTableFull_;
+
     public MethodMap(Map methodMap) {
         super(methodMap);
 
@@ -117,8 +140,7 @@ public final class MethodMap extends HashMap {
        
         if( key instanceof Method ) {
             Method m = (Method) key;            
-            Class[] paramTypes = m.getParameterTypes();
-            return get(m, paramTypes.length);
+            return get(m, m.getParameterCount());
         } 
 
         return null;
@@ -133,6 +155,19 @@ public final class MethodMap extends HashMap {
                 ("invalid numParams = " + numParams);
         } 
 
+        Object[] table = identityTable_;
+        if( table != null ) {
+            int mask = table.length - 1;
+            int index = (System.identityHashCode(m) << 1) & mask;
+            Object next;
+            while( (next = table[index]) != null ) {
+                if( next == m ) {
+                    return table[index + 1];
+                }
+                index = (index + 2) & mask;
+            }
+        }
+
         Object value = null;
 
         MethodInfo methodInfo = methodInfo_[getBucket(m, numParams)];
@@ -144,7 +179,15 @@ public final class MethodMap extends HashMap {
             }                
         }
 
-        return (value != null) ? value : super.get(m);
+        if( value == null ) {
+            value = super.get(m);
+        }
+
+        if( (value != null) && (table != null) && !identityTableFull_ ) {
+            addIdentityEntry(m, value);
+        }
+
+        return value;
 
     }
 
@@ -152,15 +195,61 @@ public final class MethodMap extends HashMap {
 
         if( methodInfo_ != null ) {
             methodInfo_ = null;
+            identityTable_ = null;
             super.clear();            
         }
 
     }
 
+    private synchronized void addIdentityEntry(Method m, Object value) {
+
+        Object[] table = identityTable_;
+        if( (table == null) || (identityCount_ >= maxIdentityCount_) ) {
+            // Don't let callers that don't reuse their Method instances
+            // grow the table without bound
+            return;
+        }
+
+        int mask = table.length - 1;
+        int index = (System.identityHashCode(m) << 1) & mask;
+        Object next;
+        while( (next = table[index]) != null ) {
+            if( next == m ) {
+                return;
+            }
+            index = (index + 2) & mask;
+        }
+
+        Object[] newTable = table.clone();
+        newTable[index] = m;
+        newTable[index + 1] = value;
+        identityCount_++;
+        identityTable_ = newTable;
+        if( identityCount_ >= maxIdentityCount_ ) {
+            identityTableFull_ = true;
+        }
+    }
+
+    /**
+     * @return the number of Method instances in the identity table.
+     */
+    synchronized int getIdentityCount() {
+        Object[] table = identityTable_;
+        return (table == null) ? 0 : identityCount_;
+    }
+
     private void buildLookupTable(Map methodMap) {
         
         methodInfo_ = new MethodInfo[numBuckets_];
 
+        // At most half of the slots are used, so a probe always ends
+        maxIdentityCount_ = (methodMap.size() + 1) * IDENTITY_ENTRIES_PER_METHOD;
+        int slots = 1;
+        while( slots < (maxIdentityCount_ * 2) ) {
+            slots <<= 1;
+        }
+        identityTable_ = new Object[slots * 2];
+
         Set occupied = new HashSet();
 
         for(Iterator iter = methodMap.entrySet().iterator(); iter.hasNext();) {
@@ -203,11 +292,7 @@ public final class MethodMap extends HashMap {
     
     private final int getBucket(Method m) {
         
-        // note : getParameterTypes is guaranteed to be 0-length array 
-        // (as opposed to null) for a method with no arguments.
-        Class[] paramTypes = m.getParameterTypes();        
-
-        return getBucket(m, paramTypes.length);
+        return getBucket(m, m.getParameterCount());
     }
 
     private final int getBucket(Method m, int numParams) {
@@ -0,0 +1,326 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>ReadBiasedReadWriteLock is a reentrant read/write lock for read-mostly
+ * state. A reader only increments the counter of the stripe of its thread
+ * id and checks that no writer is active, so that concurrent readers do not
+ * write to a shared cache line. A writer is serialized by a non fair
+ * ReentrantLock, announces itself, and then waits for the readers of all the
+ * stripes to drain : writes are therefore more expensive than with a
+ * ReentrantReadWriteLock.
+ * <p> Like ReentrantReadWriteLock, both locks are reentrant and a thread that
+ * holds the write lock may acquire the read lock. A reader that finds a
+ * writer active waits on the writer lock, which gives it the same timeout
+ * and interruption semantics as a writer. Conditions are not supported.
+ *
+ * @see java.util.concurrent.locks.ReentrantReadWriteLock
+ */
+public final class ReadBiasedReadWriteLock
+    implements ReadWriteLock
+{
+
+    private static final int MAX_STRIPES = 64;
+
+    // One counter per 64 bytes, to keep the stripes on different cache lines
+    private static final int SLOT_SHIFT = 4;
+
+    private static final int MAX_SPINS = 64;
+    private static final long PARK_NANOS = 50000L;
+
+    private static final long NO_TIMEOUT = -1L;
+
+    private final AtomicIntegerArray readers;
+    private final int stripeMask;
+
+    private final ReentrantLock writerLock = new ReentrantLock();
+
+    // Set by the writer once it holds writerLock, before draining the readers
+    private volatile boolean writerActive;
+
+    private final ThreadLocal<int[]> readHolds = new ThreadLocal<int[]>();
+
+    private final Lock readLock = new ReadLock();
+    private final Lock writeLock = new WriteLock();
+
+    public ReadBiasedReadWriteLock() {
+        int stripeCount = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (stripeCount < processors && stripeCount < MAX_STRIPES) {
+            stripeCount <<= 1;
+        }
+        readers = new AtomicIntegerArray(stripeCount << SLOT_SHIFT);
+        stripeMask = stripeCount - 1;
+    }
+
+    public Lock readLock() {
+        return readLock;
+    }
+
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    /**
+     * Number of reentrant read holds on this lock by the current thread.
+     */
+    public int getReadHoldCount() {
+        int[] holds = readHolds.get();
+        return (holds == null) ? 0 : holds[0];
+    }
+
+    public boolean isWriteLockedByCurrentThread() {
+        return writerLock.isHeldByCurrentThread();
+    }
+
+    private int[] readHolds() {
+        int[] holds = readHolds.get();
+        if (holds == null) {
+            holds = new int[1];
+            readHolds.set(holds);
+        }
+        return holds;
+    }
+
+    private int slot() {
+        return ((int) Thread.currentThread().getId() & stripeMask) << SLOT_SHIFT;
+    }
+
+    private int readerCount() {
+        int count = 0;
+        for (int i = 0; i <= stripeMask; i++) {
+            count += readers.get(i << SLOT_SHIFT);
+        }
+        return count;
+    }
+
+    private boolean lockWriterLock(long nanos, boolean interruptible)
+        throws InterruptedException
+    {
+        if (nanos == NO_TIMEOUT) {
+            if (interruptible) {
+                writerLock.lockInterruptibly();
+            } else {
+                writerLock.lock();
+            }
+            return true;
+        }
+        return (nanos == 0) ? writerLock.tryLock()
+                : writerLock.tryLock(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private boolean acquireRead(long nanos, boolean interruptible)
+        throws InterruptedException
+    {
+        int[] holds = readHolds();
+        int slot = slot();
+        if (holds[0] > 0 || writerLock.isHeldByCurrentThread()) {
+            // Reentrant read, or read under our own write lock: never waits
+            readers.incrementAndGet(slot);
+            holds[0]++;
+            return true;
+        }
+
+        readers.incrementAndGet(slot);
+        if (!writerActive) {
+            holds[0]++;
+            return true;
+        }
+        readers.decrementAndGet(slot);
+
+        // A writer is active: queue behind it on the writer lock
+        if (!lockWriterLock(nanos, interruptible)) {
+            return false;
+        }
+        try {
+            readers.incrementAndGet(slot);
+            holds[0]++;
+        } finally {
+            writerLock.unlock();
+        }
+        return true;
+    }
+
+    private void releaseRead() {
+        int[] holds = readHolds.get();
+        if (holds == null || holds[0] <= 0) {
+            throw new IllegalMonitorStateException();
+        }
+        holds[0]--;
+        readers.decrementAndGet(slot());
+    }
+
+    private boolean acquireWrite(long nanos, boolean interruptible)
+        throws InterruptedException
+    {
+        if (writerLock.isHeldByCurrentThread()) {
+            writerLock.lock();
+            return true;
+        }
+
+        long deadline = System.nanoTime() + nanos;
+        if (!lockWriterLock(nanos, interruptible)) {
+            return false;
+        }
+        writerActive = true;
+
+        // Our own read holds, if any, cannot drain
+        int ownHolds = getReadHoldCount();
+        boolean acquired = false;
+        boolean interrupted = false;
+        try {
+            for (int spins = 0; readerCount() != ownHolds; spins++) {
+                if (nanos != NO_TIMEOUT && deadline - System.nanoTime() <= 0) {
+                    return false;
+                }
+                if (Thread.interrupted()) {
+                    if (interruptible) {
+                        throw new InterruptedException();
+                    }
+                    interrupted = true;
+                }
+                if (spins < MAX_SPINS) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+            }
+            acquired = true;
+            return true;
+        } finally {
+            if (!acquired) {
+                writerActive = false;
+                writerLock.unlock();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void releaseWrite() {
+        if (writerLock.getHoldCount() == 1) {
+            writerActive = false;
+        }
+        writerLock.unlock();
+    }
+
+    private static long toNanos(long time, TimeUnit unit) {
+        return (time <= 0) ? 0 : unit.toNanos(time);
+    }
+
+    private abstract static class AbstractLock
+        implements Lock
+    {
+
+        abstract boolean acquire(long nanos, boolean interruptible)
+            throws InterruptedException;
+
+        public void lock() {
+            try {
+                acquire(NO_TIMEOUT, false);
+            } catch (InterruptedException inEx) {
+                // Not thrown when not interruptible
+                throw new IllegalStateException(inEx);
+            }
+        }
+
+        public void lockInterruptibly() throws InterruptedException {
+            acquire(NO_TIMEOUT, true);
+        }
+
+        public boolean tryLock() {
+            try {
+                return acquire(0, false);
+            } catch (InterruptedException inEx) {
+                // Not thrown when not interruptible
+                throw new IllegalStateException(inEx);
+            }
+        }
+
+        public boolean tryLock(long time, TimeUnit unit)
+            throws InterruptedException
+        {
+            return acquire(toNanos(time, unit), true);
+        }
+
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final class ReadLock
+        extends AbstractLock
+    {
+        boolean acquire(long nanos, boolean interruptible)
+            throws InterruptedException
+        {
+            return acquireRead(nanos, interruptible);
+        }
+
+        public void unlock() {
+            releaseRead();
+        }
+    }
+
+    private final class WriteLock
+        extends AbstractLock
+    {
+        boolean acquire(long nanos, boolean interruptible)
+            throws InterruptedException
+        {
+            return acquireWrite(nanos, interruptible);
+        }
+
+        public void unlock() {
+            releaseWrite();
+        }
+    }
+}
@@ -67,12 +67,12 @@ public class LruSessionCache
     @LogMessageInfo(
         message = "[{0}]: Exception in backingStore.remove([{1}])",
         level = "WARNING")
-    private static final String EXCEPTION_BACKING_STORE_REMOVE = "AS-EJB-00002";
+    protected static final String EXCEPTION_BACKING_STORE_REMOVE = "AS-EJB-00002";
 
     @LogMessageInfo(
         message = "[{0}]: passivateEJB(), Exception caught ->",
         level = "WARNING")
-    private static final String PASSIVATE_EJB_EXCEPTION_CAUGHT = "AS-EJB-00003";
+    protected static final String PASSIVATE_EJB_EXCEPTION_CAUGHT = "AS-EJB-00003";
 
     @LogMessageInfo(
         message = "[{0}]: Cannot load from  BACKUPSTORE FOR Key: <[{1}]>",
@@ -108,7 +108,7 @@ public class LruSessionCache
     @LogMessageInfo(
         message = "[{0}]: Exiting TrimTimedoutBeans() because current cache state: [{1}]",
         level = "WARNING")
-    private static final String EXITING_TRIM_TIMEDOUT_BEANS = "AS-EJB-00009";
+    protected static final String EXITING_TRIM_TIMEDOUT_BEANS = "AS-EJB-00009";
 
     @LogMessageInfo(
         message = "[{0}]: TrimTimedoutBeans(), resetting head.lPrev",
@@ -124,7 +124,7 @@ public class LruSessionCache
         message = "Cannot find stateful session bean [{0}] in memory, and will not read it from disk because " +
                   "current stateful session bean passivation-capable value is false",
         level = "INFO")
-    private static final String SFSB_NOT_FOUND_WHEN_PASSIVATION_DISABLED = "AS-EJB-00049";
+    protected static final String SFSB_NOT_FOUND_WHEN_PASSIVATION_DISABLED = "AS-EJB-00049";
     
     protected int		    cacheIdleTimeoutInSeconds;
     protected int		    removalTimeoutInSeconds;
@@ -145,12 +145,12 @@ public class LruSessionCache
 
     protected String configData;
 
-    private static final int	    STATE_RUNNING = 0;
+    protected static final int	    STATE_RUNNING = 0;
     private static final int	    STATE_SHUTTING_DOWN = 1;
     private static final int	    STATE_UNDEPLOYING = 2;
     private static final int	    STATE_DESTROYED = 3;
 
-    private int			    currentCacheState = STATE_RUNNING;
+    protected int			    currentCacheState = STATE_RUNNING;
 
     protected int	confMaxCacheSize = Integer.MAX_VALUE;
 
@@ -525,7 +525,7 @@ public class LruSessionCache
         return false;
     } //passivateEJB
 
-    private Object getStateFromStore(Serializable sessionKey, SFSBContainerCallback container) {
+    protected Object getStateFromStore(Serializable sessionKey, SFSBContainerCallback container) {
 
         Object object = null;
 
@@ -555,7 +555,7 @@ public class LruSessionCache
         return object;
     }
 
-    private boolean saveStateToStore(Serializable sessionKey, StatefulEJBContext ctx)
+    protected boolean saveStateToStore(Serializable sessionKey, StatefulEJBContext ctx)
 	throws java.io.NotSerializableException, java.io.IOException
     {
         byte[] data = container.serializeContext(ctx);
@@ -869,9 +869,9 @@ public class LruSessionCache
 
     public void appendStats(StringBuffer sbuf) {
 	sbuf.append("[Cache: ")
-	    .append("Size=").append(entryCount).append("; ")
-	    .append("HitCount=").append(hitCount).append("; ")
-	    .append("MissCount=").append(missCount).append("; ")
+	    .append("Size=").append(getNumBeansInCache()).append("; ")
+	    .append("HitCount=").append(getCacheHits()).append("; ")
+	    .append("MissCount=").append(getCacheMisses()).append("; ")
 	    .append("Passivations=").append(getNumPassivations()).append("; ");
 	if (configData != null) {
 	    sbuf.append(configData);
@@ -923,5 +923,10 @@ public class LruSessionCache
 	return confMaxCacheSize;
     }
 
+    public int getPassivationQueueDepth() {
+        SFSBContainerCallback c = container;
+        return (c == null) ? 0 : c.getPassivationQueueDepth();
+    }
+
 }
 
@@ -0,0 +1,568 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.ejb.containers.util.cache;
+
+import com.sun.ejb.spi.container.SFSBContainerCallback;
+import com.sun.ejb.spi.container.StatefulEJBContext;
+
+import org.glassfish.ha.store.api.BackingStoreException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * A stateful session bean cache that keeps its entries in a
+ * ConcurrentHashMap instead of the buckets of the BaseCache, and that
+ * maintains no LRU list. Each entry records its last access time; when
+ * the cache overflows, the victim is the least recently used of a small
+ * sample of entries, taken by a clock hand that sweeps the map. Lookups
+ * don't take any lock, and no operation synchronizes on the cache itself.
+ *
+ * Victims are handed to the cache listeners (the passivation queue of
+ * the container) like the victims of the other session caches.
+ *
+ * Selected with the victim-selection-policy "sampled".
+ */
+public class SampledLruSessionCache
+    extends LruSessionCache
+{
+
+    public static final String VICTIM_SELECTION_POLICY = "sampled";
+
+    // number of entries compared to select one victim
+    private static final int SAMPLE_SIZE = 8;
+
+    private static final int LOADING = 0;
+    private static final int ACTIVE = 1;
+    private static final int TRIMMED = 2;
+    private static final int REMOVED = 3;
+
+    private static final AtomicIntegerFieldUpdater<SampledItem> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(SampledItem.class, "state");
+
+    private ConcurrentHashMap<Object, SampledItem> items;
+
+    // number of ACTIVE entries, i.e. neither loading nor trimmed
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger removals = new AtomicInteger();
+    private final AtomicInteger trims = new AtomicInteger();
+    private final AtomicInteger victimsAccessed = new AtomicInteger();
+
+    // the clock hand; only used by the thread holding handLock
+    private final ReentrantLock handLock = new ReentrantLock();
+    private Iterator<SampledItem> hand;
+
+    public SampledLruSessionCache(String cacheName, 
+        SFSBContainerCallback container, int cacheIdleTime, int removalTime)
+    {
+        super("Sampled-" + cacheName, container, cacheIdleTime, removalTime);
+    }
+
+    /**
+     * Unlike the BaseCache, doesn't allocate any bucket: maxEntries and
+     * loadFactor only determine the threshold above which victims are
+     * selected.
+     */
+    public void init(int maxEntries, float loadFactor, Properties props) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException(
+                "Illegal max entries: " + maxEntries);
+        }
+        if (loadFactor < 0) {
+            loadFactor = 0;
+        }
+        this.maxEntries = maxEntries;
+        this.threshold = (int) (maxEntries * loadFactor) + 1;
+        this.items = new ConcurrentHashMap<Object, SampledItem>(
+            Math.min(maxEntries, 1 << 16));
+    }
+
+    public StatefulEJBContext lookupEJB(Serializable sessionKey,
+        SFSBContainerCallback container, Object cookie)
+    {
+        SampledItem item = items.get(sessionKey);
+        if (item != null) {
+            Object value = item.getValue();
+            if (value != null) {
+                itemAccessed(item);
+                hits.incrementAndGet();
+                return (StatefulEJBContext) value;
+            }
+        }
+
+        misses.incrementAndGet();
+        if (item != null) {
+            // being loaded by another thread
+            return (StatefulEJBContext) item.awaitLoaded();
+        }
+
+        // don't try to lookup session store when passivation capable is false
+        if (!container.isPassivationCapable()) {
+            if (_logger.isLoggable(Level.INFO)) {
+                _logger.log(Level.INFO, SFSB_NOT_FOUND_WHEN_PASSIVATION_DISABLED);                
+            }
+            return null;
+        }
+
+        SampledItem newItem = new SampledItem(hash(sessionKey), sessionKey, null, true);
+        item = items.putIfAbsent(sessionKey, newItem);
+        if (item != null) {
+            return (StatefulEJBContext) item.awaitLoaded();
+        }
+
+        //This is the thread that actually does the I/O
+        Object value = null;
+        boolean activationFailed = false;
+        try {
+            value = getStateFromStore(sessionKey, container);
+            if (value != null) {
+                container.activateEJB(sessionKey,
+                    (StatefulEJBContext) value, cookie);
+            }
+        } catch (javax.ejb.EJBException ejbEx) {
+            value = null;
+            activationFailed = true;
+        } finally {
+            newItem.loaded(value);
+        }
+
+        if (value == null) {
+            if (activationFailed) {
+                remove(sessionKey);
+            } else {
+                items.remove(sessionKey, newItem);
+            }
+            return null;
+        }
+
+        if (STATE.compareAndSet(newItem, LOADING, ACTIVE)
+                && activeCount.incrementAndGet() > threshold) {
+            trimOverflow();
+        }
+        return (StatefulEJBContext) value;
+    }
+
+    public Object get(int hashCode, Object key) {
+        SampledItem item = items.get(key);
+        Object value = (item != null) ? item.getValue() : null;
+        if (value != null) {
+            itemAccessed(item);
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    protected Object _put(int hashCode, Object key,
+            Object value, int size, boolean addValue) {
+        SampledItem old = items.put(key, new SampledItem(hashCode, key, value, false));
+        if (old != null) {
+            if (STATE.getAndSet(old, REMOVED) == ACTIVE) {
+                activeCount.decrementAndGet();
+            }
+        }
+
+        if (activeCount.incrementAndGet() > threshold) {
+            trimOverflow();
+        }
+        return (old != null) ? old.getValue() : null;
+    }
+
+    protected CacheItem _remove(int hashCode, Object key, Object value) {
+        SampledItem item = items.get(key);
+        if (item != null && (value == null || value == item.getValue())
+                && items.remove(key, item)) {
+            if (STATE.getAndSet(item, REMOVED) == ACTIVE) {
+                activeCount.decrementAndGet();
+            }
+            removals.incrementAndGet();
+            hits.incrementAndGet();
+            return item;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public Object remove(Object sessionKey, boolean removeFromStore) {
+        _remove(hash(sessionKey), sessionKey, null);
+
+        //remove it from the BackingStore also
+        //In case it had been checkpointed
+        if (removeFromStore && backingStore != null) {
+            try {
+                backingStore.remove((Serializable) sessionKey);
+            } catch (BackingStoreException sfsbEx) {
+                _logger.log(Level.WARNING, EXCEPTION_BACKING_STORE_REMOVE, new Object[]{cacheName, sessionKey, sfsbEx});
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the access; a victim that is accessed before it was
+     * passivated becomes a regular entry again.
+     */
+    protected void itemAccessed(CacheItem item) {
+        SampledItem sItem = (SampledItem) item;
+        sItem.accessTime = System.currentTimeMillis();
+        if (sItem.state == TRIMMED && STATE.compareAndSet(sItem, TRIMMED, ACTIVE)) {
+            victimsAccessed.incrementAndGet();
+            if (activeCount.incrementAndGet() > threshold) {
+                trimOverflow();
+            }
+        }
+    }
+
+    /**
+     * Selects victims until the number of active entries is back to the
+     * threshold, and hands them to the listeners. If another thread is
+     * already selecting victims, returns at once: the cache may then go
+     * over its threshold until the next addition.
+     */
+    private void trimOverflow() {
+        if (!handLock.tryLock()) {
+            return;
+        }
+        ArrayList<SampledItem> victims = new ArrayList<SampledItem>();
+        try {
+            while (activeCount.get() > threshold) {
+                SampledItem victim = selectVictim();
+                if (victim == null) {
+                    break;
+                }
+                victims.add(victim);
+            }
+        } finally {
+            handLock.unlock();
+        }
+        trimVictims(victims);
+    }
+
+    /**
+     * Advances the clock hand over at most one revolution, until it has
+     * sampled SAMPLE_SIZE active entries, and trims the least recently
+     * accessed one. Caller must hold handLock.
+     */
+    private SampledItem selectVictim() {
+        SampledItem oldest = null;
+        int sampled = 0;
+        int size = items.size();
+        for (int scanned = 0; sampled < SAMPLE_SIZE && scanned < size; scanned++) {
+            if (hand == null || !hand.hasNext()) {
+                hand = items.values().iterator();
+                if (!hand.hasNext()) {
+                    break;
+                }
+            }
+            SampledItem item = hand.next();
+            if (item.state != ACTIVE || item.getValue() == null) {
+                continue;
+            }
+            sampled++;
+            if (oldest == null || item.accessTime < oldest.accessTime) {
+                oldest = item;
+            }
+        }
+
+        if (oldest != null && trim(oldest)) {
+            return oldest;
+        }
+        return null;
+    }
+
+    // Called by Cache implementation thru container, on Recycler's thread
+    // The container has already acquired the lock on the StatefulEJBContext
+    public boolean passivateEJB(StatefulEJBContext ctx, Serializable sessionKey)
+	throws java.io.NotSerializableException
+    {
+        try {
+            SampledItem item = items.get(sessionKey);
+            if (item == null || item.getValue() != ctx) {
+                //Could have been removed
+                return true;
+            }
+            if (item.state != TRIMMED) {
+                //Was accessed just after marked for passivation
+                if(_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE, cacheName +  ": session accessed after marked for passivation: " + sessionKey);
+                }
+                return false;
+            }
+
+            // we don't do passivation when passivation is disabled, but we still need remove the trimmed
+            // bean from cache
+            if (container.isPassivationCapable() && !saveStateToStore(sessionKey, ctx)) {
+                return false;
+            }
+
+            if (!STATE.compareAndSet(item, TRIMMED, REMOVED)) {
+                //Was accessed while its state was being saved
+                return false;
+            }
+            if (items.remove(sessionKey, item)) {
+                removals.incrementAndGet();
+            }
+            return true;
+        } catch (java.io.NotSerializableException notSerEx) {
+            _logger.log(Level.FINE, "", notSerEx);
+            throw notSerEx;
+        } catch (Exception ex) {
+            _logger.log(Level.WARNING, PASSIVATE_EJB_EXCEPTION_CAUGHT, new Object[]{cacheName, ex});
+            _logger.log(Level.FINE, "", ex);
+        }
+        return false;
+    }
+
+    /**
+     * trim the timedOut entries from the cache.
+     * There is no LRU list: the whole cache is scanned, and the victims
+     * are handed to the listeners by batches of passivation-batch-count.
+     */
+    public void trimTimedoutItems(int maxCount) {
+        long idleThreshold = System.currentTimeMillis() - cacheIdleTimeoutInSeconds*1000L;
+        int batchCount = container.getPassivationBatchCount();
+        ArrayList<SampledItem> victims = new ArrayList<SampledItem>();
+        int totalSize = 0;
+
+        if(_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, 
+                        "[" + cacheName + "]: TrimTimedoutBeans started...");
+        }
+        for (SampledItem item : items.values()) {
+            if (currentCacheState != STATE_RUNNING) {
+                _logger.log(Level.WARNING, EXITING_TRIM_TIMEDOUT_BEANS, new Object[]{cacheName, currentCacheState});
+                break;
+            }
+            if (totalSize + victims.size() >= maxCount) {
+                break;
+            }
+
+            //Note ctx can be null if bean is being loaded
+            StatefulEJBContext ctx = (StatefulEJBContext) item.getValue();
+            if ((ctx != null) && (ctx.getLastAccessTime() <= idleThreshold) &&
+                ctx.canBePassivated() && trim(item)) {
+                victims.add(item);
+                if (victims.size() >= batchCount) {
+                    totalSize += trimVictims(victims);
+                }
+            }
+        }
+        totalSize += trimVictims(victims);
+
+        if(_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE, "[" + cacheName + "]: TrimTimedoutBeans "
+                + " finished after removing " + totalSize + " idle beans");
+        }
+    }
+
+    public void trimUnSortedTimedoutItems(int maxCount) {
+        trimTimedoutItems(maxCount);
+    }
+
+    private boolean trim(SampledItem item) {
+        if (STATE.compareAndSet(item, ACTIVE, TRIMMED)) {
+            activeCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private int trimVictims(ArrayList<SampledItem> victims) {
+        int sz = victims.size();
+        trims.addAndGet(sz);
+        for (int i = 0; i < sz; i++) {
+            trimItem(victims.get(i));
+        }
+        victims.clear();
+        return sz;
+    }
+
+    /**
+     * get an Iterator for the values stored in the cache
+     * @returns an Iterator
+     */
+    public Iterator values() {
+        ArrayList<Object> valueList = new ArrayList<Object>();
+        for (SampledItem item : items.values()) {
+            Object ctx = item.getValue();
+            if (ctx != null) {
+                valueList.add(ctx);
+            }
+        }
+        return valueList.iterator();
+    }
+
+    public Iterator keys() {
+        return new ArrayList<Object>(items.keySet()).iterator();
+    }
+
+    public Enumeration elements() {
+        return Collections.enumeration(new ArrayList<Object>(items.keySet()));
+    }
+
+    public void shutdown() {
+        ArrayList<StatefulEJBContext> valueList = new ArrayList<StatefulEJBContext>();
+        for (SampledItem item : items.values()) {
+            StatefulEJBContext ctx = (StatefulEJBContext) item.getValue();
+            if (ctx != null) {
+                if (STATE.getAndSet(item, TRIMMED) == ACTIVE) {
+                    activeCount.decrementAndGet();
+                }
+                valueList.add(ctx);
+            }
+        }
+
+        for (StatefulEJBContext ctx : valueList) {
+            container.passivateEJB(ctx);
+        }
+    }
+
+    public int clear() {
+        int count = items.size();
+        items.clear();
+        activeCount.set(0);
+        return count;
+    }
+
+    public void destroy() {
+        if (items != null) {
+            items.clear();
+        }
+        super.destroy();
+    }
+
+    public int getEntryCount() {
+        return items.size();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public int getCacheHits() {
+        return hits.get();
+    }
+
+    public int getCacheMisses() {
+        return misses.get();
+    }
+
+    public int getNumBeansInCache() {
+        return items.size();
+    }
+
+    public int getNumVictimsAccessed() {
+        return victimsAccessed.get();
+    }
+
+    /**
+     * Number of entries handed to the listeners as victims
+     */
+    public int getTrimCount() {
+        return trims.get();
+    }
+
+    /**
+     * Number of entries removed or passivated
+     */
+    public int getRemovalCount() {
+        return removals.get();
+    }
+
+    private static final class SampledItem
+        extends LruCacheItem
+    {
+
+        // LOADING, ACTIVE, TRIMMED or REMOVED; updated through STATE
+        volatile int state;
+        volatile long accessTime = System.currentTimeMillis();
+
+        private volatile Object current;
+        private boolean loading;
+
+        SampledItem(int hashCode, Object key, Object value, boolean loading) {
+            super(hashCode, key, value, -1);
+            this.current = value;
+            this.loading = loading;
+            this.state = loading ? LOADING : ACTIVE;
+        }
+
+        public Object getValue() {
+            return current;
+        }
+
+        public boolean isTrimmed() {
+            return state != ACTIVE;
+        }
+
+        synchronized void loaded(Object value) {
+            current = value;
+            loading = false;
+            notifyAll();
+        }
+
+        synchronized Object awaitLoaded() {
+            while (loading) {
+                try {
+                    wait();
+                } catch (InterruptedException inEx) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return current;
+        }
+    }
+}
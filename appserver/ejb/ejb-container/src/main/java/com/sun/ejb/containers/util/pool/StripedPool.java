@@ -0,0 +1,680 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.containers.util.pool;
+
+import com.sun.ejb.containers.EJBContextImpl;
+import com.sun.ejb.containers.EjbContainerUtilImpl;
+import com.sun.enterprise.util.Utility;
+
+import java.util.ArrayList;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * <p>StripedPool is a non blocking pool, like NonBlockingPool, that keeps
+ * the available objects in one lock-free stack per stripe instead of a
+ * single synchronized list. A thread gets and returns objects from the stripe
+ * of its thread id, and only steals from the other stripes when its own is
+ * empty, so that concurrent invocations of a hot bean do not serialize on the
+ * pool.
+ * <p> The steady pool size, max pool size, resize quantity and idle timeout
+ * have the semantics of NonBlockingPool : the pool is refilled to its steady
+ * size asynchronously, returned objects are destroyed above the max pool
+ * size, and objects idle for more than the idle timeout are removed, by
+ * resize quantity, down to the steady size. The singleton bean pool mode of
+ * NonBlockingPool is not supported.
+ * <p> The pool is selected by setting the bean-pool-type property of
+ * enterprise-beans in glassfish-ejb-jar.xml, or bean-pool-type.ejb-name for
+ * a single bean, to "striped".
+ *
+ * @see NonBlockingPool
+ */
+public class StripedPool
+    extends AbstractPool
+{
+
+    /**
+     * The bean-pool-type selecting this pool.
+     */
+    public static final String POOL_TYPE = "striped";
+
+    private static final int MAX_STRIPES = 64;
+
+    private ConcurrentLinkedDeque[] stripes;
+    private int stripeMask;
+
+    // Number of objects in the stripes
+    private final AtomicInteger size = new AtomicInteger();
+
+    // Bookkeeping, published to the monitoring through the getters
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger destroyed = new AtomicInteger();
+    private final AtomicInteger success = new AtomicInteger();
+
+    private final AtomicBoolean addedResizeTask = new AtomicBoolean();
+    private final AtomicBoolean addedIdleBeanWork = new AtomicBoolean();
+    private final AtomicBoolean inResizing = new AtomicBoolean();
+    private boolean maintainSteadySize = false;
+
+    // Set to true by close(). Prevents the resize tasks from
+    // running after close().
+    private volatile boolean poolClosed = false;
+
+    private TimerTask poolTimerTask;
+
+    public StripedPool(long beanId, String poolName, ObjectFactory factory,
+        int steadyPoolSize, int resizeQuantity,
+        int maxPoolSize, int idleTimeoutInSeconds,
+        ClassLoader loader)
+    {
+        this.poolName = poolName;
+        this.beanId = beanId;
+        initializePool(factory, steadyPoolSize, resizeQuantity, maxPoolSize,
+                       idleTimeoutInSeconds, loader);
+    }
+
+    protected void initializePool(ObjectFactory factory, int steadyPoolSize,
+        int resizeQuantity, int maxPoolSize, int idleTimeoutInSeconds,
+        ClassLoader loader)
+    {
+        // AbstractPool methods that are not overridden see an empty list
+        list = new ArrayList();
+
+        int stripeCount = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (stripeCount < processors && stripeCount < MAX_STRIPES) {
+            stripeCount <<= 1;
+        }
+        stripes = new ConcurrentLinkedDeque[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ConcurrentLinkedDeque();
+        }
+        stripeMask = stripeCount - 1;
+
+        this.factory = factory;
+        this.steadyPoolSize = (steadyPoolSize <= 0) ? 0 : steadyPoolSize;
+        this.resizeQuantity = (resizeQuantity <= 0) ? 0 : resizeQuantity;
+        this.maxPoolSize = (maxPoolSize <= 0)
+            ? Integer.MAX_VALUE : maxPoolSize;
+        this.steadyPoolSize = (this.steadyPoolSize > this.maxPoolSize)
+            ? this.maxPoolSize : this.steadyPoolSize;
+        this.idleTimeoutInSeconds =
+            (idleTimeoutInSeconds <= 0) ? 0 : idleTimeoutInSeconds;
+
+        this.containerClassLoader = loader;
+
+        this.maintainSteadySize = (this.steadyPoolSize > 0);
+        if ((this.idleTimeoutInSeconds > 0) && (this.resizeQuantity > 0)) {
+            try {
+                this.poolTimerTask =  new PoolResizeTimerTask();
+                EjbContainerUtilImpl.getInstance().getTimer().scheduleAtFixedRate
+                    (poolTimerTask, idleTimeoutInSeconds*1000L,
+                     idleTimeoutInSeconds*1000L);
+                if(_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE,
+                      "[Pool-" + poolName + "]: Added PoolResizeTimerTask...");
+                }
+            } catch (Throwable th) {
+                _logger.log(Level.WARNING,"[Pool-" +
+                            poolName + "]: Could not add"
+                            + " PoolTimerTask. Continuing anyway...", th);
+            }
+        }
+    }
+
+    private ConcurrentLinkedDeque homeStripe() {
+        return stripes[(int) Thread.currentThread().getId() & stripeMask];
+    }
+
+    /**
+     * Pop an object, from the stripe of the current thread first.
+     * @return an object, or null if the pool is empty.
+     */
+    private Object pop() {
+        int home = (int) Thread.currentThread().getId() & stripeMask;
+        for (int i = 0; i <= stripeMask; i++) {
+            Object obj = stripes[(home + i) & stripeMask].pollFirst();
+            if (obj != null) {
+                size.decrementAndGet();
+                return obj;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Push an object on the stripe of the current thread, unless the pool
+     * already holds maxPoolSize objects.
+     * @return false if the pool is full.
+     */
+    private boolean push(Object obj) {
+        int current;
+        do {
+            current = size.get();
+            if (current >= maxPoolSize) {
+                return false;
+            }
+        } while (!size.compareAndSet(current, current + 1));
+        homeStripe().offerFirst(obj);
+        return true;
+    }
+
+    public Object getObject(boolean canWait, Object param)
+        throws PoolException
+    {
+        return getObject(param);
+    }
+
+    public Object getObject(long maxWaitTime, Object param)
+        throws PoolException
+    {
+        return getObject(param);
+    }
+
+    public Object getObject(Object param)
+    {
+        Object obj = pop();
+        if (obj != null) {
+            success.incrementAndGet();
+            if (maintainSteadySize && size.get() < steadyPoolSize) {
+                addResizeTaskForImmediateExecution();
+            }
+            return obj;
+        }
+
+        if (maintainSteadySize) {
+            addResizeTaskForImmediateExecution();
+        }
+        poolProbeNotifier.ejbObjectAddedEvent(beanId, appName, modName, ejbName);
+        // Counted before the object exists, as the added event above, and
+        // uncounted if the factory fails
+        created.incrementAndGet();
+        try {
+            return factory.create(param);
+        } catch (RuntimeException th) {
+            poolProbeNotifier.ejbObjectAddFailedEvent(beanId, appName, modName, ejbName);
+            created.decrementAndGet();
+            throw th;
+        }
+    }
+
+    private void addResizeTaskForImmediateExecution() {
+        if (!addedResizeTask.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ReSizeWork work = new ReSizeWork();
+            addWork(work);
+            if(_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE,
+                     "[Pool-" + poolName + "]: Added PoolResizeTimerTask...");
+            }
+        } catch (Exception ex) {
+            addedResizeTask.set(false);
+            if(_logger.isLoggable(Level.WARNING)) {
+            	_logger.log(Level.WARNING,
+                            "[Pool-"+poolName+"]: Cannot perform "
+                            + " pool resize task", ex);
+            }
+        }
+    }
+
+    /**
+     * Run pool maintenance work on the EJB container thread pool.
+     */
+    void addWork(Runnable work) {
+        EjbContainerUtilImpl.getInstance().addWork(work);
+    }
+
+    /**
+     * Return an object back to the pool. An object that is obtained through
+     *	getObject() must always be returned back to the pool using either
+     *	returnObject(obj) or through destroyObject(obj).
+     */
+    public void returnObject(Object object) {
+        if (poolClosed || !push(object)) {
+            destroyObject(object);
+        } else if (poolClosed) {
+            // close() may have emptied the pool before the push
+            destroyPooledObjects();
+        }
+    }
+
+    /**
+     * Destroys an Object. Note that applications should not ignore
+     * the reference to the object that they got from getObject(). An object
+     * that is obtained through getObject() must always be returned back to
+     * the pool using either returnObject(obj) or through destroyObject(obj).
+     * This method tells that the object should be destroyed and cannot
+     * be reused.
+     */
+    public void destroyObject(Object object) {
+        poolProbeNotifier.ejbObjectDestroyedEvent(beanId, appName, modName, ejbName);
+        destroyed.incrementAndGet();
+
+        try {
+            factory.destroy(object);
+        } catch (Exception ex) {
+            _logger.log(Level.FINE, "exception in destroyObject", ex);
+        }
+    }
+
+    /**
+    * Preload the pool with objects.
+    * @param count the number of objects to be added.
+    */
+    protected void preload(int count) {
+        ArrayList instances = new ArrayList(count);
+        try {
+            for (int i=0; i<count; i++) {
+                instances.add(factory.create(null));
+            }
+    	} catch (Exception ex) {
+            //Need not throw this exception up since we are pre-populating
+    	}
+
+        int sz = instances.size();
+        created.addAndGet(sz);
+        for (int i = 0; i < sz; i++) {
+            Object obj = instances.get(i);
+            if (poolClosed || !push(obj)) {
+                // destroys unnecessary instances
+                destroyObject(obj);
+            } else if (poolClosed) {
+                // close() may have emptied the pool before the push
+                destroyPooledObjects();
+            }
+        }
+    }
+
+    /**
+    * Prepopulate the pool with objects.
+    * @param count the number of objects to be added.
+    */
+    public void prepopulate(int count) {
+        this.steadyPoolSize = (count <= 0) ? 0 : count;
+        this.steadyPoolSize = (this.steadyPoolSize > this.maxPoolSize)
+            ? this.maxPoolSize : this.steadyPoolSize;
+
+        if (this.steadyPoolSize > 0) {
+            preload(this.steadyPoolSize);
+        }
+    }
+
+    /**
+    * Close the pool
+    */
+    public void close() {
+        poolClosed = true;
+        if (poolTimerTask != null) {
+            try {
+                poolTimerTask.cancel();
+                if(_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE,
+                        "[Pool-"+poolName+"]: Cancelled pool timer task "
+                                + " at: " + (new java.util.Date()));
+                }
+            } catch (Throwable th) {
+                //Can safely ignore this!!
+            }
+        }
+
+        if(_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE,"[Pool-"+poolName+"]: Destroying "
+                        + size.get() + " beans from the pool...");
+        }
+
+        destroyPooledObjects();
+        if(_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE,"Pool-"+poolName+"]: Pool closed....");
+        }
+        unregisterProbeProvider();
+    }
+
+    /**
+     * Destroy the objects in the pool, on close(), or when an object was
+     * pushed while the pool was being closed.
+     */
+    private void destroyPooledObjects() {
+        // since we're calling into ejb code, we need to set context
+        // class loader
+        ClassLoader origLoader =
+            Utility.setContextClassLoader(containerClassLoader);
+        try {
+            Object obj;
+            while ((obj = pop()) != null) {
+                try {
+                    destroyObject(obj);
+                } catch (Throwable th) {
+                    _logger.log(Level.WARNING,
+                        "[Pool-"+poolName+"]: Error while destroying", th);
+                }
+            }
+        } finally {
+            Utility.setContextClassLoader(origLoader);
+        }
+    }
+
+    protected void remove(int count) {
+        Object obj;
+        for (int i=0; (i<count) && ((obj = pop()) != null); i++) {
+            destroyObject(obj);
+        }
+    }
+
+    /**
+     * Remove the objects that have been idle for more than the idle timeout,
+     * stripe by stripe, down to the steady pool size.
+     */
+    protected void removeIdleObjects() {
+        if (idleTimeoutInSeconds <= 0) {
+            return;
+        }
+        long allowedIdleTime = System.currentTimeMillis() -
+            idleTimeoutInSeconds*1000L;
+        ArrayList removeList =
+            removeIdle(size.get() - steadyPoolSize, allowedIdleTime);
+        int sz = removeList.size();
+        for (int i=0; i<sz; i++) {
+            destroyObject(removeList.get(i));
+        }
+    }
+
+    /**
+     * Remove up to count objects that have been idle since allowedIdleTime.
+     * The least recently returned objects of a stripe are at its tail.
+     */
+    private ArrayList removeIdle(int count, long allowedIdleTime) {
+        ArrayList removeList = new ArrayList();
+        for (int i = 0; i <= stripeMask && removeList.size() < count; i++) {
+            ConcurrentLinkedDeque stripe = stripes[i];
+            while (removeList.size() < count) {
+                Object obj = stripe.pollLast();
+                if (obj == null) {
+                    break;
+                }
+                if (((EJBContextImpl) obj).getLastTimeUsed() <= allowedIdleTime) {
+                    size.decrementAndGet();
+                    removeList.add(obj);
+                } else {
+                    stripe.offerLast(obj);
+                    break;
+                }
+            }
+        }
+        return removeList;
+    }
+
+    protected void doResize() {
+
+        if (poolClosed || !inResizing.compareAndSet(false, true)) {
+            return;
+        }
+
+        //We need to set the context class loader for this (deamon) thread!!
+        final Thread currentThread = Thread.currentThread();
+        final ClassLoader previousClassLoader =
+            currentThread.getContextClassLoader();
+        final ClassLoader ctxClassLoader = containerClassLoader;
+
+        long startTime = 0;
+        try {
+            if(System.getSecurityManager() == null) {
+                currentThread.setContextClassLoader(ctxClassLoader);
+            } else {
+                java.security.AccessController.doPrivileged(
+                        new java.security.PrivilegedAction() {
+                    public java.lang.Object run() {
+                        currentThread.setContextClassLoader(ctxClassLoader);
+                        return null;
+                    }
+                });
+            }
+
+            if(_logger.isLoggable(Level.FINE)) {
+                _logger.log(Level.FINE,
+                    "[Pool-"+poolName+"]: Resize started at: "
+                  + (new java.util.Date())+" steadyPoolSize ::"+steadyPoolSize
+                  + " resizeQuantity ::"+resizeQuantity+" maxPoolSize ::" +
+                  maxPoolSize );
+            }
+            startTime = System.currentTimeMillis();
+
+            int curSize = size.get();
+            if (curSize > steadyPoolSize) {
+
+                //possible to reduce pool size....
+                if ((idleTimeoutInSeconds <= 0)  ||
+                    (resizeQuantity <= 0)) {
+                    return;
+                }
+                int victimCount =
+                    (curSize > (steadyPoolSize + resizeQuantity) )
+                    ? resizeQuantity : (curSize - steadyPoolSize);
+                long allowedIdleTime = System.currentTimeMillis() -
+                    idleTimeoutInSeconds*1000L;
+                if(_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE,
+                                "[Pool-"+poolName+"]: Resize:: reducing "
+                                + " pool size by: " + victimCount);
+                }
+                ArrayList removeList = removeIdle(victimCount, allowedIdleTime);
+                int sz = removeList.size();
+                for (int i=0; i<sz; i++) {
+                    destroyObject(removeList.get(i));
+                }
+            } else if (curSize < steadyPoolSize) {
+
+                //Need to populate....
+                if (maintainSteadySize  == false) {
+                    return;
+                }
+
+                long populateCount = 0;
+                if (resizeQuantity <= 0) {
+                    populateCount = steadyPoolSize - curSize;
+                } else {
+                    while ((curSize + populateCount) < steadyPoolSize) {
+                        populateCount += resizeQuantity;
+                    }
+                    if ((curSize + populateCount) > maxPoolSize) {
+                        populateCount -= (curSize + populateCount) - maxPoolSize;
+                    }
+                }
+
+                if (populateCount > 0) {
+                    if(_logger.isLoggable(Level.FINE)) {
+                        _logger.log(Level.FINE,
+                                "[Pool-"+poolName+"]: Attempting to preload "
+                                + populateCount + " beans. CurSize/MaxPoolSize: "
+                                + curSize + "/" + maxPoolSize);
+                    }
+
+                    preload((int)populateCount);
+                }
+            }
+        } catch (Throwable th) {
+            _logger.log(Level.WARNING,
+                        "[Pool-"+poolName+"]: Exception during reSize", th);
+
+        } finally {
+            inResizing.set(false);
+            if(System.getSecurityManager() == null) {
+                currentThread.setContextClassLoader(previousClassLoader);
+            } else {
+                java.security.AccessController.doPrivileged(
+                        new java.security.PrivilegedAction() {
+                    public java.lang.Object run() {
+                        currentThread.setContextClassLoader(previousClassLoader);
+                        return null;
+                    }
+                });
+            }
+        }
+
+        long endTime = System.currentTimeMillis();
+        if(_logger.isLoggable(Level.FINE)) {
+            _logger.log(Level.FINE,
+                "[Pool-"+poolName+"]: Resize completed at: "
+                + (new java.util.Date()) + "; after reSize: " +
+                getAllAttrValues());
+            _logger.log(Level.FINE, "[Pool-"+poolName+"]: Resize took: "
+                        + ((endTime-startTime)/1000.0) + " seconds.");
+        }
+    }
+
+    /**************** For Monitoring ***********************/
+    /*******************************************************/
+
+    public int getCreatedCount() {
+        return created.get();
+    }
+
+    public int getDestroyedCount() {
+        return destroyed.get();
+    }
+
+    public int getPoolSuccess() {
+        return success.get();
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public void appendStats(StringBuffer sbuf) {
+	sbuf.append("[Pool: ")
+	    .append("SZ=").append(size.get()).append("; ")
+	    .append("CC=").append(created.get()).append("; ")
+	    .append("DC=").append(destroyed.get()).append("; ")
+	    .append("WC=").append(waitCount).append("; ")
+	    .append("MSG=0");
+	if (configData != null) {
+	    sbuf.append(configData);
+	}
+	sbuf.append("]");
+    }
+
+    public int getNumBeansInPool() {
+	return size.get();
+    }
+
+    public int getTotalBeansCreated() {
+	return created.get();
+    }
+
+    public int getTotalBeansDestroyed() {
+	return destroyed.get();
+    }
+
+    public String getAllMonitoredAttrbuteValues() {
+        StringBuffer sbuf = new StringBuffer();
+        sbuf.append("createdCount=").append(created.get()).append(";")
+            .append("destroyedCount=").append(destroyed.get()).append(";")
+            .append("waitCount=").append(waitCount).append(";")
+            .append("size=").append(size.get()).append(";");
+        sbuf.append("maxPoolSize=").append(maxPoolSize).append(";");
+        return sbuf.toString();
+    }
+
+    public String getAllAttrValues() {
+        StringBuffer sbuf = new StringBuffer("[Pool-"+poolName+"] ");
+        sbuf.append("CC=").append(created.get()).append("; ")
+            .append("DC=").append(destroyed.get()).append("; ")
+            .append("CS=").append(size.get()).append("; ")
+            .append("SS=").append(steadyPoolSize).append("; ")
+            .append("MS=").append(maxPoolSize).append(";");
+        return sbuf.toString();
+    }
+
+    private class ReSizeWork
+        implements Runnable
+    {
+        public void run() {
+            try {
+                doResize();
+            } catch (Exception ex) {
+                _logger.log(Level.WARNING,
+                    "[Pool-"+poolName+"]: Exception during reSize", ex);
+            } finally {
+                addedResizeTask.set(false);
+            }
+        }
+    }
+
+    private class IdleBeanWork
+        implements Runnable
+    {
+        public void run() {
+            try {
+                doResize();
+            } catch (Exception ex) {
+            } finally {
+                addedIdleBeanWork.set(false);
+            }
+        }
+    }
+
+    private class PoolResizeTimerTask
+        extends java.util.TimerTask
+    {
+        PoolResizeTimerTask() {}
+
+        public void run() {
+            if (!addedIdleBeanWork.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                IdleBeanWork work = new IdleBeanWork();
+                addWork(work);
+            } catch (Exception ex) {
+                addedIdleBeanWork.set(false);
+                _logger.log(Level.WARNING,
+                            "[Pool-"+poolName+"]: Cannot perform "
+                            + " pool idle bean cleanup", ex);
+            }
+        }
+    } // End of class PoolResizeTimerTask
+
+}
@@ -60,6 +60,14 @@ public class EjbCacheProbeProvider {
             @ProbeParam("ejbName") String ejbName,
             @ProbeParam("success") boolean success) {}
 
+    @Probe(name="beanPassivationLatencyEvent")
+    public void ejbBeanPassivationLatencyEvent(
+            @ProbeParam("beanId") long beanId,
+            @ProbeParam("appName") String appName,
+            @ProbeParam("modName") String modName,
+            @ProbeParam("ejbName") String ejbName,
+            @ProbeParam("latency") long latency) {}
+
 
     @Probe(name="expiredSessionsRemovedEvent")
     public void ejbExpiredSessionsRemovedEvent(
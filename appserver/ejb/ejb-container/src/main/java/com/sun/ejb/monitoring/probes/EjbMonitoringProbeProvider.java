@@ -82,6 +82,15 @@ public class EjbMonitoringProbeProvider {
             @ProbeParam("exception") Throwable exception,
             @ProbeParam("method") String method_sig) {}
 
+    @Probe(name="methodLockWaitEvent", hidden=true)
+    public void ejbMethodLockWaitEvent(
+            @ProbeParam("beanId") long beanId,
+            @ProbeParam("appName") String appName,
+            @ProbeParam("modName") String modName,
+            @ProbeParam("ejbName") String ejbName,
+            @ProbeParam("method") String method_sig,
+            @ProbeParam("waitTime") long waitTime) {}
+
     @Probe(name="beanCreatedEvent")
     public void ejbBeanCreatedEvent(
             @ProbeParam("beanId") long beanId,
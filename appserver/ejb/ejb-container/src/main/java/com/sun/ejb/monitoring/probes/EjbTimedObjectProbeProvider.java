@@ -61,4 +61,8 @@ public class EjbTimedObjectProbeProvider {
     @Probe(name="timerDeliveredEvent")
     public void ejbTimerDeliveredEvent() {}
 
+    @Probe(name="timerDeliveryLagEvent")
+    public void ejbTimerDeliveryLagEvent(
+            @ProbeParam("lag") long lag) {}
+
 }
@@ -0,0 +1,121 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.ejb.monitoring.stats;
+
+import com.sun.ejb.containers.EjbAsyncInvocationManager;
+
+import org.glassfish.external.probe.provider.PluginPoint;
+import org.glassfish.external.probe.provider.StatsProviderManager;
+import org.glassfish.external.statistics.*;
+import org.glassfish.external.statistics.impl.*;
+import org.glassfish.gmbal.*;
+
+/**
+ * Statistics of the @Asynchronous invocations of the server. The values are
+ * read from the EjbAsyncInvocationManager when requested.
+ */
+@AMXMetadata(type="ejb-async-mon", group="monitoring", isSingleton=true)
+@ManagedObject
+@Description("Asynchronous Invocation Statistics")
+public class EjbAsyncStatsProvider {
+
+    private static final String ASYNC_NODE = "ejb/async-invocations";
+
+    private BoundedRangeStatisticImpl queuedTasks;
+    private BoundedRangeStatisticImpl runningTasks;
+    private CountStatisticImpl cancelledTasks = new CountStatisticImpl(
+            "TotalTasksCancelled", "count",
+            "Number of asynchronous invocations cancelled before they started running");
+
+    private EjbAsyncInvocationManager delegate;
+    private boolean registered = false;
+
+    public EjbAsyncStatsProvider(EjbAsyncInvocationManager delegate) {
+        this.delegate = delegate;
+
+        long now = System.currentTimeMillis();
+
+        queuedTasks = new BoundedRangeStatisticImpl(
+            0, 0, 0, Long.MAX_VALUE, 0,
+            "NumTasksQueued", "count",
+            "Number of asynchronous invocations waiting for a thread",
+            now, now);
+        runningTasks = new BoundedRangeStatisticImpl(
+            0, 0, 0, Long.MAX_VALUE, 0,
+            "NumTasksRunning", "count",
+            "Number of asynchronous invocations running",
+            now, now);
+    }
+
+    public void register() {
+        StatsProviderManager.register(EjbMonitoringUtils.EJB_MONITORING_NODE,
+                PluginPoint.SERVER, ASYNC_NODE, this);
+        registered = true;
+    }
+
+    public void unregister() {
+        if (registered) {
+            registered = false;
+            StatsProviderManager.unregister(this);
+        }
+    }
+
+    @ManagedAttribute(id="numtasksqueued")
+    @Description( "Number of asynchronous invocations waiting for a thread")
+    public RangeStatistic getNumTasksQueued() {
+        queuedTasks.setCurrent(delegate.getQueuedTaskCount());
+        return queuedTasks;
+    }
+
+    @ManagedAttribute(id="numtasksrunning")
+    @Description( "Number of asynchronous invocations running")
+    public RangeStatistic getNumTasksRunning() {
+        runningTasks.setCurrent(delegate.getRunningTaskCount());
+        return runningTasks;
+    }
+
+    @ManagedAttribute(id="totaltaskscancelled")
+    @Description( "Number of asynchronous invocations cancelled before they started running")
+    public CountStatistic getTotalTasksCancelled() {
+        cancelledTasks.setCount(delegate.getCancelledTaskCount());
+        return cancelledTasks;
+    }
+}
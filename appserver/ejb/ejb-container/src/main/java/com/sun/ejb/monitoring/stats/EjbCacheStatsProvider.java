@@ -87,6 +87,8 @@ public class EjbCacheStatsProvider {
     private BoundedRangeStatisticImpl cacheHits;
     private BoundedRangeStatisticImpl cacheMisses;
     private BoundedRangeStatisticImpl numBeans;
+    private BoundedRangeStatisticImpl passivationQueueDepth;
+    private TimeStatisticImpl passivationLatency;
 
     private static final Logger _logger = EjbContainerUtilImpl.getLogger();
 
@@ -120,6 +122,15 @@ public class EjbCacheStatsProvider {
             0, 0, 0, Long.MAX_VALUE, 0, "CacheMisses", "count", 
             "Provides the number of times a user request fails to find an EJB in associated EJB cache instance",
             now, now);
+        passivationQueueDepth = new BoundedRangeStatisticImpl(
+            0, 0, 0, Long.MAX_VALUE, 0, "PassivationQueueDepth", "count", 
+            "Provides the number of EJBs selected for passivation that are not passivated yet",
+            now, now);
+        passivationLatency = new TimeStatisticImpl(
+            0, 0, 0, 0, "PassivationLatency", "Milliseconds", 
+            "Provides the time in milliseconds between the selection of an EJB for passivation "
+                + "and the end of its passivation",
+            now, now);
     }
 
     public void register() {
@@ -159,6 +170,19 @@ public class EjbCacheStatsProvider {
         return numBeans;
     }
 
+    @ManagedAttribute(id="passivationqueuedepth")
+    @Description( "Number of EJBs waiting to be passivated")
+    public RangeStatistic getPassivationQueueDepth() {
+        passivationQueueDepth.setCurrent(delegate.getPassivationQueueDepth());
+        return passivationQueueDepth;
+    }
+
+    @ManagedAttribute(id="passivationlatency")
+    @Description( "Time (ms) between the selection of an EJB for passivation and the end of its passivation")
+    public TimeStatistic getPassivationLatency() {
+        return passivationLatency;
+    }
+
     @ManagedAttribute(id="numexpiredsessionsremoved")
     @Description( "Number of expired sessions removed by the cleanup thread.")
     public CountStatistic getNumExpiredSessionsRemoved() {
@@ -200,6 +224,18 @@ public class EjbCacheStatsProvider {
         }
     }
 
+    @ProbeListener("glassfish:ejb:cache:beanPassivationLatencyEvent")
+    public void ejbBeanPassivationLatencyEvent(
+            @ProbeParam("beanId") long beanId,
+            @ProbeParam("appName") String appName,
+            @ProbeParam("modName") String modName,
+            @ProbeParam("ejbName") String ejbName,
+            @ProbeParam("latency") long latency) {
+        if (this.beanId == beanId) {
+            passivationLatency.incrementCount(latency);
+        }
+    }
+
     @ProbeListener("glassfish:ejb:cache:expiredSessionsRemovedEvent")
     public void ejbExpiredSessionsRemovedEvent(
             @ProbeParam("beanId") long beanId,
@@ -59,4 +59,6 @@ public interface EjbCacheStatsProviderDelegate
     public int getNumPassivationSuccess();
 
     public int getMaxCacheSize();
+
+    public int getPassivationQueueDepth();
 }
@@ -86,6 +86,8 @@ public class EjbMethodStatsProvider {
 
     private TimeStatisticImpl methodStat = null;
 
+    private TimeStatisticImpl lockWaitStat = null;
+
     private static ThreadLocal  execThreadLocal = new ThreadLocal();
     private String mname = null;
     private boolean registered = false;
@@ -99,6 +101,12 @@ public class EjbMethodStatsProvider {
                 "Provides the number of times an operation was called, the total time "
                        + "that was spent during the invocation and so on", 
                 now, now);
+        lockWaitStat = new TimeStatisticImpl(
+                0, 0, 0, 0, "LockWaitTime", "Microseconds", 
+                "Provides the number of times a container-managed concurrency lock "
+                       + "was acquired for the operation, the total time spent "
+                       + "waiting for it and so on", 
+                now, now);
     }
 
     @ManagedAttribute(id="methodstatistic")
@@ -107,6 +115,12 @@ public class EjbMethodStatsProvider {
         return methodStat;
     }
 
+    @ManagedAttribute(id="lockwaittime")
+    @Description("Number of times a singleton lock is acquired for the operation; total time (microseconds) spent waiting for it, and so on.")
+    public TimeStatistic getLockWaitTime() {
+        return lockWaitStat;
+    }
+
     @ManagedAttribute(id="totalnumerrors")
     @Description("Number of times the method execution resulted in an exception")
     public CountStatistic getTotalNumErrors() {
@@ -152,6 +166,10 @@ public class EjbMethodStatsProvider {
         invocationStat.increment();
     }
 
+    void lockWait(long waitTime) {
+        lockWaitStat.incrementCount(waitTime);
+    }
+
     void methodEnd(boolean success) {
         List list = (ArrayList) execThreadLocal.get();
         if ( (list != null) && (list.size() > 0) ) {
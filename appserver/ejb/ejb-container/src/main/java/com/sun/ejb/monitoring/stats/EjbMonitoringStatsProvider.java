@@ -186,6 +186,22 @@ public abstract class EjbMonitoringStatsProvider {
         }
     }
 
+    @ProbeListener("glassfish:ejb:bean:methodLockWaitEvent")
+    public void ejbMethodLockWaitEvent(
+            @ProbeParam("beanId") long beanId,
+            @ProbeParam("appName") String appName,
+            @ProbeParam("modName") String modName,
+            @ProbeParam("ejbName") String ejbName,
+            @ProbeParam("method") String method_sig,
+            @ProbeParam("waitTime") long waitTime) {
+        if (this.beanId == beanId) {
+            EjbMethodStatsProvider monitor = methodMonitorMap.get(method_sig);
+            if (monitor != null) {
+                monitor.lockWait(waitTime);
+            }
+        }
+    }
+
     @ProbeListener("glassfish:ejb:bean:beanCreatedEvent")
     public void ejbBeanCreatedEvent(
             @ProbeParam("beanId") long beanId,
@@ -70,6 +70,8 @@ public class EjbTimedObjectStatsProvider {
     private CountStatisticImpl timerDeliveredStat = new CountStatisticImpl("NumTimersDelivered",
             "count", "Number of timers delivered by the system");
 
+    private TimeStatisticImpl timerLagStat = null;
+
     private static final Logger _logger = EjbContainerUtilImpl.getLogger();
 
     private String appName = null;
@@ -82,6 +84,13 @@ public class EjbTimedObjectStatsProvider {
         this.appName = appName;
         this.moduleName = moduleName;
         this.beanName = beanName;
+
+        long now = System.currentTimeMillis();
+        timerLagStat = new TimeStatisticImpl(
+                0, 0, 0, 0, "TimerDeliveryLag", "Milliseconds",
+                "Provides the time in milliseconds between the scheduled and "
+                       + "the actual delivery of the timers",
+                now, now);
     }
 
     public void register() {
@@ -118,6 +127,12 @@ public class EjbTimedObjectStatsProvider {
         timerDeliveredStat.increment();
     }
 
+    @ProbeListener("glassfish:ejb:timers:timerDeliveryLagEvent")
+    public void ejbTimerDeliveryLagEvent(
+            @ProbeParam("lag") long lag) {
+        timerLagStat.incrementCount(lag);
+    }
+
     @ManagedAttribute(id="numtimerscreated")
     @Description( "Number of timers created in the system")
     public CountStatistic getNumTimersCreated() {
@@ -135,4 +150,10 @@ public class EjbTimedObjectStatsProvider {
     public CountStatistic getNumTimersDelivered() {
         return timerDeliveredStat;
     }
+
+    @ManagedAttribute(id="timerdeliverylag")
+    @Description( "Time (ms) between the scheduled and the actual delivery of the timers")
+    public TimeStatistic getTimerDeliveryLag() {
+        return timerLagStat;
+    }
 }
@@ -52,6 +52,8 @@ public interface SFSBContainerCallback {
 
     public int getPassivationBatchCount();
 
+    public int getPassivationQueueDepth();
+
     public void invokePeriodically(long delay, long periodicity, Runnable target);
 
     public void activateEJB(Object sessionKey,
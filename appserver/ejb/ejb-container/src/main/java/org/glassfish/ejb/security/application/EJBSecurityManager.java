@@ -85,6 +85,7 @@ import org.glassfish.internal.api.Globals;
 import org.glassfish.security.common.Role;
 
 import com.sun.ejb.EjbInvocation;
+import com.sun.ejb.containers.util.MethodInvoker;
 import com.sun.enterprise.deployment.EjbIORConfigurationDescriptor;
 import com.sun.enterprise.deployment.MethodDescriptor;
 import com.sun.enterprise.deployment.MethodPermission;
@@ -1170,6 +1171,29 @@ public final class EJBSecurityManager
         return ret;
     }
 
+    /**
+     * Same as invoke(Method, boolean, Object, Object[]), except that when
+     * no System Security Manager is installed the bean class method is
+     * called through the given invoker instead of through reflection.
+     *
+     * @param invoker the direct-call invoker of beanClassMethod, may be null
+     */
+    public Object invoke(MethodInvoker invoker, Method beanClassMethod,
+                         boolean isLocal, Object o, Object[] oa)
+            throws Throwable {
+
+        if (invoker == null || System.getSecurityManager() != null) {
+            return invoke(beanClassMethod, isLocal, o, oa);
+        }
+
+        String oldCtxID = setPolicyContext(this.contextId);
+        try {
+            return invoker.invoke(o, oa);
+        } finally {
+            resetPolicyContext(oldCtxID, this.contextId);
+        }
+    }
+
     @Override
     public void resetPolicyContext() {
         if (System.getSecurityManager() == null) {
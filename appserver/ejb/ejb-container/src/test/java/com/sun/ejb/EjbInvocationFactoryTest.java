@@ -0,0 +1,343 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.ejb;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPMessage;
+
+import com.sun.ejb.containers.EJBLocalRemoteObject;
+import com.sun.ejb.containers.EjbAsyncTask;
+import com.sun.ejb.containers.EjbFutureTask;
+import com.sun.enterprise.deployment.Application;
+import org.glassfish.api.invocation.ComponentInvocation;
+import org.glassfish.ejb.deployment.descriptor.EjbBundleDescriptorImpl;
+import org.glassfish.ejb.deployment.descriptor.EjbSessionDescriptor;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests the recycling of the invocations of {@link EjbInvocationFactory}.
+ */
+public class EjbInvocationFactoryTest {
+
+    // The identity of the component, and the state set by the factory, which
+    // reset() keeps
+    private static final Set<String> KEPT_FIELDS = new HashSet<String>(
+        Arrays.asList("componentId", "container", "invocationType", "appName",
+                      "moduleName", "recycled", "checkRecycled"));
+
+    // Shadowed by EjbInvocation.authorized, and never set on an EjbInvocation
+    private static final String COMPONENT_INVOCATION_AUTH = "auth";
+
+    private Container container;
+
+    @Before
+    public void setUp() throws Exception {
+        Constructor<Application> appConstructor =
+            Application.class.getDeclaredConstructor();
+        appConstructor.setAccessible(true);
+        final Application application = appConstructor.newInstance();
+        application.setAppName("app");
+
+        final EjbBundleDescriptorImpl bundle = new EjbBundleDescriptorImpl() {
+            @Override
+            public String getModuleName() {
+                return "module";
+            }
+
+            @Override
+            public Application getApplication() {
+                return application;
+            }
+        };
+        final EjbSessionDescriptor desc = new EjbSessionDescriptor();
+        desc.setEjbBundleDescriptor(bundle);
+
+        container = (Container) Proxy.newProxyInstance(
+            Container.class.getClassLoader(), new Class[] {Container.class},
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getEjbDescriptor")) {
+                        return desc;
+                    }
+                    return null;
+                }
+            });
+    }
+
+    @Test
+    public void testResetClearsEveryField() throws Exception {
+        EjbInvocationFactory factory = createFactory(EjbInvocationFactory.RECYCLE_TRUE);
+        EjbInvocation fresh = factory.create();
+        EjbInvocation inv = factory.create();
+
+        for (Field field : fieldsOf(inv)) {
+            if (!KEPT_FIELDS.contains(field.getName())) {
+                field.set(inv, testValue(field, inv));
+            }
+        }
+
+        inv.reset();
+
+        for (Field field : fieldsOf(inv)) {
+            Object freshValue = field.get(fresh);
+            Object value = field.get(inv);
+            if (freshValue == fresh) {
+                assertSame(field.toString(), inv, value);
+            } else if (KEPT_FIELDS.contains(field.getName())) {
+                assertEquals(field.toString(), freshValue, value);
+            } else if (freshValue == null && value instanceof Map) {
+                // The registry is cleared rather than dropped
+                assertTrue(field.toString(), ((Map) value).isEmpty());
+            } else {
+                assertEquals(field.toString(), freshValue, value);
+            }
+        }
+        assertNull(inv.getAuth());
+    }
+
+    @Test
+    public void testRecycledInvocationIsReused() {
+        EjbInvocationFactory factory = createFactory(EjbInvocationFactory.RECYCLE_TRUE);
+        EjbInvocation inv = factory.create();
+        inv.methodParams = new Object[] {"param"};
+        inv.setAuth(true);
+
+        factory.recycle(inv);
+        assertSame(inv, factory.create());
+        assertNull(inv.getParameters());
+        assertNull(inv.getAuth());
+
+        // Taken out of its slot
+        assertNotSame(inv, factory.create());
+    }
+
+    @Test
+    public void testEscapedInvocationIsNotReused() {
+        EjbInvocationFactory factory = createFactory(EjbInvocationFactory.RECYCLE_TRUE);
+        EjbInvocation inv = factory.create();
+        inv.methodParams = new Object[] {"param"};
+        inv.setEjbFutureTask(
+            new EjbFutureTask<Object>(new EjbAsyncTask<Object>(), null));
+        assertTrue(inv.isEscaped());
+
+        factory.recycle(inv);
+        assertNotSame(inv, factory.create());
+        assertEquals(1, inv.getParameters().length);
+    }
+
+    @Test
+    public void testNoReuseByDefault() {
+        EjbInvocationFactory factory = createFactory(null);
+        EjbInvocation inv = factory.create();
+        inv.methodParams = new Object[] {"param"};
+
+        factory.recycle(inv);
+        assertNotSame(inv, factory.create());
+        assertEquals(1, inv.getParameters().length);
+
+        factory = createFactory(EjbInvocationFactory.RECYCLE_FALSE);
+        inv = factory.create();
+        factory.recycle(inv);
+        assertNotSame(inv, factory.create());
+    }
+
+    @Test
+    public void testClearDropsRecycledInvocations() {
+        EjbInvocationFactory factory = createFactory(EjbInvocationFactory.RECYCLE_TRUE);
+        EjbInvocation inv = factory.create();
+
+        factory.clear();
+        factory.recycle(inv);
+        assertNotSame(inv, factory.create());
+    }
+
+    @Test
+    public void testCheckModeDetectsUseAfterRecycle() throws Exception {
+        EjbInvocationFactory factory = createFactory(EjbInvocationFactory.RECYCLE_CHECK);
+        EjbInvocation inv = factory.create();
+        inv.methodParams = new Object[] {"param"};
+        inv.method = Object.class.getMethod("toString");
+        assertEquals(1, inv.getParameters().length);
+
+        factory.recycle(inv);
+        assertNotSame(inv, factory.create());
+
+        try {
+            inv.getParameters();
+            fail("getParameters() after recycle");
+        } catch (IllegalStateException ex) {
+        }
+        try {
+            inv.setParameters(new Object[] {"other"});
+            fail("setParameters() after recycle");
+        } catch (IllegalStateException ex) {
+        }
+        try {
+            inv.getMethod();
+            fail("getMethod() after recycle");
+        } catch (IllegalStateException ex) {
+        }
+        try {
+            inv.getContextData();
+            fail("getContextData() after recycle");
+        } catch (IllegalStateException ex) {
+        }
+    }
+
+    @Test
+    public void testNoCheckOutsideCheckMode() {
+        EjbInvocationFactory factory = createFactory(EjbInvocationFactory.RECYCLE_FALSE);
+        EjbInvocation inv = factory.create();
+        inv.methodParams = new Object[] {"param"};
+
+        // Only the check mode fails on a recycled invocation
+        inv.setRecycled(true);
+        assertEquals(1, inv.getParameters().length);
+        assertEquals(Collections.emptyMap(), inv.getContextData());
+    }
+
+    private EjbInvocationFactory createFactory(String mode) {
+        EjbInvocationFactory factory = new EjbInvocationFactory("compEnvId", container);
+        if (mode != null) {
+            factory.setRecycleMode(mode);
+        }
+        return factory;
+    }
+
+    /**
+     * @return the instance fields of EjbInvocation and ComponentInvocation.
+     */
+    private static Set<Field> fieldsOf(EjbInvocation inv) {
+        Set<Field> fields = new HashSet<Field>();
+        for (Class<?> c = inv.getClass(); c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isFinal(modifiers)
+                        || field.isSynthetic()) {
+                    continue;
+                }
+                if (c == ComponentInvocation.class
+                        && field.getName().equals(COMPONENT_INVOCATION_AUTH)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * @return a value of the type of the field that differs from its value
+     * in a new invocation.
+     */
+    private static Object testValue(Field field, EjbInvocation inv) throws Exception {
+        Class<?> type = field.getType();
+        if (type == boolean.class) {
+            return !field.getBoolean(inv);
+        } else if (type == int.class || type == Integer.class) {
+            return 7;
+        } else if (type == long.class) {
+            return 7L;
+        } else if (type == Boolean.class) {
+            return Boolean.TRUE;
+        } else if (type == Object.class) {
+            return new Object();
+        } else if (type == Object[].class) {
+            return new Object[] {"param"};
+        } else if (type == String.class) {
+            return "value";
+        } else if (type == Class.class) {
+            return String.class;
+        } else if (type == Method.class) {
+            return Object.class.getMethod("toString");
+        } else if (type == Throwable.class) {
+            return new Exception();
+        } else if (type == ClassLoader.class) {
+            return new URLClassLoader(new URL[0]);
+        } else if (type == Map.class) {
+            Map<Object, Object> map = new HashMap<Object, Object>();
+            map.put("key", "value");
+            return map;
+        } else if (type == InvocationInfo.class) {
+            return new InvocationInfo();
+        } else if (type == EjbFutureTask.class) {
+            return new EjbFutureTask<Object>(new EjbAsyncTask<Object>(), null);
+        } else if (type == EJBLocalRemoteObject.class) {
+            return new EJBLocalRemoteObject() {};
+        } else if (type == SOAPMessage.class) {
+            return MessageFactory.newInstance().createMessage();
+        } else if (type.isInterface()) {
+            return Proxy.newProxyInstance(type.getClassLoader(),
+                new Class[] {type}, new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return null;
+                    }
+                });
+        }
+        fail("No test value for " + field);
+        return null;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.ejb.containers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests {@link EJBTimerWheel}, with a wheel of 8 ticks of 10 ms, so
+ * that it wraps around every 80 ms.
+ */
+public class EJBTimerWheelTest {
+
+    private static final long TICK_MILLIS = 10;
+
+    private static final int WHEEL_SIZE = 8;
+
+    // Upper bound of the delivery delay, on a loaded machine
+    private static final long MAX_LATE_MILLIS = 2000;
+
+    private EJBTimerWheel wheel;
+
+    @Before
+    public void setUp() {
+        wheel = new EJBTimerWheel("EJBTimerWheelTest", TICK_MILLIS, WHEEL_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        long[] delays = { 0, 5, 25, 79, 80, 81, 250 };
+        List<Task> tasks = new ArrayList<Task>();
+        CountDownLatch done = new CountDownLatch(delays.length);
+        long now = System.currentTimeMillis();
+        for (long delay : delays) {
+            Task task = new Task(done, null);
+            task.schedule(wheel, now + delay);
+            tasks.add(task);
+        }
+
+        assertTrue(done.await(250 + MAX_LATE_MILLIS, TimeUnit.MILLISECONDS));
+        for (Task task : tasks) {
+            task.assertRunOnTime();
+        }
+    }
+
+    @Test
+    public void testWraparound() throws Exception {
+        // Timeouts in the same bucket, one to three revolutions apart
+        long[] delays = { 265, 25, 185, 105 };
+        List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        List<Task> tasks = new ArrayList<Task>();
+        CountDownLatch done = new CountDownLatch(delays.length);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < delays.length; i++) {
+            Task task = new Task(done, order, i);
+            task.schedule(wheel, now + delays[i]);
+            tasks.add(task);
+        }
+
+        assertTrue(done.await(265 + MAX_LATE_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(Integer.valueOf(1), order.get(0));
+        assertEquals(Integer.valueOf(3), order.get(1));
+        assertEquals(Integer.valueOf(2), order.get(2));
+        assertEquals(Integer.valueOf(0), order.get(3));
+        for (Task task : tasks) {
+            task.assertRunOnTime();
+        }
+    }
+
+    @Test
+    public void testPastExpiration() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        Task task = new Task(done, null);
+        task.schedule(wheel, System.currentTimeMillis() - 1000);
+
+        assertTrue(done.await(MAX_LATE_MILLIS, TimeUnit.MILLISECONDS));
+        task.assertRunOnTime();
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        Task cancelled = new Task(new CountDownLatch(1), null);
+        EJBTimerWheel.Timeout timeout =
+            cancelled.schedule(wheel, System.currentTimeMillis() + 30);
+        Task after = new Task(done, null);
+        after.schedule(wheel, System.currentTimeMillis() + 120);
+
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.cancel());
+
+        assertTrue(done.await(120 + MAX_LATE_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(0, cancelled.runs.get());
+    }
+
+    @Test
+    public void testCancelAfterExpiration() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        Task task = new Task(done, null);
+        EJBTimerWheel.Timeout timeout =
+            task.schedule(wheel, System.currentTimeMillis());
+
+        assertTrue(done.await(MAX_LATE_MILLIS, TimeUnit.MILLISECONDS));
+        assertFalse(timeout.cancel());
+        assertFalse(timeout.isCancelled());
+        assertEquals(1, task.runs.get());
+    }
+
+    @Test
+    public void testFailingTask() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        long now = System.currentTimeMillis();
+        wheel.schedule(new Runnable() {
+            public void run() {
+                throw new IllegalStateException("expected");
+            }
+        }, now);
+        Task task = new Task(done, null);
+        task.schedule(wheel, now + 30);
+
+        // The worker thread goes on
+        assertTrue(done.await(30 + MAX_LATE_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        Task task = new Task(new CountDownLatch(1), null);
+        task.schedule(wheel, System.currentTimeMillis() + 20);
+        wheel.stop();
+        Task stopped = new Task(new CountDownLatch(1), null);
+        stopped.schedule(wheel, System.currentTimeMillis());
+
+        Thread.sleep(100);
+        assertEquals(0, task.runs.get());
+        assertEquals(0, stopped.runs.get());
+    }
+
+    /**
+     * Task recording when it runs.
+     */
+    private static class Task implements Runnable {
+
+        private final CountDownLatch done;
+
+        private final List<Integer> order;
+
+        private final int id;
+
+        private final AtomicInteger runs = new AtomicInteger();
+
+        // When the task is due, that is the expiration unless it is past
+        private volatile long dueMillis;
+
+        private volatile long runMillis;
+
+        Task(CountDownLatch done, List<Integer> order) {
+            this(done, order, 0);
+        }
+
+        Task(CountDownLatch done, List<Integer> order, int id) {
+            this.done = done;
+            this.order = order;
+            this.id = id;
+        }
+
+        EJBTimerWheel.Timeout schedule(EJBTimerWheel wheel, long expiration) {
+            dueMillis = Math.max(expiration, System.currentTimeMillis());
+            return wheel.schedule(this, expiration);
+        }
+
+        public void run() {
+            runMillis = System.currentTimeMillis();
+            runs.incrementAndGet();
+            if (order != null) {
+                order.add(id);
+            }
+            done.countDown();
+        }
+
+        /**
+         * Checks that the task ran once, never before it was due. The
+         * millisecond clock may be up to 1 ms behind the nanosecond one
+         * the wheel uses.
+         */
+        void assertRunOnTime() {
+            assertEquals(1, runs.get());
+            assertTrue("ran " + (dueMillis - runMillis) + " ms early",
+                       runMillis >= dueMillis - 1);
+            assertTrue("ran " + (runMillis - dueMillis) + " ms late",
+                       runMillis <= dueMillis + MAX_LATE_MILLIS);
+        }
+    }
+}
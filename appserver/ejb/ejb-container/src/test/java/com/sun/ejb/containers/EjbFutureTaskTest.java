@@ -0,0 +1,191 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.ejb.containers;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests the dispatch states of an {@link EjbFutureTask}, and the task
+ * counts they maintain in the {@link EjbAsyncInvocationManager}.
+ */
+public class EjbFutureTaskTest {
+
+    private EjbAsyncInvocationManager manager;
+
+    @Before
+    public void setUp() {
+        manager = new EjbAsyncInvocationManager();
+    }
+
+    @Test
+    public void testCancelBeforeQueued() throws Exception {
+        EjbFutureTask<Object> future = createFuture();
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+
+        // Never submitted nor run
+        assertFalse(future.markQueued());
+        assertFalse(future.markStarted());
+        assertCounts(0, 0, 0);
+        assertGetCancelled(future);
+    }
+
+    @Test
+    public void testCancelQueued() throws Exception {
+        EjbFutureTask<Object> future = createFuture();
+        assertTrue(future.markQueued());
+        assertCounts(1, 0, 0);
+
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        assertCounts(0, 0, 1);
+
+        // The executor does not run it
+        assertFalse(future.markStarted());
+        assertCounts(0, 0, 1);
+        assertFalse(future.cancel(true));
+        assertEquals(1, manager.getCancelledTaskCount());
+        assertGetCancelled(future);
+    }
+
+    @Test
+    public void testCancelRunning() throws Exception {
+        EjbFutureTask<Object> future = createFuture();
+        assertTrue(future.markQueued());
+        assertTrue(future.markStarted());
+        assertCounts(0, 1, 0);
+
+        // A running task cannot be cancelled
+        assertFalse(future.cancel(false));
+        assertFalse(future.isCancelled());
+        assertTrue(future.isDone());
+        assertCounts(0, 1, 0);
+
+        future.markFinished();
+        assertCounts(0, 0, 0);
+        assertFalse(future.cancel(false));
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void testFinishedClearsInterrupt() {
+        EjbFutureTask<Object> future = createFuture();
+        assertTrue(future.markQueued());
+        assertTrue(future.markStarted());
+        Thread.currentThread().interrupt();
+        future.markFinished();
+        assertFalse(Thread.interrupted());
+        assertCounts(0, 0, 0);
+    }
+
+    @Test
+    public void testCancelRacingStart() throws Exception {
+        int cancelled = 0;
+        for (int i = 0; i < 2000; i++) {
+            final EjbFutureTask<Object> future = createFuture();
+            assertTrue(future.markQueued());
+
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicBoolean started = new AtomicBoolean();
+            Thread executor = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (future.markStarted()) {
+                        started.set(true);
+                        future.markFinished();
+                    }
+                }
+            };
+            executor.start();
+            start.countDown();
+            boolean wasCancelled = future.cancel(false);
+            executor.join();
+
+            // Either the task is cancelled, or it runs, never both
+            assertTrue(wasCancelled != started.get());
+            assertEquals(wasCancelled, future.isCancelled());
+            if (wasCancelled) {
+                cancelled++;
+            }
+        }
+        assertCounts(0, 0, cancelled);
+    }
+
+    // -------------------------------------------------------- Private Methods
+
+    private EjbFutureTask<Object> createFuture() {
+        return new EjbFutureTask<Object>(new EjbAsyncTask<Object>(), manager);
+    }
+
+    private void assertCounts(int queued, int running, long cancelled) {
+        assertEquals(queued, manager.getQueuedTaskCount());
+        assertEquals(running, manager.getRunningTaskCount());
+        assertEquals(cancelled, manager.getCancelledTaskCount());
+    }
+
+    private static void assertGetCancelled(EjbFutureTask<Object> future)
+            throws Exception {
+        try {
+            future.get();
+            fail("get() of a cancelled task returned");
+        } catch (CancellationException e) {
+            // Expected
+        }
+    }
+
+}
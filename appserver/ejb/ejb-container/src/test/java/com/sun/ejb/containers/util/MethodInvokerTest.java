@@ -0,0 +1,390 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.ejb.containers.util;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests {@link MethodInvoker}, which must behave as Method.invoke(),
+ * whether it calls the method handle or falls back to reflection.
+ */
+public class MethodInvokerTest {
+
+    private final Bean bean = new Bean();
+
+    @Test
+    public void testMethodHandlePath() throws Exception {
+        Method m = method("isCalledReflectively", int.class);
+        assertFalse((Boolean) invoker(m).invoke(bean, new Object[] {1}));
+    }
+
+    @Test
+    public void testReflectionFallback() throws Exception {
+        Method m = method("isCalledReflectively", int.class);
+
+        // Widening conversion from short to int
+        assertTrue((Boolean) invoker(m).invoke(bean, new Object[] {(short) 1}));
+        assertSameOutcome(m, bean, (short) 1);
+        assertSameOutcome(m, bean, 'a');
+    }
+
+    @Test
+    public void testPrimitives() throws Exception {
+        Method m = method("add", int.class, long.class);
+        assertEquals(3L, invoker(m).invoke(bean, new Object[] {1, 2L}));
+        assertSameOutcome(m, bean, 1, 2L);
+        assertSameOutcome(m, bean, 1, 2);
+        assertSameOutcome(m, bean, (byte) 1, 'b');
+        assertSameOutcome(m, bean, 1L, 2L);
+        assertSameOutcome(m, bean, 1, null);
+        assertSameOutcome(m, bean, "1", 2L);
+
+        Method not = method("not", boolean.class);
+        assertEquals(Boolean.FALSE, invoker(not).invoke(bean, new Object[] {true}));
+        assertSameOutcome(not, bean, true);
+
+        Method half = method("half", double.class);
+        assertSameOutcome(half, bean, 3.0d);
+        assertSameOutcome(half, bean, 3.0f);
+        assertSameOutcome(half, bean, 3);
+    }
+
+    @Test
+    public void testVoidAndStatic() throws Exception {
+        Method run = method("run");
+        assertNull(invoker(run).invoke(bean, null));
+        assertNull(invoker(run).invoke(bean, new Object[0]));
+        assertEquals(2, bean.runs);
+        assertSameOutcome(run, bean);
+
+        Method max = method("max", int.class, int.class);
+        assertEquals(2, invoker(max).invoke(null, new Object[] {1, 2}));
+        assertSameOutcome(max, null, 1, 2);
+        assertSameOutcome(max, bean, 1, 2);
+        assertSameOutcome(max, "not a bean", 1, 2);
+    }
+
+    @Test
+    public void testReferenceArguments() throws Exception {
+        Method m = method("concat", String.class, Object.class);
+        assertEquals("ab", invoker(m).invoke(bean, new Object[] {"a", "b"}));
+        assertSameOutcome(m, bean, "a", 1);
+        assertSameOutcome(m, bean, null, null);
+        assertSameOutcome(m, bean, 1, "b");
+    }
+
+    @Test
+    public void testVarargs() throws Exception {
+        Method m = method("join", String.class, String[].class);
+        assertEquals("a,b", invoker(m).invoke(bean,
+            new Object[] {",", new String[] {"a", "b"}}));
+        assertSameOutcome(m, bean, ",", new String[] {"a", "b"});
+        assertSameOutcome(m, bean, ",", new String[0]);
+        assertSameOutcome(m, bean, ",", null);
+
+        // Varargs are not collected, by Method.invoke() either
+        assertSameOutcome(m, bean, ",", "a", "b");
+        assertSameOutcome(m, bean, ",", "a");
+        assertSameOutcome(m, bean, ",");
+        assertSameOutcome(m, bean, ",", new Object[] {"a"});
+
+        Method count = method("count", Object[].class);
+        assertSameOutcome(count, bean, (Object) new Object[] {"a", "b"});
+        assertSameOutcome(count, bean, (Object) new String[] {"a"});
+    }
+
+    @Test
+    public void testCheckedException() throws Exception {
+        Method m = method("fail", Throwable.class);
+        IOException ex = new IOException();
+        assertSame(ex, invokeTargetException(m, bean, ex));
+        assertSameOutcome(m, bean, new IOException());
+        assertSameOutcome(m, bean, new Exception());
+    }
+
+    @Test
+    public void testUncheckedException() throws Exception {
+        Method m = method("fail", Throwable.class);
+        IllegalArgumentException ex = new IllegalArgumentException();
+        assertSame(ex, invokeTargetException(m, bean, ex));
+        assertSameOutcome(m, bean, new IllegalArgumentException());
+        assertSameOutcome(m, bean, new NullPointerException());
+        assertSameOutcome(m, bean, new ClassCastException());
+        assertSameOutcome(m, bean, new StackOverflowError());
+
+        // Thrown by the method, not by the call
+        assertSameOutcome(method("fail", Throwable.class), bean, (Object) null);
+        assertSameOutcome(method("length", String.class), bean, (Object) null);
+    }
+
+    @Test
+    public void testInvocationTargetExceptionIsWrapped() throws Exception {
+        Method m = method("fail", Throwable.class);
+        InvocationTargetException ex = new InvocationTargetException(null);
+        assertSame(ex, invokeTargetException(m, bean, ex));
+        assertSameOutcome(m, bean, new InvocationTargetException(null));
+    }
+
+    @Test
+    public void testCallErrors() throws Exception {
+        Method m = method("concat", String.class, Object.class);
+        assertSameOutcome(m, null, "a", "b");
+        assertSameOutcome(m, "not a bean", "a", "b");
+        assertSameOutcome(m, bean, "a");
+        assertSameOutcome(m, bean, "a", "b", "c");
+        assertSameOutcome(m, bean);
+    }
+
+    @Test
+    public void testNonPublicMethods() throws Exception {
+        for (String name : new String[] {"privateName", "packageName",
+                                         "protectedName"}) {
+            Method m = Bean.class.getDeclaredMethod(name);
+            assertEquals(name, invoker(m).invoke(bean, null));
+            assertSameOutcome(m, bean);
+        }
+
+        Method m = PrivateBean.class.getDeclaredMethod("name");
+        assertEquals("private", invoker(m).invoke(new PrivateBean(), null));
+        assertSameOutcome(m, new PrivateBean());
+    }
+
+    @Test
+    public void testInheritedMethod() throws Exception {
+        Method m = method("run");
+        SubBean sub = new SubBean();
+        invoker(m).invoke(sub, null);
+        assertEquals(2, sub.runs);
+        assertSameOutcome(m, new SubBean());
+
+        Method toString = Object.class.getMethod("toString");
+        assertEquals("bean", invoker(toString).invoke(bean, null));
+        assertSameOutcome(toString, bean);
+    }
+
+    @Test
+    public void testIsFor() throws Exception {
+        Method m = method("run");
+        MethodInvoker invoker = invoker(m);
+        assertSame(m, invoker.getMethod());
+        assertTrue(invoker.isFor(m));
+        assertTrue(invoker.isFor(method("run")));
+        assertFalse(invoker.isFor(method("not", boolean.class)));
+        assertNull(MethodInvoker.create(null));
+    }
+
+    private static Method method(String name, Class<?>... parameterTypes)
+            throws Exception {
+        return Bean.class.getMethod(name, parameterTypes);
+    }
+
+    private static MethodInvoker invoker(Method m) {
+        MethodInvoker invoker = MethodInvoker.create(m);
+        assertNotNull(invoker);
+        return invoker;
+    }
+
+    private static Throwable invokeTargetException(Method m, Object target,
+            Object... args) throws Exception {
+        try {
+            invoker(m).invoke(target, args);
+            fail("No InvocationTargetException");
+            return null;
+        } catch (InvocationTargetException ex) {
+            return ex.getCause();
+        }
+    }
+
+    /**
+     * Invokes the method through an invoker and through reflection, and
+     * checks that both return equal results or throw the same exceptions.
+     */
+    private static void assertSameOutcome(Method m, Object target,
+            Object... args) throws Exception {
+        // The invoker makes the method accessible
+        MethodInvoker invoker = invoker(m);
+
+        Object expected = null;
+        Throwable expectedException = null;
+        try {
+            expected = m.invoke(target, args);
+        } catch (Throwable t) {
+            expectedException = t;
+        }
+
+        Object actual = null;
+        Throwable actualException = null;
+        try {
+            actual = invoker.invoke(target, args);
+        } catch (Throwable t) {
+            actualException = t;
+        }
+
+        String call = m.getName() + Arrays.deepToString(args);
+        if (expectedException == null) {
+            assertNull(call + " threw " + actualException, actualException);
+            assertEquals(call, expected, actual);
+        } else {
+            assertNotNull(call + " returned " + actual, actualException);
+            assertEquals(call, expectedException.getClass(),
+                         actualException.getClass());
+            Throwable expectedCause = expectedException.getCause();
+            Throwable actualCause = actualException.getCause();
+            if (expectedException instanceof InvocationTargetException) {
+                assertEquals(call, expectedCause.getClass(),
+                             actualCause.getClass());
+                if (args.length > 0 && args[0] == expectedCause) {
+                    assertSame(call, expectedCause, actualCause);
+                }
+            }
+        }
+    }
+
+    public static class Bean {
+
+        int runs;
+
+        // Looks for Method.invoke() between this method and its invoker
+        public boolean isCalledReflectively(int i) {
+            for (StackTraceElement e : new Throwable().getStackTrace()) {
+                if (e.getClassName().equals(MethodInvoker.class.getName())) {
+                    break;
+                }
+                if (e.getClassName().equals(Method.class.getName())
+                        && e.getMethodName().equals("invoke")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public long add(int i, long l) {
+            return i + l;
+        }
+
+        public boolean not(boolean b) {
+            return !b;
+        }
+
+        public double half(double d) {
+            return d / 2;
+        }
+
+        public void run() {
+            runs++;
+        }
+
+        public static int max(int i, int j) {
+            return Math.max(i, j);
+        }
+
+        public String concat(String s, Object o) {
+            return s + o;
+        }
+
+        public String join(String separator, String... strings) {
+            StringBuilder sb = new StringBuilder();
+            for (String s : strings) {
+                if (sb.length() > 0) {
+                    sb.append(separator);
+                }
+                sb.append(s);
+            }
+            return sb.toString();
+        }
+
+        public int count(Object... objects) {
+            return objects.length;
+        }
+
+        public void fail(Throwable t) throws Throwable {
+            throw t;
+        }
+
+        public int length(String s) {
+            return s.length();
+        }
+
+        private String privateName() {
+            return "privateName";
+        }
+
+        String packageName() {
+            return "packageName";
+        }
+
+        protected String protectedName() {
+            return "protectedName";
+        }
+
+        public String toString() {
+            return "bean";
+        }
+    }
+
+    public static class SubBean extends Bean {
+
+        public void run() {
+            runs += 2;
+        }
+    }
+
+    private static class PrivateBean {
+
+        private String name() {
+            return "private";
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.ejb.containers.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests {@link MethodMap}.
+ */
+public class MethodMapTest {
+
+    @Test
+    public void testGet() throws Exception {
+        MethodMap map = createMap();
+
+        assertEquals("run", map.get(method("run")));
+        assertEquals("call", map.get(method("call", int.class)));
+        assertEquals("call(String)", map.get(method("call", String.class)));
+        assertEquals("call", map.get(method("call", int.class), 1));
+        assertNull(map.get(method("other")));
+        assertNull(map.get(Object.class.getMethod("toString")));
+        assertNull(map.get("run"));
+
+        // Same signature, other declaring class
+        assertNull(map.get(Impl.class.getMethod("run")));
+    }
+
+    @Test
+    public void testIdentityTable() throws Exception {
+        MethodMap map = createMap();
+        Method run = method("run");
+        Method call = method("call", String.class);
+
+        assertEquals("run", map.get(run));
+        assertEquals(1, map.getIdentityCount());
+        assertEquals("run", map.get(run));
+        assertEquals(1, map.getIdentityCount());
+
+        // Resolved through the backing map, for overloads with the same
+        // number of parameters
+        assertEquals("call(String)", map.get(call));
+        assertEquals("call(String)", map.get(call));
+        assertEquals(2, map.getIdentityCount());
+
+        // An equal but different instance
+        Method otherRun = method("run");
+        assertNotSame(run, otherRun);
+        assertEquals("run", map.get(otherRun));
+        assertEquals(3, map.getIdentityCount());
+
+        // Not found methods are not added
+        map.get(method("other"));
+        assertEquals(3, map.getIdentityCount());
+    }
+
+    @Test
+    public void testIdentityTableCap() throws Exception {
+        MethodMap map = createMap();
+
+        // Callers that do not reuse their Method instances
+        List<Method> methods = new ArrayList<Method>();
+        for (int i = 0; i < 100; i++) {
+            Method run = method("run");
+            methods.add(run);
+            assertEquals("run", map.get(run));
+        }
+        int max = map.getIdentityCount();
+        assertTrue(max > 0 && max < 100);
+
+        // Lookups still work once the table is full
+        for (Method run : methods) {
+            assertEquals("run", map.get(run));
+        }
+        assertEquals("call", map.get(method("call", int.class)));
+        assertEquals("call(String)", map.get(method("call", String.class)));
+        assertEquals(max, map.getIdentityCount());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        MethodMap map = createMap();
+        Method run = method("run");
+        assertEquals("run", map.get(run));
+
+        map.clear();
+        assertNull(map.get(run));
+        assertNull(map.get(method("run")));
+        assertNull(map.get(method("call", int.class), 1));
+        assertEquals(0, map.getIdentityCount());
+        assertTrue(map.isEmpty());
+
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPut() throws Exception {
+        createMap().put(method("other"), "other");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNotMethodKey() {
+        Map<Object, Object> methods = new HashMap<Object, Object>();
+        methods.put("run", "run");
+        new MethodMap(methods);
+    }
+
+    private static MethodMap createMap() throws Exception {
+        Map<Method, String> methods = new HashMap<Method, String>();
+        methods.put(method("run"), "run");
+        methods.put(method("call", int.class), "call");
+        methods.put(method("call", String.class), "call(String)");
+        methods.put(method("call", int.class, int.class), "call(int, int)");
+        return new MethodMap(methods);
+    }
+
+    private static Method method(String name, Class<?>... parameterTypes)
+            throws Exception {
+        return Bean.class.getMethod(name, parameterTypes);
+    }
+
+    public interface Bean {
+
+        void run();
+
+        void call(int i);
+
+        void call(String s);
+
+        void call(int i, int j);
+
+        void other();
+    }
+
+    public static class Impl {
+
+        public void run() {
+        }
+    }
+}
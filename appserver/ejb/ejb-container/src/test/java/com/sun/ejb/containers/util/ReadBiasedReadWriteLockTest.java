@@ -0,0 +1,330 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.ejb.containers.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests {@link ReadBiasedReadWriteLock}.
+ */
+public class ReadBiasedReadWriteLockTest {
+
+    private ReadBiasedReadWriteLock lock;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        lock = new ReadBiasedReadWriteLock();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReentrantRead() {
+        lock.readLock().lock();
+        assertTrue(lock.readLock().tryLock());
+        assertEquals(2, lock.getReadHoldCount());
+        lock.readLock().unlock();
+        lock.readLock().unlock();
+        assertEquals(0, lock.getReadHoldCount());
+        try {
+            lock.readLock().unlock();
+            fail("Unlocked a read lock that was not held");
+        } catch (IllegalMonitorStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testReentrantWrite() {
+        lock.writeLock().lock();
+        assertTrue(lock.writeLock().tryLock());
+        lock.writeLock().unlock();
+        assertTrue(lock.isWriteLockedByCurrentThread());
+        lock.writeLock().unlock();
+        assertFalse(lock.isWriteLockedByCurrentThread());
+    }
+
+    @Test
+    public void testReadUnderOwnWriteLock() {
+        lock.writeLock().lock();
+        assertTrue(lock.readLock().tryLock());
+        assertEquals(1, lock.getReadHoldCount());
+        lock.writeLock().unlock();
+        lock.readLock().unlock();
+        assertEquals(0, lock.getReadHoldCount());
+
+        // The lock is free again for other threads
+        assertTrue(tryLockInOtherThread(lock.writeLock(), 0));
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        lock.readLock().lock();
+        try {
+            assertTrue(tryLockInOtherThread(lock.readLock(), 0));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Test
+    public void testReaderExcludesWriter() throws Exception {
+        lock.readLock().lock();
+        try {
+            assertFalse(tryLockInOtherThread(lock.writeLock(), 0));
+            assertFalse(tryLockInOtherThread(lock.writeLock(), 50));
+        } finally {
+            lock.readLock().unlock();
+        }
+        assertTrue(tryLockInOtherThread(lock.writeLock(), 0));
+    }
+
+    @Test
+    public void testWriterExcludesReaders() throws Exception {
+        lock.writeLock().lock();
+        Future<Boolean> reader;
+        try {
+            assertFalse(tryLockInOtherThread(lock.readLock(), 0));
+            assertFalse(tryLockInOtherThread(lock.readLock(), 50));
+            assertFalse(tryLockInOtherThread(lock.writeLock(), 50));
+
+            reader = lockInOtherThread(lock.readLock());
+            try {
+                reader.get(100, TimeUnit.MILLISECONDS);
+                fail("Read lock acquired while write locked");
+            } catch (TimeoutException e) {
+                // Expected
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        assertTrue(reader.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWriterWaitsForReaders() throws Exception {
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<?> reader = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                lock.readLock().lock();
+                try {
+                    locked.countDown();
+                    release.await();
+                } finally {
+                    lock.readLock().unlock();
+                }
+                return null;
+            }
+        });
+        locked.await();
+
+        Future<Boolean> writer = lockInOtherThread(lock.writeLock());
+        try {
+            writer.get(100, TimeUnit.MILLISECONDS);
+            fail("Write lock acquired while read locked");
+        } catch (TimeoutException e) {
+            // Expected
+        }
+        release.countDown();
+        reader.get(10, TimeUnit.SECONDS);
+        assertTrue(writer.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInterruptedReader() throws Exception {
+        final AtomicReference<Thread> readerThread =
+            new AtomicReference<Thread>();
+        lock.writeLock().lock();
+        Future<Boolean> reader;
+        try {
+            reader = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    readerThread.set(Thread.currentThread());
+                    try {
+                        lock.readLock().lockInterruptibly();
+                    } catch (InterruptedException e) {
+                        return false;
+                    }
+                    lock.readLock().unlock();
+                    return true;
+                }
+            });
+            while (readerThread.get() == null) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+            readerThread.get().interrupt();
+            assertFalse(reader.get(10, TimeUnit.SECONDS));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testNoCondition() {
+        lock.writeLock().newCondition();
+    }
+
+    @Test
+    public void testMutualExclusion() throws Exception {
+        final int threads = 8;
+        final AtomicInteger readers = new AtomicInteger();
+        final AtomicInteger writers = new AtomicInteger();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < threads; i++) {
+            final Random random = new Random(i);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int j = 0; j < 20000; j++) {
+                        if (random.nextInt(10) == 0) {
+                            lock.writeLock().lock();
+                            try {
+                                if (writers.incrementAndGet() != 1
+                                        || readers.get() != 0) {
+                                    failure.compareAndSet(null,
+                                        "Write lock not exclusive");
+                                }
+                                // Reentrant read under the write lock
+                                lock.readLock().lock();
+                                lock.readLock().unlock();
+                                writers.decrementAndGet();
+                            } finally {
+                                lock.writeLock().unlock();
+                            }
+                        } else {
+                            lock.readLock().lock();
+                            try {
+                                readers.incrementAndGet();
+                                if (writers.get() != 0) {
+                                    failure.compareAndSet(null,
+                                        "Read lock acquired under write lock");
+                                }
+                                readers.decrementAndGet();
+                            } finally {
+                                lock.readLock().unlock();
+                            }
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        assertNull(failure.get(), failure.get());
+        assertTrue(lock.writeLock().tryLock());
+        lock.writeLock().unlock();
+    }
+
+    // -------------------------------------------------------- Private Methods
+
+    private boolean tryLockInOtherThread(final Lock l, final long millis) {
+        try {
+            return executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    if (!l.tryLock(millis, TimeUnit.MILLISECONDS)) {
+                        return false;
+                    }
+                    l.unlock();
+                    return true;
+                }
+            }).get(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Future<Boolean> lockInOtherThread(final Lock l) {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                l.lock();
+                l.unlock();
+                return true;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,334 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.ejb.containers.util.cache;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.ejb.SessionContext;
+
+import com.sun.appserv.util.cache.CacheListener;
+import com.sun.ejb.spi.container.SFSBContainerCallback;
+import com.sun.ejb.spi.container.StatefulEJBContext;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests {@link SampledLruSessionCache}.
+ */
+public class SampledLruSessionCacheTest {
+
+    // At most threshold = MAX_ENTRIES + 1 active entries
+    private static final int MAX_ENTRIES = 4;
+
+    private SampledLruSessionCache cache;
+
+    private List<Object> trimmed;
+
+    @Before
+    public void setUp() {
+        cache = new SampledLruSessionCache("test", new TestContainer(), 0, 0);
+        cache.init(MAX_ENTRIES, 1.0f, null);
+        trimmed = Collections.synchronizedList(new ArrayList<Object>());
+        cache.addCacheListener(new CacheListener() {
+            @Override
+            public void trimEvent(Object key, Object value) {
+                trimmed.add(key);
+            }
+        });
+    }
+
+    @Test
+    public void testOverflowTrimsLeastRecentlyUsed() throws Exception {
+        TestContext[] contexts = putAll("key", MAX_ENTRIES + 1);
+        assertTrue(trimmed.isEmpty());
+
+        Thread.sleep(5);
+        assertSame(contexts[0], cache.get("key0"));
+        Thread.sleep(5);
+        cache.put("key" + (MAX_ENTRIES + 1), new TestContext());
+
+        assertEquals(Collections.singletonList("key1"), trimmed);
+        assertEquals(1, cache.getTrimCount());
+        // A victim stays in the cache until it is passivated
+        assertEquals(MAX_ENTRIES + 2, cache.getEntryCount());
+    }
+
+    @Test
+    public void testPassivateVictim() throws Exception {
+        TestContext[] contexts = putAll("key", MAX_ENTRIES + 2);
+        assertEquals(Collections.singletonList("key0"), trimmed);
+
+        assertTrue(cache.passivateEJB(contexts[0], "key0"));
+        assertEquals(MAX_ENTRIES + 1, cache.getEntryCount());
+        assertEquals(1, cache.getRemovalCount());
+        assertNull(cache.get("key0"));
+
+        // Passivating an entry that is not a victim fails
+        assertFalse(cache.passivateEJB(contexts[1], "key1"));
+        assertSame(contexts[1], cache.get("key1"));
+    }
+
+    @Test
+    public void testVictimAccessedBeforePassivation() throws Exception {
+        TestContext[] contexts = putAll("key", MAX_ENTRIES + 2);
+        assertEquals(Collections.singletonList("key0"), trimmed);
+
+        // The victim becomes active again, so another one is selected
+        Thread.sleep(5);
+        assertSame(contexts[0], cache.get("key0"));
+        assertEquals(1, cache.getNumVictimsAccessed());
+        assertEquals(2, trimmed.size());
+        assertEquals("key1", trimmed.get(1));
+
+        assertFalse(cache.passivateEJB(contexts[0], "key0"));
+        assertSame(contexts[0], cache.get("key0"));
+        assertTrue(cache.passivateEJB(contexts[1], "key1"));
+        assertNull(cache.get("key1"));
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        TestContext[] contexts = putAll("key", 2);
+        assertNull(cache.remove("key0"));
+        assertNull(cache.get("key0"));
+        assertSame(contexts[1], cache.get("key1"));
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(1, cache.getRemovalCount());
+
+        // A removed entry is no longer counted as active
+        putAll("other", MAX_ENTRIES);
+        assertTrue(trimmed.isEmpty());
+        putAll("last", 1);
+        assertEquals(Collections.singletonList("key1"), trimmed);
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        // Victims are passivated as soon as they are selected
+        cache.addCacheListener(new CacheListener() {
+            @Override
+            public void trimEvent(Object key, Object value) {
+                try {
+                    cache.passivateEJB((StatefulEJBContext) value,
+                                       (String) key);
+                } catch (NotSerializableException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            final Random random = new Random(i);
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 20000; j++) {
+                            String key = "key" + random.nextInt(64);
+                            switch (random.nextInt(3)) {
+                            case 0:
+                                cache.put(key, new TestContext());
+                                break;
+                            case 1:
+                                cache.get(key);
+                                break;
+                            default:
+                                cache.remove(key);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            };
+            thread.start();
+            workers.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        assertNull(failure.get());
+
+        // Once quiescent, the cache trims back to its threshold
+        cache.put("last", new TestContext());
+        assertTrue(cache.getEntryCount() <= MAX_ENTRIES + 1);
+        int values = 0;
+        for (Iterator iter = cache.values(); iter.hasNext(); ) {
+            iter.next();
+            values++;
+        }
+        assertEquals(cache.getEntryCount(), values);
+    }
+
+    // -------------------------------------------------------- Private Methods
+
+    /**
+     * Puts the given number of entries, with keys prefix0, prefix1...
+     * from the least to the most recently used.
+     */
+    private TestContext[] putAll(String prefix, int count)
+            throws InterruptedException {
+        TestContext[] contexts = new TestContext[count];
+        for (int i = 0; i < count; i++) {
+            contexts[i] = new TestContext();
+            cache.put(prefix + i, contexts[i]);
+            Thread.sleep(2);
+        }
+        return contexts;
+    }
+
+    // ---------------------------------------------------------- Inner Classes
+
+    private static class TestContext implements StatefulEJBContext {
+
+        @Override
+        public long getLastAccessTime() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public boolean canBePassivated() {
+            return true;
+        }
+
+        @Override
+        public SessionContext getSessionContext() {
+            return null;
+        }
+
+        @Override
+        public boolean existsInStore() {
+            return false;
+        }
+
+        @Override
+        public void setExistsInStore(boolean val) {
+        }
+
+        @Override
+        public long getVersion() {
+            return 0;
+        }
+
+        @Override
+        public long incrementAndGetVersion() {
+            return 0;
+        }
+
+        @Override
+        public void setVersion(long versionInBackingStore) {
+        }
+    }
+
+    private static class TestContainer implements SFSBContainerCallback {
+
+        @Override
+        public ClassLoader getClassLoader() {
+            return getClass().getClassLoader();
+        }
+
+        @Override
+        public int getPassivationBatchCount() {
+            return 1;
+        }
+
+        @Override
+        public int getPassivationQueueDepth() {
+            return 0;
+        }
+
+        @Override
+        public void invokePeriodically(long delay, long periodicity,
+                                       Runnable target) {
+        }
+
+        @Override
+        public void activateEJB(Object sessionKey, StatefulEJBContext ctx,
+                                Object cookie) {
+        }
+
+        @Override
+        public boolean passivateEJB(StatefulEJBContext ctx) {
+            return true;
+        }
+
+        // Victims are removed without being saved
+        @Override
+        public boolean isPassivationCapable() {
+            return false;
+        }
+
+        @Override
+        public byte[] serializeContext(StatefulEJBContext ctx)
+                throws IOException {
+            return null;
+        }
+
+        @Override
+        public Object deserializeData(byte[] data) throws Exception {
+            return null;
+        }
+    }
+
+}
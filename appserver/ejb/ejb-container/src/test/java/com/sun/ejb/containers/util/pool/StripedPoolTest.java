@@ -0,0 +1,332 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.ejb.containers.util.pool;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.sun.ejb.monitoring.probes.EjbPoolProbeProvider;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests {@link StripedPool}.
+ */
+public class StripedPoolTest {
+
+    private final Factory factory = new Factory();
+
+    private final List<Runnable> works = new ArrayList<Runnable>();
+
+    @Test
+    public void testReturnedObjectIsReused() throws Exception {
+        StripedPool pool = createPool(0, 0, 10);
+
+        Object obj = pool.getObject(null);
+        pool.returnObject(obj);
+        assertEquals(1, pool.getSize());
+        assertSame(obj, pool.getObject(null));
+
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getPoolSuccess());
+        assertEquals(0, pool.getSize());
+        assertTrue(works.isEmpty());
+    }
+
+    @Test
+    public void testObjectsAboveMaxPoolSizeAreDestroyed() throws Exception {
+        StripedPool pool = createPool(0, 0, 2);
+
+        List<Object> objects = new ArrayList<Object>();
+        for (int i = 0; i < 3; i++) {
+            objects.add(pool.getObject(null));
+        }
+        for (Object obj : objects) {
+            pool.returnObject(obj);
+        }
+
+        assertEquals(3, pool.getCreatedCount());
+        assertEquals(2, pool.getSize());
+        assertEquals(1, pool.getDestroyedCount());
+        assertEquals(Collections.singletonList(objects.get(2)), factory.destroyed);
+    }
+
+    @Test
+    public void testUnboundedMaxPoolSize() throws Exception {
+        StripedPool pool = createPool(0, 0, 0);
+
+        List<Object> objects = new ArrayList<Object>();
+        for (int i = 0; i < 100; i++) {
+            objects.add(pool.getObject(null));
+        }
+        for (Object obj : objects) {
+            pool.returnObject(obj);
+        }
+        assertEquals(100, pool.getSize());
+        assertEquals(0, pool.getDestroyedCount());
+    }
+
+    @Test
+    public void testPrepopulateCappedByMaxPoolSize() throws Exception {
+        StripedPool pool = createPool(5, 0, 3);
+
+        pool.prepopulate(5);
+        assertEquals(3, pool.getSize());
+        assertEquals(3, pool.getCreatedCount());
+        assertEquals(0, pool.getDestroyedCount());
+    }
+
+    @Test
+    public void testResizeRefillsToSteadyPoolSize() throws Exception {
+        StripedPool pool = createPool(4, 3, 10);
+
+        // An empty pool creates the object and asks for a resize, once
+        pool.getObject(null);
+        pool.getObject(null);
+        assertEquals(2, pool.getCreatedCount());
+        assertEquals(1, works.size());
+
+        // By resize quantity, up to the steady size or above
+        runWorks();
+        assertEquals(6, pool.getSize());
+        assertEquals(8, pool.getCreatedCount());
+
+        // Down to the steady size, no resize
+        pool.getObject(null);
+        pool.getObject(null);
+        assertEquals(4, pool.getSize());
+        assertTrue(works.isEmpty());
+
+        // Below the steady size
+        pool.getObject(null);
+        assertEquals(3, pool.getSize());
+        assertEquals(1, works.size());
+        runWorks();
+        assertEquals(6, pool.getSize());
+        assertEquals(11, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testResizeWithoutResizeQuantity() throws Exception {
+        StripedPool pool = createPool(4, 0, 10);
+
+        pool.getObject(null);
+        runWorks();
+        assertEquals(4, pool.getSize());
+        assertEquals(5, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testResizeCappedByMaxPoolSize() throws Exception {
+        StripedPool pool = createPool(4, 3, 5);
+
+        pool.getObject(null);
+        runWorks();
+        assertEquals(5, pool.getSize());
+    }
+
+    @Test
+    public void testResizeAfterCloseDoesNothing() throws Exception {
+        StripedPool pool = createPool(4, 3, 10);
+
+        pool.getObject(null);
+        pool.close();
+        runWorks();
+        assertEquals(0, pool.getSize());
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testObjectReturnedByAnotherThread() throws Exception {
+        final StripedPool pool = createPool(0, 0, 100);
+        final List<Object> objects = new ArrayList<Object>();
+        for (int i = 0; i < 16; i++) {
+            objects.add(pool.getObject(null));
+        }
+
+        // Each object is returned to the stripe of another thread
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final Object obj : objects) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    pool.returnObject(obj);
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(16, pool.getSize());
+
+        // This thread finds them all, in whichever stripe
+        Set<Object> found = new HashSet<Object>();
+        for (int i = 0; i < 16; i++) {
+            found.add(pool.getObject(null));
+        }
+        assertEquals(new HashSet<Object>(objects), found);
+        assertEquals(16, pool.getCreatedCount());
+        assertEquals(16, pool.getPoolSuccess());
+        assertEquals(0, pool.getSize());
+
+        assertNotSame(objects.get(0), pool.getObject(null));
+        assertEquals(17, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testConcurrentGetAndReturn() throws Exception {
+        final StripedPool pool = createPool(0, 0, 8);
+        final int threads = 8;
+        final int calls = 10000;
+
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < calls; j++) {
+                        pool.returnObject(pool.getObject(null));
+                    }
+                }
+            };
+            thread.start();
+            workers.add(thread);
+        }
+        for (Thread thread : workers) {
+            thread.join();
+        }
+
+        // Every object created is either pooled or destroyed
+        assertTrue(pool.getSize() <= 8);
+        assertEquals(pool.getCreatedCount(),
+                     pool.getSize() + pool.getDestroyedCount());
+        assertEquals(threads * calls,
+                     pool.getPoolSuccess() + pool.getCreatedCount());
+    }
+
+    @Test
+    public void testCloseDestroysWithContainerClassLoader() throws Exception {
+        ClassLoader loader = new URLClassLoader(new URL[0]);
+        StripedPool pool = createPool(0, 0, 10, loader);
+        List<Object> objects = new ArrayList<Object>();
+        for (int i = 0; i < 3; i++) {
+            objects.add(pool.getObject(null));
+        }
+        for (Object obj : objects) {
+            pool.returnObject(obj);
+        }
+
+        ClassLoader contextLoader = Thread.currentThread().getContextClassLoader();
+        pool.close();
+        assertSame(contextLoader, Thread.currentThread().getContextClassLoader());
+        assertEquals(0, pool.getSize());
+        assertEquals(3, pool.getDestroyedCount());
+        assertEquals(new HashSet<Object>(objects),
+                     new HashSet<Object>(factory.destroyed));
+        for (ClassLoader destroyLoader : factory.destroyLoaders) {
+            assertSame(loader, destroyLoader);
+        }
+
+        // Returned after the close
+        Object obj = new Object();
+        pool.returnObject(obj);
+        assertEquals(0, pool.getSize());
+        assertSame(obj, factory.destroyed.get(3));
+    }
+
+    private StripedPool createPool(int steadyPoolSize, int resizeQuantity,
+                                   int maxPoolSize) {
+        return createPool(steadyPoolSize, resizeQuantity, maxPoolSize,
+                          getClass().getClassLoader());
+    }
+
+    private StripedPool createPool(int steadyPoolSize, int resizeQuantity,
+                                   int maxPoolSize, ClassLoader loader) {
+        StripedPool pool = new StripedPool(1L, "test", factory,
+                steadyPoolSize, resizeQuantity, maxPoolSize, 0, loader) {
+            @Override
+            void addWork(Runnable work) {
+                works.add(work);
+            }
+        };
+        pool.poolProbeNotifier = new EjbPoolProbeProvider();
+        return pool;
+    }
+
+    private void runWorks() {
+        List<Runnable> pending = new ArrayList<Runnable>(works);
+        works.clear();
+        for (Runnable work : pending) {
+            work.run();
+        }
+    }
+
+    private static class Factory implements ObjectFactory {
+
+        final List<Object> destroyed =
+            Collections.synchronizedList(new ArrayList<Object>());
+
+        final List<ClassLoader> destroyLoaders =
+            Collections.synchronizedList(new ArrayList<ClassLoader>());
+
+        public Object create(Object param) {
+            return new Object();
+        }
+
+        public void destroy(Object object) {
+            destroyed.add(object);
+            destroyLoaders.add(Thread.currentThread().getContextClassLoader());
+        }
+    }
+}
@@ -55,6 +55,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.ejb.CreateException;
@@ -129,6 +130,15 @@ public class PersistentEJBTimerService extends EJBTimerService {
     // Possible values "redeliver" and "stop"
     private String operationOnConnectionFailure = null;
 
+    // Number of timers restored per transaction at startup and during
+    // timer migration.  The first page is restored before returning, the
+    // remaining pages in the background.  A value of 0 or less restores
+    // all the timers at once.
+    private static final String RESTORE_PAGE_SIZE = "restore-page-size";
+    private static final int DEFAULT_RESTORE_PAGE_SIZE = 1000;
+
+    private int restorePageSize = DEFAULT_RESTORE_PAGE_SIZE;
+
     private PersistentEJBTimerService(String ejbName, boolean removeOldTimers) throws Exception {
         super();
 
@@ -165,6 +175,11 @@ public class PersistentEJBTimerService extends EJBTimerService {
                     getDBReadBeforeTimeoutProperty();
 
                 operationOnConnectionFailure = ejbt.getPropertyValue(ON_CONECTION_FAILURE);
+
+                String valString = ejbt.getPropertyValue(RESTORE_PAGE_SIZE);
+                if( valString != null ) {
+                    restorePageSize = Integer.parseInt(valString);
+                }
             }
 
         } catch(Exception e) {
@@ -227,7 +242,9 @@ public class PersistentEJBTimerService extends EJBTimerService {
                               
             tm.begin();
 
-            toRestore = timerLocal_.findTimersOwnedBy(fromOwnerId);
+            if( restorePageSize <= 0 ) {
+                toRestore = timerLocal_.findTimersOwnedBy(fromOwnerId);
+            }
             totalTimersMigrated = timerLocal_.migrateTimers(fromOwnerId, ownerIdOfThisServer);
 
             tm.commit();
@@ -251,7 +268,26 @@ public class PersistentEJBTimerService extends EJBTimerService {
         }
 
 // XXX if( totalTimersMigrated  == toRestore.size() ) { XXX ???
-        if( totalTimersMigrated > 0 ) {
+        if( totalTimersMigrated > 0 && restorePageSize > 0 ) {
+
+            logger.log(Level.INFO, "Timer migration phase 1 complete. " +
+                       "Changed ownership of " + totalTimersMigrated + 
+                       " timers.  Now reactivating timers...");
+
+            // The migrated timers can't be told apart from the ones this
+            // server already owned, which are skipped as already restored.
+            try {
+                restoreTimerPages(ownerIdOfThisServer, true);
+            } catch(Exception e) {
+
+                logger.log(Level.FINE, "timer restoration error", e);
+
+                //Propogate any exceptions caught as part of the transaction 
+                EJBException ejbEx = createEJBException( e );
+                throw ejbEx;
+            }
+
+        } else if( totalTimersMigrated > 0 ) {
 
             boolean success = false;
             try {
@@ -366,7 +402,7 @@ public class PersistentEJBTimerService extends EJBTimerService {
                 restoreTimers();
                 rc = true;
             } else {
-                int s = (timerLocal_.findActiveTimersOwnedByThisServer()).size();
+                int s = timerLocal_.countActiveTimersOwnedByThisServer();
                 if (s > 0) {
                     logger.log(Level.INFO, "[" + s + "] EJB Timers owned by this server will be restored when timeout beans are loaded");
                 } else {
@@ -392,6 +428,11 @@ public class PersistentEJBTimerService extends EJBTimerService {
             return;
         }
 
+        if( restorePageSize > 0 ) {
+            restoreTimerPages(getOwnerIdOfThisServer(), false);
+            return;
+        }
+
         TransactionManager tm = ejbContainerUtil.getTransactionManager();
         try {
             // create a tx in which to do database access for all timers 
@@ -416,6 +457,81 @@ public class PersistentEJBTimerService extends EJBTimerService {
         }
     }
 
+    /**
+     * Restore the active timers owned by ownerId one page at a time, in
+     * the order of their initial expiration.  The first page is restored
+     * by the calling thread.  If there are more, the remaining pages are
+     * restored in the background so that the caller doesn't have to wait
+     * for all the timers to be loaded.  If the thread pool is full, they
+     * are restored by the calling thread.
+     */
+    private void restoreTimerPages(final String ownerId, 
+            final boolean notifyContainers) throws Exception {
+
+        TimerState last = restoreTimerPage(ownerId, Long.MIN_VALUE, "", 
+                notifyContainers);
+        if( last == null ) {
+            return;
+        }
+
+        Runnable remainingPages = new TimerPageRestorer(ownerId, last) {
+            TimerState restorePage(long afterInitialExpiration,
+                    String afterTimerId) throws Exception {
+                return restoreTimerPage(ownerId, afterInitialExpiration,
+                        afterTimerId, notifyContainers);
+            }
+
+            boolean isStopped() {
+                return isShutdown();
+            }
+        };
+
+        try {
+            ejbContainerUtil.addWork(remainingPages);
+        } catch(RejectedExecutionException e) {
+            logger.log(Level.FINE, "Restoring the timers owned by " + 
+                       ownerId + " in the calling thread", e);
+            remainingPages.run();
+        }
+    }
+
+    /**
+     * Restore, in its own transaction, the page of active timers owned by
+     * ownerId that follows the given initial expiration and timer id.
+     * @return the last timer of the page if the page is full, null otherwise
+     */
+    private TimerState restoreTimerPage(String ownerId, 
+            long afterInitialExpiration, String afterTimerId,
+            boolean notifyContainers) throws Exception {
+
+        TransactionManager tm = ejbContainerUtil.getTransactionManager();
+        List<TimerState> page;
+        try {
+            tm.begin();
+
+            page = (List<TimerState>) timerLocal_.findActiveTimersOwnedBy(
+                    ownerId, afterInitialExpiration, afterTimerId, 
+                    restorePageSize);
+
+            Set<TimerState> timers = new HashSet<TimerState>(page);
+            if( notifyContainers ) {
+                _notifyContainers(timers);
+            }
+            _restoreTimers(timers);
+
+        } finally {
+            // try to commit regardless of success or failure. 
+            try {
+                tm.commit();
+            } catch(Exception e) {
+                logger.log(Level.WARNING, "ejb.timer_service_init_error", e);
+            }
+        }
+
+        return (page.size() < restorePageSize) ? 
+                null : page.get(page.size() - 1);
+    }
+
     /**
      * The portion of timer migration that notifies containers about 
      * automatic timers being migrated to this instance
@@ -487,7 +603,15 @@ public class PersistentEJBTimerService extends EJBTimerService {
                      // Don't need to store the info ref for persistent timer
                      null, true);                   
 
-                timerCache_.addTimer(timerId, timerState);
+                // Timers may be restored concurrently by the background
+                // restoration and by a container that is being loaded.
+                synchronized( timerCache_ ) {
+                    if (getTimerState(timerId) != null) {
+                        result.add(timer);
+                        continue;
+                    }
+                    timerCache_.addTimer(timerId, timerState);
+                }
                 
                 // If a single-action timer is still in the database it never
                 // successfully delivered, so always reschedule a timer task 
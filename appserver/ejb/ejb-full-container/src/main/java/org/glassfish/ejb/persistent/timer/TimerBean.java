@@ -49,6 +49,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.List;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -212,6 +213,18 @@ public class TimerBean implements TimerLocal {
         return new HashSet(q.getResultList());
     }
 
+    private List findTimersByOwnerAndStateAfter
+        (String ownerId, int state, long initialExpiration, String timerId, 
+         int maxResults) {
+        Query q = em.createNamedQuery("findTimersByOwnerAndStateAfter");
+        q.setParameter(1, ownerId);
+        q.setParameter(2, state);
+        q.setParameter(3, initialExpiration);
+        q.setParameter(4, timerId);
+        q.setMaxResults(maxResults);
+        return q.getResultList();
+    }
+
 
     //
     // Query methods for timer counts
@@ -540,6 +553,13 @@ public class TimerBean implements TimerLocal {
                                 EJBTimerService.STATE_ACTIVE);
     }
 
+    public List findActiveTimersOwnedBy(String ownerId, 
+            long afterInitialExpiration, String afterTimerId, int maxResults) {
+        return findTimersByOwnerAndStateAfter(ownerId, 
+                                EJBTimerService.STATE_ACTIVE, 
+                                afterInitialExpiration, afterTimerId, maxResults);
+    }
+
     public Set findCancelledTimersOwnedBy(String ownerId) {
         return findTimersByOwnerAndState(ownerId, 
                                 EJBTimerService.STATE_CANCELLED);
@@ -43,6 +43,7 @@ package org.glassfish.ejb.persistent.timer;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 import javax.ejb.CreateException;
@@ -123,6 +124,11 @@ public interface TimerLocal {
     Set findActiveTimersOwnedBy(String owner);
     Set findCancelledTimersOwnedBy(String owner);
 
+    // Returns up to maxResults active timers that follow the given
+    // (initialExpiration, timerId) key, ordered by that key
+    List findActiveTimersOwnedBy(String owner, long afterInitialExpiration,
+                                 String afterTimerId, int maxResults);
+
 
     //
     // Queries returning counts
@@ -0,0 +1,139 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.ejb.persistent.timer;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.sun.logging.LogDomains;
+
+/**
+ * Restores the remaining pages of the active timers of an owner, in the
+ * order of (initialExpirationRaw, timerId), starting after the last timer
+ * of the page that was already restored.  A page that fails is retried a
+ * few times before the restoration gives up and logs the timer it
+ * stopped at.
+ */
+abstract class TimerPageRestorer implements Runnable {
+
+    private static final Logger logger =
+        LogDomains.getLogger(TimerPageRestorer.class, LogDomains.EJB_LOGGER);
+
+    static final int MAX_PAGE_ATTEMPTS = 3;
+
+    private static final long RETRY_DELAY = 1000L;
+
+    private final String ownerId;
+
+    private TimerState last;
+
+    private int pages = 1;
+
+    TimerPageRestorer(String ownerId, TimerState last) {
+        this.ownerId = ownerId;
+        this.last = last;
+    }
+
+    /**
+     * Restore the page of timers that follows the given initial expiration
+     * and timer id.
+     * @return the last timer of the page if the page is full, null otherwise
+     */
+    abstract TimerState restorePage(long afterInitialExpiration, 
+            String afterTimerId) throws Exception;
+
+    /**
+     * @return true if the restoration must stop, e.g. on shutdown
+     */
+    abstract boolean isStopped();
+
+    /**
+     * @return the number of pages restored, including the first one
+     */
+    int getPages() {
+        return pages;
+    }
+
+    public void run() {
+        while( last != null && !isStopped() ) {
+            TimerState next = null;
+            for(int attempt = 1; ; attempt++) {
+                try {
+                    next = restorePage(last.getInitialExpirationRaw(), 
+                            last.getTimerId());
+                    break;
+                } catch(Exception e) {
+                    if( attempt >= MAX_PAGE_ATTEMPTS || isStopped() ) {
+                        logger.log(Level.WARNING, "Failed to restore the " +
+                                   "timers owned by " + ownerId + 
+                                   " that follow timer " + last.getTimerId(), e);
+                        return;
+                    }
+                    logger.log(Level.FINE, "Failed to restore page " + 
+                               (pages + 1) + " of the timers owned by " + 
+                               ownerId + ", retrying", e);
+                    if( !pause(attempt) ) {
+                        return;
+                    }
+                }
+            }
+            pages++;
+            last = next;
+        }
+        logger.log(Level.FINE, "Restored " + pages + 
+                   " pages of timers owned by " + ownerId);
+    }
+
+    /**
+     * Wait before the given retry.
+     * @return false if the thread was interrupted
+     */
+    boolean pause(int attempt) {
+        try {
+            Thread.sleep(RETRY_DELAY * attempt);
+            return true;
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -126,6 +126,11 @@ import com.sun.logging.LogDomains;
         name="findTimersByOwnerAndState",
         query="SELECT t FROM Timer t WHERE t.ownerId = ?1 AND t.state=?2"
     ),
+    @NamedQuery(
+        // Keyset page, ordered by initial expiration then timer id
+        name="findTimersByOwnerAndStateAfter",
+        query="SELECT t FROM Timer t WHERE t.ownerId = ?1 AND t.state=?2 AND (t.initialExpirationRaw > ?3 OR (t.initialExpirationRaw = ?3 AND t.timerId > ?4)) ORDER BY t.initialExpirationRaw, t.timerId"
+    ),
     @NamedQuery(
         name="countTimersByApplication",
         query="SELECT COUNT(t) FROM Timer t WHERE t.applicationId = ?1"
@@ -0,0 +1,258 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.ejb.persistent.timer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TimerPageRestorerTest {
+
+    private static final int PAGE_SIZE = 3;
+
+    @Test
+    public void testPagesWithDuplicateInitialExpirations() throws Exception {
+        // Runs of equal initial expirations that cross the page boundaries
+        List<TimerState> timers = new ArrayList<TimerState>();
+        timers.add(timer("a", 100));
+        for (int i = 0; i < 7; i++) {
+            timers.add(timer("t" + i, 200));
+        }
+        timers.add(timer("b", 300));
+        timers.add(timer("c", 300));
+        timers.add(timer("d", 400));
+
+        Pages pages = new Pages(timers);
+        assertEquals(timers, pages.restoreAll());
+        assertEquals(4, pages.restorer.getPages());
+    }
+
+    @Test
+    public void testTimersInsertedOutOfOrder() throws Exception {
+        List<TimerState> timers = new ArrayList<TimerState>();
+        timers.add(timer("z", 200));
+        timers.add(timer("y", 200));
+        timers.add(timer("x", 100));
+        timers.add(timer("w", 200));
+        timers.add(timer("v", 100));
+
+        List<TimerState> expected = new ArrayList<TimerState>();
+        expected.add(timers.get(4));
+        expected.add(timers.get(2));
+        expected.add(timers.get(3));
+        expected.add(timers.get(1));
+        expected.add(timers.get(0));
+
+        assertEquals(expected, new Pages(timers).restoreAll());
+    }
+
+    @Test
+    public void testLastPageFull() throws Exception {
+        List<TimerState> timers = new ArrayList<TimerState>();
+        for (int i = 0; i < 2 * PAGE_SIZE; i++) {
+            timers.add(timer("t" + i, 500));
+        }
+
+        Pages pages = new Pages(timers);
+        assertEquals(timers, pages.restoreAll());
+        // The second page is full, so a third, empty, page is read
+        assertEquals(3, pages.restorer.getPages());
+    }
+
+    @Test
+    public void testSinglePage() throws Exception {
+        List<TimerState> timers = new ArrayList<TimerState>();
+        timers.add(timer("a", 100));
+
+        Pages pages = new Pages(timers);
+        assertEquals(timers, pages.restoreAll());
+        assertNull(pages.restorer);
+    }
+
+    @Test
+    public void testFailedPageIsRetried() throws Exception {
+        List<TimerState> timers = new ArrayList<TimerState>();
+        for (int i = 0; i < 10; i++) {
+            timers.add(timer("t" + i, i / 4));
+        }
+
+        Pages pages = new Pages(timers);
+        pages.failures = TimerPageRestorer.MAX_PAGE_ATTEMPTS - 1;
+        pages.failAtPage = 2;
+        assertEquals(timers, pages.restoreAll());
+        assertEquals(TimerPageRestorer.MAX_PAGE_ATTEMPTS - 1, pages.pauses);
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() throws Exception {
+        List<TimerState> timers = new ArrayList<TimerState>();
+        for (int i = 0; i < 10; i++) {
+            timers.add(timer("t" + i, 0));
+        }
+
+        Pages pages = new Pages(timers);
+        pages.failures = Integer.MAX_VALUE;
+        pages.failAtPage = 3;
+        assertEquals(timers.subList(0, 2 * PAGE_SIZE), pages.restoreAll());
+        assertEquals(TimerPageRestorer.MAX_PAGE_ATTEMPTS - 1, pages.pauses);
+        assertEquals(2, pages.restorer.getPages());
+    }
+
+    @Test
+    public void testStopsWhenStopped() throws Exception {
+        List<TimerState> timers = new ArrayList<TimerState>();
+        for (int i = 0; i < 10; i++) {
+            timers.add(timer("t" + i, 0));
+        }
+
+        Pages pages = new Pages(timers);
+        pages.stopAtPage = 2;
+        assertEquals(timers.subList(0, 2 * PAGE_SIZE), pages.restoreAll());
+    }
+
+    private static TimerState timer(String timerId, long initialExpiration) {
+        TimerState timer = new TimerState();
+        timer.setTimerId(timerId);
+        timer.setInitialExpirationRaw(initialExpiration);
+        return timer;
+    }
+
+    /**
+     * The timer table, read the way the findTimersByOwnerAndStateAfter
+     * query and PersistentEJBTimerService.restoreTimerPage do.
+     */
+    private static class Pages {
+
+        private final List<TimerState> table;
+
+        private final List<TimerState> restored = new ArrayList<TimerState>();
+
+        TimerPageRestorer restorer;
+
+        int page;
+
+        int failAtPage = -1;
+
+        int failures;
+
+        int stopAtPage = -1;
+
+        int pauses;
+
+        Pages(List<TimerState> table) {
+            this.table = table;
+        }
+
+        List<TimerState> restoreAll() throws Exception {
+            TimerState last = restorePage(Long.MIN_VALUE, "");
+            if (last != null) {
+                restorer = new TimerPageRestorer("server", last) {
+                    TimerState restorePage(long afterInitialExpiration,
+                            String afterTimerId) throws Exception {
+                        return Pages.this.restorePage(afterInitialExpiration,
+                                                      afterTimerId);
+                    }
+
+                    boolean isStopped() {
+                        return page == stopAtPage;
+                    }
+
+                    boolean pause(int attempt) {
+                        pauses++;
+                        return true;
+                    }
+                };
+                restorer.run();
+            }
+            return restored;
+        }
+
+        TimerState restorePage(long afterInitialExpiration,
+                               String afterTimerId) throws Exception {
+            if (page + 1 == failAtPage && failures > 0) {
+                failures--;
+                throw new IllegalStateException("page " + failAtPage);
+            }
+            page++;
+
+            List<TimerState> sorted = new ArrayList<TimerState>(table);
+            Collections.sort(sorted,
+                    new Comparator<TimerState>() {
+                public int compare(TimerState t1, TimerState t2) {
+                    long e1 = t1.getInitialExpirationRaw();
+                    long e2 = t2.getInitialExpirationRaw();
+                    if (e1 != e2) {
+                        return (e1 < e2) ? -1 : 1;
+                    }
+                    return t1.getTimerId().compareTo(t2.getTimerId());
+                }
+            });
+
+            List<TimerState> result = new ArrayList<TimerState>();
+            for (TimerState timer : sorted) {
+                long expiration = timer.getInitialExpirationRaw();
+                if ((expiration > afterInitialExpiration ||
+                        (expiration == afterInitialExpiration &&
+                         timer.getTimerId().compareTo(afterTimerId) > 0)) &&
+                        result.size() < PAGE_SIZE) {
+                    result.add(timer);
+                }
+            }
+            for (TimerState timer : result) {
+                if (restored.contains(timer)) {
+                    throw new IllegalStateException("restored twice: " +
+                                                    timer.getTimerId());
+                }
+            }
+            restored.addAll(result);
+
+            return (result.size() < PAGE_SIZE) ?
+                    null : result.get(result.size() - 1);
+        }
+    }
+}
@@ -55,11 +55,18 @@ public class FileBackingStoreFactory
 
     private static ThreadLocal<FileStoreTransaction> _current = new ThreadLocal<FileStoreTransaction>();
 
-    private static ConcurrentHashMap<String, FileBackingStore> _stores
-            = new ConcurrentHashMap<String, FileBackingStore>();
+    private static ConcurrentHashMap<String, BackingStore> _stores
+            = new ConcurrentHashMap<String, BackingStore>();
 
+    /**
+     * Selects SegmentedFileBackingStore, which appends to a few segment files,
+     * instead of FileBackingStore, which writes one file per key. Can also be
+     * set per store through the "file.store.segmented" vendor specific setting.
+     */
+    private static final String SEGMENTED_PROPERTY = "org.glassfish.ha.store.adapter.file.segmented";
 
-    static FileBackingStore getFileBackingStore(String storeName) {
+
+    static BackingStore getFileBackingStore(String storeName) {
         return _stores.get(storeName);
     }
 
@@ -71,6 +78,17 @@ public class FileBackingStoreFactory
     public <K extends Serializable, V extends Serializable> BackingStore<K, V> createBackingStore(
             BackingStoreConfiguration<K, V> conf)
                 throws BackingStoreException {
+        Object segmented = conf.getVendorSpecificSettings().get("file.store.segmented");
+        if (segmented == null) {
+            segmented = System.getProperty(SEGMENTED_PROPERTY);
+        }
+        if (Boolean.valueOf(String.valueOf(segmented))) {
+            SegmentedFileBackingStore<K, V> fs = new SegmentedFileBackingStore<K, V>();
+            fs.initialize(conf);
+            fs.setFileBackingStoreFactory(this);
+            _stores.put(conf.getStoreName(), fs);
+            return fs;
+        }
         FileBackingStore<K, V> fs = new FileBackingStore<K, V>();
         fs.initialize(conf);
         fs.setFileBackingStoreFactory(this);
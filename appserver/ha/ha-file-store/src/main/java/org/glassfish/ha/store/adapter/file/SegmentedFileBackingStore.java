@@ -0,0 +1,944 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.ha.store.adapter.file;
+
+import org.glassfish.ha.store.api.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.*;
+import java.util.zip.CRC32;
+
+/**
+ * An implementation of BackingStore that appends all the changes to a
+ * few segment files instead of writing one file per key.
+ * <p/>
+ * An in-memory index maps every key to the location of its latest state.
+ * Timestamp updates and removals are appended as small records. Concurrent
+ * writes are appended by a single thread in one batch (group commit).
+ * Segments that mostly hold stale records are compacted by removeExpired.
+ * <p/>
+ * The index is rebuilt from the segment files when the store is initialized.
+ */
+public class SegmentedFileBackingStore<K extends Serializable, V extends Serializable>
+        extends BackingStore<K, V> {
+
+    private static final byte PUT = 1;
+
+    private static final byte TOUCH = 2;
+
+    private static final byte REMOVE = 3;
+
+    //record length, crc, type, timestamp and key length
+    private static final int HEADER_SIZE = 4 + 4 + 1 + 8 + 4;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    protected Logger logger =
+            Logger.getLogger(SegmentedFileBackingStore.class.getName());
+
+    protected File baseDir;
+
+    private boolean shutdown;
+
+    private static Level TRACE_LEVEL = Level.FINE;
+
+    private String debugStr;
+
+    private FileBackingStoreFactory factory;
+
+    private long defaultMaxIdleTimeoutInSeconds = 10L * 60L;
+
+    private long maxSegmentSize = 64L * 1024L * 1024L;
+
+    private float compactionRatio = 0.5f;
+
+    private boolean sync = false;
+
+    private final ConcurrentHashMap<String, Entry> index = new ConcurrentHashMap<String, Entry>();
+
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<Integer, Segment>();
+
+    //only accessed by the thread that is writing
+    private Segment active;
+
+    //group commit : writes queue up while a thread is writing, and are appended by the next writer
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition written = lock.newCondition();
+
+    private boolean writing;
+
+    private List<Write> pending = new ArrayList<Write>();
+
+    /**
+     * No arg constructor
+     */
+    public SegmentedFileBackingStore() {
+    }
+
+    @Override
+    protected void initialize(BackingStoreConfiguration<K, V> conf)
+        throws BackingStoreException {
+
+        if (conf.getLogger() != null) {
+            logger = conf.getLogger();
+        }
+
+        super.initialize(conf);
+        debugStr = "[SegmentedFileBackingStore - " + conf.getStoreName() + "] ";
+
+        baseDir = conf.getBaseDirectory();
+
+        Map<String, Object> vendorMap = conf.getVendorSpecificSettings();
+        try {
+            defaultMaxIdleTimeoutInSeconds = Long.parseLong(
+                    (String) vendorMap.get("max.idle.timeout.in.seconds"));
+        } catch (Exception ex) {
+            //Ignore. Use default
+        }
+        try {
+            maxSegmentSize = Long.parseLong(
+                    (String) vendorMap.get("file.store.segment.size"));
+        } catch (Exception ex) {
+            //Ignore. Use default
+        }
+        try {
+            compactionRatio = Float.parseFloat(
+                    (String) vendorMap.get("file.store.compaction.ratio"));
+        } catch (Exception ex) {
+            //Ignore. Use default
+        }
+        sync = Boolean.valueOf(String.valueOf(vendorMap.get("file.store.sync")));
+
+        if ((baseDir.mkdirs() == false) && (! baseDir.isDirectory())) {
+            throw new BackingStoreException("[SegmentedFileBackingStore::initialize] Create base directory ("
+                    + baseDir.getAbsolutePath() + ") failed");
+        }
+
+        try {
+            recover();
+            if (segments.isEmpty()) {
+                active = openSegment(1);
+            } else {
+                active = segments.lastEntry().getValue();
+            }
+            logger.log(Level.INFO, "[SegmentedFileBackingStore::initialize] Successfully Created and initialized store. "
+                    + "Working dir: " + conf.getBaseDirectory() + "; Recovered entries: " + index.size()
+                    + "; Configuration: " + conf);
+        } catch (IOException ex) {
+            throw new BackingStoreException(debugStr + " Exception during initialization", ex);
+        }
+    }
+
+    /*package*/ void setFileBackingStoreFactory(FileBackingStoreFactory factory) {
+        this.factory = factory;
+    }
+
+    public BackingStoreFactory getBackingStoreFactory() {
+        return factory;
+    }
+
+    @Override
+    public V load(K key, String version) throws BackingStoreException {
+
+        String keyStr = key.toString();
+        V value = null;
+
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered load(" + key + ", " + version + ")");
+        }
+
+        byte[] data = read(keyStr);
+        if (data != null) {
+            try {
+                ByteArrayInputStream bis2 = new ByteArrayInputStream(data);
+                ObjectInputStream ois = super.createObjectInputStream(bis2);
+                value = (V) ois.readObject();
+
+                if (logger.isLoggable(TRACE_LEVEL)) {
+                    logger.log(TRACE_LEVEL, debugStr + "Done load(" + key + ", " + version + ")");
+                }
+            } catch (Exception ex) {
+                logger.log(Level.WARNING,debugStr + "Failed to load(" + key + ", " + version + ")", ex);
+            }
+        }
+
+        return value;
+    }
+
+    public void remove(K sessionKey) {
+        remove(sessionKey.toString());
+    }
+
+    private void remove(String sessionKey) {
+        try {
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Entered remove(" + sessionKey + ")");
+            }
+            boolean status = index.containsKey(sessionKey);
+            if (status) {
+                append(new Write(REMOVE, sessionKey, System.currentTimeMillis(), null));
+            }
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Done remove( " + sessionKey + "); status => " + status);
+            }
+        } catch (Exception ex) {
+            logger.log(TRACE_LEVEL, debugStr + "Failed to remove(" + sessionKey + ")");
+        }
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Entered destroy()");
+            }
+            acquireWriter();
+            try {
+                index.clear();
+                for (Segment segment : segments.values()) {
+                    deleteSegment(segment);
+                }
+                active = null;
+            } finally {
+                releaseWriter();
+            }
+
+            if (baseDir.delete() == false) {
+                if (baseDir.exists()) {
+                    logger.log(Level.WARNING, debugStr + " destroy() failed to remove dir: " + baseDir.getAbsolutePath());
+                }
+            }
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Done destroy()");
+            }
+        } catch (Throwable th) {
+            logger.log(Level.WARNING, debugStr + " destroy() failed ", th);
+        } finally {
+            FileBackingStoreFactory.removemapping(getBackingStoreConfiguration().getStoreName());
+        }
+    }
+
+    public int removeExpired() {
+        return removeExpired(defaultMaxIdleTimeoutInSeconds * 1000L);
+    }
+
+    public int removeExpired(long idleForMillis) {
+        long threshold = System.currentTimeMillis() - idleForMillis;
+        int expiredSessions = 0;
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered removeExpired()");
+        }
+        try {
+            //the index holds the last access time, no need to look at the files.
+            Map<String, Entry> candidates = new HashMap<String, Entry>();
+            for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                if (shutdown) {
+                    break;
+                }
+                if (entry.getValue().lastAccessed < threshold) {
+                    candidates.put(entry.getKey(), entry.getValue());
+                }
+            }
+            if (!candidates.isEmpty()) {
+                expiredSessions = removeExpired(candidates, threshold);
+            }
+            compact();
+            if (logger.isLoggable(TRACE_LEVEL)) {
+                logger.log(TRACE_LEVEL, debugStr + "Done removeExpired()");
+            }
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, debugStr + " Exception while removing "
+                    + "expired entries", ex);
+        }
+
+        return expiredSessions;
+    }
+
+    /**
+     * Removes the candidates that are still expired. Saves and touches are
+     * only applied by the writer, so once the writer is acquired an entry
+     * that is unchanged since the scan is still expired.
+     *
+     * @return the number of removed entries
+     */
+    private int removeExpired(Map<String, Entry> candidates, long threshold) {
+        acquireWriter();
+        try {
+            List<Write> removals = new ArrayList<Write>();
+            for (Map.Entry<String, Entry> candidate : candidates.entrySet()) {
+                Entry entry = index.get(candidate.getKey());
+                if (entry == candidate.getValue() && entry.lastAccessed < threshold) {
+                    removals.add(new Write(REMOVE, candidate.getKey(), System.currentTimeMillis(), null));
+                }
+            }
+            writeBatch(removals);
+            int removed = 0;
+            for (Write removal : removals) {
+                if (removal.error == null) {
+                    removed++;
+                }
+            }
+            return removed;
+        } finally {
+            releaseWriter();
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        //DO NOT DELETE THE WORKING DIRECTORY, just make sure that the appended records are on disk.
+        acquireWriter();
+        try {
+            for (Segment segment : segments.values()) {
+                try {
+                    segment.channel.force(false);
+                    segment.close();
+                } catch (IOException ex) {
+                    logger.log(Level.FINE, debugStr + "Error while closing segment " + segment.id, ex);
+                }
+            }
+        } finally {
+            releaseWriter();
+        }
+    }
+
+
+    @Override
+    public int size() throws BackingStoreException {
+        return index.size();
+    }
+
+    @Override
+    public String save(K sessionKey, V value, boolean isNew)
+            throws BackingStoreException {
+
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered save(" + sessionKey + ")");
+        }
+        append(new Write(PUT, sessionKey.toString(), System.currentTimeMillis(),
+                getSerializedState(sessionKey, value)));
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Done save(" + sessionKey + ")");
+        }
+        return getBackingStoreConfiguration().getInstanceName();
+    }
+
+    public void updateTimeStamp(K k, String version, long timeStamp)
+            throws BackingStoreException {
+        updateTimestamp(k, timeStamp);
+    }
+
+    public void updateTimestamp(K sessionKey, long time)
+            throws BackingStoreException {
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Entered updateTimestamp(" + sessionKey + ", " + time + ")");
+        }
+        String keyStr = sessionKey.toString();
+        if (index.containsKey(keyStr)) {
+            append(new Write(TOUCH, keyStr, time, null));
+        } else {
+            logger.log(Level.WARNING, debugStr
+                    + ": Cannot update timsestamp for: " + sessionKey
+                    + "; Entry does not exist");
+        }
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Done updateTimestamp(" + sessionKey + ", " + time + ")");
+        }
+    }
+
+    private byte[] getSerializedState(K key, V value)
+            throws BackingStoreException {
+
+        byte[] data = null;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = null;
+        try {
+            oos = new ObjectOutputStream(bos);
+            oos.writeObject(value);
+            oos.flush();
+            data = bos.toByteArray();
+        } catch (IOException ioEx) {
+            throw new BackingStoreException("Error during getSerializedState", ioEx);
+        } finally {
+            try {
+                if (oos != null) {
+                    oos.close();
+                }
+            } catch (IOException ioEx) {/* Noop */}
+            try {
+                bos.close();
+            } catch (IOException ioEx) {/* Noop */}
+        }
+
+        return data;
+    }
+
+    private byte[] read(String key) {
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + " Attempting to load session: " + key);
+        }
+        Entry entry = index.get(key);
+        while (entry != null) {
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(entry.valueLength);
+                readFully(entry.segment, buffer, entry.valueOffset);
+                return buffer.array();
+            } catch (IOException ex) {
+                //the segment may have been compacted meanwhile, retry with the new location
+                Entry current = index.get(key);
+                if (current == entry) {
+                    logger.log(Level.WARNING, "SegmentedFileBackingStore.read failed", ex);
+                    return null;
+                }
+                entry = current;
+            }
+        }
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Could not find entry for: " + key);
+        }
+        return null;
+    }
+
+    private void append(Write write) throws BackingStoreException {
+        append(Arrays.asList(write));
+    }
+
+    /**
+     * Appends the given records to the active segment. If another thread
+     * is writing, the records are queued and appended along with the other
+     * queued records by the next writer, with a single write (and force) call.
+     * Returns once the records are written.
+     */
+    private void append(List<Write> writes) throws BackingStoreException {
+        List<Write> batch;
+        lock.lock();
+        try {
+            pending.addAll(writes);
+            while (writing && !isDone(writes)) {
+                written.awaitUninterruptibly();
+            }
+            if (!isDone(writes)) {
+                writing = true;
+                batch = pending;
+                pending = new ArrayList<Write>();
+            } else {
+                batch = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (batch != null) {
+            try {
+                writeBatch(batch);
+            } finally {
+                releaseWriter();
+            }
+        }
+
+        for (Write write : writes) {
+            if (write.error != null) {
+                throw write.error;
+            }
+        }
+    }
+
+    private static boolean isDone(List<Write> writes) {
+        return writes.get(writes.size() - 1).done;
+    }
+
+    private void acquireWriter() {
+        lock.lock();
+        try {
+            while (writing) {
+                written.awaitUninterruptibly();
+            }
+            writing = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void releaseWriter() {
+        lock.lock();
+        try {
+            writing = false;
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caller must be the writer. Marks all the writes done; the ones that
+     * could not be written carry the failure.
+     */
+    private void writeBatch(List<Write> batch) {
+        int appended = 0;
+        try {
+            if (active == null) {
+                throw new IOException("Store is destroyed");
+            }
+            int chunkStart = 0;
+            long chunkSize = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                int length = batch.get(i).record.length;
+                //a record larger than a segment is only written to an empty one
+                if (active.size + chunkSize > 0 && active.size + chunkSize + length > maxSegmentSize) {
+                    appended += writeChunk(batch.subList(chunkStart, i));
+                    active = openSegment(active.id + 1);
+                    chunkStart = i;
+                    chunkSize = 0;
+                }
+                chunkSize += length;
+            }
+            appended += writeChunk(batch.subList(chunkStart, batch.size()));
+        } catch (Exception ex) {
+            logger.log(Level.WARNING, debugStr + "Failed to append " + (batch.size() - appended) + " records", ex);
+            BackingStoreException error = new BackingStoreException("Could not append to the store", ex);
+            for (int i = appended; i < batch.size(); i++) {
+                batch.get(i).error = error;
+            }
+        }
+        lock.lock();
+        try {
+            for (Write write : batch) {
+                write.done = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the records to the active segment in one call and publishes them
+     * to the index. On failure the segment is truncated to its former size.
+     */
+    private int writeChunk(List<Write> chunk) throws IOException {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        ByteBuffer[] buffers = new ByteBuffer[chunk.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = ByteBuffer.wrap(chunk.get(i).record);
+        }
+        long start = active.size;
+        boolean interrupted = false;
+        try {
+            FileChannel channel = active.channel;
+            while (true) {
+                try {
+                    channel.position(start);
+                    while (buffers[buffers.length - 1].hasRemaining()) {
+                        channel.write(buffers);
+                    }
+                    if (sync) {
+                        channel.force(false);
+                    }
+                    break;
+                } catch (ClosedChannelException ex) {
+                    //the writer thread was interrupted, write the chunk again
+                    FileChannel reopened = active.reopen(channel);
+                    if (reopened == channel) {
+                        throw ex;
+                    }
+                    channel = reopened;
+                    interrupted |= Thread.interrupted();
+                    for (ByteBuffer buffer : buffers) {
+                        buffer.rewind();
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            try {
+                active.channel.truncate(start);
+            } catch (IOException ex1) {
+                logger.log(Level.FINE, debugStr + "Error while truncating segment " + active.id, ex1);
+            }
+            throw ex;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long position = start;
+        for (Write write : chunk) {
+            apply(write.type, write.key, write.timestamp, active, position, write.record.length);
+            position += write.record.length;
+        }
+        active.size = position;
+        return chunk.size();
+    }
+
+    /**
+     * Publishes a record, that is on disk, to the index.
+     */
+    private void apply(byte type, String key, long timestamp, Segment segment,
+                       long position, int recordLength) {
+        Entry old;
+        switch (type) {
+            case PUT:
+                int keyLength = key.getBytes(UTF8).length;
+                Entry entry = new Entry(segment, position + HEADER_SIZE + keyLength,
+                        recordLength - HEADER_SIZE - keyLength, recordLength, timestamp);
+                segment.liveBytes.addAndGet(recordLength);
+                old = index.put(key, entry);
+                break;
+            case REMOVE:
+                old = index.remove(key);
+                break;
+            default:
+                Entry current = index.get(key);
+                if (current != null) {
+                    current.lastAccessed = timestamp;
+                }
+                old = null;
+        }
+        if (old != null) {
+            old.segment.liveBytes.addAndGet(-old.recordLength);
+        }
+    }
+
+    /**
+     * Rewrites the live records of the segments that mostly hold stale
+     * records to the active segment, and deletes those segments.
+     */
+    private void compact() throws IOException {
+        acquireWriter();
+        try {
+            for (Segment segment : new ArrayList<Segment>(segments.values())) {
+                if (shutdown || active == null) {
+                    break;
+                }
+                if (segment != active && segment.liveBytes.get() < segment.size * compactionRatio) {
+                    compact(segment);
+                }
+            }
+        } finally {
+            releaseWriter();
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        if (logger.isLoggable(TRACE_LEVEL)) {
+            logger.log(TRACE_LEVEL, debugStr + "Compacting segment " + segment.id + ", live bytes : "
+                    + segment.liveBytes.get() + " / " + segment.size);
+        }
+        //removals must be kept as long as an older segment may hold the removed entry
+        boolean hasOlder = segments.lowerKey(segment.id) != null;
+        List<Write> copies = new ArrayList<Write>();
+        long position = 0;
+        while (position < segment.size) {
+            Record record = readRecord(segment, position);
+            if (record == null) {
+                break;
+            }
+            if (record.type == PUT) {
+                Entry entry = index.get(record.key);
+                if (entry != null && entry.segment == segment && entry.valueOffset == record.valueOffset) {
+                    copies.add(new Write(PUT, record.key, entry.lastAccessed, record.value));
+                }
+            } else if (record.type == REMOVE && hasOlder && !index.containsKey(record.key)) {
+                copies.add(new Write(REMOVE, record.key, record.timestamp, null));
+            }
+            position += record.length;
+        }
+        writeBatch(copies);
+        for (Write copy : copies) {
+            if (copy.error != null) {
+                throw copy.error.getCause() instanceof IOException ?
+                        (IOException) copy.error.getCause() : new IOException(copy.error);
+            }
+        }
+        deleteSegment(segment);
+    }
+
+    private void deleteSegment(Segment segment) {
+        segments.remove(segment.id);
+        try {
+            segment.close();
+        } catch (IOException ex) {
+            logger.log(Level.FINE, debugStr + "Error while closing segment " + segment.id, ex);
+        }
+        if (!segment.path.delete() && segment.path.exists()) {
+            logger.log(Level.WARNING, debugStr + " Couldn't remove file: " + segment.path.getName());
+        }
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        File path = new File(baseDir, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+        Segment segment = new Segment(id, path, new RandomAccessFile(path, "rw"));
+        segment.size = segment.channel.size();
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Rebuilds the index by replaying the segments, oldest first. A torn
+     * record at the end of the newest segment, left by a crash, is truncated.
+     */
+    private void recover() throws IOException {
+        String[] fileNames = baseDir.list();
+        if (fileNames == null) {
+            return;
+        }
+        for (String fileName : fileNames) {
+            if (fileName.startsWith(SEGMENT_PREFIX) && fileName.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    openSegment(Integer.parseInt(fileName.substring(SEGMENT_PREFIX.length(),
+                            fileName.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException ex) {
+                    //not a segment
+                }
+            }
+        }
+        for (Segment segment : segments.values()) {
+            long position = 0;
+            while (position < segment.size) {
+                Record record = readRecord(segment, position);
+                if (record == null) {
+                    break;
+                }
+                apply(record.type, record.key, record.timestamp, segment, position, record.length);
+                position += record.length;
+            }
+            if (position < segment.size) {
+                logger.log(Level.WARNING, debugStr + "Ignoring " + (segment.size - position)
+                        + " corrupted bytes at the end of segment " + segment.id);
+                if (segment == segments.lastEntry().getValue()) {
+                    segment.channel.truncate(position);
+                    segment.size = position;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the record at the given position, or null if it is torn or corrupted.
+     */
+    private Record readRecord(Segment segment, long position) throws IOException {
+        if (position + HEADER_SIZE > segment.size) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(8);
+        readFully(segment, header, position);
+        header.flip();
+        int length = header.getInt() + 4;
+        int crc = header.getInt();
+        if (length < HEADER_SIZE || position + length > segment.size) {
+            return null;
+        }
+        ByteBuffer body = ByteBuffer.allocate(length - 8);
+        readFully(segment, body, position + 8);
+        CRC32 checksum = new CRC32();
+        checksum.update(body.array(), 0, body.capacity());
+        if ((int) checksum.getValue() != crc) {
+            return null;
+        }
+        body.flip();
+        Record record = new Record();
+        record.length = length;
+        record.type = body.get();
+        record.timestamp = body.getLong();
+        int keyLength = body.getInt();
+        if (keyLength < 0 || keyLength > body.remaining()) {
+            return null;
+        }
+        record.key = new String(body.array(), body.position(), keyLength, UTF8);
+        body.position(body.position() + keyLength);
+        record.valueOffset = position + HEADER_SIZE + keyLength;
+        record.value = new byte[body.remaining()];
+        body.get(record.value);
+        return record;
+    }
+
+    /**
+     * Reads from the shared channel of the segment. Interrupting a thread that
+     * is reading closes the channel, so it is reopened for the other threads
+     * and the read goes on; the interrupt status is restored afterwards.
+     */
+    private static void readFully(Segment segment, ByteBuffer buffer, long position)
+            throws IOException {
+        FileChannel channel = segment.channel;
+        boolean interrupted = false;
+        try {
+            while (buffer.hasRemaining()) {
+                try {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException();
+                    }
+                } catch (ClosedChannelException ex) {
+                    FileChannel reopened = segment.reopen(channel);
+                    if (reopened == channel) {
+                        throw ex;
+                    }
+                    channel = reopened;
+                    interrupted |= Thread.interrupted();
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static byte[] encode(byte type, String key, long timestamp, byte[] value) {
+        byte[] keyBytes = key.getBytes(UTF8);
+        int valueLength = (value == null) ? 0 : value.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + valueLength);
+        buffer.putInt(buffer.capacity() - 4);
+        buffer.putInt(0);
+        buffer.put(type);
+        buffer.putLong(timestamp);
+        buffer.putInt(keyBytes.length);
+        buffer.put(keyBytes);
+        if (value != null) {
+            buffer.put(value);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 8, buffer.capacity() - 8);
+        buffer.putInt(4, (int) checksum.getValue());
+        return buffer.array();
+    }
+
+    private static final class Write {
+        final byte type;
+        final String key;
+        final long timestamp;
+        final byte[] record;
+        //guarded by lock
+        boolean done;
+        BackingStoreException error;
+
+        Write(byte type, String key, long timestamp, byte[] value) {
+            this.type = type;
+            this.key = key;
+            this.timestamp = timestamp;
+            this.record = encode(type, key, timestamp, value);
+        }
+    }
+
+    private static final class Record {
+        int length;
+        byte type;
+        long timestamp;
+        String key;
+        long valueOffset;
+        byte[] value;
+    }
+
+    private static final class Entry {
+        final Segment segment;
+        final long valueOffset;
+        final int valueLength;
+        final int recordLength;
+        volatile long lastAccessed;
+
+        Entry(Segment segment, long valueOffset, int valueLength, int recordLength, long lastAccessed) {
+            this.segment = segment;
+            this.valueOffset = valueOffset;
+            this.valueLength = valueLength;
+            this.recordLength = recordLength;
+            this.lastAccessed = lastAccessed;
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final File path;
+        //replaced when an interrupted thread closed the channel, guarded by this
+        private RandomAccessFile file;
+        volatile FileChannel channel;
+        //guarded by this
+        private boolean closed;
+        //bytes of the records the index points to
+        final AtomicLong liveBytes = new AtomicLong();
+        //only updated by the writer
+        volatile long size;
+
+        Segment(int id, File path, RandomAccessFile file) {
+            this.id = id;
+            this.path = path;
+            this.file = file;
+            this.channel = file.getChannel();
+        }
+
+        /**
+         * Reopens the given channel, which was closed by an interrupted
+         * thread, unless the segment is closed.
+         *
+         * @return the open channel, or the given one if the segment is closed
+         */
+        synchronized FileChannel reopen(FileChannel closedChannel) throws IOException {
+            if (!closed && channel == closedChannel && !closedChannel.isOpen()) {
+                file = new RandomAccessFile(path, "rw");
+                channel = file.getChannel();
+            }
+            return channel;
+        }
+
+        synchronized void close() throws IOException {
+            closed = true;
+            file.close();
+        }
+    }
+}
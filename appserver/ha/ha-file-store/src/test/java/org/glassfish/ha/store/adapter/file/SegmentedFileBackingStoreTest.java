@@ -0,0 +1,404 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.ha.store.adapter.file;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+import org.glassfish.ha.store.api.BackingStoreConfiguration;
+import org.glassfish.ha.store.api.BackingStoreException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests {@link SegmentedFileBackingStore}: the index, the recovery of
+ * the segments when the store is reopened and their compaction.
+ */
+public class SegmentedFileBackingStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File baseDir;
+
+    private SegmentedFileBackingStore<String, String> store;
+
+    @Before
+    public void setUp() throws Exception {
+        baseDir = new File(folder.getRoot(), "store");
+    }
+
+    @After
+    public void tearDown() {
+        if (store != null) {
+            store.shutdown();
+        }
+    }
+
+    @Test
+    public void testSaveLoadRemove() throws Exception {
+        store = open("1048576");
+        assertNull(store.load("a", null));
+
+        store.save("a", "1", true);
+        store.save("b", "2", true);
+        assertEquals("1", store.load("a", null));
+        assertEquals("2", store.load("b", null));
+        assertEquals(2, store.size());
+
+        store.save("a", "3", false);
+        assertEquals("3", store.load("a", null));
+        assertEquals(2, store.size());
+
+        store.remove("a");
+        assertNull(store.load("a", null));
+        assertEquals("2", store.load("b", null));
+        assertEquals(1, store.size());
+
+        // Removing or touching a missing key does nothing
+        store.remove("a");
+        store.updateTimestamp("a", System.currentTimeMillis());
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testRemoveExpired() throws Exception {
+        store = open("1048576");
+        store.save("idle", "1", true);
+        store.save("active", "2", true);
+        store.updateTimestamp("idle", System.currentTimeMillis() - 60000L);
+
+        assertEquals(1, store.removeExpired(30000L));
+        assertNull(store.load("idle", null));
+        assertEquals("2", store.load("active", null));
+        assertEquals(0, store.removeExpired(30000L));
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        store = open("1024");
+        for (int i = 0; i < 20; i++) {
+            store.save("key" + i, value(i, 0), true);
+        }
+        store.save("key0", value(0, 1), false);
+        store.remove("key1");
+        store.updateTimestamp("key2", System.currentTimeMillis() - 60000L);
+        assertTrue(segmentFiles().length > 1);
+        store.shutdown();
+
+        store = open("1024");
+        assertEquals(19, store.size());
+        assertEquals(value(0, 1), store.load("key0", null));
+        assertNull(store.load("key1", null));
+        for (int i = 2; i < 20; i++) {
+            assertEquals(value(i, 0), store.load("key" + i, null));
+        }
+        // The timestamps are recovered too
+        assertEquals(1, store.removeExpired(30000L));
+        assertNull(store.load("key2", null));
+    }
+
+    @Test
+    public void testReopenAfterTruncatedRecord() throws Exception {
+        store = open("1048576");
+        store.save("a", "1", true);
+        store.save("b", "2", true);
+        store.shutdown();
+
+        // A crash while appending the last record
+        File segment = lastSegmentFile();
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.setLength(file.length() - 3);
+        } finally {
+            file.close();
+        }
+
+        store = open("1048576");
+        assertEquals(1, store.size());
+        assertEquals("1", store.load("a", null));
+        assertNull(store.load("b", null));
+
+        // The torn record is dropped, so that the next records are readable
+        store.save("c", "3", true);
+        store.shutdown();
+        store = open("1048576");
+        assertEquals(2, store.size());
+        assertEquals("1", store.load("a", null));
+        assertEquals("3", store.load("c", null));
+    }
+
+    @Test
+    public void testReopenAfterCorruptedRecord() throws Exception {
+        store = open("1048576");
+        store.save("a", "1", true);
+        store.save("b", "2", true);
+        store.shutdown();
+
+        File segment = lastSegmentFile();
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            long position = file.length() - 1;
+            file.seek(position);
+            int b = file.read();
+            file.seek(position);
+            file.write(b ^ 0xff);
+        } finally {
+            file.close();
+        }
+
+        store = open("1048576");
+        assertEquals(1, store.size());
+        assertEquals("1", store.load("a", null));
+        assertNull(store.load("b", null));
+    }
+
+    @Test
+    public void testReopenAfterTruncatedLength() throws Exception {
+        store = open("1048576");
+        store.save("a", "1", true);
+        store.shutdown();
+
+        // Only a part of the length field of the second record is on disk
+        File segment = lastSegmentFile();
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.seek(file.length());
+            file.write(new byte[] { 0, 0 });
+        } finally {
+            file.close();
+        }
+
+        store = open("1048576");
+        assertEquals("1", store.load("a", null));
+        store.save("b", "2", true);
+        store.shutdown();
+        store = open("1048576");
+        assertEquals("1", store.load("a", null));
+        assertEquals("2", store.load("b", null));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        store = open("1024");
+        int keys = 10;
+        for (int version = 0; version < 20; version++) {
+            for (int i = 0; i < keys; i++) {
+                store.save("key" + i, value(i, version), version == 0);
+            }
+        }
+        int before = segmentFiles().length;
+
+        // Nothing expires, but the segments of stale records are compacted
+        assertEquals(0, store.removeExpired(Long.MAX_VALUE));
+        int after = segmentFiles().length;
+        assertTrue(before + " segments before, " + after + " after",
+                   after < before);
+        // Every segment left, but the active one, holds a live record
+        assertTrue(after + " segments", after <= keys + 1);
+        for (int i = 0; i < keys; i++) {
+            assertEquals(value(i, 19), store.load("key" + i, null));
+        }
+
+        store.shutdown();
+        store = open("1024");
+        assertEquals(keys, store.size());
+        for (int i = 0; i < keys; i++) {
+            assertEquals(value(i, 19), store.load("key" + i, null));
+        }
+    }
+
+    @Test
+    public void testCompactionKeepsRemovals() throws Exception {
+        store = open("1024");
+        store.save("removed", value(0, 0), true);
+        for (int i = 0; i < 20; i++) {
+            store.save("key" + i, value(i, 0), true);
+        }
+        store.remove("removed");
+        for (int i = 0; i < 20; i++) {
+            store.save("key" + i, value(i, 1), false);
+        }
+
+        store.removeExpired(Long.MAX_VALUE);
+        store.shutdown();
+
+        store = open("1024");
+        assertNull(store.load("removed", null));
+        assertEquals(20, store.size());
+    }
+
+    @Test
+    public void testCompactionUnderConcurrentLoad() throws Exception {
+        store = open("1024");
+        int threads = 4;
+        final int keys = 5;
+        final int versions = 200;
+        final ConcurrentLinkedQueue<Throwable> failures =
+            new ConcurrentLinkedQueue<Throwable>();
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        List<Thread> writers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            writers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int version = 0; version < versions; version++) {
+                            for (int i = 0; i < keys; i++) {
+                                String key = "key" + thread + "-" + i;
+                                String value = value(thread * keys + i, version);
+                                store.save(key, value, version == 0);
+                                // Only this thread writes the key
+                                String loaded = store.load(key, null);
+                                if (!value.equals(loaded)) {
+                                    throw new AssertionError(key + " is "
+                                        + loaded + ", expected " + value);
+                                }
+                            }
+                        }
+                    } catch (Throwable th) {
+                        failures.add(th);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        int compactions = 0;
+        while (done.getCount() > 0) {
+            store.removeExpired(Long.MAX_VALUE);
+            compactions++;
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertTrue(compactions > 0);
+
+        store.removeExpired(Long.MAX_VALUE);
+        assertTrue(segmentFiles().length <= threads * keys + 1);
+
+        store.shutdown();
+        store = open("1024");
+        assertEquals(threads * keys, store.size());
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < keys; i++) {
+                assertEquals(value(t * keys + i, versions - 1),
+                             store.load("key" + t + "-" + i, null));
+            }
+        }
+    }
+
+    private SegmentedFileBackingStore<String, String> open(String segmentSize)
+            throws BackingStoreException {
+        BackingStoreConfiguration<String, String> conf =
+            new BackingStoreConfiguration<String, String>();
+        conf.setStoreName("segmented-" + folder.getRoot().getName())
+            .setInstanceName("instance")
+            .setBaseDirectory(baseDir)
+            .setKeyClazz(String.class)
+            .setValueClazz(String.class)
+            .setClassLoader(getClass().getClassLoader());
+        conf.getVendorSpecificSettings().put("file.store.segmented", "true");
+        conf.getVendorSpecificSettings().put("file.store.segment.size", segmentSize);
+        return (SegmentedFileBackingStore<String, String>)
+            new FileBackingStoreFactory().createBackingStore(conf);
+    }
+
+    /**
+     * Returns a value of about 200 bytes, so that a few fit in a segment of
+     * 1 KB.
+     */
+    private static String value(int key, int version) {
+        StringBuilder value = new StringBuilder();
+        value.append(key).append('.').append(version).append(':');
+        while (value.length() < 200) {
+            value.append('x');
+        }
+        return value.toString();
+    }
+
+    private File[] segmentFiles() {
+        return baseDir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("segment-") && name.endsWith(".dat");
+            }
+        });
+    }
+
+    private File lastSegmentFile() throws IOException {
+        File last = null;
+        int lastId = -1;
+        for (File file : segmentFiles()) {
+            String name = file.getName();
+            int id = Integer.parseInt(name.substring("segment-".length(),
+                name.length() - ".dat".length()));
+            if (id > lastId) {
+                last = file;
+                lastId = id;
+            }
+        }
+        if (last == null) {
+            throw new IOException("No segment in " + baseDir);
+        }
+        return last;
+    }
+}
@@ -104,6 +104,8 @@ public class DataSourceSpec implements java.io.Serializable {
     public static final int POOLNAME = 45;
     public static final int APPLICATIONNAME = 46;
     public static final int MODULENAME = 47;
+    public static final int SQLTRACESAMPLINGRATE = 48;
+    public static final int WARMUPSQL = 49;
 
     private ConcurrentHashMap<Integer, String> details = new ConcurrentHashMap<Integer, String>();
 
@@ -61,6 +61,11 @@ public interface JdbcRAConstants {
      */
     public static final String STATEMENT_CACHE_MISS = "statementCacheMissEvent";
 
+    /**
+     * Represents the statement cache eviction monitoring event.
+     */
+    public static final String STATEMENT_CACHE_EVICTION = "statementCacheEvictionEvent";
+
     /**
      * Represents caching of sql query event.
      */
@@ -124,4 +129,14 @@ public interface JdbcRAConstants {
                 "executeQuery",
                 "executeUpdate"
             ));
+    public static final List<String> sqlExecutionMethodNames =
+            Collections.unmodifiableList(
+            Arrays.asList(
+                "execute",
+                "executeQuery",
+                "executeUpdate",
+                "executeLargeUpdate",
+                "executeBatch",
+                "executeLargeBatch"
+            ));
 }
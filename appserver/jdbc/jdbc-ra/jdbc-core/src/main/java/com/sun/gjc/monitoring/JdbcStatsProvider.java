@@ -40,7 +40,6 @@
 
 package com.sun.gjc.monitoring;
 
-import com.sun.gjc.util.SQLTrace;
 import com.sun.gjc.util.SQLTraceCache;
 import org.glassfish.external.probe.provider.annotations.ProbeListener;
 import org.glassfish.external.probe.provider.annotations.ProbeParam;
@@ -69,6 +68,10 @@ public class JdbcStatsProvider {
             "FreqUsedSqlQueries", "List",
             "Most frequently used sql queries");
 
+    private StringStatisticImpl slowestSqlQueries = new StringStatisticImpl(
+            "SlowestSqlQueries", "List",
+            "Sql queries with the highest average execution time");
+
     private CountStatisticImpl numStatementCacheHit = new CountStatisticImpl(
             "NumStatementCacheHit", StatisticImpl.UNIT_COUNT,
             "The total number of Statement Cache hits.");
@@ -77,6 +80,10 @@ public class JdbcStatsProvider {
             "NumStatementCacheMiss", StatisticImpl.UNIT_COUNT,
             "The total number of Statement Cache misses.");
 
+    private CountStatisticImpl numStatementCacheEviction = new CountStatisticImpl(
+            "NumStatementCacheEviction", StatisticImpl.UNIT_COUNT,
+            "The total number of statements evicted from the Statement Cache.");
+
     private CountStatisticImpl numPotentialStatementLeak = new CountStatisticImpl(
             "NumPotentialStatementLeak", StatisticImpl.UNIT_COUNT,
             "The total number of potential Statement leaks");
@@ -124,30 +131,44 @@ public class JdbcStatsProvider {
         }
     }
 
+    /**
+     * Whenever a statement is evicted from the statement cache, increment
+     * numStatementCacheEviction count.
+     * @param poolName JdbcConnectionPool that has got a statement cache eviction event.
+     */
+    @ProbeListener(JdbcRAConstants.STATEMENT_CACHE_DOTTED_NAME + JdbcRAConstants.STATEMENT_CACHE_EVICTION)
+    public void statementCacheEvictionEvent(@ProbeParam("poolName") String poolName,
+                                            @ProbeParam("appName") String appName,
+                                            @ProbeParam("moduleName") String moduleName
+                                            ) {
+
+        PoolInfo poolInfo = new PoolInfo(poolName, appName, moduleName);
+        if(this.poolInfo.equals(poolInfo)){
+            numStatementCacheEviction.increment();
+        }
+    }
+
     /**
      * Whenever a sql statement that is traced is to be cache for monitoring
-     * purpose, the SQLTrace object is created for the specified sql and
-     * updated in the SQLTraceCache. This is used to update the
-     * frequently used sql queries.
+     * purpose, it is published to the SQLTraceCache. This is used to update
+     * the frequently used and the slowest sql queries.
      *
      * @param poolName
      * @param sql
+     * @param executionTime
      */
     @ProbeListener(JdbcRAConstants.SQL_TRACING_DOTTED_NAME + JdbcRAConstants.TRACE_SQL)
     public void traceSQLEvent(
                                    @ProbeParam("poolName") String poolName,
                                    @ProbeParam("appName") String appName,
                                    @ProbeParam("moduleName") String moduleName,
-                                   @ProbeParam("sql") String sql) {
+                                   @ProbeParam("sql") String sql,
+                                   @ProbeParam("executionTime") long executionTime) {
 
         PoolInfo poolInfo = new PoolInfo(poolName, appName, moduleName);
         if(this.poolInfo.equals(poolInfo)){
             if(sqlTraceCache != null) {
-                if (sql != null) {
-                    SQLTrace cacheObj = new SQLTrace(sql, 1,
-                            System.currentTimeMillis());
-                    sqlTraceCache.checkAndUpdateCache(cacheObj);
-                }
+                sqlTraceCache.trace(sql, executionTime);
             }
         }
     }
@@ -179,6 +200,11 @@ public class JdbcStatsProvider {
         return numStatementCacheMiss;
     }
 
+    @ManagedAttribute(id="numstatementcacheeviction")
+    public CountStatistic getNumStatementCacheEviction() {
+        return numStatementCacheEviction;
+    }
+
     @ManagedAttribute(id="frequsedsqlqueries")
     public StringStatistic getfreqUsedSqlQueries() {
         if(sqlTraceCache != null) {
@@ -189,6 +215,14 @@ public class JdbcStatsProvider {
         return freqUsedSqlQueries;
     }
 
+    @ManagedAttribute(id="slowestsqlqueries")
+    public StringStatistic getSlowestSqlQueries() {
+        if(sqlTraceCache != null) {
+            slowestSqlQueries.setCurrent(sqlTraceCache.getSlowestQueries());
+        }
+        return slowestSqlQueries;
+    }
+
     @ManagedAttribute(id="numpotentialstatementleak")
     public CountStatistic getNumPotentialStatementLeak() {
         return numPotentialStatementLeak;
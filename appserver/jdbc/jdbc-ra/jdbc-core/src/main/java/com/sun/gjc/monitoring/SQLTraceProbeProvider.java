@@ -59,12 +59,14 @@ public class SQLTraceProbeProvider {
      *
      * @param poolName for which sql query should be cached
      * @param sql sql query that should be cached
+     * @param executionTime time taken by the call, in nano seconds
      */
     @Probe(name=JdbcRAConstants.TRACE_SQL)
     public void traceSQLEvent(@ProbeParam("poolName") String poolName,
                                    @ProbeParam("appName") String appName,
                                    @ProbeParam("moduleName") String moduleName,
-            @ProbeParam("sql") String sql) {
+            @ProbeParam("sql") String sql,
+            @ProbeParam("executionTime") long executionTime) {
 
     }
 }
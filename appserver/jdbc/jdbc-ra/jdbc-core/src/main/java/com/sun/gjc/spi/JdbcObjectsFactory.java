@@ -52,7 +52,6 @@ import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.glassfish.api.jdbc.SQLTraceRecord;
 
 
 /**
@@ -132,15 +131,7 @@ public abstract class JdbcObjectsFactory implements Serializable {
         InvocationHandler ih = new InvocationHandler() {
 
             public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                SQLTraceRecord record = new SQLTraceRecord();
-                record.setMethodName(method.getName());
-                record.setParams(args);
-                record.setClassName(actualObject.getClass().getName());
-                record.setThreadName(Thread.currentThread().getName());
-                record.setThreadID(Thread.currentThread().getId());
-                record.setTimeStamp(System.currentTimeMillis());
-                sqlTraceDelegator.sqlTrace(record);
-                return method.invoke(actualObject, args);
+                return sqlTraceDelegator.invoke(actualObject, method, args, null);
             }
         };
         result = (T) Proxy.newProxyInstance(actualObject.getClass().getClassLoader(), ifaces, ih);        
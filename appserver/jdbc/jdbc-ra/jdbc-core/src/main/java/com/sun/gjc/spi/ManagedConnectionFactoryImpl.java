@@ -548,6 +548,7 @@ public abstract class ManagedConnectionFactoryImpl implements javax.resource.spi
         
         if(sqlTraceListeners != null && !sqlTraceListeners.equals("null")) {
             sqlTraceDelegator = new SQLTraceDelegator(getPoolName(), getApplicationName(), getModuleName());
+            sqlTraceDelegator.setSamplingRate(getSqlTraceSamplingRate());
             StringTokenizer st = new StringTokenizer(sqlTraceListeners, delimiter);
             while (st.hasMoreTokens()) {
                 String sqlTraceListener = st.nextToken().trim();            
@@ -1140,6 +1141,42 @@ public abstract class ManagedConnectionFactoryImpl implements javax.resource.spi
             detectSqlTraceListeners();
         }
     }
+
+    public String getWarmUpSql() {
+        return spec.getDetail(DataSourceSpec.WARMUPSQL);
+    }
+
+    /**
+     * Sets the sql statements, separated by ';', that are prepared in the
+     * statement cache of every new connection, before it is added to the pool.
+     * The init sql, if any, is also executed before the connection is added.
+     *
+     * @param warmUpSql sql statements
+     */
+    public void setWarmUpSql(String warmUpSql) {
+        if(warmUpSql != null && !warmUpSql.equalsIgnoreCase("null") &&
+                !warmUpSql.equals("")) {
+            spec.setDetail(DataSourceSpec.WARMUPSQL, warmUpSql);
+        }
+    }
+
+    public String getSqlTraceSamplingRate() {
+        return spec.getDetail(DataSourceSpec.SQLTRACESAMPLINGRATE);
+    }
+
+    /**
+     * Sets the fraction (0.0 to 1.0) of the jdbc calls that are traced.
+     *
+     * @param samplingRate sampling rate, all the calls are traced by default.
+     */
+    public void setSqlTraceSamplingRate(String samplingRate) {
+        if(samplingRate != null) {
+            spec.setDetail(DataSourceSpec.SQLTRACESAMPLINGRATE, samplingRate);
+            if(sqlTraceDelegator != null) {
+                sqlTraceDelegator.setSamplingRate(samplingRate);
+            }
+        }
+    }
     
     /**
      * Sets the description.
@@ -1282,9 +1319,14 @@ public abstract class ManagedConnectionFactoryImpl implements javax.resource.spi
     protected ManagedConnectionImpl constructManagedConnection(PooledConnection pc,
                                                            Connection sqlCon, PasswordCredential passCred,
                                                            ManagedConnectionFactoryImpl mcf) throws ResourceException {
-        return new ManagedConnectionImpl(pc, sqlCon, passCred, mcf,
+        ManagedConnectionImpl mc = new ManagedConnectionImpl(pc, sqlCon, passCred, mcf,
                 getPoolInfo(), statementCacheSize, statementCacheType, sqlTraceDelegator,
                 statementLeakTimeout, statementLeakReclaim);
+        String warmUpSql = getWarmUpSql();
+        if (warmUpSql != null) {
+            mc.warmUp(warmUpSql.split(";"));
+        }
+        return mc;
     }
 
     /**
@@ -1420,6 +1462,9 @@ public abstract class ManagedConnectionFactoryImpl implements javax.resource.spi
                 }
                 Timer timer = ((com.sun.gjc.spi.ResourceAdapterImpl) ra).getTimer();
                 jdbcStatsProvider.getSqlTraceCache().scheduleTimerTask(timer);
+                if(sqlTraceDelegator != null) {
+                    sqlTraceDelegator.setSqlTraceCacheEnabled(true);
+                }
             }
             if(_logger.isLoggable(Level.FINEST)) {
                 _logger.finest("Registered JDBCRA Stats Provider");
@@ -1438,6 +1483,9 @@ public abstract class ManagedConnectionFactoryImpl implements javax.resource.spi
                     _logger.finest("Canceling timer task for sql trace caching");
                 }
                 jdbcStatsProvider.getSqlTraceCache().cancelTimerTask();
+                if(sqlTraceDelegator != null) {
+                    sqlTraceDelegator.setSqlTraceCacheEnabled(false);
+                }
             }
             StatsProviderManager.unregister(jdbcStatsProvider);
             jdbcStatsProvider = null;
@@ -242,6 +242,47 @@ public class ManagedConnectionImpl implements javax.resource.spi.ManagedConnecti
         }
     }
 
+    /**
+     * Warms up this managed connection before it is handed over to the pool :
+     * the physical connection is acquired, the init sql is executed and the
+     * given sql statements are prepared in the statement cache.
+     *
+     * @param warmUpSql sql statements to be prepared in the statement cache
+     * @throws ResourceException if the physical connection cannot be acquired
+     */
+    void warmUp(String[] warmUpSql) throws ResourceException {
+        logFine("jdbc.warm_up_start");
+        getActualConnection();
+        ManagedConnectionFactoryImpl spiMCF = (ManagedConnectionFactoryImpl) mcf;
+        if (!initSqlExecuted) {
+            executeInitSql(spiMCF.getInitSql());
+        }
+        if (statementCaching) {
+            //a logical connection that is never handed over to an application,
+            //hence it is invalidated instead of being closed.
+            ConnectionHolder holder = spiMCF.getJdbcObjectsFactory().getConnection(
+                    actualConnection, this, null, spiMCF.isStatementWrappingEnabled(), null);
+            holder.setActive(true);
+            try {
+                for (String sql : warmUpSql) {
+                    sql = sql.trim();
+                    if (sql.length() == 0) {
+                        continue;
+                    }
+                    try {
+                        //closing a cached statement returns it to the cache.
+                        holder.prepareStatement(sql).close();
+                    } catch (SQLException sqle) {
+                        _logger.log(Level.WARNING, "jdbc.exc_warm_up_sql_error", sql);
+                    }
+                }
+            } finally {
+                holder.invalidate();
+            }
+        }
+        logFine("jdbc.warm_up_end");
+    }
+
     private void tuneStatementCaching(PoolInfo poolInfo, int statementCacheSize,
             String statementCacheType) {
         cacheSize = statementCacheSize;
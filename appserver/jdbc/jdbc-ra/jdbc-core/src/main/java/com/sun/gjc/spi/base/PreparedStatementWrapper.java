@@ -55,7 +55,7 @@ import java.util.logging.Level;
  * Abstract class for wrapping PreparedStatement<br>
  */
 public abstract class PreparedStatementWrapper extends StatementWrapper implements
-        PreparedStatement, ResultSetClosedEventListener {
+        PreparedStatement, ResultSetClosedEventListener, CacheableStatement {
     protected PreparedStatement preparedStatement = null;
     private boolean busy = false;
     private boolean cached = false;
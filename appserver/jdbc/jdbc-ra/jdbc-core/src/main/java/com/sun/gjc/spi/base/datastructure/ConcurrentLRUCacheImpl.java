@@ -0,0 +1,316 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.gjc.spi.base.datastructure;
+
+import com.sun.gjc.monitoring.StatementCacheProbeProvider;
+import com.sun.gjc.spi.base.CacheObjectKey;
+import com.sun.gjc.spi.base.CacheableStatement;
+import com.sun.logging.LogDomains;
+import org.glassfish.resourcebase.resources.api.PoolInfo;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Thread-safe, access ordered statement cache.
+ * <p/>
+ * Lookups are lock-free : every hit only stamps the entry with the current
+ * time, so that no state is shared by the threads hitting the cache. When the
+ * cache is full, the entry with the oldest stamp (the least recently used one)
+ * is evicted. Eviction is serialized by a lock that is taken only when an
+ * entry is added to a full cache.
+ * <p/>
+ * Finding the least recently used entry requires a scan of the cache. A scan
+ * collects a batch of the oldest entries, which are then evicted one by one
+ * as needed. A collected entry that has been used since the scan is skipped.
+ * <p/>
+ * Since this cache is synchronized by itself, it is not wrapped by
+ * <code>SynchronizedCache</code>.
+ */
+public class ConcurrentLRUCacheImpl implements Cache {
+
+    private final ConcurrentHashMap<CacheObjectKey, CacheEntry> list;
+    private final Object evictionLock = new Object();
+    //Oldest entries, least recently used first. Guarded by evictionLock.
+    private final ArrayDeque<EvictionCandidate> evictionCandidates =
+            new ArrayDeque<EvictionCandidate>();
+    private final int maxSize;
+    //Number of entries collected by a scan of the cache
+    private static final int EVICTION_BATCH_SIZE = 16;
+    protected final static Logger _logger =
+            LogDomains.getLogger(ConcurrentLRUCacheImpl.class, LogDomains.RSR_LOGGER);
+    private final StatementCacheProbeProvider probeProvider;
+    private PoolInfo poolInfo;
+
+    public ConcurrentLRUCacheImpl(PoolInfo poolInfo, int maxSize) {
+        this.maxSize = maxSize;
+        this.poolInfo = poolInfo;
+        list = new ConcurrentHashMap<CacheObjectKey, CacheEntry>(maxSize > 0 ? maxSize : 16);
+        probeProvider = new StatementCacheProbeProvider();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Object checkAndUpdateCache(CacheObjectKey key) {
+        Object result = null;
+        CacheEntry entry = list.get(key);
+        if (entry != null) {
+            //Cache hit
+            entry.lastAccess = System.nanoTime();
+            result = entry.entryObj;
+            if (_logger.isLoggable(Level.FINEST)) {
+                _logger.finest("Cache Hit");
+            }
+            probeProvider.statementCacheHitEvent(poolInfo.getName(), poolInfo.getApplicationName(), poolInfo.getModuleName());
+        } else {
+            //Cache miss
+            if (_logger.isLoggable(Level.FINEST)) {
+                _logger.finest("Cache Miss");
+            }
+            probeProvider.statementCacheMissEvent(poolInfo.getName(), poolInfo.getApplicationName(), poolInfo.getModuleName());
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void addToCache(CacheObjectKey key, Object o, boolean force) {
+        CacheEntry entry = new CacheEntry(o, System.nanoTime());
+        if (force) {
+            list.put(key, entry);
+        } else if (list.putIfAbsent(key, entry) != null) {
+            return;
+        }
+        if (list.size() > maxSize) {
+            synchronized (evictionLock) {
+                while (list.size() > maxSize) {
+                    if (!evictLeastRecentlyUsed(key)) {
+                        break;
+                    }
+                    probeProvider.statementCacheEvictionEvent(poolInfo.getName(),
+                            poolInfo.getApplicationName(), poolInfo.getModuleName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes and closes the least recently used entry.
+     *
+     * @param exclude key that must not be evicted (the one being added)
+     * @return boolean whether an entry was evicted
+     */
+    private boolean evictLeastRecentlyUsed(CacheObjectKey exclude) {
+        boolean collected = false;
+        while (true) {
+            EvictionCandidate candidate = evictionCandidates.poll();
+            if (candidate == null) {
+                if (collected || !collectEvictionCandidates()) {
+                    return false;
+                }
+                collected = true;
+                continue;
+            }
+            if (candidate.key.equals(exclude)
+                    || candidate.entry.lastAccess != candidate.lastAccess) {
+                //Being added, or used since it was collected
+                continue;
+            }
+            if (list.remove(candidate.key, candidate.entry)) {
+                close(candidate.entry);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Scans the cache for the oldest entries.
+     *
+     * @return boolean whether any entry was collected
+     */
+    private boolean collectEvictionCandidates() {
+        //Youngest candidate at the head, so that it is replaced first
+        PriorityQueue<EvictionCandidate> oldest = new PriorityQueue<EvictionCandidate>(
+                EVICTION_BATCH_SIZE, EvictionCandidate.YOUNGEST_FIRST);
+        for (Map.Entry<CacheObjectKey, CacheEntry> e : list.entrySet()) {
+            long lastAccess = e.getValue().lastAccess;
+            if (oldest.size() < EVICTION_BATCH_SIZE) {
+                oldest.add(new EvictionCandidate(e.getKey(), e.getValue(), lastAccess));
+            } else if (lastAccess - oldest.peek().lastAccess < 0) {
+                oldest.poll();
+                oldest.add(new EvictionCandidate(e.getKey(), e.getValue(), lastAccess));
+            }
+        }
+        while (!oldest.isEmpty()) {
+            evictionCandidates.addFirst(oldest.poll());
+        }
+        return !evictionCandidates.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void clearCache() {
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.fine("clearing objects in cache");
+        }
+        list.clear();
+        synchronized (evictionLock) {
+            evictionCandidates.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void flushCache() {
+        Iterator<CacheEntry> it = list.values().iterator();
+        while (it.hasNext()) {
+            CacheEntry entry = it.next();
+            it.remove();
+            close(entry);
+        }
+        synchronized (evictionLock) {
+            evictionCandidates.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void purge() {
+        synchronized (evictionLock) {
+            evictLeastRecentlyUsed(null);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void purge(Object obj) {
+        Iterator<CacheEntry> it = list.values().iterator();
+        while (it.hasNext()) {
+            CacheEntry entry = it.next();
+            if (entry.entryObj.equals(obj)) {
+                //Found the entry in the cache. Remove this entry.
+                if (_logger.isLoggable(Level.FINEST)) {
+                    _logger.log(Level.FINEST, "Purging an entry from cache");
+                }
+                it.remove();
+                close(entry);
+                break;
+            }
+        }
+    }
+
+    private void close(CacheEntry entry) {
+        try {
+            CacheableStatement statement = (CacheableStatement) entry.entryObj;
+            statement.setCached(false);
+            statement.close();
+        } catch (SQLException e) {
+            //ignore
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getSize() {
+        return list.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public boolean isSynchronized() {
+        return true;
+    }
+
+    /**
+     * Entry collected for eviction, along with the time at which it was last
+     * accessed when it was collected.
+     */
+    private static class EvictionCandidate {
+        private static final Comparator<EvictionCandidate> YOUNGEST_FIRST =
+                new Comparator<EvictionCandidate>() {
+            public int compare(EvictionCandidate c1, EvictionCandidate c2) {
+                long diff = c2.lastAccess - c1.lastAccess;
+                return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+            }
+        };
+
+        private final CacheObjectKey key;
+        private final CacheEntry entry;
+        private final long lastAccess;
+
+        private EvictionCandidate(CacheObjectKey key, CacheEntry entry, long lastAccess) {
+            this.key = key;
+            this.entry = entry;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Cache object that has an entry along with the time (as per
+     * <code>System.nanoTime()</code>) at which it was last accessed.
+     */
+    private static class CacheEntry {
+        private final Object entryObj;
+        private volatile long lastAccess;
+
+        private CacheEntry(Object o, long lastAccess) {
+            this.entryObj = o;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
@@ -79,7 +79,8 @@ public class LRUCacheImpl implements Cache {
     public LRUCacheImpl(PoolInfo poolInfo, int maxSize){
         this.maxSize = maxSize;
         this.poolInfo = poolInfo;
-        list = new LinkedHashMap<CacheObjectKey, CacheEntry>();
+        //access ordered, so that purge() removes the least recently used entry
+        list = new LinkedHashMap<CacheObjectKey, CacheEntry>(16, 0.75f, true);
         try {
             probeProvider = new StatementCacheProbeProvider();
         } catch(Exception ex) {
@@ -128,8 +129,12 @@ public class LRUCacheImpl implements Cache {
         if(force || !list.containsKey(key)){
             //overwrite or if not already found in cache
 
-            if(list.size() >= maxSize){
+            int size = list.size();
+            if(size >= maxSize && !list.containsKey(key)){
                 purge();
+                if(list.size() < size) {
+                    probeProvider.statementCacheEvictionEvent(poolInfo.getName(), poolInfo.getApplicationName(), poolInfo.getModuleName());
+                }
             }
             CacheEntry entry = new CacheEntry(o);
             list.put(key, entry);
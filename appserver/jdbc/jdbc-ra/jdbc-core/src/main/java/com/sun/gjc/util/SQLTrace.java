@@ -52,6 +52,8 @@ public class SQLTrace implements Comparable {
     private String queryName;
     private int numExecutions;
     private long lastUsageTime;
+    private long totalExecutionTime;
+    private long maxExecutionTime;
 
     public SQLTrace(String query, int numExecutions, long time) {
         this.queryName = query;
@@ -113,6 +115,39 @@ public class SQLTrace implements Comparable {
         this.lastUsageTime = lastUsageTime;
     }
 
+    /**
+     * Record one more execution of this query.
+     *
+     * @param executionTime time taken by the execution, in nano seconds
+     * @param time time stamp of the execution
+     */
+    public void addExecution(long executionTime, long time) {
+        numExecutions++;
+        lastUsageTime = time;
+        totalExecutionTime += executionTime;
+        if (executionTime > maxExecutionTime) {
+            maxExecutionTime = executionTime;
+        }
+    }
+
+    /**
+     * Get the average execution time of this query, in nano seconds
+     *
+     * @return the average execution time
+     */
+    public long getAverageExecutionTime() {
+        return (numExecutions == 0) ? 0 : totalExecutionTime / numExecutions;
+    }
+
+    /**
+     * Get the maximum execution time of this query, in nano seconds
+     *
+     * @return the maximum execution time
+     */
+    public long getMaxExecutionTime() {
+        return maxExecutionTime;
+    }
+
     /**
      * Check for equality of the SQLTrace with the object passed by
      * comparing the queryName stored.
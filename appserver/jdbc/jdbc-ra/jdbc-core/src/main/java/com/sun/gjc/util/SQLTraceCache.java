@@ -37,73 +37,105 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-
 package com.sun.gjc.util;
 
 import com.sun.logging.LogDomains;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Maintains the Sql Tracing Cache used to store SQL statements used by the
  * applications. This is used by the JDBCRA monitoring to display the most
- * frequently used queries by applications.
+ * frequently used queries and the slowest queries used by applications.
+ * <p/>
+ * Traced queries are published to a lock-free ring buffer and are aggregated,
+ * per normalized sql text, by a background timer task. Hence tracing a query
+ * does not contend on a lock.
  *
  * @author Shalini M
  */
 public class SQLTraceCache {
 
-    //List of sql trace objects
-    private final List<SQLTrace> list;
+    //Aggregated sql trace objects, keyed by normalized sql.
+    private final Map<String, SQLTrace> traces;
+    private final SQLTraceRingBuffer ringBuffer;
     //Maximum size of the cache.
     private int numTopQueriesToReport = 10;
     private long timeToKeepQueries = 60 * 1000;
     private SQLTraceTimerTask sqlTraceTimerTask;
+    private TimerTask drainTimerTask;
     private String poolName;
     private String appName;
     private String moduleName;
     private final static Logger _logger = LogDomains.getLogger(SQLTraceCache.class,
             LogDomains.RSR_LOGGER);
     private static final String LINE_BREAK = "%%%EOL%%%";
+    private static final int RING_BUFFER_SIZE = 8192;
+    private static final long DRAIN_INTERVAL = 1000;
+
+    private static final Comparator<SQLTrace> SLOWEST_FIRST = new Comparator<SQLTrace>() {
+        public int compare(SQLTrace o1, SQLTrace o2) {
+            long t1 = o1.getAverageExecutionTime();
+            long t2 = o2.getAverageExecutionTime();
+            return (t1 == t2) ? 0 : ((t1 < t2) ? 1 : -1);
+        }
+    };
 
     public SQLTraceCache(String poolName, String appName, String moduleName, int maxSize, long timeToKeepQueries) {
         this.poolName = poolName;
         this.appName = appName;
         this.moduleName = moduleName;
         this.numTopQueriesToReport = maxSize;
-        list = new ArrayList<SQLTrace>();
+        traces = new HashMap<String, SQLTrace>();
+        ringBuffer = new SQLTraceRingBuffer(RING_BUFFER_SIZE);
         this.timeToKeepQueries = timeToKeepQueries * 60 * 1000;
     }
 
     public List<SQLTrace> getSqlTraceList() {
-        return list;
+        synchronized (traces) {
+            drain();
+            return new ArrayList<SQLTrace>(traces.values());
+        }
     }
 
     public String getPoolName() {
         return poolName;
     }
-    
+
     /**
      * Schedule timer to perform purgeEntries on the cache after the
-     * specified timeToKeepQueries delay and period.
+     * specified timeToKeepQueries delay and period. The traced queries
+     * are aggregated by another task, every second.
      */
     public void scheduleTimerTask(Timer timer) {
 
-        if(sqlTraceTimerTask != null) {
-            sqlTraceTimerTask.cancel();
-            sqlTraceTimerTask = null;
-        }
+        cancelTimerTask();
 
         sqlTraceTimerTask = initializeTimerTask();
+        drainTimerTask = new TimerTask() {
+            @Override
+            public void run() {
+                synchronized (traces) {
+                    drain();
+                }
+            }
+        };
 
         if(timer != null) {
 
             timer.scheduleAtFixedRate(sqlTraceTimerTask, timeToKeepQueries, timeToKeepQueries);
+            timer.schedule(drainTimerTask, DRAIN_INTERVAL, DRAIN_INTERVAL);
         }
         if(_logger.isLoggable(Level.FINEST)) {
             _logger.finest("Scheduled Sql Trace Caching timer task");
@@ -111,7 +143,7 @@ public class SQLTraceCache {
     }
 
     /**
-     * Cancel the timer task used to perform a purgeEntries on the cache.
+     * Cancel the timer tasks used to perform a purgeEntries on the cache.
      */
     public synchronized void cancelTimerTask() {
 
@@ -122,6 +154,10 @@ public class SQLTraceCache {
             sqlTraceTimerTask.cancel();
         }
         sqlTraceTimerTask = null;
+        if (drainTimerTask != null) {
+            drainTimerTask.cancel();
+        }
+        drainTimerTask = null;
     }
 
     /**
@@ -138,60 +174,83 @@ public class SQLTraceCache {
 
     /**
      * Request for adding a sql query in the form of SQLTrace to this cache.
-     * If the query is already found
-     * in the list, the number of times it is executed is incremented by one
-     * along with the timestamp.
-     * If the query is a new one, it is added to the list.
-     * 
+     *
      * @param cacheObj
-     * @return
      */
     public void checkAndUpdateCache(SQLTrace cacheObj) {
-        synchronized (list) {
-            if (cacheObj != null) {
-                int index = list.indexOf(cacheObj);
-                if (index != -1) {
-                    //If already found in the cache
-                    //equals is invoked here and hence comparison based on query name is done
-                    //Get the object at the index to update the numExecutions
-                    SQLTrace cache = (SQLTrace) list.get(index);
-                    cache.setNumExecutions(cache.getNumExecutions() + 1);
-                    cache.setLastUsageTime(System.currentTimeMillis());
-                } else {
+        if (cacheObj != null) {
+            trace(cacheObj.getQueryName(), 0);
+        }
+    }
+
+    /**
+     * Request for adding an executed sql query to this cache. The query is
+     * only published here; it is aggregated later by the drain task.
+     *
+     * @param sql sql query
+     * @param executionTime time taken by the query, in nano seconds
+     */
+    public void trace(String sql, long executionTime) {
+        if (sql != null) {
+            ringBuffer.publish(sql, executionTime);
+        }
+    }
+
+    /**
+     * Aggregate the queries published so far. If the query is already found
+     * in the cache, the number of times it is executed is incremented by one
+     * along with the timestamp and the execution time.
+     * If the query is a new one, it is added to the cache.
+     * Caller must hold the lock on traces.
+     */
+    private void drain() {
+        final long now = System.currentTimeMillis();
+        ringBuffer.drain(new SQLTraceRingBuffer.Consumer() {
+            public void consume(String sql, long executionTime) {
+                String query = normalize(sql);
+                SQLTrace cache = traces.get(query);
+                if (cache == null) {
                     //First occurrence of the query. query to be added.
-                    cacheObj.setNumExecutions(1);
-                    cacheObj.setLastUsageTime(System.currentTimeMillis());
-                    list.add(cacheObj);
+                    cache = new SQLTrace(query, 0, now);
+                    traces.put(query, cache);
                 }
+                cache.addExecution(executionTime, now);
             }
-        }
+        });
     }
 
     /**
-     * Entries are removed from the list after sorting
-     * them in the least frequently used order. Only numTopQueriesToReport number of
-     * entries are maintained in the list after the purgeEntries.
+     * Entries are removed from the cache after sorting them in the least
+     * frequently used and the fastest order. Only the numTopQueriesToReport
+     * most frequently used entries and numTopQueriesToReport slowest entries
+     * are maintained in the cache after the purgeEntries.
      */
     public void purgeEntries() {
-        synchronized(list) {
-            Collections.sort(list, Collections.reverseOrder());
-            Iterator i = list.iterator();
-            while (i.hasNext()) {
-                SQLTrace cacheObj = (SQLTrace) i.next();
-                if (list.size() > numTopQueriesToReport) {
-                    if(_logger.isLoggable(Level.FINEST)) {
-                        _logger.finest("removing sql=" + cacheObj.getQueryName());
-                    }
-                    i.remove();
-                } else {
-                    break;
-                }
+        synchronized(traces) {
+            drain();
+            if (traces.size() <= numTopQueriesToReport) {
+                return;
             }
-            //sort by most frequently used queries first
-            Collections.sort(list);
+            Set<SQLTrace> retained = new HashSet<SQLTrace>();
+            retained.addAll(getTopEntries(null));
+            retained.addAll(getTopEntries(SLOWEST_FIRST));
+            if(_logger.isLoggable(Level.FINEST)) {
+                _logger.finest("removing " + (traces.size() - retained.size()) + " sql queries");
+            }
+            traces.values().retainAll(retained);
         }
     }
 
+    /**
+     * Caller must hold the lock on traces.
+     */
+    private List<SQLTrace> getTopEntries(Comparator<SQLTrace> order) {
+        List<SQLTrace> list = new ArrayList<SQLTrace>(traces.values());
+        //sort by most frequently used queries first, unless specified
+        Collections.sort(list, order);
+        return (list.size() > numTopQueriesToReport) ? list.subList(0, numTopQueriesToReport) : list;
+    }
+
     /**
      * Returns the String representation of the list of traced sql queries
      * ordered by the number most frequently used, followed by the usage
@@ -201,11 +260,95 @@ public class SQLTraceCache {
      * @return string representation of the list of sql queries sorted
      */
     public String getTopQueries() {
-        purgeEntries();
         StringBuffer sb = new StringBuffer();
-        for(SQLTrace cache : list) {
-            sb.append(LINE_BREAK);
-            sb.append(cache.getQueryName());
+        synchronized (traces) {
+            purgeEntries();
+            for (SQLTrace cache : getTopEntries(null)) {
+                sb.append(LINE_BREAK);
+                sb.append(cache.getQueryName());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the String representation of the list of traced sql queries
+     * ordered by their average execution time, slowest first. Only the top 'n'
+     * queries represented by the numTopQueriesToReport are chosen for display.
+     *
+     * @return string representation of the list of sql queries sorted
+     */
+    public String getSlowestQueries() {
+        StringBuffer sb = new StringBuffer();
+        synchronized (traces) {
+            purgeEntries();
+            for (SQLTrace cache : getTopEntries(SLOWEST_FIRST)) {
+                sb.append(LINE_BREAK);
+                sb.append(cache.getQueryName());
+                sb.append(" [avg ");
+                sb.append(TimeUnit.NANOSECONDS.toMicros(cache.getAverageExecutionTime()));
+                sb.append(" us, max ");
+                sb.append(TimeUnit.NANOSECONDS.toMicros(cache.getMaxExecutionTime()));
+                sb.append(" us]");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return long number of traced queries dropped because the aggregation
+     * could not keep up.
+     */
+    public long getNumDroppedQueries() {
+        return ringBuffer.getDroppedCount();
+    }
+
+    /**
+     * Normalizes a sql query so that the queries that differ only by their
+     * literal values or by white spaces are aggregated together : string and
+     * numeric literals are replaced by '?' and white spaces are collapsed.
+     *
+     * @param sql sql query
+     * @return normalized sql query
+     */
+    static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                //skip the string literal, '' being an escaped quote
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                sb.append('?');
+                i++;
+            } else if (Character.isDigit(c) && (sb.length() == 0 ||
+                    !Character.isJavaIdentifierPart(sb.charAt(sb.length() - 1)))) {
+                while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (sb.length() > 0 && i < length) {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(c);
+                i++;
+            }
         }
         return sb.toString();
     }
@@ -42,8 +42,11 @@ package com.sun.gjc.util;
 
 import com.sun.gjc.monitoring.JdbcRAConstants;
 import com.sun.gjc.monitoring.SQLTraceProbeProvider;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -74,6 +77,10 @@ public class SQLTraceDelegator implements SQLTraceListener {
     private String appName;
     private String moduleName;
     private SQLTraceProbeProvider probeProvider = null;
+    //fraction of the calls that are traced
+    private volatile double samplingRate = 1.0;
+    //whether the executed sql is cached for monitoring
+    private volatile boolean sqlTraceCacheEnabled;
 
     public SQLTraceProbeProvider getProbeProvider() {
         return probeProvider;
@@ -92,13 +99,54 @@ public class SQLTraceDelegator implements SQLTraceListener {
      * @param listener
      */
     public void registerSQLTraceListener(SQLTraceListener listener) {
+        if(listener == null) {
+            return;
+        }
         if(sqlTraceListenersList == null) {
                 sqlTraceListenersList = new ArrayList<SQLTraceListener>();
         }
         sqlTraceListenersList.add(listener);
     }    
 
-   
+    /**
+     * Set the fraction of the calls that are traced.
+     * @param samplingRate value between 0.0 and 1.0, invalid values are ignored.
+     */
+    public void setSamplingRate(String samplingRate) {
+        if (samplingRate != null && !samplingRate.equals("null")) {
+            try {
+                double rate = Double.parseDouble(samplingRate);
+                if (rate >= 0 && rate <= 1) {
+                    this.samplingRate = rate;
+                }
+            } catch (NumberFormatException nfe) {
+                if (_logger.isLoggable(Level.FINE)) {
+                    _logger.log(Level.FINE, "invalid sql trace sampling rate : " + samplingRate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Set whether the sql executed by the traced calls, along with the time
+     * taken, is published to the monitoring sql trace cache.
+     */
+    public void setSqlTraceCacheEnabled(boolean sqlTraceCacheEnabled) {
+        this.sqlTraceCacheEnabled = sqlTraceCacheEnabled;
+    }
+
+    /**
+     * Decides whether the current call is to be traced, as per the sampling rate.
+     * @return true if the call is to be traced.
+     */
+    public boolean isSampled() {
+        double rate = samplingRate;
+        return rate >= 1.0 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+   /**
+    * Notifies the listeners of the sql trace record, before the traced call.
+    */
    public void sqlTrace(SQLTraceRecord record) {
        if (sqlTraceListenersList != null) {
            for (SQLTraceListener listener : sqlTraceListenersList) {
@@ -113,39 +161,77 @@ public class SQLTraceDelegator implements SQLTraceListener {
                }
            }
        }
+       if (record != null) {
+           record.setPoolName(poolName);
+       }
+   }
 
-        if (record != null) {
-            record.setPoolName(poolName);
-            String methodName = record.getMethodName();
-            //Check if the method name is one in which sql query is used
-            if (isMethodValidForCaching(methodName)) {
-                Object[] params = record.getParams();
-                if (params != null && params.length > 0) {
-                    String sqlQuery = null;
-                    for (Object param : params) {
-                        if(param instanceof String) {
-                            sqlQuery = param.toString();
-                        }
-                        break;
-                    }
-                    if (sqlQuery != null) {
-                        probeProvider.traceSQLEvent(poolName, appName, moduleName, sqlQuery);
-                    }
-                }
-            }
+    /**
+     * Invokes a method on a traced JDBC object. The listeners are notified of
+     * the call, before it is made. When the call executes sql, the sql and
+     * the time taken by the execution are published to monitoring.
+     *
+     * @param actualObject object on which the method is invoked
+     * @param method method invoked
+     * @param args arguments of the call
+     * @param sql sql of the prepared or callable statement on which the method
+     * is invoked, null for other objects.
+     * @return result of the call
+     * @throws Throwable exception thrown by the call
+     */
+    public Object invoke(Object actualObject, Method method, Object[] args, String sql)
+            throws Throwable {
+        String methodName = method.getName();
+        boolean notify = sqlTraceListenersList != null;
+        boolean publish = sqlTraceCacheEnabled && isMethodValidForCaching(methodName);
+        if ((!notify && !publish) || !isSampled()) {
+            return invoke(actualObject, method, args);
+        }
+        if (notify) {
+            SQLTraceRecord record = new SQLTraceRecord();
+            record.setMethodName(methodName);
+            record.setParams(args);
+            record.setClassName(actualObject.getClass().getName());
+            record.setThreadName(Thread.currentThread().getName());
+            record.setThreadID(Thread.currentThread().getId());
+            record.setTimeStamp(System.currentTimeMillis());
+            sqlTrace(record);
+        }
+        if (publish && sql == null && args != null && args.length > 0
+                && args[0] instanceof String) {
+            //Statement.execute(String sql, ...)
+            sql = (String) args[0];
+        }
+        if (!publish || sql == null) {
+            return invoke(actualObject, method, args);
+        }
+        long startTime = System.nanoTime();
+        try {
+            return invoke(actualObject, method, args);
+        } finally {
+            probeProvider.traceSQLEvent(poolName, appName, moduleName, sql,
+                    System.nanoTime() - startTime);
+        }
+    }
+
+    private static Object invoke(Object actualObject, Method method, Object[] args)
+            throws Throwable {
+        try {
+            return method.invoke(actualObject, args);
+        } catch (InvocationTargetException ite) {
+            throw ite.getCause();
         }
     }
 
    /**
-    * Check if the method name from the sql trace record can be used to 
-    * retrieve a sql string for caching purpose. Most of the method names do not
-    * contain a sql string and hence are unusable for caching the sql strings.
-    * These method names are filtered in this method.
+    * Check if the method name from the sql trace record executes a sql
+    * string, so that the sql and its execution time can be cached. Calls
+    * such as prepareStatement only compile the sql and hence are not cached.
     * 
     * @param methodName
     * @return true if method name can be used to get a sql string for caching.
     */
     private boolean isMethodValidForCaching(String methodName) {
-        return JdbcRAConstants.validSqlTracingMethodNames.contains(methodName);
+        return JdbcRAConstants.sqlExecutionMethodNames.contains(methodName);
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.gjc.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded, lock-free, multi-producer / single-consumer ring buffer of traced
+ * sql queries.
+ * <p/>
+ * Slots are pre-allocated, so publishing a query does not allocate. When the
+ * buffer is full, the query is dropped instead of blocking the caller : the
+ * sql trace is a monitoring aid and must never slow down the JDBC call path.
+ *
+ * @see SQLTraceCache
+ */
+public class SQLTraceRingBuffer {
+
+    private final int mask;
+    private final String[] queries;
+    private final long[] executionTimes;
+    //sequence + 1 of the query published in each slot
+    private final AtomicLongArray published;
+    //next sequence to be claimed by a producer
+    private final AtomicLong head = new AtomicLong();
+    //next sequence to be read by the consumer
+    private volatile long tail;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to the next power of two
+     */
+    public SQLTraceRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mask = size - 1;
+        queries = new String[size];
+        executionTimes = new long[size];
+        published = new AtomicLongArray(size);
+    }
+
+    /**
+     * Publish a sql query along with the time it took to execute.
+     *
+     * @param sql           sql query
+     * @param executionTime execution time in nano seconds
+     * @return boolean false if the buffer was full and the query was dropped
+     */
+    public boolean publish(String sql, long executionTime) {
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail > mask) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+        int index = (int) (sequence & mask);
+        queries[index] = sql;
+        executionTimes[index] = executionTime;
+        published.lazySet(index, sequence + 1);
+        return true;
+    }
+
+    /**
+     * Hands over all the published queries to the consumer, in order.
+     * Must be called by one thread at a time.
+     *
+     * @param consumer to which the queries are handed over
+     * @return int number of queries consumed
+     */
+    public int drain(Consumer consumer) {
+        long sequence = tail;
+        int count = 0;
+        while (true) {
+            int index = (int) (sequence & mask);
+            if (published.get(index) != sequence + 1) {
+                //nothing more published, or a producer is still writing the slot
+                break;
+            }
+            String sql = queries[index];
+            long executionTime = executionTimes[index];
+            queries[index] = null;
+            sequence++;
+            tail = sequence;
+            consumer.consume(sql, executionTime);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return long number of queries dropped as the buffer was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Receives the queries drained from the ring buffer.
+     */
+    public interface Consumer {
+        void consume(String sql, long executionTime);
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package com.sun.gjc.spi.base.datastructure;
+
+import com.sun.gjc.spi.base.CacheObjectKey;
+import com.sun.gjc.spi.base.CacheableStatement;
+import org.glassfish.resourcebase.resources.api.PoolInfo;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests {@link ConcurrentLRUCacheImpl}.
+ */
+public class ConcurrentLRUCacheImplTest {
+
+    private final List<Statement> closed =
+            Collections.synchronizedList(new ArrayList<Statement>());
+
+    @Test
+    public void testLookup() {
+        ConcurrentLRUCacheImpl cache = createCache(3);
+        Statement a = add(cache, "a");
+
+        assertSame(a, cache.checkAndUpdateCache(key("a")));
+        assertNull(cache.checkAndUpdateCache(key("b")));
+        assertEquals(1, cache.getSize());
+        assertEquals(3, cache.getMaxSize());
+        assertTrue(cache.isSynchronized());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyAdded() {
+        ConcurrentLRUCacheImpl cache = createCache(3);
+        Statement a = add(cache, "a");
+        add(cache, "b");
+        add(cache, "c");
+        assertTrue(closed.isEmpty());
+
+        add(cache, "d");
+        assertEquals(3, cache.getSize());
+        assertEquals(Arrays.asList(a), closed);
+        assertNull(cache.checkAndUpdateCache(key("a")));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ConcurrentLRUCacheImpl cache = createCache(3);
+        Statement a = add(cache, "a");
+        Statement b = add(cache, "b");
+        Statement c = add(cache, "c");
+        hit(cache, "a");
+
+        add(cache, "d");
+        hit(cache, "c");
+        add(cache, "e");
+
+        assertEquals(Arrays.asList(b, a), closed);
+        assertSame(c, cache.checkAndUpdateCache(key("c")));
+    }
+
+    @Test
+    public void testEvictionOrder() {
+        // More entries than collected by a scan of the cache
+        ConcurrentLRUCacheImpl cache = createCache(40);
+        List<Statement> expected = new ArrayList<Statement>();
+        for (int i = 0; i < 40; i++) {
+            Statement statement = add(cache, "s" + i);
+            if (i % 2 == 1) {
+                expected.add(statement);
+            }
+        }
+        for (int i = 0; i < 40; i += 2) {
+            hit(cache, "s" + i);
+        }
+        for (int i = 0; i < 20; i++) {
+            add(cache, "t" + i);
+        }
+
+        assertEquals(40, cache.getSize());
+        assertEquals(expected, closed);
+    }
+
+    @Test
+    public void testSkipsCandidatesUsedSinceCollected() {
+        ConcurrentLRUCacheImpl cache = createCache(20);
+        List<Statement> statements = new ArrayList<Statement>();
+        for (int i = 0; i < 20; i++) {
+            statements.add(add(cache, "s" + i));
+        }
+
+        // Collects the oldest entries, and evicts s0
+        add(cache, "t0");
+        hit(cache, "s1");
+        add(cache, "t1");
+        add(cache, "t2");
+
+        assertEquals(Arrays.asList(statements.get(0), statements.get(2),
+                                   statements.get(3)), closed);
+        assertSame(statements.get(1), cache.checkAndUpdateCache(key("s1")));
+    }
+
+    @Test
+    public void testAddExistingKey() {
+        ConcurrentLRUCacheImpl cache = createCache(3);
+        Statement a = add(cache, "a");
+
+        cache.addToCache(key("a"), new Statement("other"), false);
+        assertSame(a, cache.checkAndUpdateCache(key("a")));
+
+        Statement forced = new Statement("forced");
+        cache.addToCache(key("a"), forced, true);
+        assertSame(forced, cache.checkAndUpdateCache(key("a")));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testPurge() {
+        ConcurrentLRUCacheImpl cache = createCache(3);
+        Statement a = add(cache, "a");
+        Statement b = add(cache, "b");
+        Statement c = add(cache, "c");
+
+        cache.purge();
+        assertEquals(Arrays.asList(a), closed);
+
+        cache.purge(c);
+        assertEquals(Arrays.asList(a, c), closed);
+        assertEquals(1, cache.getSize());
+        assertSame(b, cache.checkAndUpdateCache(key("b")));
+    }
+
+    @Test
+    public void testFlushClosesEntries() {
+        ConcurrentLRUCacheImpl cache = createCache(3);
+        Statement a = add(cache, "a");
+        Statement b = add(cache, "b");
+
+        cache.flushCache();
+        assertEquals(0, cache.getSize());
+        assertEquals(new HashSet<Statement>(Arrays.asList(a, b)),
+                     new HashSet<Statement>(closed));
+    }
+
+    @Test
+    public void testClearDoesNotCloseEntries() {
+        ConcurrentLRUCacheImpl cache = createCache(3);
+        add(cache, "a");
+        add(cache, "b");
+
+        cache.clearCache();
+        assertEquals(0, cache.getSize());
+        assertTrue(closed.isEmpty());
+        assertNull(cache.checkAndUpdateCache(key("a")));
+    }
+
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final ConcurrentLRUCacheImpl cache = createCache(16);
+        final AtomicInteger added = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        String sql = "s" + ((seed * 7 + i * 13) % 64);
+                        if (cache.checkAndUpdateCache(key(sql)) == null) {
+                            Statement statement = new Statement(sql);
+                            statement.setCached(true);
+                            cache.addToCache(key(sql), statement, false);
+                            added.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(cache.getSize() <= 16);
+        Set<Statement> unique = new HashSet<Statement>(closed);
+        assertEquals(closed.size(), unique.size());
+        for (Statement statement : closed) {
+            assertFalse(statement.cached);
+        }
+        // Statements not added, as another was cached for the same key,
+        // are neither cached nor closed
+        assertTrue(cache.getSize() + closed.size() <= added.get());
+    }
+
+    private ConcurrentLRUCacheImpl createCache(int maxSize) {
+        return new ConcurrentLRUCacheImpl(new PoolInfo("pool"), maxSize);
+    }
+
+    private Statement add(ConcurrentLRUCacheImpl cache, String sql) {
+        tick();
+        Statement statement = new Statement(sql);
+        statement.setCached(true);
+        cache.addToCache(key(sql), statement, false);
+        return statement;
+    }
+
+    private void hit(ConcurrentLRUCacheImpl cache, String sql) {
+        tick();
+        assertTrue(cache.checkAndUpdateCache(key(sql)) != null);
+    }
+
+    /**
+     * Waits for System.nanoTime() to change, so that successive accesses
+     * have different stamps.
+     */
+    private static void tick() {
+        long start = System.nanoTime();
+        while (System.nanoTime() == start) {
+            Thread.yield();
+        }
+    }
+
+    private static CacheObjectKey key(String sql) {
+        return new CacheObjectKey(sql, CacheObjectKey.PREPARED_STATEMENT, 0, 0);
+    }
+
+    private class Statement implements CacheableStatement {
+
+        private final String sql;
+
+        private volatile boolean cached;
+
+        Statement(String sql) {
+            this.sql = sql;
+        }
+
+        public void setCached(boolean cached) {
+            this.cached = cached;
+        }
+
+        public void close() throws SQLException {
+            if (!cached) {
+                closed.add(this);
+            }
+        }
+
+        public String toString() {
+            return sql;
+        }
+    }
+}
@@ -53,7 +53,6 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import org.glassfish.api.jdbc.SQLTraceRecord;
 
 /**
  * Wrapper class that aids to provide wrapper for Statement, PreparedStatement, 
@@ -90,7 +89,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
         Class intf[] = new Class[]{java.sql.Statement.class};
         try {
             output = (java.sql.Statement) getProxyObject(
-                    new StatementWrapper30(this, super.createStatement()), intf);
+                    new StatementWrapper30(this, super.createStatement()), intf, null);
         } catch (Exception e) {
             //TODO SQLexception or any other type?
             SQLException se = new SQLException(e.getMessage());
@@ -114,7 +113,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
         try{
             output = (java.sql.Statement)getProxyObject(
                     new StatementWrapper30(this, 
-                    super.createStatement(resultSetType, resultSetConcurrency)), intf);
+                    super.createStatement(resultSetType, resultSetConcurrency)), intf, null);
         }catch(Exception e){
             SQLException se = new SQLException(e.getMessage());
             se.initCause(e);
@@ -140,7 +139,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
             output = (java.sql.Statement)getProxyObject(
                     new StatementWrapper30(this, 
                     super.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability)), 
-                    intf);
+                    intf, null);
         }catch(Exception e){
             SQLException se = new SQLException(e.getMessage());
             se.initCause(e);
@@ -174,7 +173,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
         try{
             output = (java.sql.CallableStatement)getProxyObject(
                     mc.prepareCachedCallableStatement(this,sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             SQLException se = new SQLException(e.getMessage());
             se.initCause(e);
@@ -200,7 +199,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
         try{
             output = (java.sql.CallableStatement)getProxyObject(
                     mc.prepareCachedCallableStatement(this, sql, resultSetType, resultSetConcurrency), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             SQLException se = new SQLException(e.getMessage());
             se.initCause(e);
@@ -228,7 +227,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
         try{
             output = (java.sql.CallableStatement)getProxyObject(
                     mc.prepareCachedCallableStatement(this, sql, resultSetType, resultSetConcurrency, resultSetHoldability), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             SQLException se = new SQLException(e.getMessage());
             se.initCause(e);
@@ -251,7 +250,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
         try{
             output = (PreparedStatement)getProxyObject(
                     mc.prepareCachedStatement(this, sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY),
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             SQLException se = new SQLException(e.getMessage());
             se.initCause(e);
@@ -274,7 +273,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
         Class intf[] = new Class[]{java.sql.PreparedStatement.class};
         try{
             output = (PreparedStatement)getProxyObject(
-                    mc.prepareCachedStatement(this, sql, autoGeneratedKeys), intf);
+                    mc.prepareCachedStatement(this, sql, autoGeneratedKeys), intf, sql);
         }catch(Exception e){
             SQLException se = new SQLException(e.getMessage());
             se.initCause(e);
@@ -298,7 +297,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
         Class intf[] = new Class[]{java.sql.PreparedStatement.class};
         try{
             output = (PreparedStatement)getProxyObject(
-                    mc.prepareCachedStatement(this, sql, columnIndexes), intf);
+                    mc.prepareCachedStatement(this, sql, columnIndexes), intf, sql);
         }catch(Exception e){
             SQLException se = new SQLException(e.getMessage());
             se.initCause(e);
@@ -324,7 +323,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
         try{
             output = (PreparedStatement)getProxyObject(
                     mc.prepareCachedStatement(this, sql, resultSetType, resultSetConcurrency), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             SQLException se = new SQLException(e.getMessage());
             se.initCause(e);
@@ -352,7 +351,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
         try{
             output = (PreparedStatement)getProxyObject(
                     mc.prepareCachedStatement(this, sql, resultSetType, resultSetConcurrency, resultSetHoldability), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             SQLException se = new SQLException(e.getMessage());
             se.initCause(e);
@@ -377,7 +376,7 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
         Class intf[] = new Class[]{java.sql.PreparedStatement.class};
         try{
             output = (PreparedStatement)getProxyObject(mc.prepareCachedStatement(this, sql, columnNames), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             SQLException se = new SQLException(e.getMessage());
             se.initCause(e);
@@ -439,23 +438,14 @@ public class ProfiledConnectionWrapper30 extends ConnectionHolder30 implements C
                 enableCaching);
     }
 
-    //TODO refactor this method and move to a higher level
-    private <T> T getProxyObject(final Object actualObject, Class<T>[] ifaces) throws Exception {
-        
+    private <T> T getProxyObject(final Object actualObject, Class<T>[] ifaces,
+            final String sql) throws Exception {
         
         T result;
         InvocationHandler ih = new InvocationHandler() {
 
             public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                SQLTraceRecord record = new SQLTraceRecord();
-                record.setMethodName(method.getName());
-                record.setParams(args);
-                record.setClassName(actualObject.getClass().getName());
-                record.setThreadName(Thread.currentThread().getName());
-                record.setThreadID(Thread.currentThread().getId());
-                record.setTimeStamp(System.currentTimeMillis());
-                sqlTraceDelegator.sqlTrace(record);
-                return method.invoke(actualObject, args);
+                return sqlTraceDelegator.invoke(actualObject, method, args, sql);
             }
         };
         result = (T) Proxy.newProxyInstance(actualObject.getClass().getClassLoader(), ifaces, ih);
@@ -53,7 +53,6 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import org.glassfish.api.jdbc.SQLTraceRecord;
 
 /**
  * Wrapper class that aids to provide wrapper for Statement, PreparedStatement, 
@@ -90,7 +89,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
         Class intf[] = new Class[]{java.sql.Statement.class};
         try {
             output = (java.sql.Statement) getProxyObject(
-                    new StatementWrapper40(this, super.createStatement()), intf);
+                    new StatementWrapper40(this, super.createStatement()), intf, null);
         } catch (Exception e) {
             //TODO SQLexception or any other type?
             throw new SQLException(e);
@@ -112,7 +111,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
         try{
             output = (java.sql.Statement)getProxyObject(
                     new StatementWrapper40(this, 
-                    super.createStatement(resultSetType, resultSetConcurrency)), intf);
+                    super.createStatement(resultSetType, resultSetConcurrency)), intf, null);
         }catch(Exception e){
             throw new SQLException(e);
         }
@@ -136,7 +135,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
             output = (java.sql.Statement)getProxyObject(
                     new StatementWrapper40(this, 
                     super.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability)), 
-                    intf);
+                    intf, null);
         }catch(Exception e){
             throw new SQLException(e);
         }
@@ -168,7 +167,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
         try{
             output = (java.sql.CallableStatement)getProxyObject(
                     mc.prepareCachedCallableStatement(this,sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             throw new SQLException(e);
         }
@@ -192,7 +191,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
         try{
             output = (java.sql.CallableStatement)getProxyObject(
                     mc.prepareCachedCallableStatement(this, sql, resultSetType, resultSetConcurrency), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             throw new SQLException(e);
         }
@@ -218,7 +217,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
         try{
             output = (java.sql.CallableStatement)getProxyObject(
                     mc.prepareCachedCallableStatement(this, sql, resultSetType, resultSetConcurrency, resultSetHoldability), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             throw new SQLException(e);
         }
@@ -241,7 +240,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
             output = (PreparedStatement)getProxyObject(
                     mc.prepareCachedStatement(this, sql, 
                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY),
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             throw new SQLException(e);
         }
@@ -262,7 +261,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
         Class intf[] = new Class[]{java.sql.PreparedStatement.class};
         try{
             output = (PreparedStatement)getProxyObject(
-                    mc.prepareCachedStatement(this, sql, autoGeneratedKeys), intf);
+                    mc.prepareCachedStatement(this, sql, autoGeneratedKeys), intf, sql);
         }catch(Exception e){
             throw new SQLException(e);
         }
@@ -284,7 +283,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
         Class intf[] = new Class[]{java.sql.PreparedStatement.class};
         try{
             output = (PreparedStatement)getProxyObject(
-                    mc.prepareCachedStatement(this, sql, columnIndexes), intf);
+                    mc.prepareCachedStatement(this, sql, columnIndexes), intf, sql);
         }catch(Exception e){
             throw new SQLException(e);
         }
@@ -308,7 +307,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
         try{
             output = (PreparedStatement)getProxyObject(
                     mc.prepareCachedStatement(this, sql, resultSetType, resultSetConcurrency), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             throw new SQLException(e);
         }
@@ -334,7 +333,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
         try{
             output = (PreparedStatement)getProxyObject(
                     mc.prepareCachedStatement(this, sql, resultSetType, resultSetConcurrency, resultSetHoldability), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             throw new SQLException(e);
         }
@@ -357,7 +356,7 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
         Class intf[] = new Class[]{java.sql.PreparedStatement.class};
         try{
             output = (PreparedStatement)getProxyObject(mc.prepareCachedStatement(this, sql, columnNames), 
-                    intf);
+                    intf, sql);
         }catch(Exception e){
             throw new SQLException(e);
         }
@@ -417,22 +416,14 @@ public class ProfiledConnectionWrapper40 extends ConnectionHolder40 implements C
                 enableCaching);
     }
 
-    //TODO refactor this method and move to a higher level
-    private <T> T getProxyObject(final Object actualObject, Class<T>[] ifaces) throws Exception {
+    private <T> T getProxyObject(final Object actualObject, Class<T>[] ifaces,
+            final String sql) throws Exception {
         
         T result;
         InvocationHandler ih = new InvocationHandler() {
 
             public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                SQLTraceRecord record = new SQLTraceRecord();
-                record.setMethodName(method.getName());
-                record.setParams(args);
-                record.setClassName(actualObject.getClass().getName());
-                record.setThreadName(Thread.currentThread().getName());
-                record.setThreadID(Thread.currentThread().getId());
-                record.setTimeStamp(System.currentTimeMillis());
-                sqlTraceDelegator.sqlTrace(record);
-                return method.invoke(actualObject, args);
+                return sqlTraceDelegator.invoke(actualObject, method, args, sql);
             }
         };
         result = (T) Proxy.newProxyInstance(actualObject.getClass().getClassLoader(), ifaces, ih);
@@ -491,6 +491,26 @@ public class JdbcConnectionPoolDeployer implements ResourceDeployer {
                     conConnPool.setPreferValidateOverRecreate(toBoolean(value, false));
                     logFine("PREFER-VALIDATE-OVER-RECREATE : " + value);
 
+                } else if ("CONNECTION-CREATION-PARALLELISM".equals(name.toUpperCase(Locale.getDefault()))) {
+                    String value = rp.getValue();
+                    try {
+                        conConnPool.setConnectionCreationParallelism(Integer.parseInt(value));
+                        logFine("CONNECTION-CREATION-PARALLELISM : " + value);
+                    } catch (NumberFormatException nfe) {
+                        _logger.log(Level.WARNING, "Invalid value for "
+                                + "'CONNECTION-CREATION-PARALLELISM' : " + value);
+                    }
+
+                } else if ("WARM-UP-ON-CREATION".equals(name.toUpperCase(Locale.getDefault()))) {
+                    String value = rp.getValue();
+                    conConnPool.setWarmUpOnCreation(toBoolean(value, false));
+                    logFine("WARM-UP-ON-CREATION : " + value);
+
+                } else if ("WARM-UP-SQL".equals(name.toUpperCase(Locale.getDefault()))) {
+
+                    propList.add(new ConnectorConfigProperty("WarmUpSql",
+                            rp.getValue(), "WarmUpSql", "java.lang.String"));
+
                 } else if ("STATEMENT-CACHE-TYPE".equals(name.toUpperCase(Locale.getDefault()))) {
 
 		    if(adminPool.getStatementCacheType() != null) {
@@ -508,6 +528,11 @@ public class JdbcConnectionPoolDeployer implements ResourceDeployer {
                     propList.add(new ConnectorConfigProperty("TimeToKeepQueriesInMinutes",
                             rp.getValue(), "TimeToKeepQueriesInMinutes", "java.lang.String"));
 
+                } else if ("SQL-TRACE-SAMPLING-RATE".equals(name.toUpperCase(Locale.getDefault()))) {
+
+                    propList.add(new ConnectorConfigProperty("SqlTraceSamplingRate",
+                            rp.getValue(), "SqlTraceSamplingRate", "java.lang.String"));
+
                 } else if (mcfConPropKeys.containsKey(name.toUpperCase(Locale.getDefault()))) {
 
                     propList.add(new ConnectorConfigProperty(
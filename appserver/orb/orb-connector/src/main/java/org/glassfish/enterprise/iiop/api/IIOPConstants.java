@@ -49,4 +49,7 @@ public interface IIOPConstants {
     public static final int PASS_BY_VALUE_ID = 0;
 
     public static final int PASS_BY_REFERENCE_ID = 1;
+
+    // Pass-by-value copying every value, immutable ones included
+    public static final int PASS_BY_VALUE_COPY_ALL_ID = 2;
 }
@@ -62,6 +62,12 @@ public interface EjbContainerFacade {
 
     boolean getPassByReference();
 
+    /**
+     * Whether the colocated pass-by-value calls may share the values of
+     * well known immutable types instead of copying them.
+     */
+    boolean getShareImmutableValues();
+
 }
 
 
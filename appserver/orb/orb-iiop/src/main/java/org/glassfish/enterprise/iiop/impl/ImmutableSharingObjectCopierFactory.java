@@ -0,0 +1,196 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.enterprise.iiop.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.MonthDay;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopier;
+import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopierFactory;
+import org.glassfish.pfl.dynamic.copyobject.spi.ReflectiveCopyException;
+
+/**
+ * Pass-by-value copier factory for colocated RMI-IIOP invocations, used when
+ * the caller and the remote EJB are in the same JVM.
+ * <p>
+ * Values of well known immutable types (String, the primitive wrappers,
+ * BigInteger, BigDecimal, UUID, the java.time value types and the enums
+ * without mutable state), and argument arrays holding only such values,
+ * cannot be observed to be shared and are passed as is. Everything else is copied by the wrapped factory, so
+ * that aliasing between the arguments is preserved.
+ * <p>
+ * The java.time types are serialized through a writeReplace() proxy, which
+ * the reflective copier cannot copy : without this factory they fall back to
+ * a full ORB stream copy.
+ * <p>
+ * An enum is shared when it is a JDK enum, or when all its instance fields,
+ * and those of its constant bodies, are final and of an immutable type.
+ * <p>
+ * The beans of an ejb-jar, or a single bean, opt out of the sharing with the
+ * share-immutable-values enterprise-beans property set to false : their calls
+ * then use the wrapped factory only.
+ */
+public class ImmutableSharingObjectCopierFactory implements ObjectCopierFactory {
+
+    // Exact classes only : a subclass of a non final class may be mutable
+    private static final Set<Class<?>> IMMUTABLE_CLASSES = new HashSet<Class<?>>(
+        Arrays.<Class<?>>asList(
+            String.class, Boolean.class, Byte.class, Character.class,
+            Short.class, Integer.class, Long.class, Float.class, Double.class,
+            BigInteger.class, BigDecimal.class, UUID.class,
+            Duration.class, Instant.class, LocalDate.class, LocalDateTime.class,
+            LocalTime.class, MonthDay.class, OffsetDateTime.class,
+            OffsetTime.class, Period.class, Year.class, YearMonth.class,
+            ZonedDateTime.class));
+
+    // Computed once per enum class, without keeping the class loader alive
+    private static final ClassValue<Boolean> IMMUTABLE_ENUMS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return isImmutableEnum(type);
+        }
+    };
+
+    private final ObjectCopierFactory factory;
+
+    public ImmutableSharingObjectCopierFactory(ObjectCopierFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public ObjectCopier make() {
+        return new ImmutableSharingObjectCopier();
+    }
+
+    static boolean isImmutable(Object obj) {
+        // ZoneId can only be subclassed by ZoneOffset and ZoneRegion
+        return (obj == null) || IMMUTABLE_CLASSES.contains(obj.getClass())
+            || ((obj instanceof Enum) && IMMUTABLE_ENUMS.get(obj.getClass()))
+            || (obj instanceof ZoneId);
+    }
+
+    /**
+     * @param type the class of an enum constant, either the enum itself or
+     *             the class of a constant with a body
+     */
+    private static boolean isImmutableEnum(Class<?> type) {
+        Class<?> enumType = type.isEnum() ? type : type.getSuperclass();
+        if (enumType.getClassLoader() == null) {
+            // JDK enum
+            return true;
+        }
+        return hasImmutableFields(type, enumType)
+            && ((type == enumType) || hasImmutableFields(enumType, enumType));
+    }
+
+    private static boolean hasImmutableFields(Class<?> type, Class<?> enumType) {
+        for (Field field : type.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers)) {
+                continue;
+            }
+            Class<?> fieldType = field.getType();
+            if (!Modifier.isFinal(modifiers)
+                || !(fieldType.isPrimitive()
+                     || (IMMUTABLE_CLASSES.contains(fieldType)
+                         && Modifier.isFinal(fieldType.getModifiers()))
+                     // Other constants of this enum or JDK enum constants
+                     || (fieldType == enumType)
+                     || (fieldType.isEnum() && (fieldType.getClassLoader() == null)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private class ImmutableSharingObjectCopier implements ObjectCopier {
+
+        // Created on first use : calls with immutable values only never need it
+        private ObjectCopier copier;
+
+        private ObjectCopier copier() {
+            if (copier == null) {
+                copier = factory.make();
+            }
+            return copier;
+        }
+
+        public Object copy(Object obj) throws ReflectiveCopyException {
+            return copy(obj, false);
+        }
+
+        public Object copy(Object obj, boolean debug) throws ReflectiveCopyException {
+            if (isImmutable(obj)) {
+                return obj;
+            }
+            if (obj.getClass() == Object[].class) {
+                // The arguments of an invocation are copied as one array
+                Object[] array = (Object[]) obj;
+                for (Object element : array) {
+                    if (!isImmutable(element)) {
+                        return copier().copy(obj);
+                    }
+                }
+                return array.clone();
+            }
+            return copier().copy(obj);
+        }
+    }
+}
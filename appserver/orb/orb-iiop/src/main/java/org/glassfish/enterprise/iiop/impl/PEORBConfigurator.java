@@ -183,11 +183,15 @@ public class PEORBConfigurator implements ORBConfigurator {
             CopyobjectDefaults.makeReflectObjectCopierFactory(orb) ;
         ObjectCopierFactory fallback = 
             CopyobjectDefaults.makeFallbackObjectCopierFactory( reflect, stream ) ;
+        // Colocated calls share immutable values instead of copying them
+        ObjectCopierFactory value =
+            new ImmutableSharingObjectCopierFactory( fallback ) ;
         ObjectCopierFactory reference = 
             CopyobjectDefaults.getReferenceObjectCopierFactory() ;
 
-        cpm.registerObjectCopierFactory( fallback, IIOPConstants.PASS_BY_VALUE_ID ) ;
+        cpm.registerObjectCopierFactory( value, IIOPConstants.PASS_BY_VALUE_ID ) ;
         cpm.registerObjectCopierFactory( reference, IIOPConstants.PASS_BY_REFERENCE_ID ) ;
+        cpm.registerObjectCopierFactory( fallback, IIOPConstants.PASS_BY_VALUE_COPY_ALL_ID ) ;
         cpm.setDefaultId( IIOPConstants.PASS_BY_VALUE_ID ) ;
     }
 
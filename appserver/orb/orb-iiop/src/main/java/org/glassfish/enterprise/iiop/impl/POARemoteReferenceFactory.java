@@ -122,6 +122,7 @@ public final class POARemoteReferenceFactory extends org.omg.CORBA.LocalObject
 {
     static final int PASS_BY_VALUE_ID = 0;
     static final int PASS_BY_REFERENCE_ID = 1;
+    static final int PASS_BY_VALUE_COPY_ALL_ID = 2;
 
     static final int OTS_POLICY_TYPE = SUNVMCID.value + 123; 
     static final int CSIv2_POLICY_TYPE = SUNVMCID.value + 124; 
@@ -292,6 +293,8 @@ public final class POARemoteReferenceFactory extends org.omg.CORBA.LocalObject
 
 	    if (usePassByReference) {
 	        policies.add(new CopyObjectPolicy(PASS_BY_REFERENCE_ID));
+	    } else if (!container.getShareImmutableValues()) {
+	        policies.add(new CopyObjectPolicy(PASS_BY_VALUE_COPY_ALL_ID));
 	    }
 
 	    if (threadPoolName != null) {
@@ -0,0 +1,251 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.enterprise.iiop.impl;
+
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopier;
+import org.glassfish.pfl.dynamic.copyobject.spi.ObjectCopierFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests {@link ImmutableSharingObjectCopierFactory}.
+ */
+public class ImmutableSharingObjectCopierFactoryTest {
+
+    private final RecordingFactory wrapped = new RecordingFactory();
+
+    private final ObjectCopier copier =
+        new ImmutableSharingObjectCopierFactory(wrapped).make();
+
+    @Test
+    public void testSharesImmutableValues() throws Exception {
+        Object[] values = {
+            "value", Integer.valueOf(1), Long.valueOf(2), Character.valueOf('c'),
+            new BigDecimal("1.5"), UUID.randomUUID(), LocalDate.of(2017, 1, 2),
+            ZoneId.of("Europe/Paris"), ZoneId.of("+02:00")
+        };
+        for (Object value : values) {
+            assertSame(value, copier.copy(value));
+        }
+        assertNull(copier.copy(null));
+        assertTrue(wrapped.copied.isEmpty());
+        assertEquals(0, wrapped.made);
+    }
+
+    @Test
+    public void testCopiesMutableValues() throws Exception {
+        Date date = new Date();
+        assertNotSame(date, copier.copy(date));
+        // A subclass of a non final immutable class
+        BigDecimal decimal = new BigDecimal("1") {
+        };
+        assertNotSame(decimal, copier.copy(decimal));
+        assertEquals(2, wrapped.copied.size());
+        assertEquals(1, wrapped.made);
+    }
+
+    @Test
+    public void testSharesArgumentsWhenAllImmutable() throws Exception {
+        Object[] args = { "a", Integer.valueOf(1), TimeUnit.SECONDS, null };
+        Object[] copy = (Object[]) copier.copy(args);
+        assertNotSame(args, copy);
+        assertArrayEquals(args, copy);
+        for (int i = 0; i < args.length; i++) {
+            assertSame(args[i], copy[i]);
+        }
+        assertTrue(wrapped.copied.isEmpty());
+    }
+
+    @Test
+    public void testCopiesArgumentsAsOneGraph() throws Exception {
+        Object[] args = { "a", new Date() };
+        copier.copy(args);
+        assertEquals(1, wrapped.copied.size());
+        assertSame(args, wrapped.copied.get(0));
+    }
+
+    @Test
+    public void testSharesJdkEnums() throws Exception {
+        assertSame(TimeUnit.SECONDS, copier.copy(TimeUnit.SECONDS));
+        assertSame(DayOfWeek.MONDAY, copier.copy(DayOfWeek.MONDAY));
+        assertTrue(wrapped.copied.isEmpty());
+    }
+
+    @Test
+    public void testSharesEnumsWithImmutableFields() throws Exception {
+        assertSame(Plain.A, copier.copy(Plain.A));
+        assertSame(FinalFields.A, copier.copy(FinalFields.A));
+        assertSame(ConstantBody.A, copier.copy(ConstantBody.A));
+        assertSame(ConstantBody.B, copier.copy(ConstantBody.B));
+        assertTrue(wrapped.copied.isEmpty());
+    }
+
+    @Test
+    public void testCopiesEnumsWithMutableFields() throws Exception {
+        Object[] values = {
+            MutableField.A, FinalMutableField.A, NonFinalImmutableClassField.A,
+            MutableConstantBody.A
+        };
+        for (Object value : values) {
+            copier.copy(value);
+            assertSame(value, wrapped.copied.get(wrapped.copied.size() - 1));
+        }
+        assertEquals(values.length, wrapped.copied.size());
+
+        // Not shared inside the arguments either
+        copier.copy(new Object[] { "a", MutableField.A });
+        assertEquals(values.length + 1, wrapped.copied.size());
+
+        // The other constants have no mutable state
+        assertSame(MutableConstantBody.B, copier.copy(MutableConstantBody.B));
+        assertEquals(values.length + 1, wrapped.copied.size());
+    }
+
+    @Test
+    public void testCopierMadeOncePerCopier() throws Exception {
+        copier.copy(new Date());
+        copier.copy(new Date());
+        assertEquals(1, wrapped.made);
+
+        ObjectCopier other = new ImmutableSharingObjectCopierFactory(wrapped).make();
+        other.copy(new Date());
+        assertEquals(2, wrapped.made);
+    }
+
+    @Test
+    public void testIsImmutable() {
+        assertTrue(ImmutableSharingObjectCopierFactory.isImmutable("a"));
+        assertTrue(ImmutableSharingObjectCopierFactory.isImmutable(Plain.B));
+        assertFalse(ImmutableSharingObjectCopierFactory.isImmutable(MutableField.A));
+        assertFalse(ImmutableSharingObjectCopierFactory.isImmutable(new Object[0]));
+        assertFalse(ImmutableSharingObjectCopierFactory.isImmutable(new StringBuilder()));
+    }
+
+    private enum Plain {
+        A, B
+    }
+
+    private enum FinalFields {
+        A(1, "one", TimeUnit.SECONDS), B(2, "two", null);
+
+        private final int code;
+        private final String label;
+        private final TimeUnit unit;
+        private final FinalFields self = null;
+
+        FinalFields(int code, String label, TimeUnit unit) {
+            this.code = code;
+            this.label = label;
+            this.unit = unit;
+        }
+    }
+
+    private enum ConstantBody {
+        A {
+            private final long limit = 1;
+        },
+        B
+    }
+
+    private enum MutableField {
+        A;
+
+        private int count;
+    }
+
+    private enum FinalMutableField {
+        A;
+
+        private final List<String> names = new ArrayList<String>();
+    }
+
+    private enum NonFinalImmutableClassField {
+        A;
+
+        private final BigDecimal amount = BigDecimal.ONE;
+    }
+
+    private enum MutableConstantBody {
+        A {
+            private int count;
+        },
+        B
+    }
+
+    private static class RecordingFactory implements ObjectCopierFactory {
+
+        final List<Object> copied = new ArrayList<Object>();
+
+        int made;
+
+        public ObjectCopier make() {
+            made++;
+            return new ObjectCopier() {
+                public Object copy(Object obj) {
+                    return copy(obj, false);
+                }
+
+                public Object copy(Object obj, boolean debug) {
+                    copied.add(obj);
+                    return (obj instanceof Date) ? ((Date) obj).clone() : new Object();
+                }
+            };
+        }
+    }
+}
@@ -3037,6 +3037,10 @@ public class EntityContainer
 	    return this.confMaxCacheSize;
 	}
 
+	public int getPassivationQueueDepth() {
+	    return 0;
+	}
+
     public void appendStats(StringBuffer sbuf) {
 	    sbuf.append("[Cache: ")
 		.append("Size=").append(getNumBeansInCache()).append("; ")
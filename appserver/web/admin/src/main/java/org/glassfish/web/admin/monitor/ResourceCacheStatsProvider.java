@@ -0,0 +1,145 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.web.admin.monitor;
+
+import org.glassfish.external.statistics.CountStatistic;
+import org.glassfish.external.statistics.impl.CountStatisticImpl;
+import org.glassfish.external.statistics.impl.StatisticImpl;
+import org.glassfish.gmbal.AMXMetadata;
+import org.glassfish.gmbal.Description;
+import org.glassfish.gmbal.ManagedAttribute;
+import org.glassfish.gmbal.ManagedObject;
+
+/**
+ * Provides the monitoring data of the static resource cache of a web module
+ */
+@AMXMetadata(type="resourcecache-mon", group="monitoring")
+@ManagedObject
+@Description("Web Module Static Resource Cache Statistics")
+public class ResourceCacheStatsProvider {
+
+    /**
+     * The resource cache being monitored.
+     */
+    public interface ResourceCacheInfo {
+
+        long getHitsCount();
+
+        long getMissCount();
+
+        long getEvictionCount();
+
+        int getCacheSize();
+
+        int getCacheMaxSize();
+    }
+
+    private static final String HITS_DESCRIPTION =
+        "Number of lookups found in the resource cache";
+
+    private static final String MISSES_DESCRIPTION =
+        "Number of lookups not found in the resource cache";
+
+    private static final String EVICTIONS_DESCRIPTION =
+        "Number of entries removed from the resource cache to make space";
+
+    private static final String CACHE_SIZE_DESCRIPTION =
+        "Current size of the resource cache, in KB";
+
+    private static final String CACHE_MAX_SIZE_DESCRIPTION =
+        "Maximum size of the resource cache, in KB";
+
+    private ResourceCacheInfo cacheInfo;
+
+    private CountStatisticImpl hits = new CountStatisticImpl(
+        "CacheHits", StatisticImpl.UNIT_COUNT, HITS_DESCRIPTION);
+
+    private CountStatisticImpl misses = new CountStatisticImpl(
+        "CacheMisses", StatisticImpl.UNIT_COUNT, MISSES_DESCRIPTION);
+
+    private CountStatisticImpl evictions = new CountStatisticImpl(
+        "CacheEvictions", StatisticImpl.UNIT_COUNT, EVICTIONS_DESCRIPTION);
+
+    private CountStatisticImpl cacheSize = new CountStatisticImpl(
+        "CacheSize", "KB", CACHE_SIZE_DESCRIPTION);
+
+    private CountStatisticImpl cacheMaxSize = new CountStatisticImpl(
+        "CacheMaxSize", "KB", CACHE_MAX_SIZE_DESCRIPTION);
+
+    public ResourceCacheStatsProvider(ResourceCacheInfo cacheInfo) {
+        this.cacheInfo = cacheInfo;
+    }
+
+    @ManagedAttribute(id="cachehits")
+    @Description(HITS_DESCRIPTION)
+    public CountStatistic getCacheHits() {
+        hits.setCount(cacheInfo.getHitsCount());
+        return hits;
+    }
+
+    @ManagedAttribute(id="cachemisses")
+    @Description(MISSES_DESCRIPTION)
+    public CountStatistic getCacheMisses() {
+        misses.setCount(cacheInfo.getMissCount());
+        return misses;
+    }
+
+    @ManagedAttribute(id="cacheevictions")
+    @Description(EVICTIONS_DESCRIPTION)
+    public CountStatistic getCacheEvictions() {
+        evictions.setCount(cacheInfo.getEvictionCount());
+        return evictions;
+    }
+
+    @ManagedAttribute(id="cachesize")
+    @Description(CACHE_SIZE_DESCRIPTION)
+    public CountStatistic getCacheSize() {
+        cacheSize.setCount(cacheInfo.getCacheSize());
+        return cacheSize;
+    }
+
+    @ManagedAttribute(id="cachemaxsize")
+    @Description(CACHE_MAX_SIZE_DESCRIPTION)
+    public CountStatistic getCacheMaxSize() {
+        cacheMaxSize.setCount(cacheInfo.getCacheMaxSize());
+        return cacheMaxSize;
+    }
+}
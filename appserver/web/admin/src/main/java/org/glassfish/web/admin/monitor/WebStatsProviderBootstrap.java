@@ -177,6 +177,32 @@ public class WebStatsProviderBootstrap implements PostConstruct {
         statspList.add(websp);
     }
 
+    /**
+     * Registers the stats provider of the static resource cache of the given
+     * app, which must have been registered with
+     * registerApplicationStatsProviders. It is unregistered along with the
+     * other stats providers of the app.
+     */
+    public void registerResourceCacheStatsProvider(String monitoringName,
+            String vsName,
+            ResourceCacheStatsProvider.ResourceCacheInfo cacheInfo) {
+
+        Map<String, Queue<Object>> statsProviderMap = vsNameToStatsProviderMap.get(vsName);
+        Queue<Object> statspList = (statsProviderMap != null) ?
+                statsProviderMap.get(monitoringName) : null;
+        if (statspList == null) {
+            return;
+        }
+
+        ResourceCacheStatsProvider resourceCacheStatsProvider =
+                new ResourceCacheStatsProvider(cacheInfo);
+        StatsProviderManager.register(
+                "web-container", PluginPoint.APPLICATIONS,
+                getNodeString(monitoringName, vsName, "resource-cache"),
+                resourceCacheStatsProvider);
+        statspList.add(resourceCacheStatsProvider);
+    }
+
     public void unregisterApplicationStatsProviders(String monitoringName,
             String vsName) {
 
@@ -97,6 +97,7 @@ import java.text.MessageFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiFunction;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.JarEntry;
@@ -176,6 +177,13 @@ public class WebappClassLoader
     private static final Permission ALL_PERMISSION = new AllPermission();
 
 
+    static {
+        // Classes of different names are loaded concurrently, see
+        // getClassLoadingLock
+        ClassLoader.registerAsParallelCapable();
+    }
+
+
     // ----------------------------------------------------- Instance Variables
 
     // START PE 4989455
@@ -248,7 +256,7 @@ public class WebappClassLoader
      * The list of JARs, in the order they should be searched
      * for locally loaded classes or resources.
      */
-    protected JarFile[] jarFiles = new JarFile[0];
+    protected volatile JarFile[] jarFiles = new JarFile[0];
 
     /**
      * Lock to synchronize closing and opening of jar
@@ -261,6 +269,34 @@ public class WebappClassLoader
      */
     protected File[] jarRealFiles = new File[0];
 
+    /**
+     * Index of the JARs by the directories of their entries: maps the path
+     * of a directory, without trailing '/', to the positions in jarFiles of
+     * the JARs that have entries in this directory, in increasing order.
+     */
+    private final ConcurrentHashMap<String, int[]> jarIndex =
+        new ConcurrentHashMap<String, int[]>();
+
+    /**
+     * Is jarIndex complete? If not, all JARs are searched.
+     */
+    private volatile boolean jarIndexValid = true;
+
+    /**
+     * Appends the positions of a JAR to the positions already in jarIndex.
+     */
+    private static final BiFunction<int[], int[], int[]> APPEND_POSITIONS =
+        new BiFunction<int[], int[], int[]>() {
+            @Override
+            public int[] apply(int[] positions, int[] added) {
+                int[] result = Arrays.copyOf(positions,
+                                             positions.length + added.length);
+                System.arraycopy(added, 0, result, positions.length,
+                                 added.length);
+                return result;
+            }
+        };
+
     /**
      * The path which will be monitored for added Jar files.
      */
@@ -326,7 +362,7 @@ public class WebappClassLoader
     /**
      * Has this component been started?
      */
-    protected boolean started = false;
+    protected volatile boolean started = false;
 
     /**
      * Has external repositories.
@@ -851,20 +887,71 @@ public class WebappClassLoader
             // Ignore
         }
 
+        // Add the file to the list
+        File[] result4 = new File[jarRealFiles.length + 1];
+        for (i = 0; i < jarRealFiles.length; i++) {
+            result4[i] = jarRealFiles[i];
+        }
+        result4[jarRealFiles.length] = file;
+        jarRealFiles = result4;
+
+        // Index the JAR before publishing it, lookups ignore the positions
+        // past the end of jarFiles
+        indexJar(jarFile, jarFiles.length);
+
         JarFile[] result2 = new JarFile[jarFiles.length + 1];
         for (i = 0; i < jarFiles.length; i++) {
             result2[i] = jarFiles[i];
         }
         result2[jarFiles.length] = jarFile;
         jarFiles = result2;
+    }
 
-        // Add the file to the list
-        File[] result4 = new File[jarRealFiles.length + 1];
-        for (i = 0; i < jarRealFiles.length; i++) {
-            result4[i] = jarRealFiles[i];
+
+    /**
+     * Adds the entries of the given JAR to jarIndex. The positions are
+     * only kept in increasing order if the JARs are indexed one at a time,
+     * which addJar ensures by holding the lock of this class loader.
+     *
+     * @param jarFile the JAR
+     * @param position the position of the JAR in jarFiles
+     */
+    private void indexJar(JarFile jarFile, int position) {
+        if (!jarIndexValid) {
+            return;
+        }
+
+        try {
+            Set<String> dirs = new HashSet<String>();
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                dirs.add(getJarIndexKey(entries.nextElement().getName()));
+            }
+            for (String dir : dirs) {
+                jarIndex.merge(dir, new int[] { position }, APPEND_POSITIONS);
+            }
+        } catch (RuntimeException e) {
+            // The JAR could not be read, e.g. it has been closed
+            if (logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Failed to index JAR " + jarFile.getName(), e);
+            }
+            jarIndexValid = false;
+            jarIndex.clear();
         }
-        result4[jarRealFiles.length] = file;
-        jarRealFiles = result4;
+    }
+
+
+    /**
+     * Returns the key of the given JAR entry name in jarIndex, that is the
+     * path of its directory.
+     */
+    static String getJarIndexKey(String name) {
+        int end = name.length();
+        if (end > 0 && name.charAt(end - 1) == '/') {
+            end--;
+        }
+        int slash = name.lastIndexOf('/', end - 1);
+        return (slash > 0) ? name.substring(0, slash) : "";
     }
 
 
@@ -1034,7 +1121,7 @@ public class WebappClassLoader
                 // Create the code source object
                 CodeSource codeSource =
                     new CodeSource(entry.codeBase, entry.certificates);
-                synchronized (this) {
+                synchronized (getClassLoadingLock(name)) {
                     if (entry.loadedClass == null) {
                         /* START GlassFish [680]
                         clazz = defineClass(name, entry.binaryContent, 0,
@@ -1498,77 +1585,98 @@ public class WebappClassLoader
      * @exception ClassNotFoundException if the class was not found
      */
     @Override
-    protected synchronized Class<?> loadClass(String name, boolean resolve)
+    protected Class<?> loadClass(String name, boolean resolve)
         throws ClassNotFoundException {
 
-        if (logger.isLoggable(Level.FINER)) {
-            logger.log(Level.FINER, "loadClass(" + name + ")");
-        }
+        synchronized (getClassLoadingLock(name)) {
+            if (logger.isLoggable(Level.FINER)) {
+                logger.log(Level.FINER, "loadClass(" + name + ")");
+            }
 
-        Class<?> clazz = null;
+            Class<?> clazz = null;
 
-        // Don't load classes if class loader is stopped
-        if (!started) {
-            throw new IllegalStateException(
-                getString(LogFacade.NOT_STARTED, name));
-        }
+            // Don't load classes if class loader is stopped
+            if (!started) {
+                throw new IllegalStateException(
+                    getString(LogFacade.NOT_STARTED, name));
+            }
 
-        // (0) Check our previously loaded local class cache
-        clazz = findLoadedClass0(name);
-        if (clazz != null) {
-            if (logger.isLoggable(Level.FINER)) {
-                logger.log(Level.FINER, "  Returning class from cache");
+            // (0) Check our previously loaded local class cache
+            clazz = findLoadedClass0(name);
+            if (clazz != null) {
+                if (logger.isLoggable(Level.FINER)) {
+                    logger.log(Level.FINER, "  Returning class from cache");
+                }
+                if (resolve)
+                    resolveClass(clazz);
+                return (clazz);
             }
-            if (resolve)
-                resolveClass(clazz);
-            return (clazz);
-        }
 
-        // (0.1) Check our previously loaded class cache
-        clazz = findLoadedClass(name);
-        if (clazz != null) {
-            if (logger.isLoggable(Level.FINER)) {
-                logger.log(Level.FINER, "  Returning class from cache");
+            // (0.1) Check our previously loaded class cache
+            clazz = findLoadedClass(name);
+            if (clazz != null) {
+                if (logger.isLoggable(Level.FINER)) {
+                    logger.log(Level.FINER, "  Returning class from cache");
+                }
+                if (resolve)
+                    resolveClass(clazz);
+                return (clazz);
             }
-            if (resolve)
-                resolveClass(clazz);
-            return (clazz);
-        }
 
-        // (0.5) Permission to access this class when using a SecurityManager
-        if ( securityManager != null && packageDefinitionEnabled){
-            int i = name.lastIndexOf('.');
-            if (i >= 0) {
-                try {
-                    securityManager.checkPackageAccess(name.substring(0,i));
-                } catch (SecurityException se) {
-                    String error = getString(LogFacade.SECURITY_EXCEPTION, name);
-                    if (logger.isLoggable(Level.INFO)) {
-                        logger.log(Level.INFO, error, se);
+            // (0.5) Permission to access this class when using a SecurityManager
+            if ( securityManager != null && packageDefinitionEnabled){
+                int i = name.lastIndexOf('.');
+                if (i >= 0) {
+                    try {
+                        securityManager.checkPackageAccess(name.substring(0,i));
+                    } catch (SecurityException se) {
+                        String error = getString(LogFacade.SECURITY_EXCEPTION, name);
+                        if (logger.isLoggable(Level.INFO)) {
+                            logger.log(Level.INFO, error, se);
+                        }
+                        throw new ClassNotFoundException(error, se);
                     }
-                    throw new ClassNotFoundException(error, se);
                 }
             }
-        }
 
-        ClassLoader delegateLoader = parent;
-        if (delegateLoader == null) {
-            delegateLoader = system;
-        }
+            ClassLoader delegateLoader = parent;
+            if (delegateLoader == null) {
+                delegateLoader = system;
+            }
+
+            boolean delegateLoad = delegate || filter(name);
 
-        boolean delegateLoad = delegate || filter(name);
+            // (1) Delegate to our parent if requested
+            if (delegateLoad) {
+                // Check delegate first
+                if (logger.isLoggable(Level.FINER)) {
+                    logger.log(Level.FINER, "  Delegating to classloader1 " + delegateLoader);
+                }
+                try {
+                    clazz = delegateLoader.loadClass(name);
+                    if (clazz != null) {
+                        if (logger.isLoggable(Level.FINER)) {
+                            logger.log(Level.FINER, "  Loading class from delegate");
+                        }
+                        if (resolve)
+                            resolveClass(clazz);
+                        return clazz;
+                    }
+                } catch (ClassNotFoundException e) {
+                    // Ignore
+                }
+            }
 
-        // (1) Delegate to our parent if requested
-        if (delegateLoad) {
-            // Check delegate first
+
+            // (2) Search local repositories
             if (logger.isLoggable(Level.FINER)) {
-                logger.log(Level.FINER, "  Delegating to classloader1 " + delegateLoader);
+                logger.log(Level.FINER, "  Searching local repositories");
             }
             try {
-                clazz = delegateLoader.loadClass(name);
+                clazz = findClass(name);
                 if (clazz != null) {
                     if (logger.isLoggable(Level.FINER)) {
-                        logger.log(Level.FINER, "  Loading class from delegate");
+                        logger.log(Level.FINER, "  Loading class from local repository");
                     }
                     if (resolve)
                         resolveClass(clazz);
@@ -1577,48 +1685,29 @@ public class WebappClassLoader
             } catch (ClassNotFoundException e) {
                 // Ignore
             }
-        }
 
-
-        // (2) Search local repositories
-        if (logger.isLoggable(Level.FINER)) {
-            logger.log(Level.FINER, "  Searching local repositories");
-        }
-        try {
-            clazz = findClass(name);
-            if (clazz != null) {
+            // (3) Delegate if class was not found locally
+            if (!delegateLoad) {
                 if (logger.isLoggable(Level.FINER)) {
-                    logger.log(Level.FINER, "  Loading class from local repository");
+                    logger.log(Level.FINER, "  Delegating to classloader " + delegateLoader);
                 }
-                if (resolve)
-                    resolveClass(clazz);
-                return clazz;
-            }
-        } catch (ClassNotFoundException e) {
-            // Ignore
-        }
-
-        // (3) Delegate if class was not found locally
-        if (!delegateLoad) {
-            if (logger.isLoggable(Level.FINER)) {
-                logger.log(Level.FINER, "  Delegating to classloader " + delegateLoader);
-            }
-            try {
-                clazz = delegateLoader.loadClass(name);
-                if (clazz != null) {
-                    if (logger.isLoggable(Level.FINER)) {
-                        logger.log(Level.FINER, "  Loading class from delegate");
+                try {
+                    clazz = delegateLoader.loadClass(name);
+                    if (clazz != null) {
+                        if (logger.isLoggable(Level.FINER)) {
+                            logger.log(Level.FINER, "  Loading class from delegate");
+                        }
+                        if (resolve)
+                            resolveClass(clazz);
+                        return clazz;
                     }
-                    if (resolve)
-                        resolveClass(clazz);
-                    return clazz;
+                } catch (ClassNotFoundException e) {
+                    // Ignore
                 }
-            } catch (ClassNotFoundException e) {
-                // Ignore
             }
-        }
 
-        throw new ClassNotFoundException(name);
+            throw new ClassNotFoundException(name);
+        }
     }
 
 
@@ -1839,6 +1928,7 @@ public class WebappClassLoader
         files = null;
         jarFiles = null;
         jarRealFiles = null;
+        jarIndex.clear();
         jarPath = null;
         jarNames.clear();
         lastModifiedDates = null;
@@ -2583,7 +2673,7 @@ public class WebappClassLoader
         if (entry == null)
                throw new ClassNotFoundException(name);
 
-        synchronized (this) {
+        synchronized (getClassLoadingLock(name)) {
             Class<?> clazz = entry.loadedClass;
             if (clazz != null)
                 return entry;
@@ -2687,9 +2777,7 @@ public class WebappClassLoader
         entry = findResourceInternalFromRepositories(name, path);
 
         if (entry == null) {
-            synchronized (jarFiles) {
-                entry = findResourceInternalFromJars(name, path);
-            }
+            entry = findResourceInternalFromJars(name, path);
         }
 
         if (entry == null) {
@@ -2817,7 +2905,22 @@ public class WebappClassLoader
 
         int jarFilesLength = jarFiles.length;
 
-        for (int i=0; (entry == null) && (i < jarFilesLength); i++) {
+        // Only search the JARs that have entries in the directory of the
+        // resource, if they are indexed
+        int[] positions = null;
+        if (jarIndexValid) {
+            positions = jarIndex.get(getJarIndexKey(path));
+            if (positions == null) {
+                return null;
+            }
+        }
+        int count = (positions == null) ? jarFilesLength : positions.length;
+
+        for (int k=0; (entry == null) && (k < count); k++) {
+            int i = (positions == null) ? k : positions[k];
+            if (i >= jarFilesLength) {
+                break;
+            }
             jarEntry = jarFiles[i].getJarEntry(path);
 
             if (jarEntry != null) {
@@ -3041,9 +3144,7 @@ public class WebappClassLoader
 
         ResourceEntry entry = resourceEntries.get(name);
         if (entry != null) {
-            synchronized(this) {
-                return entry.loadedClass;
-            }
+            return entry.loadedClass;
         }
         return (null);  // FIXME - findLoadedResource()
 
@@ -0,0 +1,288 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.web.loader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.apache.naming.resources.FileDirContext;
+
+/**
+ * Measures the startup of {@link WebappClassLoader} over a large synthetic
+ * WAR: adding its JARs, which indexes them, loading all their classes from
+ * one thread and from several threads, and looking up missing resources.
+ * The lookups of the missing resources are compared with a scan of every
+ * JAR, which is what the class loader did before the JARs were indexed.
+ *
+ * This is not a unit test, it is run by hand with the test classpath of
+ * this module:
+ * <pre>
+ *   java -cp ... org.glassfish.web.loader.WebappClassLoaderBenchmark
+ *       [jars] [classes per JAR] [threads]
+ * </pre>
+ * which default to 150 JARs of 40 classes, loaded by 4 threads.
+ */
+public class WebappClassLoaderBenchmark {
+
+    private static final String JAR_PATH = "/WEB-INF/lib";
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int jars = (args.length > 0) ? Integer.parseInt(args[0]) : 150;
+        int classes = (args.length > 1) ? Integer.parseInt(args[1]) : 40;
+        int threads = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+
+        File docBase = File.createTempFile("benchmark", ".war");
+        if (!docBase.delete() || !docBase.mkdir()) {
+            throw new IOException("Cannot create " + docBase);
+        }
+        File lib = new File(docBase, "WEB-INF/lib");
+        if (!lib.mkdirs()) {
+            throw new IOException("Cannot create " + lib);
+        }
+        try {
+            List<String> classNames = new ArrayList<String>();
+            List<String> missing = new ArrayList<String>();
+            for (int i = 0; i < jars; i++) {
+                writeJar(new File(lib, "lib" + i + ".jar"), i, classes,
+                         classNames);
+                // Probes of optional classes, as frameworks do at startup
+                missing.add("com/example/lib" + i + "/Optional.class");
+                missing.add("org/example/optional/Feature" + i + ".class");
+            }
+
+            System.out.println(jars + " JARs, " + classNames.size()
+                + " classes, " + missing.size() + " missing resources");
+            System.out.println(String.format("%-6s %10s %14s %14s %14s %14s",
+                "round", "index ms", "load 1 thr ms",
+                "load " + threads + " thr ms", "misses ms", "scan ms"));
+            for (int round = 1; round <= ROUNDS; round++) {
+                run(round, docBase, lib, jars, classNames, missing, threads);
+            }
+        } finally {
+            for (File file : lib.listFiles()) {
+                file.delete();
+            }
+            lib.delete();
+            lib.getParentFile().delete();
+            docBase.delete();
+        }
+    }
+
+    private static void run(int round, File docBase, File lib, int jars,
+                            List<String> classNames, List<String> missing,
+                            int threads)
+            throws Exception {
+        List<JarFile> jarFiles = new ArrayList<JarFile>();
+        try {
+            long start = System.nanoTime();
+            WebappClassLoader loader = createLoader(docBase, lib, jars, jarFiles);
+            long index = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            loadClasses(loader, classNames, 1);
+            long loadSingle = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (String name : missing) {
+                if (loader.findResource(name) != null) {
+                    throw new IllegalStateException(name + " found");
+                }
+            }
+            long misses = System.nanoTime() - start;
+            loader.close();
+
+            start = System.nanoTime();
+            for (String name : missing) {
+                for (JarFile jarFile : jarFiles) {
+                    if (jarFile.getJarEntry(name) != null) {
+                        throw new IllegalStateException(name + " found");
+                    }
+                }
+            }
+            long scan = System.nanoTime() - start;
+            closeAll(jarFiles);
+
+            loader = createLoader(docBase, lib, jars, jarFiles);
+            start = System.nanoTime();
+            loadClasses(loader, classNames, threads);
+            long loadParallel = System.nanoTime() - start;
+            loader.close();
+
+            System.out.println(String.format(
+                "%-6d %10.1f %14.1f %14.1f %14.1f %14.1f", round,
+                index / 1e6, loadSingle / 1e6, loadParallel / 1e6,
+                misses / 1e6, scan / 1e6));
+        } finally {
+            closeAll(jarFiles);
+        }
+    }
+
+    private static WebappClassLoader createLoader(File docBase, File lib,
+                                                  int jars,
+                                                  List<JarFile> jarFiles)
+            throws IOException {
+        FileDirContext resources = new FileDirContext();
+        resources.setDocBase(docBase.getAbsolutePath());
+
+        WebappClassLoader loader = new WebappClassLoader(
+            WebappClassLoaderBenchmark.class.getClassLoader());
+        loader.setResources(resources);
+        loader.setJarPath(JAR_PATH);
+        loader.start();
+        for (int i = 0; i < jars; i++) {
+            File file = new File(lib, "lib" + i + ".jar");
+            JarFile jarFile = new JarFile(file);
+            jarFiles.add(jarFile);
+            loader.addJar(JAR_PATH + "/" + file.getName(), jarFile, file);
+        }
+        return loader;
+    }
+
+    /**
+     * Loads the given classes, each thread loading every threads-th class.
+     */
+    private static void loadClasses(final WebappClassLoader loader,
+                                    final List<String> classNames,
+                                    final int threads)
+            throws Exception {
+        final ConcurrentLinkedQueue<Throwable> failures =
+            new ConcurrentLinkedQueue<Throwable>();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = first; i < classNames.size(); i += threads) {
+                            loader.loadClass(classNames.get(i));
+                        }
+                    } catch (Throwable th) {
+                        failures.add(th);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Failed to load classes",
+                                            failures.peek());
+        }
+    }
+
+    private static void closeAll(List<JarFile> jarFiles) throws IOException {
+        for (JarFile jarFile : jarFiles) {
+            jarFile.close();
+        }
+        jarFiles.clear();
+    }
+
+    private static void writeJar(File file, int jar, int classes,
+                                 List<String> classNames)
+            throws IOException {
+        String pkg = "com/example/lib" + jar;
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            out.putNextEntry(new JarEntry("com/"));
+            out.putNextEntry(new JarEntry("com/example/"));
+            out.putNextEntry(new JarEntry(pkg + "/"));
+            for (int i = 0; i < classes; i++) {
+                String name = pkg + "/Class" + i;
+                out.putNextEntry(new JarEntry(name + ".class"));
+                out.write(classBytes(name));
+                classNames.add(name.replace('/', '.'));
+            }
+            out.putNextEntry(new JarEntry(pkg + "/config.properties"));
+            out.write("key=value\n".getBytes("UTF-8"));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the class file of an empty public class, with no
+     * constructor.
+     */
+    private static byte[] classBytes(String internalName) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(50);
+        // Constant pool: this class, its name, java.lang.Object and its name
+        out.writeShort(5);
+        out.writeByte(7);
+        out.writeShort(2);
+        out.writeByte(1);
+        out.writeUTF(internalName);
+        out.writeByte(7);
+        out.writeShort(4);
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object");
+        // ACC_PUBLIC | ACC_SUPER, this class, super class
+        out.writeShort(0x0021);
+        out.writeShort(1);
+        out.writeShort(3);
+        // No interfaces, fields, methods nor attributes
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.writeShort(0);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
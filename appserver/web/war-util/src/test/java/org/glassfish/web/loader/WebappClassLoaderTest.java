@@ -0,0 +1,268 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.web.loader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.apache.naming.resources.FileDirContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests the lookups of the resources of the JARs of
+ * {@link WebappClassLoader}.
+ */
+public class WebappClassLoaderTest {
+
+    private static final String JAR_PATH = "/WEB-INF/lib";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File lib;
+
+    private WebappClassLoader loader;
+
+    private final List<CountingJarFile> jarFiles =
+        new ArrayList<CountingJarFile>();
+
+    @Before
+    public void setUp() throws IOException {
+        lib = folder.newFolder("WEB-INF", "lib");
+
+        FileDirContext resources = new FileDirContext();
+        resources.setDocBase(folder.getRoot().getAbsolutePath());
+
+        loader = new WebappClassLoader(getClass().getClassLoader());
+        loader.setResources(resources);
+        loader.setJarPath(JAR_PATH);
+        loader.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (CountingJarFile jarFile : jarFiles) {
+            jarFile.close();
+        }
+        loader.close();
+    }
+
+    @Test
+    public void testGetJarIndexKey() {
+        assertEquals("", WebappClassLoader.getJarIndexKey(""));
+        assertEquals("", WebappClassLoader.getJarIndexKey("Foo.class"));
+        assertEquals("", WebappClassLoader.getJarIndexKey("/Foo.class"));
+        assertEquals("", WebappClassLoader.getJarIndexKey("META-INF/"));
+        assertEquals("", WebappClassLoader.getJarIndexKey("META-INF"));
+        assertEquals("META-INF",
+                     WebappClassLoader.getJarIndexKey("META-INF/MANIFEST.MF"));
+        assertEquals("com/acme",
+                     WebappClassLoader.getJarIndexKey("com/acme/Foo.class"));
+        assertEquals("com", WebappClassLoader.getJarIndexKey("com/acme/"));
+        assertEquals("com", WebappClassLoader.getJarIndexKey("com/acme"));
+    }
+
+    @Test
+    public void testFindRootResources() throws IOException {
+        addJar("a.jar", "root.txt", "dup.txt");
+        addJar("b.jar", "other.txt", "dup.txt");
+
+        assertFoundIn("a.jar", "root.txt");
+        assertFoundIn("b.jar", "other.txt");
+        // The first JAR wins
+        assertFoundIn("a.jar", "dup.txt");
+        assertNull(loader.findResource("missing.txt"));
+    }
+
+    @Test
+    public void testFindDirectoryResources() throws IOException {
+        addJar("a.jar", "com/", "com/acme/", "com/acme/Foo.txt");
+        addJar("b.jar", "com/acme/Bar.txt", "org/acme/Baz.txt");
+
+        assertFoundIn("a.jar", "com/acme/Foo.txt");
+        assertFoundIn("b.jar", "com/acme/Bar.txt");
+        assertFoundIn("b.jar", "org/acme/Baz.txt");
+
+        // The directory entries of a JAR, with or without trailing '/'
+        assertFoundIn("a.jar", "com/");
+        assertFoundIn("a.jar", "com");
+        assertFoundIn("a.jar", "com/acme/");
+        assertFoundIn("a.jar", "com/acme");
+
+        // b.jar has no directory entries
+        assertNull(loader.findResource("org/acme/"));
+        assertNull(loader.findResource("com/acme/Missing.txt"));
+        assertNull(loader.findResource("net/acme/Foo.txt"));
+    }
+
+    @Test
+    public void testFindResourcesAddedLater() throws IOException {
+        addJar("a.jar", "com/acme/Foo.txt");
+        assertFoundIn("a.jar", "com/acme/Foo.txt");
+
+        addJar("b.jar", "com/acme/Bar.txt", "com/acme/Foo.txt");
+        assertFoundIn("b.jar", "com/acme/Bar.txt");
+        assertFoundIn("a.jar", "com/acme/Foo.txt");
+    }
+
+    /**
+     * Checks that a lookup only probes the JARs having entries in the
+     * directory of the resource, rather than every JAR.
+     */
+    @Test
+    public void testLookupsOnlyProbeIndexedJars() throws IOException {
+        int jars = 100;
+        for (int i = 0; i < jars; i++) {
+            addJar("lib" + i + ".jar", "pkg" + i + "/", "pkg" + i + "/sub/",
+                   "pkg" + i + "/Res.txt", "shared/Res" + i + ".txt");
+        }
+
+        // A directory no JAR has entries in
+        resetProbes();
+        assertNull(loader.findResource("missing/Res.txt"));
+        assertProbes();
+
+        // A directory one JAR has entries in
+        resetProbes();
+        assertNull(loader.findResource("pkg42/Missing.txt"));
+        assertProbes(42);
+        resetProbes();
+        assertFoundIn("lib42.jar", "pkg42/Res.txt");
+        assertProbes(42);
+
+        // A directory entry of the JAR, with or without trailing '/'
+        resetProbes();
+        assertFoundIn("lib42.jar", "pkg42/sub/");
+        assertProbes(42);
+        resetProbes();
+        assertFoundIn("lib42.jar", "pkg42/sub");
+        assertProbes(42);
+
+        // A directory all JARs have entries in, the search stops at the
+        // first match
+        resetProbes();
+        assertFoundIn("lib3.jar", "shared/Res3.txt");
+        assertProbes(0, 1, 2, 3);
+    }
+
+    private void resetProbes() {
+        for (CountingJarFile jarFile : jarFiles) {
+            jarFile.probes = 0;
+        }
+    }
+
+    /**
+     * Checks that getJarEntry has been called once on each of the JARs at
+     * the given positions, and never on the others.
+     */
+    private void assertProbes(int... positions) {
+        int[] expected = new int[jarFiles.size()];
+        for (int position : positions) {
+            expected[position] = 1;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("probes of lib" + i + ".jar",
+                         expected[i], jarFiles.get(i).probes);
+        }
+    }
+
+    private void addJar(String name, String... entries) throws IOException {
+        File file = new File(lib, name);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(file));
+        try {
+            for (String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+                if (!entry.endsWith("/")) {
+                    out.write(entry.getBytes("UTF-8"));
+                }
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+
+        CountingJarFile jarFile = new CountingJarFile(file);
+        jarFiles.add(jarFile);
+        loader.addJar(JAR_PATH + "/" + name, jarFile, file);
+    }
+
+    private void assertFoundIn(String jar, String name) {
+        URL url = loader.findResource(name);
+        assertNotNull(name + " not found", url);
+        assertTrue(url + " is not in " + jar,
+                   url.toString().endsWith("/" + jar + "!/" + name));
+    }
+
+    /**
+     * JAR file counting the calls to getJarEntry.
+     */
+    private static class CountingJarFile extends JarFile {
+
+        private int probes;
+
+        CountingJarFile(File file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        public JarEntry getJarEntry(String name) {
+            probes++;
+            return super.getJarEntry(name);
+        }
+    }
+}
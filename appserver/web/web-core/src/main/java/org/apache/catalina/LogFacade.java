@@ -3647,4 +3647,10 @@ public class LogFacade {
             level = "WARNING"
     )
     public static final String REPOSITORY_PATH_CONTAIN_NULL_CHARACTER = prefix + "00550";
+
+    @LogMessageInfo(
+            message = "Unable to write {0} queued session writes of store {1} to the database, they will be retried",
+            level = "WARNING"
+    )
+    public static final String WRITE_BEHIND_FAILED = prefix + "00551";
 }
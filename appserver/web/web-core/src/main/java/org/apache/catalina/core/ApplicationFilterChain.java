@@ -360,6 +360,24 @@ final class ApplicationFilterChain implements FilterChain {
     }
 
 
+    /**
+     * Add the given filters to the set of filters that will be executed in
+     * this chain, in order.
+     *
+     * @param filterConfigs The FilterConfigs to be added
+     */
+    void addFilters(ApplicationFilterConfig[] filterConfigs) {
+        if (n + filterConfigs.length > filters.length) {
+            ApplicationFilterConfig[] newFilters =
+                new ApplicationFilterConfig[n + filterConfigs.length];
+            System.arraycopy(filters, 0, newFilters, 0, n);
+            filters = newFilters;
+        }
+        System.arraycopy(filterConfigs, 0, filters, n, filterConfigs.length);
+        n += filterConfigs.length;
+    }
+
+
     /**
      * Release references to the filters and wrapper executed by this chain.
      */
@@ -66,7 +66,7 @@ import org.apache.catalina.deploy.FilterMap;
 import javax.servlet.DispatcherType;
 import javax.servlet.Servlet;
 import javax.servlet.ServletRequest;
-import java.util.Iterator;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 
@@ -144,84 +144,35 @@ public final class ApplicationFilterFactory {
             (((StandardWrapper)wrapper).getInstanceSupport());
         */
 
-        // Acquire the filter mappings for this Context
+        // Acquire the filter chain compiled for this servlet and dispatcher
         StandardContext context = (StandardContext) wrapper.getParent();
-        List<FilterMap> filterMaps = context.findFilterMaps();
+        DispatcherType dispatcher = request.getDispatcherType();
+        CompiledFilterChain compiled = getCompiledFilterChain(
+            context, wrapper, dispatcher);
 
         // If there are no filter mappings, we are done
-        if (filterMaps.isEmpty()) {
+        if (compiled.isEmpty()) {
             return (filterChain);
         }
 
-        // get the dispatcher type
-        DispatcherType dispatcher = request.getDispatcherType();
-        String requestPath = null;
-        Object attribute = request.getAttribute(
-            Globals.DISPATCHER_REQUEST_PATH_ATTR);
-        if (attribute != null){
-            requestPath = attribute.toString();
-        }
-
-        // Acquire the information we will need to match filter mappings
-        String servletName = wrapper.getName();
-
-        int n = 0;
-
         // Add the relevant path-mapped filters to this filter chain
-        Iterator<FilterMap> i = filterMaps.iterator(); 
-        while (i.hasNext()) {
-            FilterMap filterMap = i.next();
-            if (!filterMap.getDispatcherTypes().contains(dispatcher)) {
-                continue;
+        if (compiled.urlMappings.length > 0) {
+            String requestPath = null;
+            Object attribute = request.getAttribute(
+                Globals.DISPATCHER_REQUEST_PATH_ATTR);
+            if (attribute != null){
+                requestPath = attribute.toString();
             }
-            /* SJSWS 6324431
-            if (!matchFiltersURL(filterMaps[i], requestPath))
-                continue;
-            */
-            // START SJSWS 6324431
-            if (!matchFiltersURL(filterMap, requestPath, 
-                                 context.isCaseSensitiveMapping()))
-                continue;
-            // END SJSWS 6324431
-            ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
-                context.findFilterConfig(filterMap.getFilterName());
-            if (filterConfig == null) {
-                // FIXME - log configuration problem
-                continue;
-            }
-            // START IASRI 4665318
-            // Create a filter chain only when there are filters to add
-            if (filterChain == null)
-                filterChain = internalCreateFilterChain(request, wrapper,
-                                                        servlet);
-            // END IASRI 4665318
-            filterChain.addFilter(filterConfig);
-            n++;
+            filterChain = compiled.addURLFilters(filterChain, requestPath,
+                                                 request, wrapper, servlet);
         }
 
         // Add filters that match on servlet name second
-        i = filterMaps.iterator(); 
-        while (i.hasNext()) {
-            FilterMap filterMap = i.next();
-            if (!filterMap.getDispatcherTypes().contains(dispatcher)) {
-                continue;
-            }
-            if (!matchFiltersServlet(filterMap, servletName))
-                continue;
-            ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
-                context.findFilterConfig(filterMap.getFilterName());
-            if (filterConfig == null) {
-                // FIXME - log configuration problem
-                continue;
-            }
-            // START IASRI 4665318
-            // Create a filter chain only when there are filters to add
+        if (compiled.servletFilters.length > 0) {
             if (filterChain == null)
                 filterChain = internalCreateFilterChain(request, wrapper,
                                                         servlet);
-            // END IASRI 4665318
-            filterChain.addFilter(filterConfig);
-            n++;
+            filterChain.addFilters(compiled.servletFilters);
         }
 
         // Return the completed filter chain
@@ -234,71 +185,28 @@ public final class ApplicationFilterFactory {
 
 
     /**
-     * Return <code>true</code> if the context-relative request path
-     * matches the requirements of the specified filter mapping;
-     * otherwise, return <code>null</code>.
-     *
-     * @param filterMap Filter mapping being checked
-     * @param requestPath Context-relative request path of this request
+     * Returns the filter chain compiled for the given servlet and dispatcher
+     * type, compiling it if the filter mappings of the given context have
+     * changed since it was last compiled.
      */
-    /* SJSWS 6324431
-    private boolean matchFiltersURL(FilterMap filterMap, String requestPath) {
-    */
-    // START SJSWS 6324431
-    private boolean matchFiltersURL(FilterMap filterMap, String requestPath,
-                                    boolean caseSensitiveMapping) {
-    // END SJSWS 6324431
-
-        if (requestPath == null)
-            return (false);
-
-        // Match on context relative request path
-        String testPath = filterMap.getURLPattern();
-        if (testPath == null)
-            return (false);
+    private CompiledFilterChain getCompiledFilterChain(StandardContext context,
+            Wrapper wrapper, DispatcherType dispatcher) {
 
-        // START SJSWS 6324431
-        if (!caseSensitiveMapping) {
-            requestPath = requestPath.toLowerCase(Locale.ENGLISH);
-            testPath = testPath.toLowerCase(Locale.ENGLISH);
-        }
-        // END SJSWS 6324431
-
-        // Case 1 - Exact Match
-        if (testPath.equals(requestPath))
-            return (true);
-
-        // Case 2 - Path Match ("/.../*")
-        if (testPath.equals("/*"))
-            return (true);
-        if (testPath.endsWith("/*")) {
-            if (testPath.regionMatches(0, requestPath, 0, 
-                                       testPath.length() - 2)) {
-                if (requestPath.length() == (testPath.length() - 2)) {
-                    return (true);
-                } else if ('/' == requestPath.charAt(testPath.length() - 2)) {
-                    return (true);
-                }
-            }
-            return (false);
+        int version = context.getFilterMappingsVersion();
+        if (!(wrapper instanceof StandardWrapper)) {
+            return new CompiledFilterChain(context, wrapper.getName(),
+                                           dispatcher, version);
         }
 
-        // Case 3 - Extension Match
-        if (testPath.startsWith("*.")) {
-            int slash = requestPath.lastIndexOf('/');
-            int period = requestPath.lastIndexOf('.');
-            if ((slash >= 0) && (period > slash) 
-                && (period != requestPath.length() - 1)
-                && ((requestPath.length() - period) 
-                    == (testPath.length() - 1))) {
-                return (testPath.regionMatches(2, requestPath, period + 1,
-                                               testPath.length() - 2));
-            }
+        StandardWrapper standardWrapper = (StandardWrapper) wrapper;
+        CompiledFilterChain compiled =
+            standardWrapper.getCompiledFilterChain(dispatcher);
+        if (compiled == null || compiled.version != version) {
+            compiled = new CompiledFilterChain(context, wrapper.getName(),
+                                               dispatcher, version);
+            standardWrapper.setCompiledFilterChain(dispatcher, compiled);
         }
-
-        // Case 4 - "Default" Match
-        return (false); // NOTE - Not relevant for selecting filters
-
+        return compiled;
     }
 
 
@@ -310,8 +218,8 @@ public final class ApplicationFilterFactory {
      * @param filterMap Filter mapping being checked
      * @param servletName Servlet name being checked
      */
-    private boolean matchFiltersServlet(FilterMap filterMap, 
-                                        String servletName) {
+    private static boolean matchFiltersServlet(FilterMap filterMap, 
+                                               String servletName) {
 
         if (servletName == null) {
             return (false);
@@ -328,7 +236,7 @@ public final class ApplicationFilterFactory {
 
 
     // START IASRI 4665318
-    private ApplicationFilterChain internalCreateFilterChain(ServletRequest request, Wrapper wrapper, Servlet servlet) {
+    private static ApplicationFilterChain internalCreateFilterChain(ServletRequest request, Wrapper wrapper, Servlet servlet) {
         ApplicationFilterChain filterChain = null;
         if (!Globals.IS_SECURITY_ENABLED && (request instanceof Request)) {
             Request req = (Request) request;
@@ -350,4 +258,226 @@ public final class ApplicationFilterFactory {
     // END IASRI 4665318
 
 
+    // --------------------------------------- CompiledFilterChain Inner Class
+
+
+    /**
+     * The filters of a context that apply to a servlet for a dispatcher
+     * type, resolved from the filter mappings of the context.
+     * The URL patterns are classified by match type when compiled, so that
+     * the request path only has to be matched against them; if all of them
+     * are "/*", the path-mapped filters are the same for every request.
+     */
+    static final class CompiledFilterChain {
+
+        private static final ApplicationFilterConfig[] NO_FILTERS =
+            new ApplicationFilterConfig[0];
+
+        /**
+         * The filter mappings version of the context this was compiled from.
+         */
+        final int version;
+
+        private final boolean caseSensitiveMapping;
+
+        private final URLMapping[] urlMappings;
+
+        private final boolean hasExtensionMappings;
+
+        /**
+         * The path-mapped filters, if they do not depend on the request
+         * path, or null.
+         */
+        private final ApplicationFilterConfig[] urlFilters;
+
+        private final ApplicationFilterConfig[] servletFilters;
+
+        CompiledFilterChain(StandardContext context, String servletName,
+                            DispatcherType dispatcher, int version) {
+
+            this.version = version;
+            caseSensitiveMapping = context.isCaseSensitiveMapping();
+
+            List<URLMapping> urlMappingList = new ArrayList<URLMapping>();
+            List<ApplicationFilterConfig> servletFilterList =
+                new ArrayList<ApplicationFilterConfig>();
+            boolean matchAll = true;
+            boolean extension = false;
+            for (FilterMap filterMap : context.findFilterMaps()) {
+                if (!filterMap.getDispatcherTypes().contains(dispatcher)) {
+                    continue;
+                }
+                ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
+                    context.findFilterConfig(filterMap.getFilterName());
+                if (filterConfig == null) {
+                    // FIXME - log configuration problem
+                    continue;
+                }
+                String urlPattern = filterMap.getURLPattern();
+                if (urlPattern != null) {
+                    // START SJSWS 6324431
+                    if (!caseSensitiveMapping) {
+                        urlPattern = urlPattern.toLowerCase(Locale.ENGLISH);
+                    }
+                    // END SJSWS 6324431
+                    URLMapping urlMapping = new URLMapping(urlPattern,
+                                                           filterConfig);
+                    urlMappingList.add(urlMapping);
+                    matchAll &= (urlMapping.type == MatchType.ALL);
+                    extension |= (urlMapping.type == MatchType.EXTENSION);
+                }
+                if (matchFiltersServlet(filterMap, servletName)) {
+                    servletFilterList.add(filterConfig);
+                }
+            }
+
+            urlMappings = urlMappingList.toArray(
+                new URLMapping[urlMappingList.size()]);
+            hasExtensionMappings = extension;
+            if (matchAll) {
+                urlFilters = new ApplicationFilterConfig[urlMappings.length];
+                for (int i = 0; i < urlMappings.length; i++) {
+                    urlFilters[i] = urlMappings[i].filterConfig;
+                }
+            } else {
+                urlFilters = null;
+            }
+            servletFilters = servletFilterList.isEmpty() ? NO_FILTERS :
+                servletFilterList.toArray(
+                    new ApplicationFilterConfig[servletFilterList.size()]);
+        }
+
+        /**
+         * Returns true if no filter applies to this servlet and dispatcher
+         * type.
+         */
+        boolean isEmpty() {
+            return (urlMappings.length == 0 && servletFilters.length == 0);
+        }
+
+        /**
+         * Adds the filters whose URL pattern matches the given
+         * context-relative request path to the given filter chain, creating
+         * it if necessary.
+         *
+         * @return the filter chain, or null if none was given and no
+         * filter matches
+         */
+        ApplicationFilterChain addURLFilters(
+                ApplicationFilterChain filterChain, String requestPath,
+                ServletRequest request, Wrapper wrapper, Servlet servlet) {
+
+            if (requestPath == null) {
+                return filterChain;
+            }
+
+            if (urlFilters != null) {
+                if (filterChain == null) {
+                    filterChain = internalCreateFilterChain(request, wrapper,
+                                                            servlet);
+                }
+                filterChain.addFilters(urlFilters);
+                return filterChain;
+            }
+
+            // START SJSWS 6324431
+            if (!caseSensitiveMapping) {
+                requestPath = requestPath.toLowerCase(Locale.ENGLISH);
+            }
+            // END SJSWS 6324431
+            int slash = -1;
+            int period = -1;
+            if (hasExtensionMappings) {
+                slash = requestPath.lastIndexOf('/');
+                period = requestPath.lastIndexOf('.');
+            }
+            for (URLMapping urlMapping : urlMappings) {
+                if (urlMapping.matches(requestPath, slash, period)) {
+                    if (filterChain == null) {
+                        filterChain = internalCreateFilterChain(request,
+                                                                wrapper,
+                                                                servlet);
+                    }
+                    filterChain.addFilter(urlMapping.filterConfig);
+                }
+            }
+            return filterChain;
+        }
+    }
+
+
+    private enum MatchType { EXACT, PATH, EXTENSION, ALL }
+
+
+    /**
+     * A filter URL pattern, classified by match type.
+     */
+    private static final class URLMapping {
+
+        private final String urlPattern;
+
+        private final MatchType type;
+
+        /**
+         * The path of a path match, or the extension of an extension match.
+         */
+        private final String match;
+
+        private final ApplicationFilterConfig filterConfig;
+
+        URLMapping(String urlPattern, ApplicationFilterConfig filterConfig) {
+            this.urlPattern = urlPattern;
+            this.filterConfig = filterConfig;
+            if (urlPattern.equals("/*")) {
+                type = MatchType.ALL;
+                match = null;
+            } else if (urlPattern.endsWith("/*")) {
+                type = MatchType.PATH;
+                match = urlPattern.substring(0, urlPattern.length() - 2);
+            } else if (urlPattern.startsWith("*.")) {
+                type = MatchType.EXTENSION;
+                match = urlPattern.substring(2);
+            } else {
+                type = MatchType.EXACT;
+                match = null;
+            }
+        }
+
+        /**
+         * Return <code>true</code> if the given context-relative request
+         * path matches this URL pattern.
+         *
+         * @param requestPath Context-relative request path of this request
+         * @param slash The index of the last '/' of the request path, if
+         *  there are extension matches
+         * @param period The index of the last '.' of the request path, if
+         *  there are extension matches
+         */
+        boolean matches(String requestPath, int slash, int period) {
+
+            // Case 1 - Exact Match
+            if (urlPattern.equals(requestPath))
+                return (true);
+
+            switch (type) {
+            case ALL:
+                return (true);
+            case PATH:
+                // Case 2 - Path Match ("/.../*")
+                return (requestPath.startsWith(match)
+                    && ((requestPath.length() == match.length())
+                        || ('/' == requestPath.charAt(match.length()))));
+            case EXTENSION:
+                // Case 3 - Extension Match
+                return ((slash >= 0) && (period > slash)
+                    && (period != requestPath.length() - 1)
+                    && (requestPath.length() - period - 1 == match.length())
+                    && requestPath.endsWith(match));
+            default:
+                // Case 4 - "Default" Match
+                return (false); // NOTE - Not relevant for selecting filters
+            }
+        }
+    }
+
 }
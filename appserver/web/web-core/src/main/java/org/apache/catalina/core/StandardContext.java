@@ -368,6 +368,13 @@ public class StandardContext
      */
     private List<FilterMap> filterMaps = new ArrayList<FilterMap>();
 
+    /**
+     * Incremented whenever the filter mappings or the filter configurations
+     * change, so that the filter chains compiled by
+     * {@link ApplicationFilterFactory} are recompiled.
+     */
+    private final AtomicInteger filterMappingsVersion = new AtomicInteger();
+
     /**
      * The list of classnames of InstanceListeners that will be added
      * to each newly created Wrapper by <code>createWrapper()</code>.
@@ -812,6 +819,7 @@ public class StandardContext
      */
     public void setCaseSensitiveMapping(boolean caseSensitiveMap) {
         caseSensitiveMapping = caseSensitiveMap;
+        filterMappingsVersion.incrementAndGet();
     }
 
     /**
@@ -2520,6 +2528,7 @@ public class StandardContext
         } else {
             filterMaps.add(0, filterMap);
         }
+        filterMappingsVersion.incrementAndGet();
 
         if (notifyContainerListeners) {
             fireContainerEvent("addFilterMap", filterMap);
@@ -4625,6 +4634,7 @@ public class StandardContext
             }
         }
         filterMaps.clear();
+        filterMappingsVersion.incrementAndGet();
     }
 
     /**
@@ -4987,6 +4997,7 @@ public class StandardContext
                 }
             }
         }
+        filterMappingsVersion.incrementAndGet();
 
         return (ok);
 
@@ -5014,6 +5025,7 @@ public class StandardContext
             }
             filterConfigs.clear();
         }
+        filterMappingsVersion.incrementAndGet();
         return (true);
     }
 
@@ -5027,6 +5039,14 @@ public class StandardContext
         return filterConfigs.get(name);
     }
 
+    /**
+     * Returns the current version of the filter mappings and filter
+     * configurations of this Context.
+     */
+    int getFilterMappingsVersion() {
+        return filterMappingsVersion.get();
+    }
+
     /**
      * Notifies all ServletContextListeners at their contextInitialized
      * method.
@@ -65,12 +65,16 @@ import java.security.Principal;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.*;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.text.MessageFormat;
 import javax.management.Notification;
 import javax.management.NotificationBroadcasterSupport;
 import javax.management.ObjectName;
+import javax.servlet.DispatcherType;
 import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
@@ -159,6 +163,16 @@ public class StandardWrapper
     private AtomicInteger countAllocated = new AtomicInteger(0);
 
 
+    /**
+     * The filter chains compiled for this servlet, indexed by the ordinal
+     * of their dispatcher type.
+     */
+    private final AtomicReferenceArray<ApplicationFilterFactory.CompiledFilterChain>
+        compiledFilterChains =
+            new AtomicReferenceArray<ApplicationFilterFactory.CompiledFilterChain>(
+                DispatcherType.values().length);
+
+
     /**
      * The debugging detail level for this component.
      */
@@ -264,7 +278,7 @@ public class StandardWrapper
     /**
      * Are we unloading our servlet instance at the moment?
      */
-    private boolean unloading = false;
+    private volatile boolean unloading = false;
 
 
     /**
@@ -276,13 +290,13 @@ public class StandardWrapper
     /**
      * Number of instances currently loaded for a STM servlet.
      */
-    private int nInstances = 0;
+    private AtomicInteger nInstances = new AtomicInteger(0);
 
 
     /**
      * Stack containing the STM instances.
      */
-    private Stack<Servlet> instancePool = null;
+    private volatile BlockingDeque<Servlet> instancePool = null;
 
 
     /**
@@ -1090,7 +1104,39 @@ public class StandardWrapper
      *  an exception
      * @exception ServletException if a loading error occurs
      */
-    public synchronized Servlet allocate() throws ServletException {
+    public Servlet allocate() throws ServletException {
+
+        // Once a non-STM instance is initialized, return it without taking
+        // the wrapper lock. countAllocated is incremented before unloading
+        // is checked, so that either unload() waits for this allocation, or
+        // the allocation sees that the instance is being unloaded.
+        if (!singleThreadModel && instanceInitialized) {
+            Servlet servlet = instance;
+            if (servlet != null) {
+                countAllocated.incrementAndGet();
+                if (!unloading && servlet == instance && !singleThreadModel) {
+                    return servlet;
+                }
+                countAllocated.decrementAndGet();
+            }
+        }
+
+        Servlet servlet = allocateInstance();
+        if (servlet != null) {
+            return servlet;
+        }
+        return allocateSTMInstance();
+    }
+
+
+    /**
+     * Loads and initializes the non-STM instance if necessary, and
+     * allocates it.
+     *
+     * @return the allocated instance, or null if this servlet implements
+     *  <code>SingleThreadModel</code>
+     */
+    private synchronized Servlet allocateInstance() throws ServletException {
 
         // If we are currently unloading this servlet, throw an exception
         if (unloading) {
@@ -1103,12 +1149,14 @@ public class StandardWrapper
 
             // Load and initialize our instance if necessary
             if (instance == null) {
-                // No instance. Instantiate and initialize
+                // No instance. Instantiate and initialize, before publishing
+                // it to the unsynchronized path of allocate()
                 try {
                     if (log.isLoggable(Level.FINEST))
                         log.log(Level.FINEST, "Allocating non-STM instance");
-                    instance = loadServlet();
-                    initServlet(instance);
+                    Servlet servlet = loadServlet();
+                    initServlet(servlet);
+                    instance = servlet;
                 } catch (ServletException e) {
                     throw e;
                 } catch (Throwable e) {
@@ -1132,36 +1180,61 @@ public class StandardWrapper
             }
         }
 
-        synchronized (instancePool) {
-
-            while (countAllocated.get() >= nInstances) {
-                // Allocate a new instance if possible, or else wait
-                if (nInstances < maxInstances) {
-                    try {
-                        Servlet servlet = loadServlet();
-                        initServlet(servlet);
-                        instancePool.push(servlet);
-                        nInstances++;
-                    } catch (ServletException e) {
-                        throw e;
-                    } catch (Throwable e) {
-                        throw new ServletException
-                                (rb.getString(LogFacade.ERROR_ALLOCATE_SERVLET_INSTANCE_EXCEPTION), e);
-                    }
-                } else {
-                    try {
-                        instancePool.wait();
-                    } catch (InterruptedException e) {
-                        // Ignore
-                    }
+        return null;
+    }
+
+
+    /**
+     * Allocates a STM instance from the pool, creating one if there are
+     * less than maxInstances, or else waiting for one to be deallocated.
+     */
+    private Servlet allocateSTMInstance() throws ServletException {
+
+        BlockingDeque<Servlet> pool = instancePool;
+        Servlet servlet = pool.pollFirst();
+        while (servlet == null) {
+            // Allocate a new instance if possible, or else wait
+            servlet = createSTMInstance();
+            if (servlet == null) {
+                try {
+                    servlet = pool.takeFirst();
+                } catch (InterruptedException e) {
+                    // Ignore
                 }
             }
-            if (log.isLoggable(Level.FINEST)) {
-                log.log(Level.FINEST, "Returning allocated STM instance");
+        }
+        if (log.isLoggable(Level.FINEST)) {
+            log.log(Level.FINEST, "Returning allocated STM instance");
+        }
+        countAllocated.incrementAndGet();
+        return servlet;
+    }
+
+
+    /**
+     * Creates and initializes a new STM instance.
+     *
+     * @return the new instance, or null if there are maxInstances already
+     */
+    private Servlet createSTMInstance() throws ServletException {
+        int n;
+        while ((n = nInstances.get()) < maxInstances) {
+            if (nInstances.compareAndSet(n, n + 1)) {
+                try {
+                    Servlet servlet = loadServlet();
+                    initServlet(servlet);
+                    return servlet;
+                } catch (ServletException e) {
+                    nInstances.decrementAndGet();
+                    throw e;
+                } catch (Throwable e) {
+                    nInstances.decrementAndGet();
+                    throw new ServletException
+                            (rb.getString(LogFacade.ERROR_ALLOCATE_SERVLET_INSTANCE_EXCEPTION), e);
+                }
             }
-            countAllocated.incrementAndGet();
-            return instancePool.pop();
         }
+        return null;
     }
 
 
@@ -1182,12 +1255,9 @@ public class StandardWrapper
             return;
         }
 
-        // Unlock and free this instance
-        synchronized (instancePool) {
-            countAllocated.decrementAndGet();
-            instancePool.push(servlet);
-            instancePool.notify();
-        }
+        // Free this instance, and wake up a waiting allocation if any
+        countAllocated.decrementAndGet();
+        instancePool.offerFirst(servlet);
     }
 
 
@@ -1334,7 +1404,7 @@ public class StandardWrapper
         singleThreadModel = servlet instanceof SingleThreadModel;
         if (singleThreadModel) {
             if (instancePool == null)
-                instancePool = new Stack<Servlet>();
+                instancePool = new LinkedBlockingDeque<Servlet>();
         }
 
         if (notifyContainerListeners) {
@@ -1802,8 +1872,9 @@ public class StandardWrapper
         } catch (Throwable t) {
             instanceSupport.fireInstanceEvent(AFTER_DESTROY_EVENT, instance, t);
             instance = null;
+            instanceInitialized = false;
             instancePool = null;
-            nInstances = 0;
+            nInstances.set(0);
             if (notifyContainerListeners) {
                 fireContainerEvent("unload", this);
             }
@@ -1817,6 +1888,7 @@ public class StandardWrapper
 
         // Deregister the destroyed instance
         instance = null;
+        instanceInitialized = false;
 
         if (singleThreadModel && (instancePool != null)) {
             try {
@@ -1827,15 +1899,15 @@ public class StandardWrapper
                     if ( SecurityUtil.executeUnderSubjectDoAs() ){
                     // END OF SJS WS 7.0 6236329
                         SecurityUtil.doAsPrivilege("destroy",
-                                                   instancePool.pop());
+                                                   instancePool.pollFirst());
                         SecurityUtil.remove(instance);                           
                     } else {
-                        instancePool.pop().destroy();
+                        instancePool.pollFirst().destroy();
                     }
                 }
             } catch (Throwable t) {
                 instancePool = null;
-                nInstances = 0;
+                nInstances.set(0);
                 unloading = false;
                 if (notifyContainerListeners) {
                     fireContainerEvent("unload", this);
@@ -1848,7 +1920,7 @@ public class StandardWrapper
                     (oldCtxClassLoader);
             }
             instancePool = null;
-            nInstances = 0;
+            nInstances.set(0);
         }
 
         singleThreadModel = false;
@@ -1928,6 +2000,26 @@ public class StandardWrapper
     // -------------------------------------------------------- Package Methods
 
 
+    /**
+     * Returns the filter chain compiled for this servlet and the given
+     * dispatcher type, if any.
+     */
+    ApplicationFilterFactory.CompiledFilterChain getCompiledFilterChain(
+            DispatcherType dispatcher) {
+        return compiledFilterChains.get(dispatcher.ordinal());
+    }
+
+
+    /**
+     * Caches the filter chain compiled for this servlet and the given
+     * dispatcher type.
+     */
+    void setCompiledFilterChain(DispatcherType dispatcher,
+            ApplicationFilterFactory.CompiledFilterChain filterChain) {
+        compiledFilterChains.set(dispatcher.ordinal(), filterChain);
+    }
+
+
     // -------------------------------------------------------- Private Methods
 
 
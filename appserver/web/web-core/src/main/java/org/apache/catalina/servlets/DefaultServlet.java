@@ -271,6 +271,13 @@ public class DefaultServlet
     protected boolean useAcceptRanges = true;
 
 
+    /**
+     * Should a precompressed "&lt;resource&gt;.gz" variant be served, when
+     * present, to the clients accepting the gzip content encoding?
+     */
+    protected boolean gzip = false;
+
+
     /**
      * Full range marker.
      */
@@ -381,6 +388,8 @@ public class DefaultServlet
         if (sc.getInitParameter("useAcceptRanges") != null)
             useAcceptRanges = Boolean.parseBoolean(sc.getInitParameter("useAcceptRanges"));
 
+        gzip = Boolean.parseBoolean(sc.getInitParameter("gzip"));
+
         // Sanity check on the specified buffer sizes
         if (input < 256)
             input = 256;
@@ -818,21 +827,8 @@ public class DefaultServlet
                     path + "' headers only");
         }
 
-        CacheEntry cacheEntry = null;
         ProxyDirContext proxyDirContext = resources;
-        if (alternateDocBases == null
-                || alternateDocBases.size() == 0) {
-            cacheEntry = proxyDirContext.lookupCache(path);
-        } else {
-            AlternateDocBase match = AlternateDocBase.findMatch(
-                                            path, alternateDocBases);
-            if (match != null) {
-                cacheEntry = ((ProxyDirContext) ContextsAdapterUtility.unwrap(match.getResources())).lookupCache(path);
-            } else {
-                // None of the url patterns for alternate docbases matched
-                cacheEntry = proxyDirContext.lookupCache(path);
-            }
-        }
+        CacheEntry cacheEntry = lookupCache(path);
 
         if (!cacheEntry.exists) {
             // Check if we're included so we can return the appropriate 
@@ -888,6 +884,11 @@ public class DefaultServlet
             }
         }
 
+        // Serve the precompressed variant of the resource, if any, to the
+        // clients accepting it
+        CacheEntry originalEntry = cacheEntry;
+        cacheEntry = findGzipVariant(request, response, path, cacheEntry);
+
         // Check if the conditions specified in the optional If headers are
         // satisfied.
         if (cacheEntry.context == null) {
@@ -903,10 +904,10 @@ public class DefaultServlet
         }
 
         // Find content type.
-        String contentType = cacheEntry.attributes.getMimeType();
-        if (contentType == null && !cacheEntry.attributes.isMimeTypeInitialized()) {
-            contentType = getServletContext().getMimeType(cacheEntry.name);
-            cacheEntry.attributes.setMimeType(contentType);
+        String contentType = originalEntry.attributes.getMimeType();
+        if (contentType == null && !originalEntry.attributes.isMimeTypeInitialized()) {
+            contentType = getServletContext().getMimeType(originalEntry.name);
+            originalEntry.attributes.setMimeType(contentType);
         }
 
         ArrayList<Range> ranges = null;
@@ -965,10 +966,11 @@ public class DefaultServlet
                 ostream = response.getOutputStream();
             } catch (IllegalStateException e) {
                 // If it fails, we try to get a Writer instead if we're
-                // trying to serve a text file
-                if ( (contentType == null)
-                     || (contentType.startsWith("text"))
-                     || (contentType.startsWith("xml")) ) {
+                // trying to serve a text file, which is not compressed
+                if ( (cacheEntry == originalEntry)
+                     && ( (contentType == null)
+                          || (contentType.startsWith("text"))
+                          || (contentType.startsWith("xml")) ) ) {
                     writer = response.getWriter();
                 } else {
                     throw e;
@@ -1104,6 +1106,136 @@ public class DefaultServlet
     }
 
 
+    /**
+     * Looks up the cache entry of the given path, in the alternate docbase
+     * matching it if any.
+     */
+    private CacheEntry lookupCache(String path) {
+        if (alternateDocBases == null
+                || alternateDocBases.size() == 0) {
+            return resources.lookupCache(path);
+        }
+        AlternateDocBase match = AlternateDocBase.findMatch(
+                                        path, alternateDocBases);
+        if (match != null) {
+            return ((ProxyDirContext) ContextsAdapterUtility.unwrap(match.getResources())).lookupCache(path);
+        } else {
+            // None of the url patterns for alternate docbases matched
+            return resources.lookupCache(path);
+        }
+    }
+
+
+    /**
+     * Finds the precompressed "&lt;path&gt;.gz" variant of a resource. The
+     * variant is only served when the gzip init parameter is set, for
+     * resources which are not included, and when the client accepts the
+     * gzip content encoding. "Vary: Accept-Encoding" is added whenever the
+     * variant exists, since the response then depends on this header.
+     *
+     * @param request The servlet request we are processing
+     * @param response The servlet response we are creating
+     * @param path The path of the resource
+     * @param cacheEntry The cache entry of the resource
+     * @return the cache entry of the variant to serve, with the
+     * Content-Encoding header set, or else the given cache entry
+     */
+    protected CacheEntry findGzipVariant(HttpServletRequest request,
+                                         HttpServletResponse response,
+                                         String path, CacheEntry cacheEntry) {
+
+        if (!gzip || cacheEntry.context != null
+                || request.getAttribute(RequestDispatcher.INCLUDE_REQUEST_URI) != null) {
+            return cacheEntry;
+        }
+        CacheEntry gzipEntry = lookupCache(path + ".gz");
+        if (!gzipEntry.exists || gzipEntry.context != null
+                || gzipEntry.resource == null) {
+            return cacheEntry;
+        }
+        response.addHeader("Vary", "Accept-Encoding");
+        if (!acceptsGzip(request)) {
+            return cacheEntry;
+        }
+        response.setHeader("Content-Encoding", "gzip");
+        return gzipEntry;
+
+    }
+
+
+    /**
+     * Checks whether the client accepts the gzip content encoding, per the
+     * Accept-Encoding header of the request.
+     *
+     * @param request The servlet request we are processing
+     * @return true if gzip (or x-gzip) is accepted with a non zero quality
+     */
+    protected boolean acceptsGzip(HttpServletRequest request) {
+        return acceptsGzip(request.getHeaders("Accept-Encoding"));
+    }
+
+
+    /**
+     * Checks whether the given Accept-Encoding header values accept the gzip
+     * content encoding. The gzip and x-gzip codings take precedence over
+     * "*", and a coding with a zero or malformed quality is not accepted.
+     *
+     * @param headers The values of the Accept-Encoding header
+     * @return true if gzip is accepted with a non zero quality
+     */
+    static boolean acceptsGzip(Enumeration<String> headers) {
+
+        double gzipQuality = -1;
+        double anyQuality = -1;
+        while ((headers != null) && headers.hasMoreElements()) {
+            StringTokenizer codings =
+                new StringTokenizer(headers.nextElement(), ",");
+            while (codings.hasMoreTokens()) {
+                StringTokenizer params =
+                    new StringTokenizer(codings.nextToken(), ";");
+                if (!params.hasMoreTokens()) {
+                    continue;
+                }
+                String coding = params.nextToken().trim();
+                double quality = 1;
+                while (params.hasMoreTokens()) {
+                    String param = params.nextToken();
+                    int equals = param.indexOf('=');
+                    if ((equals != -1)
+                            && param.substring(0, equals).trim().equalsIgnoreCase("q")) {
+                        quality = parseQuality(param.substring(equals + 1));
+                    }
+                }
+                if (coding.equalsIgnoreCase("gzip")
+                        || coding.equalsIgnoreCase("x-gzip")) {
+                    gzipQuality = Math.max(gzipQuality, quality);
+                } else if (coding.equals("*")) {
+                    anyQuality = Math.max(anyQuality, quality);
+                }
+            }
+        }
+        if (gzipQuality >= 0) {
+            return (gzipQuality > 0);
+        }
+        return (anyQuality > 0);
+
+    }
+
+
+    /**
+     * Parses a quality value, a malformed or negative one being 0.
+     */
+    private static double parseQuality(String value) {
+        double quality;
+        try {
+            quality = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+        return (quality > 0) ? quality : 0;
+    }
+
+
     /**
      * Parse the content-range header.
      *
@@ -69,12 +69,26 @@ import java.io.*;
 import java.sql.*;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Implementation of the <code>Store</code> interface that stores
  * serialized session objects in a database.  Sessions that are
  * saved are still subject to being expired based on inactivity.
+ * <p>
+ * In write-behind mode, the saves and removes are queued and written in
+ * JDBC batches by a dedicated writer thread, the saves of a session queued
+ * within the write-behind delay being coalesced. Loads are served from the
+ * queued writes first, so that they are consistent with them.
  *
  * @author Bip Thelin
  * @version $Revision: 1.4 $, $Date: 2006/11/09 01:12:51 $
@@ -82,7 +96,8 @@ import java.util.ResourceBundle;
 
 public class JDBCStore extends StoreBase {
 
-    private static final ResourceBundle rb = LogFacade.getLogger().getResourceBundle();
+    private static final Logger log = LogFacade.getLogger();
+    private static final ResourceBundle rb = log.getResourceBundle();
 
     /**
      * The descriptive information about this implementation.
@@ -188,6 +203,56 @@ public class JDBCStore extends StoreBase {
      */
     protected PreparedStatement preparedLoadSql = null;
 
+    // ------------------------------------------------------------- Write-behind Variables
+
+    /**
+     * Are the saves and removes written behind by a writer thread?
+     */
+    protected boolean writeBehind = false;
+
+    /**
+     * Time (in milliseconds) the writer waits for further writes, once one
+     * is queued, before writing the queued writes.
+     */
+    protected int writeBehindDelay = 500;
+
+    /**
+     * Maximum number of queued writes. When it is reached, saving or
+     * removing another session blocks until the writer catches up.
+     */
+    protected int writeBehindQueueSize = 1000;
+
+    /**
+     * Lock guarding the queued and in flight writes.
+     */
+    private final ReentrantLock writesLock = new ReentrantLock();
+
+    private final Condition writesQueued = writesLock.newCondition();
+
+    private final Condition writesDequeued = writesLock.newCondition();
+
+    /**
+     * The queued writes, keyed by session id.
+     */
+    private LinkedHashMap<String, PendingWrite> queuedWrites =
+            new LinkedHashMap<String, PendingWrite>();
+
+    /**
+     * The writes being written, keyed by session id.
+     */
+    private Map<String, PendingWrite> inFlightWrites =
+            new HashMap<String, PendingWrite>();
+
+    /**
+     * The writer thread, null if the writes are not written behind.
+     */
+    private Thread writer = null;
+
+    /**
+     * Is the writer writing its last writes? Guarded by writesLock.
+     */
+    private boolean writerStopping = false;
+
     // ------------------------------------------------------------- Properties
 
     /**
@@ -414,6 +479,68 @@ public class JDBCStore extends StoreBase {
         return(this.sessionLastAccessedCol);
     }
 
+    /**
+     * Set whether the saves and removes are written behind, in batches.
+     * Takes effect when this Store is started.
+     *
+     * @param writeBehind The new write-behind flag
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        boolean oldWriteBehind = this.writeBehind;
+        this.writeBehind = writeBehind;
+        support.firePropertyChange("writeBehind",
+                                   Boolean.valueOf(oldWriteBehind),
+                                   Boolean.valueOf(this.writeBehind));
+    }
+
+    /**
+     * Return whether the saves and removes are written behind.
+     */
+    public boolean getWriteBehind() {
+        return(this.writeBehind);
+    }
+
+    /**
+     * Set the time (in milliseconds) the writer waits for further writes
+     * before writing the queued ones.
+     *
+     * @param writeBehindDelay The new delay
+     */
+    public void setWriteBehindDelay(int writeBehindDelay) {
+        int oldWriteBehindDelay = this.writeBehindDelay;
+        this.writeBehindDelay = writeBehindDelay;
+        support.firePropertyChange("writeBehindDelay",
+                                   Integer.valueOf(oldWriteBehindDelay),
+                                   Integer.valueOf(this.writeBehindDelay));
+    }
+
+    /**
+     * Return the write-behind delay (in milliseconds).
+     */
+    public int getWriteBehindDelay() {
+        return(this.writeBehindDelay);
+    }
+
+    /**
+     * Set the maximum number of queued writes.
+     *
+     * @param writeBehindQueueSize The new maximum number of queued writes
+     */
+    public void setWriteBehindQueueSize(int writeBehindQueueSize) {
+        int oldWriteBehindQueueSize = this.writeBehindQueueSize;
+        this.writeBehindQueueSize = writeBehindQueueSize;
+        support.firePropertyChange("writeBehindQueueSize",
+                                   Integer.valueOf(oldWriteBehindQueueSize),
+                                   Integer.valueOf(this.writeBehindQueueSize));
+    }
+
+    /**
+     * Return the maximum number of queued writes.
+     */
+    public int getWriteBehindQueueSize() {
+        return(this.writeBehindQueueSize);
+    }
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -432,6 +559,8 @@ public class JDBCStore extends StoreBase {
         int i;
 
         synchronized(this) {
+            writeQueuedWrites();
+
             Connection _conn = getConnection();
 
             if(_conn == null) {
@@ -487,6 +616,7 @@ public class JDBCStore extends StoreBase {
         ResultSet rst = null;
 
         synchronized(this) {
+            writeQueuedWrites();
             Connection _conn = getConnection();
 
             if(_conn == null) {
@@ -534,16 +664,20 @@ public class JDBCStore extends StoreBase {
         throws ClassNotFoundException, IOException {
         ResultSet rst = null;
         StandardSession _session = null;
-        Loader loader = null;
-        ClassLoader classLoader = null;
-        ObjectInputStream ois = null;
-        BufferedInputStream bis = null;
-        Container container = manager.getContainer();
         String loadSql =
             "SELECT " + sessionIdCol + ", " + sessionDataCol + " FROM " +
             sessionTable + " WHERE " + sessionIdCol + " = ? AND " +
             sessionAppCol + " = ?";
 
+        PendingWrite pendingWrite = getPendingWrite(id);
+        if (pendingWrite != null) {
+            if (pendingWrite.data == null) {
+                // Queued removal
+                return(null);
+            }
+            return(readSession(new ByteArrayInputStream(pendingWrite.data), id));
+        }
+
         synchronized(this) {
             Connection _conn = getConnection();
             if(_conn == null) {
@@ -559,30 +693,7 @@ public class JDBCStore extends StoreBase {
                 preparedLoadSql.setString(2, getName());
                 rst = preparedLoadSql.executeQuery();
                 if (rst.next()) {
-                    bis = new BufferedInputStream(rst.getBinaryStream(2));
-
-                    if (container != null) {
-                        loader = container.getLoader();
-                    }
-                    if (loader != null) {
-                        classLoader = loader.getClassLoader();
-                    }
-                    if (classLoader != null) {
-                        ois = new CustomObjectInputStream(bis,
-                                                          classLoader);
-                    } else {
-                        ois = new ObjectInputStream(bis);
-                    }
-
-                    if (debug > 0) {
-                        String msg = MessageFormat.format(rb.getString(LogFacade.LOADING_SESSION_FROM_DATABASE),
-                                                          new Object[] {id, sessionTable});
-                        log(msg);
-                    }
-
-                    _session = StandardSession.deserialize(ois, manager);
-                    _session.setManager(manager);
-
+                    _session = readSession(rst.getBinaryStream(2), id);
                 } else if (debug > 0) {
                     log(getStoreName()+": No persisted data object found");
                 }
@@ -598,13 +709,6 @@ public class JDBCStore extends StoreBase {
                 } catch(SQLException e) {
                     // Ignore
                 }
-                if (ois != null) {
-                    try {
-                        ois.close();
-                    } catch (IOException e) {
-                        // Ignore
-                    }
-                }
                 release(_conn);
             }
         }
@@ -612,6 +716,55 @@ public class JDBCStore extends StoreBase {
         return(_session);
     }
 
+    /**
+     * Deserialize a session.
+     *
+     * @param is the stream of the serialized session
+     * @param id the session id
+     * @return the deserialized session
+     */
+    private StandardSession readSession(InputStream is, String id)
+        throws ClassNotFoundException, IOException {
+        Loader loader = null;
+        ClassLoader classLoader = null;
+        ObjectInputStream ois = null;
+        BufferedInputStream bis = new BufferedInputStream(is);
+        Container container = manager.getContainer();
+
+        try {
+            if (container != null) {
+                loader = container.getLoader();
+            }
+            if (loader != null) {
+                classLoader = loader.getClassLoader();
+            }
+            if (classLoader != null) {
+                ois = new CustomObjectInputStream(bis,
+                                                  classLoader);
+            } else {
+                ois = new ObjectInputStream(bis);
+            }
+
+            if (debug > 0) {
+                String msg = MessageFormat.format(rb.getString(LogFacade.LOADING_SESSION_FROM_DATABASE),
+                                                  new Object[] {id, sessionTable});
+                log(msg);
+            }
+
+            StandardSession _session = StandardSession.deserialize(ois, manager);
+            _session.setManager(manager);
+            return _session;
+        } finally {
+            if (ois != null) {
+                try {
+                    ois.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
     /**
      * Remove the Session with the specified session identifier from
      * this Store, if present.  If no such Session is present, this method
@@ -622,11 +775,16 @@ public class JDBCStore extends StoreBase {
      * @exception IOException if an input/output error occurs
      */
     public void remove(String id) throws IOException {
-        String removeSql =
-            "DELETE FROM " + sessionTable + " WHERE " + sessionIdCol +
-            " = ?  AND " + sessionAppCol + " = ?";
+        if (queueWrite(new PendingWrite(id))) {
+            return;
+        }
 
         synchronized(this) {
+            // Keep the writes of this session in order
+            if (!writeQueuedWrites()) {
+                // This write supersedes the queued write of this session
+                discardQueuedWrite(id);
+            }
             Connection _conn = getConnection();
 
             if(_conn == null) {
@@ -635,7 +793,7 @@ public class JDBCStore extends StoreBase {
 
             try {
                 if(preparedRemoveSql == null) {
-                    preparedRemoveSql = _conn.prepareStatement(removeSql);
+                    preparedRemoveSql = _conn.prepareStatement(getRemoveSql());
                 }
 
                 preparedRemoveSql.setString(1, id);
@@ -667,6 +825,8 @@ public class JDBCStore extends StoreBase {
             "DELETE FROM " + sessionTable + " WHERE " + sessionAppCol + " = ?";
 
         synchronized(this) {
+            // The queued writes are superseded
+            discardQueuedWrites();
             Connection _conn = getConnection();
             if(_conn == null) {
                 return;
@@ -696,13 +856,24 @@ public class JDBCStore extends StoreBase {
      * @exception IOException if an input/output error occurs
      */
     public void save(Session session) throws IOException {
-        String saveSql =
-            "INSERT INTO " + sessionTable + " (" + sessionIdCol + ", " +
-            sessionAppCol + ", " +
-            sessionDataCol + ", " +
-            sessionValidCol + ", " +
-            sessionMaxInactiveCol + ", " +
-            sessionLastAccessedCol + ") VALUES (?, ?, ?, ?, ?, ?)";
+        if (isWriteBehindActive()) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(bos));
+            try {
+                oos.writeObject(session);
+            } finally {
+                oos.close();
+            }
+            if (queueWrite(new PendingWrite(session, bos.toByteArray()))) {
+                if (debug > 0) {
+                    String msg = MessageFormat.format(rb.getString(LogFacade.SAVING_SESSION_TO_DATABASE),
+                                                      new Object[] {session.getIdInternal(), sessionTable});
+                    log(msg);
+                }
+                return;
+            }
+        }
+
         ObjectOutputStream oos = null;
         ByteArrayOutputStream bos = null;
         ByteArrayInputStream bis = null;
@@ -714,6 +885,9 @@ public class JDBCStore extends StoreBase {
                 return;
             }
 
+            // Keep the writes of this session in order
+            writeQueuedWrites();
+
             // If sessions already exist in DB, remove and insert again.
             // TODO:
             // * Check if ID exists in database and if so use UPDATE.
@@ -732,7 +906,7 @@ public class JDBCStore extends StoreBase {
                 in = new BufferedInputStream(bis, size);
 
                 if(preparedSaveSql == null) {
-                    preparedSaveSql = _conn.prepareStatement(saveSql);
+                    preparedSaveSql = _conn.prepareStatement(getSaveSql());
                 }
 
                 preparedSaveSql.setString(1, session.getIdInternal());
@@ -770,6 +944,376 @@ public class JDBCStore extends StoreBase {
         }
     }
 
+    // --------------------------------------------------------- Write-behind Methods
+
+    /**
+     * Return the SQL statement inserting a session.
+     */
+    private String getSaveSql() {
+        return "INSERT INTO " + sessionTable + " (" + sessionIdCol + ", " +
+            sessionAppCol + ", " +
+            sessionDataCol + ", " +
+            sessionValidCol + ", " +
+            sessionMaxInactiveCol + ", " +
+            sessionLastAccessedCol + ") VALUES (?, ?, ?, ?, ?, ?)";
+    }
+
+    /**
+     * Return the SQL statement deleting a session.
+     */
+    private String getRemoveSql() {
+        return "DELETE FROM " + sessionTable + " WHERE " + sessionIdCol +
+            " = ?  AND " + sessionAppCol + " = ?";
+    }
+
+    private boolean isWriteBehindActive() {
+        writesLock.lock();
+        try {
+            return writer != null && !writerStopping;
+        } finally {
+            writesLock.unlock();
+        }
+    }
+
+    /**
+     * Queue a write for the writer, replacing the queued write of the same
+     * session if any. Blocks while the queue is full.
+     *
+     * @return false if the writes are not written behind, in which case
+     *  the caller writes it itself
+     */
+    private boolean queueWrite(PendingWrite write) throws IOException {
+        writesLock.lock();
+        try {
+            while (writer != null && !writerStopping
+                    && queuedWrites.size() >= writeBehindQueueSize
+                    && !queuedWrites.containsKey(write.id)) {
+                writesDequeued.await();
+            }
+            if (writer == null || writerStopping) {
+                return false;
+            }
+            queuedWrites.put(write.id, write);
+            writesQueued.signal();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            writesLock.unlock();
+        }
+    }
+
+    /**
+     * Return the queued or in flight write of a session, if any.
+     */
+    private PendingWrite getPendingWrite(String id) {
+        writesLock.lock();
+        try {
+            PendingWrite write = queuedWrites.get(id);
+            return (write != null) ? write : inFlightWrites.get(id);
+        } finally {
+            writesLock.unlock();
+        }
+    }
+
+    /**
+     * Take the queued writes, which are in flight until the next call.
+     * Caller must hold the lock on this Store, so that the writes of a
+     * session are written in order.
+     */
+    private Collection<PendingWrite> takeQueuedWrites() {
+        writesLock.lock();
+        try {
+            if (queuedWrites.isEmpty()) {
+                return queuedWrites.values();
+            }
+            inFlightWrites = queuedWrites;
+            queuedWrites = new LinkedHashMap<String, PendingWrite>();
+            writesDequeued.signalAll();
+            return inFlightWrites.values();
+        } finally {
+            writesLock.unlock();
+        }
+    }
+
+    /**
+     * Discard the queued write of a session, if any.
+     * Caller must hold the lock on this Store.
+     */
+    private void discardQueuedWrite(String id) {
+        writesLock.lock();
+        try {
+            if (queuedWrites.remove(id) != null) {
+                writesDequeued.signalAll();
+            }
+        } finally {
+            writesLock.unlock();
+        }
+    }
+
+    /**
+     * Discard the queued writes.
+     * Caller must hold the lock on this Store.
+     */
+    private void discardQueuedWrites() {
+        writesLock.lock();
+        try {
+            queuedWrites = new LinkedHashMap<String, PendingWrite>();
+            writesDequeued.signalAll();
+        } finally {
+            writesLock.unlock();
+        }
+    }
+
+    /**
+     * Put the failed in flight writes back in the queue, ahead of the queued
+     * writes, unless a queued write of the same session replaces them.
+     */
+    private void requeueInFlightWrites() {
+        writesLock.lock();
+        try {
+            LinkedHashMap<String, PendingWrite> writes =
+                new LinkedHashMap<String, PendingWrite>();
+            for (PendingWrite write : inFlightWrites.values()) {
+                if (!queuedWrites.containsKey(write.id)) {
+                    writes.put(write.id, write);
+                }
+            }
+            writes.putAll(queuedWrites);
+            queuedWrites = writes;
+            inFlightWrites = new HashMap<String, PendingWrite>();
+        } finally {
+            writesLock.unlock();
+        }
+    }
+
+    /**
+     * Write the queued writes, in JDBC batches, in one transaction. The
+     * writes that could not be written are queued again, to be retried by
+     * the next call.
+     * Caller must hold the lock on this Store.
+     *
+     * @return false if the writes could not be written
+     */
+    private boolean writeQueuedWrites() {
+        Collection<PendingWrite> writes = takeQueuedWrites();
+        if (writes.isEmpty()) {
+            return true;
+        }
+
+        boolean written = false;
+        SQLException failure = null;
+        Connection _conn = getConnection();
+        if(_conn != null) {
+            try {
+                _conn.setAutoCommit(false);
+                if(preparedRemoveSql == null) {
+                    preparedRemoveSql = _conn.prepareStatement(getRemoveSql());
+                }
+                if(preparedSaveSql == null) {
+                    preparedSaveSql = _conn.prepareStatement(getSaveSql());
+                }
+
+                // Remove the sessions, saved sessions being inserted again
+                for (PendingWrite write : writes) {
+                    preparedRemoveSql.setString(1, write.id);
+                    preparedRemoveSql.setString(2, getName());
+                    preparedRemoveSql.addBatch();
+                }
+                preparedRemoveSql.executeBatch();
+
+                boolean saves = false;
+                for (PendingWrite write : writes) {
+                    if (write.data != null) {
+                        preparedSaveSql.setString(1, write.id);
+                        preparedSaveSql.setString(2, getName());
+                        preparedSaveSql.setBytes(3, write.data);
+                        preparedSaveSql.setString(4, write.valid?"1":"0");
+                        preparedSaveSql.setInt(5, write.maxInactiveInterval);
+                        preparedSaveSql.setLong(6, write.lastAccessedTime);
+                        preparedSaveSql.addBatch();
+                        saves = true;
+                    }
+                }
+                if (saves) {
+                    preparedSaveSql.executeBatch();
+                }
+                _conn.commit();
+                written = true;
+            } catch(SQLException e) {
+                failure = e;
+                try {
+                    _conn.rollback();
+                } catch (SQLException ex) {
+                    // Ignore
+                }
+            } finally {
+                try {
+                    _conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    // Ignore
+                }
+                release(_conn);
+            }
+        }
+
+        if (!written) {
+            String msg = MessageFormat.format(rb.getString(LogFacade.WRITE_BEHIND_FAILED),
+                                              writes.size(), getName());
+            log.log(Level.WARNING, msg, failure);
+            requeueInFlightWrites();
+            return false;
+        }
+
+        writesLock.lock();
+        try {
+            inFlightWrites = new HashMap<String, PendingWrite>();
+        } finally {
+            writesLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    private void startWriter() {
+        writesLock.lock();
+        try {
+            writerStopping = false;
+            writer = new Thread(new Runnable() {
+                public void run() {
+                    runWriter();
+                }
+            }, threadName + "-writer" + getName());
+            writer.setDaemon(true);
+            writer.start();
+        } finally {
+            writesLock.unlock();
+        }
+    }
+
+    /**
+     * Stop the writer thread, once it has written the queued writes.
+     */
+    private void stopWriter() {
+        Thread _writer;
+        writesLock.lock();
+        try {
+            _writer = writer;
+            if (_writer == null) {
+                return;
+            }
+            writerStopping = true;
+            writesQueued.signalAll();
+            writesDequeued.signalAll();
+        } finally {
+            writesLock.unlock();
+        }
+
+        try {
+            _writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        writesLock.lock();
+        try {
+            writer = null;
+        } finally {
+            writesLock.unlock();
+        }
+
+        // Write what could have been queued after the writer exited
+        synchronized(this) {
+            writeQueuedWrites();
+        }
+    }
+
+    /**
+     * The writer loop : wait for a write, let the writes coalesce during the
+     * write-behind delay, then write them.
+     */
+    private void runWriter() {
+        while (true) {
+            writesLock.lock();
+            try {
+                while (queuedWrites.isEmpty() && !writerStopping) {
+                    writesQueued.awaitUninterruptibly();
+                }
+                if (queuedWrites.isEmpty()) {
+                    return;
+                }
+                // Let further writes coalesce, unless the writer is stopped
+                long deadline = System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(writeBehindDelay);
+                long nanos;
+                while (!writerStopping
+                        && (nanos = deadline - System.nanoTime()) > 0) {
+                    writesQueued.awaitNanos(nanos);
+                }
+            } catch (InterruptedException e) {
+                // Write the queued writes now
+            } finally {
+                writesLock.unlock();
+            }
+
+            boolean written;
+            synchronized(this) {
+                written = writeQueuedWrites();
+            }
+            if (!written && isWriterStopping()) {
+                // Leave the failed writes queued, for stopWriter to retry
+                return;
+            }
+        }
+    }
+
+    private boolean isWriterStopping() {
+        writesLock.lock();
+        try {
+            return writerStopping;
+        } finally {
+            writesLock.unlock();
+        }
+    }
+
+    /**
+     * A save or a removal of a session, to be written.
+     */
+    private static final class PendingWrite {
+
+        final String id;
+
+        /**
+         * The serialized session, null for a removal.
+         */
+        final byte[] data;
+
+        final boolean valid;
+
+        final int maxInactiveInterval;
+
+        final long lastAccessedTime;
+
+        PendingWrite(String id) {
+            this.id = id;
+            this.data = null;
+            this.valid = false;
+            this.maxInactiveInterval = 0;
+            this.lastAccessedTime = 0L;
+        }
+
+        PendingWrite(Session session, byte[] data) {
+            this.id = session.getIdInternal();
+            this.data = data;
+            this.valid = session.isValid();
+            this.maxInactiveInterval = session.getMaxInactiveInterval();
+            this.lastAccessedTime = session.getLastAccessedTime();
+        }
+    }
+
     // --------------------------------------------------------- Protected Methods
 
     /**
@@ -824,6 +1368,10 @@ public class JDBCStore extends StoreBase {
 
         // Open connection to the database
         this.conn = getConnection();
+
+        if (writeBehind) {
+            startWriter();
+        }
     }
 
     /**
@@ -834,6 +1382,9 @@ public class JDBCStore extends StoreBase {
     public void stop() throws LifecycleException {
         super.stop();
 
+        // Write the queued writes before closing the connection
+        stopWriter();
+
         // Close and release everything associated with our db.
         if(conn != null) {
             try {
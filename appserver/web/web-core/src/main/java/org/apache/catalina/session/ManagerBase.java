@@ -165,7 +165,7 @@ public abstract class ManagerBase implements Manager {
     /**
      * A random number generator to use when generating session identifiers.
      */
-    private Random random = null;
+    private volatile Random random = null;
     
     
     /**
@@ -206,6 +206,12 @@ public abstract class ManagerBase implements Manager {
      * session identifier.
      */
     protected Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+    /**
+     * The active sessions indexed by expiry time, if the subclass
+     * expires sessions through this index.
+     */
+    protected SessionExpiryIndex expiryIndex = null;
     
     // Number of sessions created by this manager
     protected int sessionCounter=0;
@@ -537,8 +543,15 @@ public abstract class ManagerBase implements Manager {
      * generating session identifiers.  If there is no such generator
      * currently defined, construct and seed a new one.
      */
-    public synchronized Random getRandom() {
-        if (this.random == null) {
+    public Random getRandom() {
+        Random result = this.random;
+        if (result != null) {
+            return result;
+        }
+        synchronized (this) {
+            if (this.random != null) {
+                return this.random;
+            }
             // Calculate the new random number generator seed
             long seed = System.currentTimeMillis();
             long t1 = seed;
@@ -550,15 +563,15 @@ public abstract class ManagerBase implements Manager {
             try {
                  // Construct and seed a new random number generator
                  Class<?> clazz = Class.forName(randomClass);
-                 this.random = (Random) clazz.newInstance();
-                 this.random.setSeed(seed);
+                 result = (Random) clazz.newInstance();
+                 result.setSeed(seed);
             } catch (Exception e) {
                  // Fall back to the simple case
                 String msg = MessageFormat.format(rb.getString(LogFacade.INIT_RANDOM_NUMBER_GENERATOR_EXCEPTION),
                                                   randomClass);
                  log.log(Level.SEVERE, msg, e);
-                 this.random = new java.util.Random();
-                 this.random.setSeed(seed);
+                 result = new java.util.Random();
+                 result.setSeed(seed);
             }
             long t2=System.currentTimeMillis();
             if( (t2-t1) > 100 )
@@ -567,9 +580,11 @@ public abstract class ManagerBase implements Manager {
                                                        randomClass);
                      log.log(Level.FINE, msg + " " + (t2-t1));
                  }
+            // Publish the generator once it is seeded
+            this.random = result;
         }
 
-        return (this.random);
+        return result;
     }
 
     /**
@@ -679,6 +694,9 @@ public abstract class ManagerBase implements Manager {
      */
     public void add(Session session) {
         sessions.put(session.getIdInternal(), session);
+        if (expiryIndex != null && session instanceof StandardSession) {
+            expiryIndex.schedule((StandardSession) session);
+        }
         int size = sessions.size();
         if (size > maxActive) {
             synchronized(maxActiveUpdateLock) {
@@ -859,6 +877,9 @@ public abstract class ManagerBase implements Manager {
      */
     public void clearSessions() {
         sessions.clear();
+        if (expiryIndex != null) {
+            expiryIndex.clear();
+        }
     }    
 
 
@@ -884,6 +905,25 @@ public abstract class ManagerBase implements Manager {
      */
     public void remove(Session session) {
         sessions.remove(session.getIdInternal());
+        if (expiryIndex != null && session instanceof StandardSession) {
+            expiryIndex.unschedule((StandardSession) session);
+        }
+    }
+
+
+    /**
+     * Called when the max inactive interval of an active session has
+     * changed, so that its expiry is rescheduled.
+     *
+     * @param session Session whose max inactive interval has changed
+     */
+    void sessionExpiryChanged(StandardSession session) {
+        if (expiryIndex != null) {
+            String id = session.getIdInternal();
+            if (id != null && sessions.get(id) == session) {
+                expiryIndex.schedule(session);
+            }
+        }
     }
 
     @Override
@@ -949,17 +989,26 @@ public abstract class ManagerBase implements Manager {
     
     /**
      * Generate and return a new session identifier.
+     * The default UuidGenerator is thread safe, hence concurrent session
+     * creations do not serialize on this Manager. Other generators, which
+     * may not be, are still called while holding the lock of this Manager.
      * Hercules:added
      */
-    protected synchronized String generateSessionId(Object obj) {
-        return uuidGenerator.generateUuid(obj);
+    protected String generateSessionId(Object obj) {
+        UuidGenerator generator = uuidGenerator;
+        if (generator.getClass() == UuidGeneratorImpl.class) {
+            return generator.generateUuid(obj);
+        }
+        synchronized (this) {
+            return generator.generateUuid(obj);
+        }
     }   
     
     /**
      * Generate and return a new session identifier.
      * Hercules:modified
      */
-    protected synchronized String generateSessionId() {
+    protected String generateSessionId() {
         return generateSessionId(new Object());
     }    
 
@@ -0,0 +1,178 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://glassfish.dev.java.net/public/CDDL+GPL_1_1.html
+ * or packager/legal/LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at packager/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Index of the sessions of a Manager by expiry time, so that the background
+ * thread only looks at the sessions that are due instead of all the sessions.
+ * <p>
+ * Sessions are kept in buckets of one tick. Accessing a session does not move
+ * it : when its bucket is due, a session that has been accessed meanwhile is
+ * scheduled again in the bucket of its new expiry time. Hence a session is
+ * looked at once per max inactive interval, at most.
+ */
+class SessionExpiryIndex {
+
+    private static final long DEFAULT_TICK = 1000L;
+
+    private final long tickMillis;
+
+    private final ConcurrentSkipListMap<Long, Set<StandardSession>> buckets =
+        new ConcurrentSkipListMap<Long, Set<StandardSession>>();
+
+    // The tick of the bucket each session is in
+    private final Map<StandardSession, Long> scheduled =
+        new ConcurrentHashMap<StandardSession, Long>();
+
+
+    SessionExpiryIndex() {
+        this(DEFAULT_TICK);
+    }
+
+
+    SessionExpiryIndex(long tickMillis) {
+        this.tickMillis = tickMillis;
+    }
+
+
+    /**
+     * Schedules the given session in the bucket of its expiry time, as of
+     * its last access time and max inactive interval. A session that never
+     * times out is removed from the index.
+     */
+    void schedule(StandardSession session) {
+        int interval = session.getMaxInactiveInterval();
+        if (interval < 0) {
+            unschedule(session);
+            return;
+        }
+        long expiry = session.getThisAccessedTimeInternal() + interval * 1000L;
+        // Round up, so that the session has expired when its bucket is due
+        Long tick = Long.valueOf((expiry + tickMillis - 1) / tickMillis);
+        Long old = scheduled.put(session, tick);
+        if (tick.equals(old)) {
+            return;
+        }
+        if (old != null) {
+            Set<StandardSession> bucket = buckets.get(old);
+            if (bucket != null) {
+                bucket.remove(session);
+            }
+        }
+        while (true) {
+            Set<StandardSession> bucket = buckets.get(tick);
+            if (bucket == null) {
+                bucket = Collections.newSetFromMap(
+                    new ConcurrentHashMap<StandardSession, Boolean>());
+                Set<StandardSession> current = buckets.putIfAbsent(tick, bucket);
+                if (current != null) {
+                    bucket = current;
+                }
+            }
+            bucket.add(session);
+            // The bucket may have been polled meanwhile
+            if (buckets.get(tick) == bucket) {
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Removes the given session from the index.
+     */
+    void unschedule(StandardSession session) {
+        Long tick = scheduled.remove(session);
+        if (tick != null) {
+            Set<StandardSession> bucket = buckets.get(tick);
+            if (bucket != null) {
+                bucket.remove(session);
+            }
+        }
+    }
+
+
+    /**
+     * Removes, and returns, the sessions of the buckets that are due at the
+     * given time. These sessions may have been accessed since they were
+     * scheduled; the caller must check them and schedule the ones that are
+     * still valid again.
+     */
+    List<StandardSession> pollDue(long timeNow) {
+        List<StandardSession> due = new ArrayList<StandardSession>();
+        Map<Long, Set<StandardSession>> dueBuckets =
+            buckets.headMap(Long.valueOf(timeNow / tickMillis), true);
+        for (Map.Entry<Long, Set<StandardSession>> entry : dueBuckets.entrySet()) {
+            if (!buckets.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            for (StandardSession session : entry.getValue()) {
+                // Skip the sessions that were moved or removed meanwhile
+                if (scheduled.remove(session, entry.getKey())) {
+                    due.add(session);
+                }
+            }
+        }
+        return due;
+    }
+
+
+    /**
+     * @return the number of sessions in the index
+     */
+    int size() {
+        return scheduled.size();
+    }
+
+
+    void clear() {
+        scheduled.clear();
+        buckets.clear();
+    }
+}
@@ -180,6 +180,16 @@ public class StandardManager
     long processingTime=0;
 
 
+    // ----------------------------------------------------------- Constructors
+
+
+    public StandardManager() {
+        // Expire sessions through the index, instead of looking at all
+        // the sessions on every background process tick
+        expiryIndex = new SessionExpiryIndex();
+    }
+
+
     // ------------------------------------------------------------- Properties
 
 
@@ -461,7 +471,7 @@ public class StandardManager
             throws ClassNotFoundException, IOException {
 
         // Initialize our internal data structures
-        sessions.clear();
+        clearSessions();
 
         ObjectInputStream ois = null;
         try {
@@ -498,6 +508,7 @@ public class StandardManager
                         StandardSession.deserialize(ois, this);
                     session.setManager(this);
                     sessions.put(session.getIdInternal(), session);
+                    expiryIndex.schedule(session);
                     session.activate();
                 }
             } catch (ClassNotFoundException e) {
@@ -988,17 +999,21 @@ public class StandardManager
 
         long timeNow = System.currentTimeMillis();
 
-        Session[] sessions = findSessions();
-        if (sessions != null) {
-            for (Session session : sessions) {
-                StandardSession sess = (StandardSession) session;
-                if (sess.lockBackground()) {
-                    try {
-                        sess.isValid();
-                    } finally {
-                        sess.unlockBackground();
+        // Only the sessions whose expiry time, as of when they were
+        // scheduled, has passed are looked at
+        for (StandardSession sess : expiryIndex.pollDue(timeNow)) {
+            if (sess.lockBackground()) {
+                try {
+                    if (sess.isValid()) {
+                        // Accessed since it was scheduled
+                        expiryIndex.schedule(sess);
                     }
+                } finally {
+                    sess.unlockBackground();
                 }
+            } else if (sess.getIsValid()) {
+                // In use, look at it again on the next tick
+                expiryIndex.schedule(sess);
             }
         }
 
@@ -571,6 +571,15 @@ public class StandardSession
     }
     // END SJSAS 6470831
 
+
+    /**
+     * Return the time of the current, or last, request associated with this
+     * session, from which its inactivity is measured.
+     */
+    public long getThisAccessedTimeInternal() {
+        return this.thisAccessedTime;
+    }
+
     
     /**
      * Set the last time the client sent a request associated with this
@@ -629,6 +638,8 @@ public class StandardSession
         this.maxInactiveInterval = interval;
         if (isValid && interval == 0) {
             expire();
+        } else if (manager instanceof ManagerBase) {
+            ((ManagerBase) manager).sessionExpiryChanged(this);
         }
 
     }
@@ -0,0 +1,391 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.apache.catalina.core;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.GenericServlet;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.catalina.Globals;
+import org.apache.catalina.deploy.FilterDef;
+import org.apache.catalina.deploy.FilterMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Unit tests {@link ApplicationFilterFactory}, comparing the filter chains
+ * compiled per servlet and dispatcher type with the filters selected by
+ * matching every filter mapping against the request path.
+ */
+public class ApplicationFilterFactoryTest {
+
+    private static final String SERVLET_NAME = "servlet";
+
+    private static final String[] REQUEST_PATHS = {
+        "/exact", "/exact/", "/exactly", "/path", "/path/", "/path/a",
+        "/pathological", "/path/a.jsp", "/a.jsp", "/a.jsp/", "/a.", "/a.jspx",
+        "/dir.jsp/file", "a.jsp", "/", "", "/PATH/a", "/A.JSP", "/Exact",
+        "/mixed/Case/a", "/MIXED/case/a", "/b.HTML", "/b.html"
+    };
+
+    private StandardContext context;
+
+    private StandardWrapper wrapper;
+
+    private Servlet servlet;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new StandardContext();
+        addFilter("exact", "/exact", DispatcherType.REQUEST);
+        addFilter("path", "/path/*", DispatcherType.REQUEST);
+        addFilter("extension", "*.jsp", DispatcherType.REQUEST);
+        addFilter("mixed", "/Mixed/Case/*", DispatcherType.REQUEST);
+        addFilter("upper", "*.HTML", DispatcherType.REQUEST);
+        addFilter("all", "/*", DispatcherType.REQUEST);
+        addFilter("forward", "/*", DispatcherType.FORWARD);
+        addServletFilter("named", SERVLET_NAME, DispatcherType.REQUEST);
+        addServletFilter("any", "*", DispatcherType.REQUEST,
+                         DispatcherType.FORWARD);
+        addServletFilter("other", "other", DispatcherType.REQUEST);
+        context.filterStart();
+
+        wrapper = new StandardWrapper();
+        wrapper.setName(SERVLET_NAME);
+        wrapper.setParent(context);
+
+        servlet = new GenericServlet() {
+            @Override
+            public void service(ServletRequest req, ServletResponse res) {
+            }
+        };
+    }
+
+    @Test
+    public void testCaseSensitiveMapping() throws Exception {
+        assertMatchesReference(DispatcherType.REQUEST);
+        assertMatchesReference(DispatcherType.FORWARD);
+        assertMatchesReference(DispatcherType.INCLUDE);
+    }
+
+    @Test
+    public void testCaseInsensitiveMapping() throws Exception {
+        context.setCaseSensitiveMapping(false);
+        assertMatchesReference(DispatcherType.REQUEST);
+        assertMatchesReference(DispatcherType.FORWARD);
+    }
+
+    @Test
+    public void testOnlyAllMappings() throws Exception {
+        context = new StandardContext();
+        addFilter("first", "/*", DispatcherType.REQUEST);
+        addFilter("second", "/*", DispatcherType.REQUEST);
+        addServletFilter("named", SERVLET_NAME, DispatcherType.REQUEST);
+        context.filterStart();
+        wrapper = new StandardWrapper();
+        wrapper.setName(SERVLET_NAME);
+        wrapper.setParent(context);
+
+        assertMatchesReference(DispatcherType.REQUEST);
+        assertEquals(Arrays.asList("first", "second", "named"),
+                     filterNames(createFilterChain(DispatcherType.REQUEST,
+                                                   "/any/path")));
+    }
+
+    @Test
+    public void testNoMatchingFilter() throws Exception {
+        assertNull(createFilterChain(DispatcherType.INCLUDE, "/exact"));
+        assertNull(ApplicationFilterFactory.getInstance().createFilterChain(
+            request(DispatcherType.REQUEST, "/exact"), wrapper, null));
+    }
+
+    @Test
+    public void testCompiledChainIsReused() throws Exception {
+        createFilterChain(DispatcherType.REQUEST, "/exact");
+        ApplicationFilterFactory.CompiledFilterChain compiled =
+            wrapper.getCompiledFilterChain(DispatcherType.REQUEST);
+        createFilterChain(DispatcherType.REQUEST, "/path/a");
+        assertSame(compiled,
+                   wrapper.getCompiledFilterChain(DispatcherType.REQUEST));
+        assertNull(wrapper.getCompiledFilterChain(DispatcherType.ASYNC));
+    }
+
+    @Test
+    public void testRecompiledAfterMappingChange() throws Exception {
+        createFilterChain(DispatcherType.REQUEST, "/late");
+        ApplicationFilterFactory.CompiledFilterChain compiled =
+            wrapper.getCompiledFilterChain(DispatcherType.REQUEST);
+
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName("exact");
+        filterMap.setURLPattern("/late");
+        filterMap.setDispatcherTypes(EnumSet.of(DispatcherType.REQUEST));
+        context.addFilterMap(filterMap, false);
+
+        assertEquals(Arrays.asList("exact", "all", "named", "any"),
+                     filterNames(createFilterChain(DispatcherType.REQUEST,
+                                                   "/late")));
+        assertNotSame(compiled,
+                      wrapper.getCompiledFilterChain(DispatcherType.REQUEST));
+        assertMatchesReference(DispatcherType.REQUEST);
+    }
+
+    @Test
+    public void testRecompiledAfterCaseSensitivityChange() throws Exception {
+        assertEquals(Arrays.asList("all", "named", "any"),
+                     filterNames(createFilterChain(DispatcherType.REQUEST,
+                                                   "/PATH/a")));
+        context.setCaseSensitiveMapping(false);
+        assertEquals(Arrays.asList("path", "all", "named", "any"),
+                     filterNames(createFilterChain(DispatcherType.REQUEST,
+                                                   "/PATH/a")));
+    }
+
+    // -------------------------------------------------------- Private Methods
+
+    private void addFilter(String filterName, String urlPattern,
+                           DispatcherType dispatcher) {
+        addFilterDef(filterName);
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName(filterName);
+        filterMap.setURLPattern(urlPattern);
+        filterMap.setDispatcherTypes(EnumSet.of(dispatcher));
+        context.addFilterMap(filterMap);
+    }
+
+    private void addServletFilter(String filterName, String servletName,
+                                  DispatcherType... dispatchers) {
+        addFilterDef(filterName);
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName(filterName);
+        filterMap.setServletName(servletName);
+        filterMap.setDispatcherTypes(EnumSet.copyOf(Arrays.asList(dispatchers)));
+        context.addFilterMap(filterMap);
+    }
+
+    private void addFilterDef(String filterName) {
+        FilterDef filterDef = new FilterDef();
+        filterDef.setFilterName(filterName);
+        filterDef.setFilter(new NoOpFilter());
+        context.addFilterDef(filterDef);
+    }
+
+    private void assertMatchesReference(DispatcherType dispatcher)
+            throws Exception {
+        for (String requestPath : REQUEST_PATHS) {
+            assertEquals(dispatcher + " " + requestPath,
+                         referenceFilterNames(dispatcher, requestPath),
+                         filterNames(createFilterChain(dispatcher,
+                                                       requestPath)));
+        }
+        assertEquals(dispatcher + " without request path",
+                     referenceFilterNames(dispatcher, null),
+                     filterNames(createFilterChain(dispatcher, null)));
+    }
+
+    private ApplicationFilterChain createFilterChain(
+            DispatcherType dispatcher, String requestPath) {
+        return ApplicationFilterFactory.getInstance().createFilterChain(
+            request(dispatcher, requestPath), wrapper, servlet);
+    }
+
+    private static ServletRequest request(final DispatcherType dispatcher,
+                                          final String requestPath) {
+        return (ServletRequest) Proxy.newProxyInstance(
+            ServletRequest.class.getClassLoader(),
+            new Class<?>[] { ServletRequest.class },
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method,
+                                     Object[] args) {
+                    if ("getDispatcherType".equals(method.getName())) {
+                        return dispatcher;
+                    }
+                    if ("getAttribute".equals(method.getName())
+                            && Globals.DISPATCHER_REQUEST_PATH_ATTR.equals(
+                                args[0])) {
+                        return requestPath;
+                    }
+                    return null;
+                }
+            });
+    }
+
+    private static List<String> filterNames(ApplicationFilterChain filterChain)
+            throws Exception {
+        List<String> names = new ArrayList<String>();
+        if (filterChain == null) {
+            return names;
+        }
+        Field filtersField =
+            ApplicationFilterChain.class.getDeclaredField("filters");
+        Field nField = ApplicationFilterChain.class.getDeclaredField("n");
+        filtersField.setAccessible(true);
+        nField.setAccessible(true);
+        ApplicationFilterConfig[] filters =
+            (ApplicationFilterConfig[]) filtersField.get(filterChain);
+        int n = nField.getInt(filterChain);
+        for (int i = 0; i < n; i++) {
+            names.add(filters[i].getFilterName());
+        }
+        return names;
+    }
+
+    /**
+     * Selects the filters of the context by matching every filter mapping,
+     * as the filter chain was built before it was compiled.
+     */
+    private List<String> referenceFilterNames(DispatcherType dispatcher,
+                                              String requestPath) {
+        List<String> names = new ArrayList<String>();
+        for (FilterMap filterMap : context.findFilterMaps()) {
+            if (filterMap.getDispatcherTypes().contains(dispatcher)
+                    && matchFiltersURL(filterMap, requestPath,
+                                       context.isCaseSensitiveMapping())) {
+                names.add(filterMap.getFilterName());
+            }
+        }
+        for (FilterMap filterMap : context.findFilterMaps()) {
+            if (filterMap.getDispatcherTypes().contains(dispatcher)
+                    && (SERVLET_NAME.equals(filterMap.getServletName())
+                        || "*".equals(filterMap.getServletName()))) {
+                names.add(filterMap.getFilterName());
+            }
+        }
+        return names;
+    }
+
+    private static boolean matchFiltersURL(FilterMap filterMap,
+                                           String requestPath,
+                                           boolean caseSensitiveMapping) {
+
+        if (requestPath == null)
+            return (false);
+
+        // Match on context relative request path
+        String testPath = filterMap.getURLPattern();
+        if (testPath == null)
+            return (false);
+
+        if (!caseSensitiveMapping) {
+            requestPath = requestPath.toLowerCase(Locale.ENGLISH);
+            testPath = testPath.toLowerCase(Locale.ENGLISH);
+        }
+
+        // Case 1 - Exact Match
+        if (testPath.equals(requestPath))
+            return (true);
+
+        // Case 2 - Path Match ("/.../*")
+        if (testPath.equals("/*"))
+            return (true);
+        if (testPath.endsWith("/*")) {
+            if (testPath.regionMatches(0, requestPath, 0,
+                                       testPath.length() - 2)) {
+                if (requestPath.length() == (testPath.length() - 2)) {
+                    return (true);
+                } else if ('/' == requestPath.charAt(testPath.length() - 2)) {
+                    return (true);
+                }
+            }
+            return (false);
+        }
+
+        // Case 3 - Extension Match
+        if (testPath.startsWith("*.")) {
+            int slash = requestPath.lastIndexOf('/');
+            int period = requestPath.lastIndexOf('.');
+            if ((slash >= 0) && (period > slash)
+                && (period != requestPath.length() - 1)
+                && ((requestPath.length() - period)
+                    == (testPath.length() - 1))) {
+                return (testPath.regionMatches(2, requestPath, period + 1,
+                                               testPath.length() - 2));
+            }
+        }
+
+        // Case 4 - "Default" Match
+        return (false);
+
+    }
+
+    private static class NoOpFilter implements Filter {
+
+        @Override
+        public void init(FilterConfig filterConfig) {
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response,
+                             FilterChain chain)
+                throws IOException, ServletException {
+            chain.doFilter(request, response);
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+}
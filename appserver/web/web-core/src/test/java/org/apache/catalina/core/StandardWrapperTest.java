@@ -0,0 +1,296 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.apache.catalina.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.GenericServlet;
+import javax.servlet.Servlet;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.SingleThreadModel;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests the allocation of servlet instances by {@link StandardWrapper}
+ * while other threads allocate, deallocate and unload them.
+ */
+public class StandardWrapperTest {
+
+    private static final int THREADS = 8;
+
+    private StandardWrapper wrapper;
+
+    @Before
+    public void setUp() {
+        wrapper = new StandardWrapper();
+        wrapper.setName("servlet");
+        wrapper.setParent(new StandardContext());
+    }
+
+    @Test
+    public void testAllocateSameInstance() throws Exception {
+        wrapper.setServletClass(CountingServlet.class);
+        Servlet servlet = wrapper.allocate();
+        assertSame(servlet, wrapper.allocate());
+        assertEquals(2, wrapper.getCountAllocated());
+        assertEquals(1, ((CountingServlet) servlet).inits.get());
+        wrapper.deallocate(servlet);
+        wrapper.deallocate(servlet);
+        assertEquals(0, wrapper.getCountAllocated());
+    }
+
+    @Test
+    public void testAllocateWhileUnloading() throws Exception {
+        wrapper.setServletClass(CountingServlet.class);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final Set<Servlet> allocated =
+            Collections.synchronizedSet(new HashSet<Servlet>());
+        final CountDownLatch started = new CountDownLatch(THREADS);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        while (!stop.get()) {
+                            CountingServlet servlet =
+                                (CountingServlet) wrapper.allocate();
+                            allocated.add(servlet);
+                            if (servlet.inits.get() != 1
+                                    || servlet.destroyed.get()) {
+                                failure.compareAndSet(null,
+                                    "Allocated an uninitialized or"
+                                    + " destroyed instance");
+                            }
+                            Thread.yield();
+                            if (servlet.destroyed.get()) {
+                                failure.compareAndSet(null,
+                                    "Destroyed an allocated instance");
+                            }
+                            wrapper.deallocate(servlet);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t.toString());
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        started.await();
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(10);
+            wrapper.unload();
+        }
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+
+        assertNull(failure.get(), failure.get());
+        assertEquals(0, wrapper.getCountAllocated());
+        assertTrue(allocated.size() > 1);
+        wrapper.unload();
+        for (Servlet servlet : allocated) {
+            assertTrue(((CountingServlet) servlet).destroyed.get());
+        }
+    }
+
+    @Test
+    public void testSingleThreadModelPool() throws Exception {
+        wrapper.setServletClass(CountingSTMServlet.class);
+        wrapper.setMaxInstances(2);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final AtomicInteger inUse = new AtomicInteger();
+        final AtomicInteger maxInUse = new AtomicInteger();
+        final Set<Servlet> allocated =
+            Collections.synchronizedSet(new HashSet<Servlet>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (!stop.get()) {
+                            CountingSTMServlet servlet =
+                                (CountingSTMServlet) wrapper.allocate();
+                            allocated.add(servlet);
+                            if (!servlet.inUse.compareAndSet(false, true)) {
+                                failure.compareAndSet(null,
+                                    "Allocated an instance twice");
+                            }
+                            int n = inUse.incrementAndGet();
+                            int max;
+                            while ((max = maxInUse.get()) < n
+                                    && !maxInUse.compareAndSet(max, n)) {
+                            }
+                            Thread.yield();
+                            inUse.decrementAndGet();
+                            servlet.inUse.set(false);
+                            wrapper.deallocate(servlet);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t.toString());
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        Thread.sleep(500);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+
+        assertNull(failure.get(), failure.get());
+        assertEquals(0, wrapper.getCountAllocated());
+        assertEquals(2, maxInUse.get());
+        assertEquals(2, allocated.size());
+    }
+
+    @Test
+    public void testSingleThreadModelPoolExhausted() throws Exception {
+        wrapper.setServletClass(CountingSTMServlet.class);
+        wrapper.setMaxInstances(2);
+        Servlet first = wrapper.allocate();
+        Servlet second = wrapper.allocate();
+        assertFalse(first == second);
+
+        final BlockingQueue<Servlet> waiting =
+            new ArrayBlockingQueue<Servlet>(1);
+        final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    waiting.add(wrapper.allocate());
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        };
+        thread.start();
+
+        // The pool is exhausted, so the allocation waits for an instance
+        assertNull(waiting.poll(200, TimeUnit.MILLISECONDS));
+        assertTrue(thread.isAlive());
+        assertEquals(2, wrapper.getCountAllocated());
+
+        wrapper.deallocate(second);
+        assertSame(second, waiting.poll(10, TimeUnit.SECONDS));
+        thread.join(10000);
+        assertNull(failure.get());
+        assertEquals(2, wrapper.getCountAllocated());
+
+        wrapper.deallocate(first);
+        wrapper.deallocate(second);
+        assertEquals(0, wrapper.getCountAllocated());
+        Servlet servlet = wrapper.allocate();
+        assertNotNull(servlet);
+        assertTrue(servlet == first || servlet == second);
+    }
+
+    // ---------------------------------------------------------- Inner Classes
+
+    public static class CountingServlet extends GenericServlet {
+
+        final AtomicInteger inits = new AtomicInteger();
+
+        final AtomicBoolean destroyed = new AtomicBoolean();
+
+        @Override
+        public void init() {
+            inits.incrementAndGet();
+        }
+
+        @Override
+        public void service(ServletRequest req, ServletResponse res) {
+        }
+
+        @Override
+        public void destroy() {
+            destroyed.set(true);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public static class CountingSTMServlet extends GenericServlet
+            implements SingleThreadModel {
+
+        final AtomicBoolean inUse = new AtomicBoolean();
+
+        @Override
+        public void service(ServletRequest req, ServletResponse res) {
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.apache.catalina.servlets;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import org.apache.naming.resources.CacheEntry;
+import org.apache.naming.resources.FileDirContext;
+import org.apache.naming.resources.ProxyDirContext;
+
+/**
+ * Measures the throughput of {@link DefaultServlet} when serving static
+ * files of 4 KB, 64 KB and 10 MB, and their precompressed ".gz" variants.
+ * The files are looked up through the resource cache and copied to an
+ * output stream discarding them, as serveResource does. The two smaller
+ * files have their content cached in memory, the 10 MB one is streamed
+ * from the disk.
+ *
+ * This is not a unit test, it is run by hand with the test classpath of
+ * this module:
+ * <pre>
+ *   java -cp ... org.apache.catalina.servlets.DefaultServletBenchmark [seconds]
+ * </pre>
+ * where seconds is the duration of every measurement, 2 by default.
+ */
+public class DefaultServletBenchmark {
+
+    private static final int[] SIZES = { 4 * 1024, 64 * 1024, 10 * 1024 * 1024 };
+
+    private static final String[] WORDS = {
+        "<div>", "</div>", "class=\"item\"", "static", "content", "served",
+        "by", "the", "default", "servlet", "\n", "<span>", "</span>"
+    };
+
+    public static void main(String[] args) throws Exception {
+        long duration = 1000000000L
+            * ((args.length > 0) ? Integer.parseInt(args[0]) : 2);
+
+        File docBase = File.createTempFile("benchmark", "");
+        if (!docBase.delete() || !docBase.mkdir()) {
+            throw new IOException("Cannot create " + docBase);
+        }
+        try {
+            for (int size : SIZES) {
+                writeFiles(docBase, size);
+            }
+
+            FileDirContext fileDirContext = new FileDirContext();
+            fileDirContext.setDocBase(docBase.getAbsolutePath());
+            DefaultServlet servlet = new DefaultServlet();
+            servlet.resources = new ProxyDirContext(
+                new Hashtable<String, String>(), fileDirContext);
+
+            System.out.println(String.format("%-10s %-8s %12s %12s %12s",
+                "file", "variant", "wire bytes", "requests/s", "MB/s"));
+            for (int size : SIZES) {
+                String path = "/" + size + ".html";
+                run(servlet, path, size, "identity", duration);
+                run(servlet, path + ".gz", size, "gzip", duration);
+            }
+        } finally {
+            for (File file : docBase.listFiles()) {
+                file.delete();
+            }
+            docBase.delete();
+        }
+    }
+
+    /**
+     * Serves the given file repeatedly, after a warm up, and prints the
+     * number of requests served per second and the throughput in MB of the
+     * uncompressed file per second.
+     */
+    private static void run(DefaultServlet servlet, String path, int size,
+                            String variant, long duration)
+            throws IOException {
+        CountingOutputStream ostream = new CountingOutputStream();
+        serve(servlet, path, ostream, duration / 2);
+
+        ostream.count = 0;
+        long start = System.nanoTime();
+        long requests = serve(servlet, path, ostream, duration);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("%-10s %-8s %12d %12.0f %12.1f",
+            label(size), variant, ostream.count / requests,
+            requests / seconds, requests * (double) size / seconds / 1e6));
+    }
+
+    private static long serve(DefaultServlet servlet, String path,
+                              ServletOutputStream ostream, long duration)
+            throws IOException {
+        long requests = 0;
+        long end = System.nanoTime() + duration;
+        do {
+            CacheEntry cacheEntry = servlet.resources.lookupCache(path);
+            servlet.copy(cacheEntry, null, ostream);
+            requests++;
+        } while (System.nanoTime() < end);
+        return requests;
+    }
+
+    private static void writeFiles(File docBase, int size) throws IOException {
+        byte[] content = new byte[size];
+        Random random = new Random(size);
+        int length = 0;
+        while (length < size) {
+            byte[] word = WORDS[random.nextInt(WORDS.length)].getBytes("UTF-8");
+            int n = Math.min(word.length, size - length);
+            System.arraycopy(word, 0, content, length, n);
+            length += n;
+        }
+
+        OutputStream out =
+            new FileOutputStream(new File(docBase, size + ".html"));
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        out = new GZIPOutputStream(
+            new FileOutputStream(new File(docBase, size + ".html.gz")));
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String label(int size) {
+        return (size >= 1024 * 1024)
+            ? (size / (1024 * 1024)) + " MB" : (size / 1024) + " KB";
+    }
+
+    /**
+     * Output stream counting the bytes written to it, and discarding them.
+     */
+    private static class CountingOutputStream extends ServletOutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+}
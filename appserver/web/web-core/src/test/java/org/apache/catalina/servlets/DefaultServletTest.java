@@ -0,0 +1,279 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.apache.catalina.servlets;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.naming.resources.CacheEntry;
+import org.apache.naming.resources.FileDirContext;
+import org.apache.naming.resources.ProxyDirContext;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests the selection of the precompressed variants of the resources
+ * by {@link DefaultServlet}, and the parsing of Accept-Encoding.
+ */
+public class DefaultServletTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DefaultServlet servlet;
+
+    private List<String> headers;
+
+    @Before
+    public void setUp() throws Exception {
+        write("index.html", "<html></html>");
+        write("index.html.gz", "gzipped");
+        write("plain.txt", "plain");
+        write("style.css", "body {}");
+        folder.newFolder("style.css.gz");
+        folder.newFolder("dir");
+        folder.newFolder("dir.gz");
+
+        FileDirContext fileDirContext = new FileDirContext();
+        fileDirContext.setDocBase(folder.getRoot().getAbsolutePath());
+
+        servlet = new DefaultServlet();
+        servlet.resources = new ProxyDirContext(
+            new Hashtable<String, String>(), fileDirContext);
+        servlet.gzip = true;
+
+        headers = new ArrayList<String>();
+    }
+
+    @Test
+    public void testGzipVariantServed() {
+        CacheEntry entry = lookup("/index.html");
+
+        CacheEntry variant = servlet.findGzipVariant(
+            request(false, "gzip, deflate"), response(), "/index.html", entry);
+
+        assertEquals("/index.html.gz", variant.name);
+        assertEquals(Arrays.asList("Vary: Accept-Encoding",
+                                   "Content-Encoding: gzip"), headers);
+    }
+
+    @Test
+    public void testGzipVariantNotAccepted() {
+        CacheEntry entry = lookup("/index.html");
+
+        assertSame(entry, servlet.findGzipVariant(
+            request(false, "deflate"), response(), "/index.html", entry));
+        assertSame(entry, servlet.findGzipVariant(
+            request(false, null), response(), "/index.html", entry));
+        assertEquals(Arrays.asList("Vary: Accept-Encoding",
+                                   "Vary: Accept-Encoding"), headers);
+    }
+
+    @Test
+    public void testGzipVariantDisabled() {
+        servlet.gzip = false;
+        CacheEntry entry = lookup("/index.html");
+
+        assertSame(entry, servlet.findGzipVariant(
+            request(false, "gzip"), response(), "/index.html", entry));
+        assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void testGzipVariantNotIncluded() {
+        CacheEntry entry = lookup("/index.html");
+
+        assertSame(entry, servlet.findGzipVariant(
+            request(true, "gzip"), response(), "/index.html", entry));
+        assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void testGzipVariantMissing() {
+        CacheEntry entry = lookup("/plain.txt");
+
+        assertSame(entry, servlet.findGzipVariant(
+            request(false, "gzip"), response(), "/plain.txt", entry));
+        assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void testGzipVariantIsDirectory() {
+        CacheEntry entry = lookup("/style.css");
+
+        assertSame(entry, servlet.findGzipVariant(
+            request(false, "gzip"), response(), "/style.css", entry));
+        assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void testGzipVariantOfDirectory() {
+        CacheEntry entry = lookup("/dir");
+
+        assertSame(entry, servlet.findGzipVariant(
+            request(false, "gzip"), response(), "/dir", entry));
+        assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(acceptsGzip("gzip"));
+        assertTrue(acceptsGzip("GZIP"));
+        assertTrue(acceptsGzip("x-gzip"));
+        assertTrue(acceptsGzip("deflate, gzip"));
+        assertTrue(acceptsGzip(" deflate ,  gzip ; q=0.5 "));
+        assertTrue(acceptsGzip("gzip;Q=1"));
+        assertTrue(acceptsGzip("gzip;foo=1"));
+        assertTrue(acceptsGzip("gzip;foo=1;q=0.001"));
+        assertTrue(acceptsGzip("deflate", "gzip"));
+
+        assertFalse(acceptsGzip());
+        assertFalse(acceptsGzip(""));
+        assertFalse(acceptsGzip("deflate, br"));
+        assertFalse(acceptsGzip("identity"));
+        assertFalse(acceptsGzip("gzipx"));
+        assertFalse(acceptsGzip("gzip;q=0"));
+        assertFalse(acceptsGzip("gzip;q=0.0"));
+        assertFalse(acceptsGzip("gzip; q = 0"));
+        assertFalse(acceptsGzip("gzip;foo=1;q=0"));
+        assertFalse(acceptsGzip("gzip;q=-1"));
+        assertFalse(acceptsGzip("gzip;q=abc"));
+        assertFalse(acceptsGzip("gzip;q="));
+    }
+
+    @Test
+    public void testAcceptsGzipWildcard() {
+        assertTrue(acceptsGzip("*"));
+        assertTrue(acceptsGzip("deflate, *;q=0.1"));
+        assertFalse(acceptsGzip("*;q=0"));
+
+        // An explicit gzip coding takes precedence over "*"
+        assertFalse(acceptsGzip("gzip;q=0, *"));
+        assertFalse(acceptsGzip("*, gzip;q=0"));
+        assertTrue(acceptsGzip("gzip, *;q=0"));
+        assertTrue(acceptsGzip("gzip;q=0, x-gzip"));
+    }
+
+    private static boolean acceptsGzip(String... values) {
+        return DefaultServlet.acceptsGzip(
+            Collections.enumeration(Arrays.asList(values)));
+    }
+
+    private CacheEntry lookup(String path) {
+        CacheEntry entry = servlet.resources.lookupCache(path);
+        assertTrue(path + " not found", entry.exists);
+        return entry;
+    }
+
+    private void write(String name, String content) throws IOException {
+        FileOutputStream out =
+            new FileOutputStream(new File(folder.getRoot(), name));
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static HttpServletRequest request(final boolean included,
+                                              final String acceptEncoding) {
+        return (HttpServletRequest) Proxy.newProxyInstance(
+            HttpServletRequest.class.getClassLoader(),
+            new Class<?>[] { HttpServletRequest.class },
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method,
+                                     Object[] args) {
+                    if ("getAttribute".equals(method.getName())
+                            && RequestDispatcher.INCLUDE_REQUEST_URI.equals(
+                                args[0])) {
+                        return included ? "/included" : null;
+                    }
+                    if ("getHeaders".equals(method.getName())
+                            && "Accept-Encoding".equals(args[0])) {
+                        List<String> values = (acceptEncoding == null)
+                            ? Collections.<String>emptyList()
+                            : Collections.singletonList(acceptEncoding);
+                        return Collections.enumeration(values);
+                    }
+                    return null;
+                }
+            });
+    }
+
+    private HttpServletResponse response() {
+        return (HttpServletResponse) Proxy.newProxyInstance(
+            HttpServletResponse.class.getClassLoader(),
+            new Class<?>[] { HttpServletResponse.class },
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method,
+                                     Object[] args) {
+                    if ("addHeader".equals(method.getName())
+                            || "setHeader".equals(method.getName())) {
+                        headers.add(args[0] + ": " + args[1]);
+                    }
+                    return null;
+                }
+            });
+    }
+}
@@ -0,0 +1,551 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.catalina.Session;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests the write-behind mode of {@link JDBCStore}, against an in
+ * memory session table.
+ */
+public class JDBCStoreTest {
+
+    private StandardManager manager;
+
+    private Database database;
+
+    private TestStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        manager = new StandardManager();
+        database = new Database();
+        store = new TestStore(database);
+        store.setManager(manager);
+        store.setWriteBehind(true);
+        // Long enough for the writes to be written by the test only
+        store.setWriteBehindDelay(60000);
+        store.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testWritesAreBatched() throws Exception {
+        database.insert("gone", 1);
+
+        store.save(createSession("s1", 10));
+        store.save(createSession("s2", 20));
+        store.save(createSession("s3", 30));
+        store.remove("gone");
+        assertTrue(database.batches.isEmpty());
+        assertEquals(1, database.rows.size());
+
+        assertEquals(3, store.getSize());
+        assertEquals(Arrays.asList("DELETE 4", "INSERT 3"), database.batches);
+        assertEquals(1, database.commits);
+        assertTrue(database.autoCommit);
+        assertEquals(3, database.rows.size());
+        assertEquals(20, database.maxInactive("s2"));
+        assertFalse(database.rows.containsKey("gone"));
+    }
+
+    @Test
+    public void testSavesOfSameSessionCoalesce() throws Exception {
+        store.save(createSession("s1", 10));
+        store.save(createSession("s1", 20));
+        store.save(createSession("s1", 30));
+
+        assertEquals(1, store.getSize());
+        assertEquals(Arrays.asList("DELETE 1", "INSERT 1"), database.batches);
+        assertEquals(30, database.maxInactive("s1"));
+    }
+
+    @Test
+    public void testRemoveSupersedesQueuedSave() throws Exception {
+        database.insert("s1", 10);
+
+        store.save(createSession("s1", 20));
+        store.remove("s1");
+
+        assertEquals(0, store.getSize());
+        // No insert batch, the only write of the session is its removal
+        assertEquals(Arrays.asList("DELETE 1"), database.batches);
+        assertFalse(database.rows.containsKey("s1"));
+    }
+
+    @Test
+    public void testSaveSupersedesQueuedRemove() throws Exception {
+        database.insert("s1", 10);
+
+        store.remove("s1");
+        store.save(createSession("s1", 20));
+
+        assertEquals(1, store.getSize());
+        assertEquals(Arrays.asList("DELETE 1", "INSERT 1"), database.batches);
+        assertEquals(20, database.maxInactive("s1"));
+    }
+
+    @Test
+    public void testFailedBatchIsRequeued() throws Exception {
+        database.insert("s0", 5);
+        store.save(createSession("s1", 10));
+        store.save(createSession("s2", 20));
+        store.remove("s0");
+
+        database.failures = 1;
+        store.getSize();
+        assertEquals(1, database.rollbacks);
+        assertEquals(0, database.commits);
+        assertTrue(database.autoCommit);
+        // Rolled back
+        assertEquals(1, database.rows.size());
+        assertEquals(5, database.maxInactive("s0"));
+
+        // Still pending
+        assertEquals(10, store.load("s1").getMaxInactiveInterval());
+        assertNull(store.load("s0"));
+        assertEquals(0, database.loads);
+
+        assertEquals(2, store.getSize());
+        assertEquals(1, database.commits);
+        assertEquals(10, database.maxInactive("s1"));
+        assertEquals(20, database.maxInactive("s2"));
+        assertFalse(database.rows.containsKey("s0"));
+    }
+
+    @Test
+    public void testNewerWriteReplacesRequeuedWrite() throws Exception {
+        store.save(createSession("s1", 10));
+        store.save(createSession("s2", 20));
+
+        database.failures = 1;
+        store.getSize();
+
+        // Queued after the failure, replaces the requeued save
+        store.save(createSession("s1", 30));
+        store.remove("s2");
+
+        assertEquals(1, store.getSize());
+        assertEquals(Arrays.asList("DELETE 2", "INSERT 1"),
+                     database.batches.subList(database.batches.size() - 2,
+                                              database.batches.size()));
+        assertEquals(30, database.maxInactive("s1"));
+        assertFalse(database.rows.containsKey("s2"));
+    }
+
+    @Test
+    public void testLoadReadsPendingWrites() throws Exception {
+        database.insert("s1", 10);
+        database.insert("s2", 20);
+
+        store.save(createSession("s1", 30));
+        store.remove("s2");
+
+        Session session = store.load("s1");
+        assertNotNull(session);
+        assertEquals("s1", session.getIdInternal());
+        assertEquals(30, session.getMaxInactiveInterval());
+        assertNull(store.load("s2"));
+        assertEquals(0, database.loads);
+
+        // Not pending, read from the database
+        store.getSize();
+        session = store.load("s1");
+        assertEquals(30, session.getMaxInactiveInterval());
+        assertEquals(1, database.loads);
+        assertNull(store.load("s2"));
+        assertEquals(2, database.loads);
+    }
+
+    @Test
+    public void testKeysIncludePendingWrites() throws Exception {
+        database.insert("s1", 10);
+        store.save(createSession("s2", 20));
+        store.remove("s1");
+
+        assertArrayEquals(new String[] { "s2" }, store.keys());
+    }
+
+    @Test
+    public void testClearDiscardsQueuedWrites() throws Exception {
+        database.insert("s1", 10);
+        store.save(createSession("s2", 20));
+
+        store.clear();
+        assertNull(store.load("s2"));
+        assertEquals(0, store.getSize());
+        assertTrue(database.batches.isEmpty());
+    }
+
+    @Test
+    public void testWriterWritesAfterDelay() throws Exception {
+        store.stop();
+        store = new TestStore(database);
+        store.setManager(manager);
+        store.setWriteBehind(true);
+        store.setWriteBehindDelay(10);
+        store.start();
+
+        store.save(createSession("s1", 10));
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (!database.hasRow("s1") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertTrue(database.hasRow("s1"));
+    }
+
+    @Test
+    public void testStopWritesQueuedWrites() throws Exception {
+        store.save(createSession("s1", 10));
+        store.remove("s2");
+
+        store.stop();
+        store = null;
+        assertEquals(Arrays.asList("DELETE 2", "INSERT 1"), database.batches);
+        assertEquals(10, database.maxInactive("s1"));
+        assertTrue(database.closed);
+    }
+
+    @Test
+    public void testWritesWithoutWriteBehind() throws Exception {
+        store.stop();
+        store = new TestStore(database);
+        store.setManager(manager);
+        store.start();
+
+        store.save(createSession("s1", 10));
+        assertEquals(10, database.maxInactive("s1"));
+        store.remove("s1");
+        assertFalse(database.hasRow("s1"));
+        assertTrue(database.batches.isEmpty());
+    }
+
+    // -------------------------------------------------------- Private Methods
+
+    private StandardSession createSession(String id, int interval) {
+        StandardSession session = new StandardSession(manager);
+        session.id = id;
+        session.setCreationTime(System.currentTimeMillis());
+        session.setMaxInactiveInterval(interval);
+        return session;
+    }
+
+    /**
+     * A JDBCStore using the in memory table.
+     */
+    private static class TestStore extends JDBCStore {
+
+        private final Database database;
+
+        TestStore(Database database) {
+            this.database = database;
+        }
+
+        @Override
+        public String getName() {
+            return "/app";
+        }
+
+        @Override
+        protected Connection getConnection() {
+            return database.connection;
+        }
+    }
+
+    /**
+     * The session table of one application, behind a Connection proxy that
+     * runs the statements of JDBCStore. A rollback restores the table as of
+     * the start of the transaction.
+     */
+    private static class Database {
+
+        final Map<String, byte[]> rows = new HashMap<String, byte[]>();
+
+        final Map<String, Integer> maxInactives = new HashMap<String, Integer>();
+
+        final List<String> batches = new ArrayList<String>();
+
+        final Connection connection = (Connection) proxy(Connection.class,
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws Throwable {
+                    return invokeConnection(method, args);
+                }
+            });
+
+        Map<String, byte[]> savedRows;
+
+        Map<String, Integer> savedMaxInactives;
+
+        boolean autoCommit = true;
+
+        boolean closed;
+
+        int commits;
+
+        int rollbacks;
+
+        int loads;
+
+        int failures;
+
+        synchronized void insert(String id, int maxInactive) {
+            rows.put(id, new byte[0]);
+            maxInactives.put(id, maxInactive);
+        }
+
+        synchronized boolean hasRow(String id) {
+            return rows.containsKey(id);
+        }
+
+        synchronized int maxInactive(String id) {
+            assertTrue(id, rows.containsKey(id));
+            return maxInactives.get(id);
+        }
+
+        private synchronized Object invokeConnection(Method method,
+                Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("prepareStatement".equals(name)) {
+                return prepareStatement((String) args[0]);
+            } else if ("setAutoCommit".equals(name)) {
+                autoCommit = (Boolean) args[0];
+                if (autoCommit) {
+                    savedRows = null;
+                    savedMaxInactives = null;
+                } else {
+                    savedRows = new HashMap<String, byte[]>(rows);
+                    savedMaxInactives = new HashMap<String, Integer>(maxInactives);
+                }
+                return null;
+            } else if ("getAutoCommit".equals(name)) {
+                return autoCommit;
+            } else if ("commit".equals(name)) {
+                if (!autoCommit) {
+                    commits++;
+                    savedRows = new HashMap<String, byte[]>(rows);
+                    savedMaxInactives = new HashMap<String, Integer>(maxInactives);
+                }
+                return null;
+            } else if ("rollback".equals(name)) {
+                rollbacks++;
+                rows.clear();
+                rows.putAll(savedRows);
+                maxInactives.clear();
+                maxInactives.putAll(savedMaxInactives);
+                return null;
+            } else if ("isClosed".equals(name)) {
+                return closed;
+            } else if ("close".equals(name)) {
+                closed = true;
+                return null;
+            }
+            return invokeObject(method, args);
+        }
+
+        private PreparedStatement prepareStatement(final String sql) {
+            final Object[] parameters = new Object[7];
+            final List<Object[]> batch = new ArrayList<Object[]>();
+            return (PreparedStatement) proxy(PreparedStatement.class,
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) throws Throwable {
+                        synchronized (Database.this) {
+                            String name = method.getName();
+                            if (name.startsWith("set")) {
+                                Object value = args[1];
+                                if (value instanceof InputStream) {
+                                    value = readFully((InputStream) value);
+                                }
+                                parameters[(Integer) args[0]] = value;
+                                return null;
+                            } else if ("addBatch".equals(name)) {
+                                batch.add(parameters.clone());
+                                return null;
+                            } else if ("executeBatch".equals(name)) {
+                                List<Object[]> statements =
+                                    new ArrayList<Object[]>(batch);
+                                batch.clear();
+                                if (failures > 0) {
+                                    failures--;
+                                    throw new SQLException("Injected failure");
+                                }
+                                batches.add(sql.substring(0, sql.indexOf(' '))
+                                            + " " + statements.size());
+                                int[] counts = new int[statements.size()];
+                                for (int i = 0; i < counts.length; i++) {
+                                    counts[i] = update(sql, statements.get(i));
+                                }
+                                return counts;
+                            } else if ("execute".equals(name)) {
+                                update(sql, parameters);
+                                return false;
+                            } else if ("executeQuery".equals(name)) {
+                                return query(sql, parameters);
+                            } else if ("close".equals(name)) {
+                                return null;
+                            }
+                            return invokeObject(method, args);
+                        }
+                    }
+                });
+        }
+
+        private int update(String sql, Object[] parameters) {
+            if (sql.startsWith("INSERT")) {
+                assertEquals("/app", parameters[2]);
+                String id = (String) parameters[1];
+                assertFalse(id, rows.containsKey(id));
+                rows.put(id, (byte[]) parameters[3]);
+                maxInactives.put(id, (Integer) parameters[5]);
+                return 1;
+            } else if (sql.contains("id = ?")) {
+                assertEquals("/app", parameters[2]);
+                String id = (String) parameters[1];
+                maxInactives.remove(id);
+                return (rows.remove(id) != null) ? 1 : 0;
+            }
+            // Clear
+            assertEquals("/app", parameters[1]);
+            int count = rows.size();
+            rows.clear();
+            maxInactives.clear();
+            return count;
+        }
+
+        private ResultSet query(String sql, Object[] parameters) {
+            final List<Object[]> result = new ArrayList<Object[]>();
+            if (sql.startsWith("SELECT COUNT")) {
+                result.add(new Object[] { null, rows.size() });
+            } else if (sql.contains(", data")) {
+                loads++;
+                String id = (String) parameters[1];
+                if (rows.containsKey(id)) {
+                    result.add(new Object[] { null, id, rows.get(id) });
+                }
+            } else {
+                for (String id : rows.keySet()) {
+                    result.add(new Object[] { null, id });
+                }
+            }
+            return (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+                int row = -1;
+
+                public Object invoke(Object proxy, Method method, Object[] args)
+                        throws Throwable {
+                    String name = method.getName();
+                    if ("next".equals(name)) {
+                        return ++row < result.size();
+                    } else if ("getString".equals(name)
+                            || "getInt".equals(name)) {
+                        return result.get(row)[(Integer) args[0]];
+                    } else if ("getBinaryStream".equals(name)) {
+                        return new ByteArrayInputStream(
+                            (byte[]) result.get(row)[(Integer) args[0]]);
+                    } else if ("close".equals(name)) {
+                        return null;
+                    }
+                    return invokeObject(method, args);
+                }
+            });
+        }
+
+        private static Object invokeObject(Method method, Object[] args) {
+            if ("hashCode".equals(method.getName())) {
+                return 0;
+            } else if ("equals".equals(method.getName())) {
+                return false;
+            } else if ("toString".equals(method.getName())) {
+                return "Database";
+            }
+            throw new UnsupportedOperationException(method.toString());
+        }
+
+        private static byte[] readFully(InputStream in) throws IOException {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                bos.write(buffer, 0, count);
+            }
+            return bos.toByteArray();
+        }
+
+        private static Object proxy(Class<?> type, InvocationHandler handler) {
+            return Proxy.newProxyInstance(JDBCStoreTest.class.getClassLoader(),
+                                          new Class<?>[] { type }, handler);
+        }
+    }
+}
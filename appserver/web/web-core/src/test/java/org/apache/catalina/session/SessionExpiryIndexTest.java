@@ -0,0 +1,231 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests {@link SessionExpiryIndex}.
+ */
+public class SessionExpiryIndexTest {
+
+    private static final long TICK = 1000L;
+
+    private StandardManager manager;
+
+    private SessionExpiryIndex index;
+
+    @Before
+    public void setUp() {
+        manager = new StandardManager();
+        index = new SessionExpiryIndex(TICK);
+    }
+
+    @Test
+    public void testPollDueAtExpiry() {
+        StandardSession session = createSession(10000L, 5);
+        index.schedule(session);
+        assertEquals(1, index.size());
+
+        assertTrue(index.pollDue(14999L).isEmpty());
+        assertEquals(Collections.singletonList(session), index.pollDue(15000L));
+        assertEquals(0, index.size());
+        assertTrue(index.pollDue(20000L).isEmpty());
+    }
+
+    @Test
+    public void testExpiryRoundedUpToTick() {
+        StandardSession session = createSession(10001L, 5);
+        index.schedule(session);
+
+        // Expires at 15001, so it must not be due in the bucket of 15000
+        assertTrue(index.pollDue(15999L).isEmpty());
+        assertEquals(Collections.singletonList(session), index.pollDue(16000L));
+    }
+
+    @Test
+    public void testRescheduleMovesSession() {
+        StandardSession session = createSession(10000L, 5);
+        index.schedule(session);
+
+        // Accessed later: scheduled again in the bucket of its new expiry
+        session.setCreationTime(12000L);
+        index.schedule(session);
+        assertEquals(1, index.size());
+
+        assertTrue(index.pollDue(16999L).isEmpty());
+        assertEquals(Collections.singletonList(session), index.pollDue(17000L));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testRescheduleSameBucket() {
+        StandardSession session = createSession(10000L, 5);
+        index.schedule(session);
+        index.schedule(session);
+        assertEquals(1, index.size());
+        assertEquals(Collections.singletonList(session), index.pollDue(15000L));
+    }
+
+    @Test
+    public void testNeverExpiringSessionUnscheduled() {
+        StandardSession session = createSession(10000L, 5);
+        index.schedule(session);
+
+        session.setMaxInactiveInterval(-1);
+        index.schedule(session);
+        assertEquals(0, index.size());
+        assertTrue(index.pollDue(Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testUnschedule() {
+        StandardSession first = createSession(10000L, 5);
+        StandardSession second = createSession(10000L, 5);
+        index.schedule(first);
+        index.schedule(second);
+
+        index.unschedule(first);
+        index.unschedule(first);
+        assertEquals(1, index.size());
+        assertEquals(Collections.singletonList(second), index.pollDue(15000L));
+    }
+
+    @Test
+    public void testPollDueOnlyDueBuckets() {
+        StandardSession first = createSession(10000L, 1);
+        StandardSession second = createSession(10000L, 2);
+        StandardSession third = createSession(10000L, 3);
+        index.schedule(third);
+        index.schedule(second);
+        index.schedule(first);
+
+        Set<StandardSession> due =
+            new HashSet<StandardSession>(index.pollDue(12000L));
+        assertEquals(2, due.size());
+        assertTrue(due.contains(first));
+        assertTrue(due.contains(second));
+        assertEquals(1, index.size());
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertTrue(index.pollDue(Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void testScheduleWhilePolling() throws Exception {
+        final int threads = 4;
+        final int sessionsPerThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicBoolean stop = new AtomicBoolean();
+        final List<StandardSession> polled = new ArrayList<StandardSession>();
+
+        Thread poller = new Thread() {
+            @Override
+            public void run() {
+                while (!stop.get()) {
+                    polled.addAll(index.pollDue(Long.MAX_VALUE - TICK));
+                }
+            }
+        };
+        poller.start();
+
+        for (int i = 0; i < threads; i++) {
+            final List<StandardSession> sessions =
+                new ArrayList<StandardSession>();
+            for (int j = 0; j < sessionsPerThread; j++) {
+                // Only a few buckets, that are polled while they are filled
+                sessions.add(createSession(j % 4 * TICK, 1));
+            }
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (StandardSession session : sessions) {
+                            index.schedule(session);
+                        }
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+
+        start.countDown();
+        done.await();
+        stop.set(true);
+        poller.join();
+        polled.addAll(index.pollDue(Long.MAX_VALUE - TICK));
+
+        // Every session is due exactly once, none is lost
+        assertEquals(threads * sessionsPerThread, polled.size());
+        assertEquals(threads * sessionsPerThread,
+                     new HashSet<StandardSession>(polled).size());
+        assertEquals(0, index.size());
+    }
+
+    // -------------------------------------------------------- Private Methods
+
+    private StandardSession createSession(long accessedTime, int interval) {
+        StandardSession session = new StandardSession(manager);
+        session.setCreationTime(accessedTime);
+        session.setMaxInactiveInterval(interval);
+        return session;
+    }
+
+}
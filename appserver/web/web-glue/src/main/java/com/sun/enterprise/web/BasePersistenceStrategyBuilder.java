@@ -85,6 +85,9 @@ public abstract class BasePersistenceStrategyBuilder
     protected int sessionMaxInactiveInterval = DEFAULT_SESSION_TIMEOUT;
     protected String persistentCookieName = "GLASSFISHCOOKIE";
     protected boolean relaxCacheVersionSemantics;
+    protected String attributeCodec = null;
+    protected Integer attributeCompressionThreshold = null;
+    protected String attributeCodecDictionary = null;
 
     // Special constant for Java Server Faces
     protected static final String JSF_HA_ENABLED = "com.sun.appserver.enableHighAvailability";    
@@ -332,6 +335,16 @@ public abstract class BasePersistenceStrategyBuilder
                         _persistenceScope = value;
                     } else if (name.equalsIgnoreCase("cookieName")) {
                         persistentCookieName = value;                     
+                    } else if (name.equalsIgnoreCase("attributeCodec")) {
+                        attributeCodec = value;
+                    } else if (name.equalsIgnoreCase("attributeCompressionThreshold")) {
+                        try {
+                            attributeCompressionThreshold = Integer.valueOf(value);
+                        } catch (NumberFormatException e) {
+                            // XXX need error message
+                        }
+                    } else if (name.equalsIgnoreCase("attributeCodecDictionary")) {
+                        attributeCodecDictionary = value;
                     } else {
                         if (_logger.isLoggable(Level.INFO)) {
                             Object[] params = { name };
@@ -2040,6 +2040,9 @@ public class WebContainer implements org.glassfish.api.container.Container, Post
 
         webStatsProviderBootstrap.registerApplicationStatsProviders(monitoringNodeName,
                 vs.getName(), servletNames);
+        webStatsProviderBootstrap.registerResourceCacheStatsProvider(
+                monitoringNodeName, vs.getName(),
+                new WebModuleResourceCacheInfo(ctx));
 
         vs.addChild(ctx);
 
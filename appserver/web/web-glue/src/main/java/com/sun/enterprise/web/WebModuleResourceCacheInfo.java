@@ -0,0 +1,96 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.web;
+
+import javax.naming.directory.DirContext;
+
+import org.apache.catalina.core.StandardContext;
+import org.apache.naming.resources.ProxyDirContext;
+import org.apache.naming.resources.ResourceCache;
+import org.glassfish.web.admin.monitor.ResourceCacheStatsProvider;
+
+/**
+ * Exposes the static resource cache of a web module to its
+ * ResourceCacheStatsProvider. The cache is looked up on each call, as the
+ * resources of the web module are only created when it is started.
+ */
+final class WebModuleResourceCacheInfo
+        implements ResourceCacheStatsProvider.ResourceCacheInfo {
+
+    private final StandardContext context;
+
+    WebModuleResourceCacheInfo(StandardContext context) {
+        this.context = context;
+    }
+
+    public long getHitsCount() {
+        ResourceCache cache = getCache();
+        return (cache != null) ? cache.getHitsCount() : 0;
+    }
+
+    public long getMissCount() {
+        ResourceCache cache = getCache();
+        return (cache != null) ? cache.getMissCount() : 0;
+    }
+
+    public long getEvictionCount() {
+        ResourceCache cache = getCache();
+        return (cache != null) ? cache.getEvictionCount() : 0;
+    }
+
+    public int getCacheSize() {
+        ResourceCache cache = getCache();
+        return (cache != null) ? cache.getCacheSize() : 0;
+    }
+
+    public int getCacheMaxSize() {
+        ResourceCache cache = getCache();
+        return (cache != null) ? cache.getCacheMaxSize() : 0;
+    }
+
+    private ResourceCache getCache() {
+        DirContext resources = context.getResources();
+        if (resources instanceof ProxyDirContext) {
+            return ((ProxyDirContext) resources).getCache();
+        }
+        return null;
+    }
+}
@@ -114,4 +114,9 @@ public class LogFacade {
             level = "WARNING")
     public static final String COULD_NOT_CREATE_BACKING_STORE = prefix + "00008";
 
+    @LogMessageInfo(
+            message = "Could not create session attribute codec {0}, the Java serialization is used",
+            level = "WARNING")
+    public static final String COULD_NOT_CREATE_ATTRIBUTE_CODEC = prefix + "00009";
+
 }
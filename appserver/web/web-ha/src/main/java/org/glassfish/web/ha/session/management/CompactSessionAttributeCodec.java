@@ -0,0 +1,386 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.web.ha.session.management;
+
+import com.sun.enterprise.container.common.spi.util.JavaEEIOUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A SessionAttributeCodec that encodes the values of the wrapper types, of
+ * String and of byte[] with a one byte tag followed by their binary form,
+ * instead of a Java serialization stream that would repeat the class
+ * descriptors of the value on every replication.
+ *
+ * <p>
+ * Other values are serialized with JavaEEIOUtils, as the Java serialization
+ * path does. Such a state is deflated using a preset dictionary made of the
+ * names of common JDK classes and of the application classes given to the
+ * constructor: since the class names make up most of a small serialized
+ * value, they are then replaced by back references into the dictionary. A
+ * serialized value is hence deflated from MIN_OBJECT_COMPRESSION_SIZE bytes
+ * on, even below the compression threshold, which only applies to strings
+ * and byte arrays. The dictionary must be the same on every instance of the
+ * cluster, which is the case as long as it is configured with the
+ * application.
+ *
+ * <p>
+ * An uncompressed serialized value is kept as is. As a Java serialization
+ * stream starts with a byte whose high bit is set, which no tag has, the
+ * states written by the Java serialization path are decoded too.
+ *
+ * <p>
+ * A deflated state carries the length of its payload, which is inflated into
+ * a buffer grown as the inflated bytes come, so that a corrupted length does
+ * not allocate more memory than the state actually inflates to.
+ */
+public class CompactSessionAttributeCodec implements SessionAttributeCodec {
+
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 512;
+
+    /**
+     * The minimal size of a serialized value to compress, when compression
+     * is enabled.
+     */
+    public static final int MIN_OBJECT_COMPRESSION_SIZE = 64;
+
+    private static final int INFLATE_CHUNK_SIZE = 8192;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int TAG_MASK = 0x3f;
+    private static final int FLAG_DEFLATED = 0x40;
+    private static final int FLAG_JAVA_SERIALIZATION = 0x80;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int BOOLEAN = 4;
+    private static final int SHORT = 5;
+    private static final int BYTE = 6;
+    private static final int CHARACTER = 7;
+    private static final int FLOAT = 8;
+    private static final int DOUBLE = 9;
+    private static final int BYTES = 10;
+    private static final int OBJECT = 11;
+
+    private static final String[] DEFAULT_DICTIONARY_CLASSES = {
+        "java.lang.Number", "java.lang.Integer", "java.lang.Long",
+        "java.lang.Boolean", "java.lang.String", "java.lang.Enum",
+        "java.math.BigDecimal", "java.math.BigInteger",
+        "java.util.Date", "java.util.Locale", "java.util.ArrayList",
+        "java.util.LinkedList", "java.util.HashSet", "java.util.LinkedHashSet",
+        "java.util.HashMap", "java.util.LinkedHashMap", "java.util.TreeMap",
+        "java.util.concurrent.ConcurrentHashMap"
+    };
+
+    private final JavaEEIOUtils ioUtils;
+    private final int compressionThreshold;
+    private final byte[] dictionary;
+
+    /**
+     * Creates a codec.
+     *
+     * @param ioUtils the JavaEEIOUtils used to serialize the other values
+     * @param compressionThreshold the minimal size of a string or byte array
+     * state to compress, or a negative value to never compress a state
+     * @param dictionaryClassNames the names of the application classes to
+     * add to the compression dictionary, may be null
+     */
+    public CompactSessionAttributeCodec(JavaEEIOUtils ioUtils,
+            int compressionThreshold, String[] dictionaryClassNames) {
+        this.ioUtils = ioUtils;
+        this.compressionThreshold = compressionThreshold;
+        this.dictionary = createDictionary(dictionaryClassNames);
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws IOException {
+        if (value == null) {
+            return new byte[] { NULL };
+        } else if (value instanceof String) {
+            return pack(STRING, ((String) value).getBytes(UTF8));
+        } else if (value instanceof Integer) {
+            return allocate(INTEGER, 4).putInt((Integer) value).array();
+        } else if (value instanceof Long) {
+            return allocate(LONG, 8).putLong((Long) value).array();
+        } else if (value instanceof Boolean) {
+            return allocate(BOOLEAN, 1).put((byte) (((Boolean) value) ? 1 : 0)).array();
+        } else if (value instanceof Short) {
+            return allocate(SHORT, 2).putShort((Short) value).array();
+        } else if (value instanceof Byte) {
+            return allocate(BYTE, 1).put((Byte) value).array();
+        } else if (value instanceof Character) {
+            return allocate(CHARACTER, 2).putChar((Character) value).array();
+        } else if (value instanceof Float) {
+            return allocate(FLOAT, 4).putFloat((Float) value).array();
+        } else if (value instanceof Double) {
+            return allocate(DOUBLE, 8).putDouble((Double) value).array();
+        } else if (value instanceof byte[]) {
+            return pack(BYTES, (byte[]) value);
+        }
+        byte[] serialized = ioUtils.serializeObject(value, true);
+        byte[] deflated = (compressionThreshold < 0) ? null
+                : deflate(OBJECT, serialized,
+                        Math.min(compressionThreshold, MIN_OBJECT_COMPRESSION_SIZE));
+        return (deflated != null) ? deflated : serialized;
+    }
+
+    @Override
+    public Object decode(byte[] state, ClassLoader loader)
+            throws IOException, ClassNotFoundException {
+        if (state == null || state.length == 0) {
+            return null;
+        }
+        int header = state[0] & 0xff;
+        if ((header & FLAG_JAVA_SERIALIZATION) != 0) {
+            return deserialize(state, loader);
+        }
+
+        ByteBuffer payload;
+        if ((header & FLAG_DEFLATED) != 0) {
+            payload = ByteBuffer.wrap(inflate(state));
+        } else {
+            payload = ByteBuffer.wrap(state, 1, state.length - 1).slice();
+        }
+        try {
+            return decode(header & TAG_MASK, payload, loader);
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Truncated session attribute state", ex);
+        }
+    }
+
+    private Object decode(int tag, ByteBuffer payload, ClassLoader loader)
+            throws IOException, ClassNotFoundException {
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(toArray(payload), UTF8);
+            case INTEGER:
+                return payload.getInt();
+            case LONG:
+                return payload.getLong();
+            case BOOLEAN:
+                return payload.get() != 0;
+            case SHORT:
+                return payload.getShort();
+            case BYTE:
+                return payload.get();
+            case CHARACTER:
+                return payload.getChar();
+            case FLOAT:
+                return payload.getFloat();
+            case DOUBLE:
+                return payload.getDouble();
+            case BYTES:
+                return toArray(payload);
+            case OBJECT:
+                return deserialize(toArray(payload), loader);
+            default:
+                throw new IOException("Unknown session attribute state tag: " + tag);
+        }
+    }
+
+    private static ByteBuffer allocate(int tag, int size) {
+        return ByteBuffer.allocate(1 + size).put((byte) tag);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private byte[] pack(int tag, byte[] payload) {
+        byte[] deflated = deflate(tag, payload, compressionThreshold);
+        if (deflated != null) {
+            return deflated;
+        }
+        return allocate(tag, payload.length).put(payload).array();
+    }
+
+    /**
+     * Deflates the payload, when it is larger than the given threshold.
+     *
+     * @return the deflated state, prefixed by the tag and the payload length,
+     * or null if the payload is not worth compressing
+     */
+    private byte[] deflate(int tag, byte[] payload, int threshold) {
+        if (threshold < 0 || payload.length < threshold) {
+            return null;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(payload);
+            deflater.finish();
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(payload.length);
+            bos.write(tag | FLAG_DEFLATED);
+            bos.write(payload.length >>> 24);
+            bos.write(payload.length >>> 16);
+            bos.write(payload.length >>> 8);
+            bos.write(payload.length);
+            byte[] buffer = new byte[Math.min(payload.length, 8192)];
+            while (!deflater.finished()) {
+                bos.write(buffer, 0, deflater.deflate(buffer));
+                if (bos.size() >= payload.length) {
+                    return null;
+                }
+            }
+            return bos.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] inflate(byte[] state) throws IOException {
+        if (state.length < 5) {
+            throw new IOException("Truncated session attribute state");
+        }
+        int length = ByteBuffer.wrap(state, 1, 4).getInt();
+        if (length < 0) {
+            throw new IOException("Corrupted session attribute state");
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(
+                Math.min(length, INFLATE_CHUNK_SIZE));
+        byte[] buffer = new byte[Math.min(length, INFLATE_CHUNK_SIZE)];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(state, 5, state.length - 5);
+            int count = 0;
+            while (count < length) {
+                int inflated = inflater.inflate(buffer, 0,
+                        Math.min(buffer.length, length - count));
+                if (inflated == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        break;
+                    }
+                }
+                payload.write(buffer, 0, inflated);
+                count += inflated;
+            }
+            if (count != length) {
+                throw new IOException("Truncated session attribute state");
+            }
+            if (!inflater.finished() && inflater.inflate(new byte[1]) > 0) {
+                //the payload is longer than its length says
+                throw new IOException("Corrupted session attribute state");
+            }
+            if (!inflater.finished()) {
+                //the end of the deflated stream, with its checksum, is missing
+                throw new IOException("Truncated session attribute state");
+            }
+            return payload.toByteArray();
+        } catch (DataFormatException ex) {
+            throw new IOException("Corrupted session attribute state", ex);
+        } catch (IllegalArgumentException ex) {
+            //the dictionary is not the one used by the sender
+            throw new IOException("Session attribute compression dictionary mismatch", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private Object deserialize(byte[] serialized, ClassLoader loader)
+            throws IOException, ClassNotFoundException {
+        if (loader == null) {
+            //resolve the classes as the web module would
+            loader = Thread.currentThread().getContextClassLoader();
+        }
+        if (loader == null) {
+            loader = CompactSessionAttributeCodec.class.getClassLoader();
+        }
+        try {
+            return ioUtils.deserializeObject(serialized, true, loader);
+        } catch (IOException ex) {
+            throw ex;
+        } catch (ClassNotFoundException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException("Error during deserialization: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * The class names are written as a class descriptor of a serialization
+     * stream holds them. The application classes are written last, as deflate
+     * encodes the most recent dictionary bytes with the shortest distances.
+     */
+    private static byte[] createDictionary(String[] dictionaryClassNames) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        try {
+            for (String className : DEFAULT_DICTIONARY_CLASSES) {
+                dos.writeUTF(className);
+            }
+            if (dictionaryClassNames != null) {
+                for (String className : dictionaryClassNames) {
+                    String name = className.trim();
+                    if (name.length() > 0) {
+                        dos.writeUTF(name);
+                    }
+                }
+            }
+            dos.close();
+        } catch (IOException ex) {
+            //cannot happen with a ByteArrayOutputStream
+            throw new IllegalStateException(ex);
+        }
+        return bos.toByteArray();
+    }
+
+}
@@ -61,12 +61,30 @@ import java.util.logging.Level;
  */
 public class ReplicationAttributeStore extends ReplicationStore {
     
+    /**
+     * The codec of the attribute states, null to use the Java serialization
+     */
+    private SessionAttributeCodec attributeCodec = null;
 
     /** Creates a new instance of ReplicationAttributeStore */
     public ReplicationAttributeStore(JavaEEIOUtils ioUtils) {
         super(ioUtils);
         setLogLevel();
     }
+
+    public SessionAttributeCodec getAttributeCodec() {
+        return attributeCodec;
+    }
+
+    /**
+     * Set the codec of the attribute states. The same codec must be used
+     * by every instance of the cluster.
+     *
+     * @param attributeCodec the codec, null to use the Java serialization
+     */
+    public void setAttributeCodec(SessionAttributeCodec attributeCodec) {
+        this.attributeCodec = attributeCodec;
+    }
     
     // HAStorePoolElement methods begin
     
@@ -464,7 +482,9 @@ public class ReplicationAttributeStore extends ReplicationStore {
             nextAttrValue = ((StandardSession) modAttrSession).getAttribute(nextAttrName);
             nextValue = null;
             try {
-                nextValue = getByteArray(nextAttrValue);
+                nextValue = (attributeCodec != null)
+                    ? attributeCodec.encode(nextAttrValue)
+                    : getByteArray(nextAttrValue);
             } catch (IOException ex) {}
             SessionAttributeMetadata nextAttrMetadata
                 = new SessionAttributeMetadata(nextAttrName, op, nextValue);
@@ -592,6 +612,12 @@ public class ReplicationAttributeStore extends ReplicationStore {
         return attributeValue;
     }
     
+    private ClassLoader getApplicationClassLoader() {
+        Container container = manager.getContainer();
+        Loader loader = (container != null) ? container.getLoader() : null;
+        return (loader != null) ? loader.getClassLoader() : null;
+    }
+    
     //new serialization code for Collection
     /**
     * Create an byte[] for the session that we can then pass to
@@ -755,7 +781,9 @@ public class ReplicationAttributeStore extends ReplicationStore {
             byte[] nextAttrState = nextAttrMetadata.getState();
             thisAttrVal = null;
             try { 
-                thisAttrVal = getAttributeValue(nextAttrState);
+                thisAttrVal = (attributeCodec != null)
+                    ? attributeCodec.decode(nextAttrState, getApplicationClassLoader())
+                    : getAttributeValue(nextAttrState);
             } catch (ClassNotFoundException ex1) {
                 //FIXME log?
             } catch (IOException ex2) {}
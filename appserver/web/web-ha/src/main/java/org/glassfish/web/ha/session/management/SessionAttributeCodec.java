@@ -0,0 +1,80 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 1997-2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package org.glassfish.web.ha.session.management;
+
+import java.io.IOException;
+
+/**
+ * Converts the value of a session attribute to and from the state that is
+ * replicated for it, as part of a SessionAttributeMetadata, when the
+ * persistence scope is modified-attribute.
+ *
+ * <p>
+ * A codec is used by a single web application, hence an implementation may
+ * keep per-application state. It must be thread safe.
+ *
+ * @see ReplicationAttributeStore
+ * @see CompactSessionAttributeCodec
+ */
+public interface SessionAttributeCodec {
+
+    /**
+     * Encodes the value of a session attribute.
+     *
+     * @param value the attribute value, may be null
+     * @return the attribute state
+     * @throws IOException if the value could not be encoded
+     */
+    public byte[] encode(Object value) throws IOException;
+
+    /**
+     * Decodes the state of a session attribute.
+     *
+     * @param state the attribute state, as returned by encode
+     * @param loader the class loader of the web application, may be null
+     * @return the attribute value
+     * @throws IOException if the state could not be decoded
+     * @throws ClassNotFoundException if the class of the value is not found
+     */
+    public Object decode(byte[] state, ClassLoader loader)
+            throws IOException, ClassNotFoundException;
+
+}
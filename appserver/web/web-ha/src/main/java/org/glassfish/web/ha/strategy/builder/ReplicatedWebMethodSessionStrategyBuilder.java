@@ -45,10 +45,12 @@ import com.sun.enterprise.container.common.spi.util.JavaEEIOUtils;
 import com.sun.enterprise.web.BasePersistenceStrategyBuilder;
 import com.sun.enterprise.web.ServerConfigLookup;
 import org.apache.catalina.Context;
+import org.apache.catalina.Loader;
 import org.apache.catalina.core.StandardContext;
 import org.glassfish.web.deployment.runtime.SessionManager;
 import org.glassfish.ha.store.api.Storeable;
 import org.glassfish.ha.store.util.SimpleMetadata;
+import org.glassfish.web.ha.LogFacade;
 import org.glassfish.web.ha.session.management.*;
 import org.glassfish.web.valve.GlassFishValve;
 import javax.inject.Inject;
@@ -58,6 +60,7 @@ import org.glassfish.hk2.api.PerLookup;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Level;
 
 /**
  * @author Rajiv Mordani
@@ -95,9 +98,11 @@ public class ReplicatedWebMethodSessionStrategyBuilder extends BasePersistenceSt
                     new ReplicationStore(ioUtils),
                     ctx, serverConfigLookup);
         } else if (this.getPersistenceScope().equals("modified-attribute")) {
+            ReplicationAttributeStore store = new ReplicationAttributeStore(ioUtils);
+            store.setAttributeCodec(createAttributeCodec(ctx));
             setupReplicationWebEventPersistentManager(CompositeMetadata.class,
                     new ModifiedAttributeSessionFactory(),
-                    new ReplicationAttributeStore(ioUtils),
+                    store,
                     ctx, serverConfigLookup);
         } else {
             throw new IllegalArgumentException(this.getPersistenceScope());
@@ -135,6 +140,44 @@ public class ReplicatedWebMethodSessionStrategyBuilder extends BasePersistenceSt
         }
     }
 
+    /**
+     * Create the codec of the attribute states configured by the
+     * attributeCodec store property : "compact", or the name of a class
+     * implementing SessionAttributeCodec, loaded by the class loader of the
+     * web module.
+     *
+     * @return the codec, or null to use the Java serialization
+     */
+    private SessionAttributeCodec createAttributeCodec(Context ctx) {
+        if (attributeCodec == null || attributeCodec.equalsIgnoreCase("java")) {
+            return null;
+        }
+        if (attributeCodec.equalsIgnoreCase("compact")) {
+            int threshold = (attributeCompressionThreshold != null)
+                    ? attributeCompressionThreshold
+                    : CompactSessionAttributeCodec.DEFAULT_COMPRESSION_THRESHOLD;
+            String[] dictionary = (attributeCodecDictionary != null)
+                    ? attributeCodecDictionary.split(",")
+                    : null;
+            return new CompactSessionAttributeCodec(ioUtils, threshold, dictionary);
+        }
+        try {
+            Loader loader = ctx.getLoader();
+            ClassLoader classLoader = (loader != null)
+                    ? loader.getClassLoader()
+                    : Thread.currentThread().getContextClassLoader();
+            Class<?> codecClass = Class.forName(attributeCodec, true, classLoader);
+            return codecClass.asSubclass(SessionAttributeCodec.class).newInstance();
+        } catch (Exception ex) {
+            LogFacade.getLogger().log(Level.WARNING,
+                    LogFacade.COULD_NOT_CREATE_ATTRIBUTE_CODEC, attributeCodec);
+            if (LogFacade.getLogger().isLoggable(Level.FINE)) {
+                LogFacade.getLogger().log(Level.FINE, "Error creating " + attributeCodec, ex);
+            }
+            return null;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private <T extends Storeable>  ReplicationWebEventPersistentManager<T> getReplicationWebEventPersistentManager() {
  
@@ -0,0 +1,508 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.glassfish.web.ha.session.management;
+
+import com.sun.enterprise.container.common.spi.util.GlassFishInputStreamHandler;
+import com.sun.enterprise.container.common.spi.util.GlassFishOutputStreamHandler;
+import com.sun.enterprise.container.common.spi.util.JavaEEIOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactSessionAttributeCodecTest {
+
+    private static final int THRESHOLD =
+        CompactSessionAttributeCodec.DEFAULT_COMPRESSION_THRESHOLD;
+
+    private final SimpleIOUtils ioUtils = new SimpleIOUtils();
+
+    private final CompactSessionAttributeCodec codec =
+        new CompactSessionAttributeCodec(ioUtils, THRESHOLD, null);
+
+    @Test
+    public void testRoundTripOfEveryTag() throws Exception {
+        Object[] values = {
+            null, "", "session", "\u00e9t\u00e9 \u65e5\u672c",
+            Integer.MIN_VALUE, 0, Integer.MAX_VALUE,
+            Long.MIN_VALUE, Long.MAX_VALUE,
+            Boolean.TRUE, Boolean.FALSE,
+            Short.MIN_VALUE, Short.MAX_VALUE,
+            Byte.MIN_VALUE, Byte.MAX_VALUE,
+            'x', '\uffff',
+            Float.NaN, -0.0f, Float.MAX_VALUE,
+            Double.NEGATIVE_INFINITY, Double.MIN_VALUE,
+            new Cart("cart", 3), map(5)
+        };
+        for (Object value : values) {
+            assertEquals(String.valueOf(value), value, roundTrip(codec, value));
+        }
+
+        assertArrayEquals(new byte[0], (byte[]) roundTrip(codec, new byte[0]));
+        byte[] bytes = { 1, 2, 3, -1 };
+        assertArrayEquals(bytes, (byte[]) roundTrip(codec, bytes));
+    }
+
+    @Test
+    public void testFixedSizeValuesAreNotSerialized() throws Exception {
+        assertEquals(1, codec.encode(null).length);
+        assertEquals(5, codec.encode(42).length);
+        assertEquals(9, codec.encode(42L).length);
+        assertEquals(2, codec.encode(true).length);
+        assertEquals(3, codec.encode((short) 42).length);
+        assertEquals(2, codec.encode((byte) 42).length);
+        assertEquals(3, codec.encode('x').length);
+        assertEquals(5, codec.encode(1.5f).length);
+        assertEquals(9, codec.encode(1.5d).length);
+        assertEquals(8, codec.encode("session").length);
+        assertEquals(0, ioUtils.serializations);
+    }
+
+    @Test
+    public void testRoundTripOfCompressedValues() throws Exception {
+        String text = repeat("attribute value ", 100);
+        byte[] state = codec.encode(text);
+        assertTrue(isDeflated(state));
+        assertTrue(state.length < text.length());
+        assertEquals(text, codec.decode(state, null));
+
+        byte[] bytes = text.getBytes("UTF-8");
+        state = codec.encode(bytes);
+        assertTrue(isDeflated(state));
+        assertArrayEquals(bytes, (byte[]) codec.decode(state, null));
+
+        Map<String, String> map = map(100);
+        state = codec.encode(map);
+        assertTrue(isDeflated(state));
+        assertEquals(map, codec.decode(state, null));
+    }
+
+    @Test
+    public void testIncompressibleValuesAreKeptAsIs() throws Exception {
+        byte[] bytes = new byte[2 * THRESHOLD];
+        new java.util.Random(7).nextBytes(bytes);
+        byte[] state = codec.encode(bytes);
+        assertEquals(1 + bytes.length, state.length);
+        assertArrayEquals(bytes, (byte[]) codec.decode(state, null));
+
+        Cart cart = new Cart(new String(hex(bytes)), 1);
+        state = codec.encode(cart);
+        assertEquals(cart, codec.decode(state, null));
+    }
+
+    @Test
+    public void testLegacyJavaSerializedStates() throws Exception {
+        Object[] values = {
+            "session", 42, 42L, Boolean.TRUE, 'x', 1.5d, new Cart("cart", 3),
+            map(100), repeat("attribute value ", 100)
+        };
+        for (Object value : values) {
+            byte[] state = ioUtils.serializeObject(value, true);
+            assertEquals(String.valueOf(value), value, codec.decode(state, null));
+        }
+
+        byte[] bytes = { 1, 2, 3 };
+        assertArrayEquals(bytes, (byte[]) codec.decode(
+            ioUtils.serializeObject(bytes, true), null));
+    }
+
+    @Test
+    public void testObjectCompressionThreshold() throws Exception {
+        int size = CompactSessionAttributeCodec.MIN_OBJECT_COMPRESSION_SIZE;
+
+        String[] below = serializedTo(size - 1);
+        byte[] state = codec.encode(below);
+        assertArrayEquals(ioUtils.serializeObject(below, true), state);
+        assertArrayEquals(below, (String[]) codec.decode(state, null));
+
+        String[] at = serializedTo(size);
+        state = codec.encode(at);
+        assertTrue(isDeflated(state));
+        assertTrue(state.length < size);
+        assertArrayEquals(at, (String[]) codec.decode(state, null));
+    }
+
+    @Test
+    public void testStringCompressionThreshold() throws Exception {
+        CompactSessionAttributeCodec small =
+            new CompactSessionAttributeCodec(ioUtils, 100, null);
+
+        String below = repeat("a", 99);
+        byte[] state = small.encode(below);
+        assertEquals(100, state.length);
+        assertTrue(!isDeflated(state));
+        assertEquals(below, small.decode(state, null));
+
+        String at = repeat("a", 100);
+        state = small.encode(at);
+        assertTrue(isDeflated(state));
+        assertEquals(at, small.decode(state, null));
+    }
+
+    @Test
+    public void testCompressionDisabled() throws Exception {
+        CompactSessionAttributeCodec uncompressed =
+            new CompactSessionAttributeCodec(ioUtils, -1, null);
+
+        String text = repeat("attribute value ", 100);
+        byte[] state = uncompressed.encode(text);
+        assertEquals(1 + text.length(), state.length);
+        assertEquals(text, uncompressed.decode(state, null));
+
+        Map<String, String> map = map(100);
+        state = uncompressed.encode(map);
+        assertArrayEquals(ioUtils.serializeObject(map, true), state);
+        assertEquals(map, uncompressed.decode(state, null));
+    }
+
+    @Test
+    public void testSameDictionary() throws Exception {
+        String[] classes = { Cart.class.getName() };
+        CompactSessionAttributeCodec writer =
+            new CompactSessionAttributeCodec(ioUtils, THRESHOLD, classes);
+        CompactSessionAttributeCodec reader =
+            new CompactSessionAttributeCodec(ioUtils, THRESHOLD, classes);
+
+        Cart cart = new Cart("cart", 3);
+        byte[] state = writer.encode(cart);
+        assertTrue(isDeflated(state));
+        assertEquals(cart, reader.decode(state, null));
+    }
+
+    @Test
+    public void testDictionaryMismatch() throws Exception {
+        CompactSessionAttributeCodec writer = new CompactSessionAttributeCodec(
+            ioUtils, THRESHOLD, new String[] { Cart.class.getName() });
+
+        byte[] state = writer.encode(new Cart("cart", 3));
+        assertTrue(isDeflated(state));
+        assertDecodeFails(codec, state, "dictionary mismatch");
+
+        state = codec.encode(repeat("attribute value ", 100));
+        assertDecodeFails(writer, state, "dictionary mismatch");
+    }
+
+    @Test
+    public void testTruncatedStates() throws Exception {
+        byte[] state = codec.encode(repeat("attribute value ", 100));
+        assertTrue(isDeflated(state));
+        for (int length : new int[] { 1, 3, 5, 6, state.length / 2, state.length - 1 }) {
+            assertDecodeFails(codec, Arrays.copyOf(state, length), null);
+        }
+
+        byte[][] states = {
+            codec.encode(42), codec.encode(42L), codec.encode((short) 42),
+            codec.encode('x'), codec.encode(1.5f), codec.encode(1.5d),
+            codec.encode(true)
+        };
+        for (byte[] fixed : states) {
+            assertDecodeFails(codec, Arrays.copyOf(fixed, fixed.length - 1), "truncated");
+        }
+    }
+
+    @Test
+    public void testCorruptedLengthField() throws Exception {
+        String text = repeat("attribute value ", 100);
+        byte[] state = codec.encode(text);
+        assertTrue(isDeflated(state));
+
+        // Negative
+        assertDecodeFails(codec, withLength(state, -1), "corrupted");
+        assertDecodeFails(codec, withLength(state, Integer.MIN_VALUE), "corrupted");
+        // Longer than the payload, and huge, which must not be allocated
+        assertDecodeFails(codec, withLength(state, text.length() + 1), "truncated");
+        assertDecodeFails(codec, withLength(state, Integer.MAX_VALUE), "truncated");
+        // Shorter than the payload
+        assertDecodeFails(codec, withLength(state, text.length() - 1), "corrupted");
+        assertDecodeFails(codec, withLength(state, 1), "corrupted");
+    }
+
+    @Test
+    public void testCorruptedStates() throws Exception {
+        byte[] state = codec.encode(repeat("attribute value ", 100));
+        byte[] corrupted = state.clone();
+        corrupted[5] = (byte) 0xff;
+        assertDecodeFails(codec, corrupted, "corrupted");
+
+        corrupted = state.clone();
+        corrupted[corrupted.length - 1] ^= 0xff;
+        assertDecodeFails(codec, corrupted, null);
+
+        assertDecodeFails(codec, new byte[] { 0x3f }, "unknown");
+    }
+
+    @Test
+    public void testNullLoaderUsesIOUtils() throws Exception {
+        Cart cart = new Cart("cart", 3);
+        byte[] state = codec.encode(cart);
+
+        Thread thread = Thread.currentThread();
+        ClassLoader contextLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(null);
+        try {
+            assertEquals(cart, codec.decode(state, null));
+            assertEquals(cart, codec.decode(ioUtils.serializeObject(cart, true), null));
+        } finally {
+            thread.setContextClassLoader(contextLoader);
+        }
+        assertEquals(2, ioUtils.deserializations);
+        assertSame(CompactSessionAttributeCodec.class.getClassLoader(), ioUtils.loader);
+        assertTrue(ioUtils.resolveObject);
+    }
+
+    @Test
+    public void testGivenLoaderIsUsed() throws Exception {
+        ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {};
+        assertEquals(map(5), codec.decode(codec.encode(map(5)), loader));
+        assertSame(loader, ioUtils.loader);
+    }
+
+    @Test
+    public void testEmptyState() throws Exception {
+        assertNull(codec.decode(null, null));
+        assertNull(codec.decode(new byte[0], null));
+    }
+
+    private static Object roundTrip(CompactSessionAttributeCodec codec,
+            Object value) throws Exception {
+        return codec.decode(codec.encode(value), null);
+    }
+
+    private static boolean isDeflated(byte[] state) {
+        return (state[0] & 0xc0) == 0x40;
+    }
+
+    private static byte[] withLength(byte[] state, int length) {
+        byte[] copy = state.clone();
+        copy[1] = (byte) (length >>> 24);
+        copy[2] = (byte) (length >>> 16);
+        copy[3] = (byte) (length >>> 8);
+        copy[4] = (byte) length;
+        return copy;
+    }
+
+    private static void assertDecodeFails(CompactSessionAttributeCodec codec,
+            byte[] state, String message) throws Exception {
+        try {
+            Object value = codec.decode(state, null);
+            fail("Decoded " + Arrays.toString(state) + " to " + value);
+        } catch (IOException ex) {
+            if (message != null) {
+                assertNotNull(ex.getMessage());
+                assertTrue(ex.getMessage(),
+                        ex.getMessage().toLowerCase().contains(message));
+            }
+        }
+    }
+
+    /**
+     * Returns a compressible String[] whose serialized form is size bytes
+     * long.
+     */
+    private String[] serializedTo(int size) throws IOException {
+        for (int length = 0; length < size; length++) {
+            String[] value = { repeat("a", length) };
+            int serialized = ioUtils.serializeObject(value, true).length;
+            if (serialized == size) {
+                return value;
+            } else if (serialized > size) {
+                break;
+            }
+        }
+        throw new IllegalStateException("No String[] serialized to " + size);
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static char[] hex(byte[] bytes) {
+        char[] chars = new char[2 * bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xf, 16);
+            chars[2 * i + 1] = Character.forDigit(bytes[i] & 0xf, 16);
+        }
+        return chars;
+    }
+
+    private static Map<String, String> map(int size) {
+        Map<String, String> map = new HashMap<String, String>();
+        for (int i = 0; i < size; i++) {
+            map.put("key" + i, "value" + i);
+        }
+        return map;
+    }
+
+    private static class Cart implements Serializable {
+
+        private final String name;
+
+        private final List<Integer> items = new ArrayList<Integer>();
+
+        Cart(String name, int items) {
+            this.name = name;
+            for (int i = 0; i < items; i++) {
+                this.items.add(i);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof Cart) && name.equals(((Cart) o).name)
+                && items.equals(((Cart) o).items);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return "Cart " + name + items;
+        }
+    }
+
+    /**
+     * Plain Java serialization, recording how the codec deserializes.
+     */
+    private static class SimpleIOUtils implements JavaEEIOUtils {
+
+        int serializations;
+
+        int deserializations;
+
+        boolean resolveObject;
+
+        ClassLoader loader;
+
+        @Override
+        public ObjectInputStream createObjectInputStream(InputStream is,
+                boolean resolveObject, final ClassLoader loader)
+                throws Exception {
+            return new ObjectInputStream(is) {
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass desc)
+                        throws IOException, ClassNotFoundException {
+                    try {
+                        return Class.forName(desc.getName(), false, loader);
+                    } catch (ClassNotFoundException ex) {
+                        return super.resolveClass(desc);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public ObjectOutputStream createObjectOutputStream(OutputStream os,
+                boolean replaceObject) throws IOException {
+            return new ObjectOutputStream(os);
+        }
+
+        @Override
+        public byte[] serializeObject(Object obj, boolean replaceObject)
+                throws IOException {
+            serializations++;
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = createObjectOutputStream(bos, replaceObject);
+            oos.writeObject(obj);
+            oos.close();
+            return bos.toByteArray();
+        }
+
+        @Override
+        public Object deserializeObject(byte[] data, boolean resolveObject,
+                ClassLoader appClassLoader) throws Exception {
+            deserializations++;
+            this.resolveObject = resolveObject;
+            this.loader = appClassLoader;
+            ObjectInputStream ois = createObjectInputStream(
+                new ByteArrayInputStream(data), resolveObject, appClassLoader);
+            try {
+                return ois.readObject();
+            } finally {
+                ois.close();
+            }
+        }
+
+        @Override
+        public void addGlassFishOutputStreamHandler(GlassFishOutputStreamHandler handler) {
+        }
+
+        @Override
+        public void removeGlassFishOutputStreamHandler(GlassFishOutputStreamHandler handler) {
+        }
+
+        @Override
+        public void addGlassFishInputStreamHandler(GlassFishInputStreamHandler handler) {
+        }
+
+        @Override
+        public void removeGlassFishInputStreamHandler(GlassFishInputStreamHandler handler) {
+        }
+    }
+}
@@ -58,10 +58,19 @@
 
 package org.apache.naming.resources;
 
-import java.util.HashMap;
-import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Implements a special purpose cache.
+ * <p>
+ * Lookups are lock-free. Loads, unloads and allocations are expected to be
+ * serialized by the caller, see <code>ProxyDirContext</code>. When space
+ * must be made, the least frequently accessed entries are evicted first.
  * 
  * @author <a href="mailto:remm@apache.org">Remy Maucherat</a>
  * @version $Revision: 1.3 $
@@ -80,23 +89,29 @@ public class ResourceCache {
       
     
     /**
-     * Random generator used to determine elements to free.
+     * Orders entries by increasing access count.
      */
-    protected SecureRandom random = new SecureRandom();
+    private static final Comparator<CacheEntry> LEAST_ACCESSED_FIRST =
+        new Comparator<CacheEntry>() {
+            public int compare(CacheEntry e1, CacheEntry e2) {
+                return (e1.accessCount < e2.accessCount) ? -1 :
+                    ((e1.accessCount == e2.accessCount) ? 0 : 1);
+            }
+        };
     
     
     /**
-     * Cache.
      * Path -> Cache entry.
      */
-    protected CacheEntry[] cache = new CacheEntry[0];
+    private final ConcurrentHashMap<String, CacheEntry> entries =
+        new ConcurrentHashMap<String, CacheEntry>();
 
 
     /**
-     * Not found cache.
+     * Path -> Not found entry.
      */
-    protected HashMap<String, CacheEntry> notFoundCache =
-        new HashMap<String, CacheEntry>();
+    private final ConcurrentHashMap<String, CacheEntry> notFoundEntries =
+        new ConcurrentHashMap<String, CacheEntry>();
 
 
     /**
@@ -107,13 +122,15 @@ public class ResourceCache {
 
     /**
      * Max amount of removals during a make space.
+     * No longer used: all the entries are considered for removal.
      */
     protected int maxAllocateIterations = 20;
 
 
     /**
      * Entry hit ratio at which an entry will never be removed from the cache.
-     * Compared with entry.access / hitsCount
+     * Compared with the share, in percent, of entry.access in the accesses
+     * to all the cached entries.
      */
     protected long desiredEntryAccessRatio = 3;
 
@@ -127,19 +144,31 @@ public class ResourceCache {
     /**
      * Current cache size in KB.
      */
-    protected int cacheSize = 0;
+    protected volatile int cacheSize = 0;
 
 
     /**
      * Number of accesses to the cache.
      */
-    protected long accessCount = 0;
+    private final LongAdder accesses = new LongAdder();
 
 
     /**
      * Number of cache hits.
      */
-    protected long hitsCount = 0;
+    private final LongAdder hits = new LongAdder();
+
+
+    /**
+     * Number of cache misses.
+     */
+    private final LongAdder misses = new LongAdder();
+
+
+    /**
+     * Number of entries removed to make space.
+     */
+    private final LongAdder evictions = new LongAdder();
 
 
     // ------------------------------------------------------------- Properties
@@ -147,11 +176,9 @@ public class ResourceCache {
 
     /**
      * Return the access count.
-     * Note: Update is not synced, so the number may not be completely 
-     * accurate.
      */
     public long getAccessCount() {
-        return accessCount;
+        return accesses.sum();
     }
 
 
@@ -197,11 +224,25 @@ public class ResourceCache {
 
     /**
      * Return the number of cache hits.
-     * Note: Update is not synced, so the number may not be completely 
-     * accurate.
      */
     public long getHitsCount() {
-        return hitsCount;
+        return hits.sum();
+    }
+
+
+    /**
+     * Return the number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+
+    /**
+     * Return the number of entries removed to make space.
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
     }
 
 
@@ -248,13 +289,9 @@ public class ResourceCache {
             return true;
         }
 
-        // Increase the amount to free so that allocate won't have to run right
-        // away again
-        toFree += (cacheMaxSize / 20);
-
-        int size = notFoundCache.size();
+        int size = notFoundEntries.size();
         if (size > spareNotFoundEntries) {
-            notFoundCache.clear();
+            notFoundEntries.clear();
             cacheSize -= size;
             toFree -= size;
         }
@@ -263,65 +300,50 @@ public class ResourceCache {
             return true;
         }
 
-        int attempts = 0;
-        int entriesFound = 0;
+        // Select the entries which may be removed, i.e. the ones which do
+        // not have the desired share of the accesses
+        long totalAccessCount = 0;
+        for (CacheEntry entry : entries.values()) {
+            totalAccessCount += entry.accessCount;
+        }
+        List<CacheEntry> candidates = new ArrayList<CacheEntry>();
         long totalSpace = 0;
-        int[] toRemove = new int[maxAllocateIterations];
-        while (toFree > 0) {
-            if (attempts == maxAllocateIterations) {
-                // Give up, no changes are made to the current cache
-                return false;
-            }
-            if (toFree > 0) {
-                // Randomly select an entry in the array
-                int entryPos = -1;
-                boolean unique = false;
-                int count = 0;
-                while (!unique) {
-                    unique = true;
-                    entryPos = random.nextInt(cache.length) ;
-                    // Guarantee uniqueness
-                    for (int i = 0; i < entriesFound; i++) {
-                        if (toRemove[i] == entryPos) {
-                            unique = false;
-                        }
-                    }
-                }
-                long entryAccessRatio = 
-                    ((cache[entryPos].accessCount * 100) / accessCount);
-                if (entryAccessRatio < desiredEntryAccessRatio) {
-                    toRemove[entriesFound] = entryPos;
-                    totalSpace += cache[entryPos].size;
-                    toFree -= cache[entryPos].size;
-                    entriesFound++;
-                }
+        for (CacheEntry entry : entries.values()) {
+            if ((totalAccessCount == 0) ||
+                    ((entry.accessCount * 100) / totalAccessCount
+                        < desiredEntryAccessRatio)) {
+                candidates.add(entry);
+                totalSpace += entry.size;
             }
-            attempts++;
         }
 
-        // Now remove the selected entries
-        java.util.Arrays.sort(toRemove, 0, entriesFound);
-        CacheEntry[] newCache = new CacheEntry[cache.length - entriesFound];
-        int pos = 0;
-        int n = -1;
-        if (entriesFound > 0) {
-            n = toRemove[0];
-            for (int i = 0; i < cache.length; i++) {
-                if (i == n) {
-                    if ((pos + 1) < entriesFound) {
-                        n = toRemove[pos + 1];
-                        pos++;
-                    } else {
-                        pos++;
-                        n = -1;
-                    }
-                } else {
-                    newCache[i - pos] = cache[i];
-                }
+        if (totalSpace < toFree) {
+            // Give up, no changes are made to the current cache
+            return false;
+        }
+
+        // Increase the amount to free so that allocate won't have to run right
+        // away again
+        toFree += (cacheMaxSize / 20);
+
+        // Now remove the least accessed entries
+        Collections.sort(candidates, LEAST_ACCESSED_FIRST);
+        for (CacheEntry entry : candidates) {
+            if (toFree <= 0) {
+                break;
             }
+            if (entries.remove(entry.name, entry)) {
+                cacheSize -= entry.size;
+                toFree -= entry.size;
+                evictions.increment();
+            }
+        }
+
+        // Age the access counts of the remaining entries, so that entries
+        // which are no longer accessed eventually get removed
+        for (CacheEntry entry : entries.values()) {
+            entry.accessCount >>= 1;
         }
-        cache = newCache;
-        cacheSize -= totalSpace;
 
         return true;
 
@@ -330,46 +352,49 @@ public class ResourceCache {
 
     public CacheEntry lookup(String name) {
 
-        CacheEntry cacheEntry = null;
-        accessCount++;
-        int pos = find(cache, name);
-        if ((pos != -1) && (name.equals(cache[pos].name))) {
-            cacheEntry = cache[pos];
-        }
+        accesses.increment();
+        CacheEntry cacheEntry = entries.get(name);
         if (cacheEntry == null) {
-            try {
-                cacheEntry = notFoundCache.get(name);
-            } catch (Exception e) {
-                // Ignore: the reliability of this lookup is not critical
-            }
+            cacheEntry = notFoundEntries.get(name);
         }
         if (cacheEntry != null) {
-            hitsCount++;
+            hits.increment();
+        } else {
+            misses.increment();
         }
         return cacheEntry;
 
     }
 
 
+    /**
+     * Return <code>true</code> if an entry with the given name is cached,
+     * without counting it as an access.
+     */
+    public boolean contains(String name) {
+        return (entries.containsKey(name) || notFoundEntries.containsKey(name));
+    }
+
+
     public void load(CacheEntry entry) {
         if (entry.exists) {
-            if (insertCache(entry)) {
+            if (entries.putIfAbsent(entry.name, entry) == null) {
                 cacheSize += entry.size;
             }
         } else {
-            int sizeIncrement = (notFoundCache.get(entry.name) == null) ? 1 : 0;
-            notFoundCache.put(entry.name, entry);
-            cacheSize += sizeIncrement;
+            if (notFoundEntries.put(entry.name, entry) == null) {
+                cacheSize++;
+            }
         }
     }
 
 
     public boolean unload(String name) {
-        CacheEntry removedEntry = removeCache(name);
+        CacheEntry removedEntry = entries.remove(name);
         if (removedEntry != null) {
             cacheSize -= removedEntry.size;
             return true;
-        } else if (notFoundCache.remove(name) != null) {
+        } else if (notFoundEntries.remove(name) != null) {
             
             cacheSize--;
             return true;
@@ -378,87 +403,4 @@ public class ResourceCache {
     }
 
 
-    /**
-     * Find a map elemnt given its name in a sorted array of map elements.
-     * This will return the index for the closest inferior or equal item in the
-     * given array.
-     */
-    private static final int find(CacheEntry[] map, String name) {
-
-        int a = 0;
-        int b = map.length - 1;
-
-        // Special cases: -1 and 0
-        if (b == -1) {
-            return -1;
-        }
-        if (name.compareTo(map[0].name) < 0) {
-            return -1;
-        }
-        if (b == 0) {
-            return 0;
-        }
-
-        int i = 0;
-        while (true) {
-            i = (b + a) >>> 1;
-            int result = name.compareTo(map[i].name);
-            if (result > 0) {
-                a = i;
-            } else if (result == 0) {
-                return i;
-            } else {
-                b = i;
-            }
-            if ((b - a) == 1) {
-                int result2 = name.compareTo(map[b].name);
-                if (result2 < 0) {
-                    return a;
-                } else {
-                    return b;
-                }
-            }
-        }
-
-    }
-
-
-    /**
-     * Insert into the right place in a sorted MapElement array, and prevent
-     * duplicates.
-     */
-    private final boolean insertCache(CacheEntry newElement) {
-        CacheEntry[] oldCache = cache;
-        int pos = find(oldCache, newElement.name);
-        if ((pos != -1) && (newElement.name.equals(oldCache[pos].name))) {
-            return false;
-        }
-        CacheEntry[] newCache = new CacheEntry[cache.length + 1];
-        System.arraycopy(oldCache, 0, newCache, 0, pos + 1);
-        newCache[pos + 1] = newElement;
-        System.arraycopy
-            (oldCache, pos + 1, newCache, pos + 2, oldCache.length - pos - 1);
-        cache = newCache;
-        return true;
-    }
-
-
-    /**
-     * Insert into the right place in a sorted MapElement array.
-     */
-    private final CacheEntry removeCache(String name) {
-        CacheEntry[] oldCache = cache;
-        int pos = find(oldCache, name);
-        if ((pos != -1) && (name.equals(oldCache[pos].name))) {
-            CacheEntry[] newCache = new CacheEntry[cache.length - 1];
-            System.arraycopy(oldCache, 0, newCache, 0, pos);
-            System.arraycopy(oldCache, pos + 1, newCache, pos, 
-                             oldCache.length - pos - 1);
-            cache = newCache;
-            return oldCache[pos];
-        }
-        return null;
-    }
-
-
 }
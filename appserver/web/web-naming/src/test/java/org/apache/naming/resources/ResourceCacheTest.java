@@ -0,0 +1,217 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2017 Oracle and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://oss.oracle.com/licenses/CDDL+GPL-1.1
+ * or LICENSE.txt.  See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * Oracle designates this particular file as subject to the "Classpath"
+ * exception as provided by Oracle in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+
+package org.apache.naming.resources;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests {@link ResourceCache}.
+ */
+public class ResourceCacheTest {
+
+    private ResourceCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ResourceCache();
+        cache.setCacheMaxSize(100);
+    }
+
+    @Test
+    public void testLoadAndLookup() {
+        CacheEntry found = load("/found", 10, 0);
+        CacheEntry notFound = loadNotFound("/missing");
+        assertEquals(11, cache.getCacheSize());
+
+        assertSame(found, cache.lookup("/found"));
+        assertSame(notFound, cache.lookup("/missing"));
+        assertNull(cache.lookup("/other"));
+        assertEquals(3, cache.getAccessCount());
+        assertEquals(2, cache.getHitsCount());
+        assertEquals(1, cache.getMissCount());
+
+        assertTrue(cache.contains("/found"));
+        assertEquals(3, cache.getAccessCount());
+
+        assertTrue(cache.unload("/found"));
+        assertTrue(cache.unload("/missing"));
+        assertFalse(cache.unload("/found"));
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    @Test
+    public void testAllocateWithinMaxSize() {
+        load("/a", 50, 0);
+        assertTrue(cache.allocate(50));
+        assertTrue(cache.contains("/a"));
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testAllocateEvictsLeastAccessed() {
+        // No entry is exempted from eviction
+        cache.setDesiredEntryAccessRatio(101);
+        CacheEntry a = load("/a", 20, 1);
+        CacheEntry b = load("/b", 20, 5);
+        CacheEntry c = load("/c", 20, 10);
+        CacheEntry d = load("/d", 20, 2);
+
+        // 10 KB to free, plus 5% of the max size
+        assertTrue(cache.allocate(30));
+        assertFalse(cache.contains("/a"));
+        assertTrue(cache.contains("/b"));
+        assertTrue(cache.contains("/c"));
+        assertTrue(cache.contains("/d"));
+        assertEquals(60, cache.getCacheSize());
+        assertEquals(1, cache.getEvictionCount());
+
+        // The access counts of the remaining entries are aged
+        assertEquals(1, a.accessCount);
+        assertEquals(2, b.accessCount);
+        assertEquals(5, c.accessCount);
+        assertEquals(1, d.accessCount);
+
+        assertTrue(cache.allocate(65));
+        assertFalse(cache.contains("/d"));
+        assertFalse(cache.contains("/b"));
+        assertTrue(cache.contains("/c"));
+        assertEquals(20, cache.getCacheSize());
+        assertEquals(3, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testAllocateSparesHotEntries() {
+        // 97%, 2% and 1% of the accesses
+        load("/hot", 50, 97);
+        load("/cold1", 20, 2);
+        load("/cold2", 20, 1);
+
+        assertTrue(cache.allocate(30));
+        assertTrue(cache.contains("/hot"));
+        assertFalse(cache.contains("/cold1"));
+        assertFalse(cache.contains("/cold2"));
+        assertEquals(50, cache.getCacheSize());
+    }
+
+    @Test
+    public void testAllocateAgesHotEntries() {
+        CacheEntry hot = load("/hot", 40, 64);
+        load("/cold", 40, 16);
+        cache.setDesiredEntryAccessRatio(30);
+
+        // The cold entry is evicted, and the hot entry ages
+        assertTrue(cache.allocate(60));
+        assertFalse(cache.contains("/cold"));
+        assertEquals(32, hot.accessCount);
+
+        // Once no longer accessed, the hot entry loses its share of the
+        // accesses to a new entry, and is evicted in turn
+        CacheEntry entry = load("/new", 40, 200);
+        assertTrue(cache.allocate(60));
+        assertFalse(cache.contains("/hot"));
+        assertTrue(cache.contains("/new"));
+        assertEquals(100, entry.accessCount);
+    }
+
+    @Test
+    public void testAllocateClearsNotFoundEntries() {
+        cache.setSpareNotFoundEntries(2);
+        load("/a", 95, 0);
+        loadNotFound("/missing1");
+        loadNotFound("/missing2");
+        loadNotFound("/missing3");
+        assertEquals(98, cache.getCacheSize());
+
+        // Freeing the not found entries is enough
+        assertTrue(cache.allocate(4));
+        assertTrue(cache.contains("/a"));
+        assertFalse(cache.contains("/missing1"));
+        assertEquals(95, cache.getCacheSize());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testAllocateUnchangedWhenNotEnoughSpace() {
+        // Only the cold entry may be removed, which is not enough
+        CacheEntry hot = load("/hot", 60, 50);
+        CacheEntry cold = load("/cold", 20, 1);
+
+        assertFalse(cache.allocate(50));
+        assertTrue(cache.contains("/hot"));
+        assertTrue(cache.contains("/cold"));
+        assertEquals(80, cache.getCacheSize());
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(50, hot.accessCount);
+        assertEquals(1, cold.accessCount);
+
+        // Nor is removing every entry
+        assertFalse(cache.allocate(200));
+        assertEquals(80, cache.getCacheSize());
+    }
+
+    // -------------------------------------------------------- Private Methods
+
+    private CacheEntry load(String name, int size, long accessCount) {
+        CacheEntry entry = new CacheEntry();
+        entry.name = name;
+        entry.size = size;
+        entry.accessCount = accessCount;
+        cache.load(entry);
+        return entry;
+    }
+
+    private CacheEntry loadNotFound(String name) {
+        CacheEntry entry = new CacheEntry();
+        entry.name = name;
+        entry.exists = false;
+        cache.load(entry);
+        return entry;
+    }
+
+}
@@ -46,6 +46,9 @@
 
 package com.sun.enterprise.util.uuid;
 
+/**
+ * UuidGenerator backed by UuidUtil. It is thread safe.
+ */
 public class UuidGeneratorImpl implements UuidGenerator {
     
     /** Creates a new instance of UuidGeneratorImpl */
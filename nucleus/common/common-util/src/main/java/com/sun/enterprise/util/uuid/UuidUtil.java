@@ -50,6 +50,7 @@ import java.net.InetAddress;
 
 import java.rmi.server.UID;
 
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
 /**
@@ -189,8 +190,9 @@ public class UuidUtil
         return result;
     }
 
-    private static synchronized int getNextInt() {
-        return _seeder.nextInt();
+    private static int getNextInt() {
+        int stripe = (int) Thread.currentThread().getId() & (_seeders.length - 1);
+        return _seeders[stripe].nextInt();
     }
 
     private static String getNextRandomString() {
@@ -209,7 +211,76 @@ public class UuidUtil
         return result;
     }
 
-    private static SecureRandom _seeder = new SecureRandom();
+    /**
+     * The number of values a Seeder generates before it is reseeded.
+     */
+    private static final int RESEED_INTERVAL = 1 << 16;
+
+    /**
+     * The source of the seeds of the Seeders, which is only used when one
+     * of them is (re)seeded.
+     */
+    private static final SecureRandom _seedSource = new SecureRandom();
+
+    private static final Seeder[] _seeders = initSeeders();
+
+    /**
+     * Method initSeeders
+     *
+     * The random values are drawn from one Seeder per stripe, the stripe
+     * being chosen by the id of the current thread, so that the threads
+     * generating uuids concurrently seldom contend on the same one.
+     *
+     * @return a power of two number of Seeders
+     */
+    private static Seeder[] initSeeders() {
+        int stripes = 1;
+        int target = Math.min(64, 2 * Runtime.getRuntime().availableProcessors());
+        while (stripes < target) {
+            stripes <<= 1;
+        }
+        Seeder[] seeders = new Seeder[stripes];
+        for (int i = 0; i < stripes; i++) {
+            seeders[i] = new Seeder();
+        }
+        return seeders;
+    }
+
+    /**
+     * A SecureRandom that is periodically replaced by a new one, seeded with
+     * fresh bytes from the seed source.
+     */
+    private static final class Seeder {
+
+        private SecureRandom random;
+        private int uses;
+
+        Seeder() {
+            reseed();
+        }
+
+        synchronized int nextInt() {
+            if (++uses > RESEED_INTERVAL) {
+                reseed();
+                uses = 1;
+            }
+            return random.nextInt();
+        }
+
+        private void reseed() {
+            byte[] seed = new byte[32];
+            synchronized (_seedSource) {
+                _seedSource.nextBytes(seed);
+            }
+            try {
+                random = SecureRandom.getInstance("SHA1PRNG");
+                //seeding before the first use replaces the self seeding
+                random.setSeed(seed);
+            } catch (NoSuchAlgorithmException ex) {
+                random = new SecureRandom(seed);
+            }
+        }
+    }
 
     /**
      * Method main